@@ -11,6 +11,10 @@ import java.util.Set;
 import java.util.Spliterator;
 import java.util.Spliterators;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
 import java.util.function.DoubleConsumer;
@@ -395,6 +399,49 @@ public final class MoreSpliterators {
       return new ForkingSpliterator<>(requireNonNull(source), numberOfForks);
    }
 
+   /**
+    * Forks the given source of data into multiple sources, using a bounded buffer. This is like
+    * {@link #fork(Spliterator, int)} except that, instead of buffering an unbounded number of
+    * elements in queues (one per fork), all forks read from a single fixed-size ring buffer. Each
+    * fork has its own cursor into the ring. When the fastest fork gets a full ring ahead of the
+    * slowest, it waits for the slowest to catch up. So memory usage is constant, regardless of how
+    * quickly or slowly the forks are consumed.
+    * 
+    * <p>Forks that have already buffered data read it without acquiring any locks. A lock is only
+    * used when a fork reaches the end of the buffered data, to pull more data from the given
+    * source. A fork that pulls more data fills as much of the ring as it can, to amortize the cost
+    * of the lock over many elements. Forks never wait while holding the lock: a fork that is
+    * waiting, for room in the ring or for another fork to finish pulling data, spins briefly and
+    * then parks.
+    * 
+    * <p>Since a fork may wait for the others, <strong>the forks must be consumed
+    * concurrently</strong>. If forks are consumed sequentially and the source has more elements
+    * than the buffer size, the first fork will wait forever. Waiting is done via
+    * {@link ForkJoinPool#managedBlock}, so forks consumed by tasks in a {@link ForkJoinPool} do not
+    * starve the pool of threads. A fork that will not be fully consumed must be closed (the
+    * returned forks implement {@link AutoCloseable}), so that it no longer holds back the others.
+    * All forks must be retrieved from the returned supplier: until then, a fork's cursor is at the
+    * start of the data, holding back the others.
+    * 
+    * <p>The returned forks cannot be split.
+    * 
+    * @param source the spliterator that is the source of data for all forks
+    * @param numberOfForks the number of forks that can be retrieved from the returned supplier
+    * @param bufferSize the size of the ring buffer, which is rounded up to a power of two
+    * @return a supplier of the forks; each invocation of the supplier retrieves one of the
+    *       requested forks
+    */
+   public static <T> Supplier<Spliterator<T>> fork(Spliterator<? extends T> source,
+         int numberOfForks, int bufferSize) {
+      if (numberOfForks < 2) {
+         throw new IllegalArgumentException("number of forks must be >= 2");
+      }
+      if (bufferSize < 1) {
+         throw new IllegalArgumentException("buffer size must be positive");
+      }
+      return new RingForkingSpliterator<>(requireNonNull(source), numberOfForks, bufferSize);
+   }
+
    /**
     * A spliterator that yields the result of concatenating two given spliterators.
     * 
@@ -1157,4 +1204,244 @@ public final class MoreSpliterators {
          }
       }
    }
+   
+   /**
+    * Forks its output to multiple destinations using a shared, bounded ring buffer. This class
+    * wraps a spliterator and is a factory for the forks, which are themselves spliterators. Each
+    * fork tracks its position in the ring with a cursor. Only the fork that pulls data from the
+    * source, which is done while holding a lock, writes to the ring.
+    * 
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    *
+    * @param <T> the type of data provided by the spliterator
+    * 
+    * @see MoreSpliterators#fork(Spliterator, int, int)
+    */
+   static class RingForkingSpliterator<T> implements Supplier<Spliterator<T>> {
+      
+      private static final Object NULL = new Object();
+      private static final int MAX_CAPACITY = 1 << 30;
+      private static final int SPINS_BEFORE_PARK = 100;
+      private static final long PARK_NANOS = 50_000;
+
+      private final Spliterator<? extends T> source;
+      private final int sourceCharacteristics;
+      private final long sourceSize;
+      private final Object[] ring;
+      private final int mask;
+      private final AtomicLongArray cursors;
+      private final AtomicInteger forksSupplied = new AtomicInteger();
+      private final ReentrantLock lock = new ReentrantLock();
+      
+      /** The sequence number of the next element written to the ring. */
+      private volatile long published;
+      /** Set once the source is exhausted, after which {@link #published} never changes. */
+      private volatile boolean exhausted;
+
+      RingForkingSpliterator(Spliterator<? extends T> source, int numberOfForks, int bufferSize) {
+         this.source = source;
+         this.sourceCharacteristics = source.characteristics();
+         this.sourceSize = source.estimateSize();
+         int capacity = Integer.highestOneBit(Math.min(bufferSize, MAX_CAPACITY));
+         if (capacity < bufferSize && capacity < MAX_CAPACITY) {
+            capacity <<= 1;
+         }
+         this.ring = new Object[capacity];
+         this.mask = capacity - 1;
+         this.cursors = new AtomicLongArray(numberOfForks);
+      }
+      
+      @Override
+      public Spliterator<T> get() {
+         int index = forksSupplied.getAndIncrement();
+         if (index >= cursors.length()) {
+            throw new IllegalStateException("already supplied all forks");
+         }
+         return new Fork<>(this, index);
+      }
+      
+      /**
+       * Returns the sequence number of the next element to be read by the slowest fork, or
+       * {@link Long#MAX_VALUE} if all forks have been closed.
+       */
+      private long minCursor() {
+         long min = Long.MAX_VALUE;
+         for (int i = 0, len = cursors.length(); i < len; i++) {
+            min = Math.min(min, cursors.get(i));
+         }
+         return min;
+      }
+      
+      private boolean hasRoom() {
+         return published - minCursor() < ring.length;
+      }
+      
+      /**
+       * Waits until the element with the given sequence number is available or the source is
+       * exhausted. The waiting fork pulls more data from the source itself if there is room in
+       * the ring and no other fork is doing so. The lock is never held while waiting, so a fork
+       * that is behind can always make progress.
+       */
+      void fill(long sequence) {
+         if (tryFill(sequence)) {
+            return;
+         }
+         ForkJoinPool.ManagedBlocker blocker = new ForkJoinPool.ManagedBlocker() {
+            private int spins;
+            
+            @Override
+            public boolean isReleasable() {
+               return tryFill(sequence);
+            }
+            
+            @Override
+            public boolean block() {
+               if (spins < SPINS_BEFORE_PARK) {
+                  spins++;
+                  Thread.yield();
+               } else {
+                  LockSupport.parkNanos(this, PARK_NANOS);
+               }
+               return tryFill(sequence);
+            }
+         };
+         boolean interrupted = false;
+         try {
+            while (true) {
+               try {
+                  ForkJoinPool.managedBlock(blocker);
+                  return;
+               } catch (InterruptedException e) {
+                  interrupted = true;
+               }
+            }
+         } finally {
+            if (interrupted) {
+               Thread.currentThread().interrupt();
+            }
+         }
+      }
+      
+      /**
+       * Tries to make the element with the given sequence number available, returning true if it
+       * is available or if the source is exhausted. If there is room in the ring and no other fork
+       * is pulling data from the source, this fills as much of the ring as it can.
+       */
+      private boolean tryFill(long sequence) {
+         if (sequence < published || exhausted) {
+            return true;
+         }
+         if (!hasRoom() || !lock.tryLock()) {
+            return false;
+         }
+         try {
+            if (sequence < published || exhausted) {
+               return true;
+            }
+            long min = minCursor();
+            long limit = min == Long.MAX_VALUE ? published + 1 : min + ring.length;
+            while (published < limit) {
+               if (!source.tryAdvance(this::publish)) {
+                  exhausted = true;
+                  break;
+               }
+            }
+            return true;
+         } finally {
+            lock.unlock();
+         }
+      }
+      
+      private void publish(T t) {
+         assert lock.isHeldByCurrentThread();
+         long p = published;
+         ring[(int) p & mask] = t == null ? NULL : t;
+         published = p + 1;
+      }
+
+      /**
+       * A single fork of a ring-buffered spliterator.
+       * 
+       * @author Joshua Humphries (jhumphries131@gmail.com)
+       *
+       * @param <T> the type of data emitted by the spliterator
+       */
+      static class Fork<T> implements Spliterator<T>, AutoCloseable {
+         final RingForkingSpliterator<T> parent;
+         final int index;
+         long sequence;
+         boolean done;
+         
+         Fork(RingForkingSpliterator<T> parent, int index) {
+            this.parent = parent;
+            this.index = index;
+         }
+
+         @Override
+         public boolean tryAdvance(Consumer<? super T> action) {
+            if (done) {
+               return false;
+            }
+            RingForkingSpliterator<T> p = parent;
+            while (true) {
+               if (sequence < p.published) {
+                  Object o = p.ring[(int) sequence & p.mask];
+                  // lazy set is enough: it is ordered after the read above, and the writer need
+                  // not see it right away
+                  p.cursors.lazySet(index, ++sequence);
+                  @SuppressWarnings("unchecked")
+                  T t = o == NULL ? null : (T) o;
+                  action.accept(t);
+                  return true;
+               }
+               if (p.exhausted) {
+                  if (sequence < p.published) {
+                     // published was updated before exhausted was set
+                     continue;
+                  }
+                  close();
+                  return false;
+               }
+               p.fill(sequence);
+            }
+         }
+
+         @Override
+         public Spliterator<T> trySplit() {
+            return null;
+         }
+
+         @Override
+         public long estimateSize() {
+            if (done) {
+               return 0;
+            }
+            return (parent.sourceCharacteristics & Spliterator.SIZED) != 0
+                  ? parent.sourceSize - sequence
+                  : parent.sourceSize;
+         }
+
+         @Override
+         public int characteristics() {
+            return parent.sourceCharacteristics & ~Spliterator.CONCURRENT;
+         }
+         
+         @Override
+         @SuppressWarnings("unchecked")
+         public Comparator<? super T> getComparator() {
+            return (Comparator<? super T>) parent.source.getComparator();
+         }
+
+         /**
+          * Detaches this fork, so that it no longer holds back other forks.
+          */
+         @Override
+         public void close() {
+            if (!done) {
+               done = true;
+               parent.cursors.set(index, Long.MAX_VALUE);
+            }
+         }
+      }
+   }
 }
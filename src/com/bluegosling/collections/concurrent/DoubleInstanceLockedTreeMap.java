@@ -4,6 +4,8 @@ import com.bluegosling.collections.DescendingMap;
 import com.bluegosling.collections.DescendingSet;
 import com.bluegosling.collections.MapUtils;
 import com.bluegosling.concurrent.locks.DoubleInstanceLock;
+import com.bluegosling.concurrent.locks.DoubleInstanceLock.ReaderIndicator;
+import com.bluegosling.concurrent.locks.DoubleInstanceLock.WriteStrategy;
 
 import java.util.AbstractCollection;
 import java.util.AbstractSet;
@@ -36,6 +38,16 @@ import java.util.function.Function;
  * 
  * <p>Batch operations, like {@link #putAll(Map)} and {@link #replaceAll(BiFunction)}, are atomic.
  * Queries on the map will never reflect partial results of such operations.
+ * 
+ * <p>For read-heavy workloads on machines with many cores, the map can be constructed to use
+ * {@linkplain ReaderIndicator#DISTRIBUTED distributed reader indicators}, which allows read
+ * throughput to scale with the number of cores.
+ * 
+ * <p>For write-heavy workloads, the map can be constructed to use
+ * {@linkplain WriteStrategy#FLAT_COMBINING flat combining}: concurrent writes are applied together,
+ * in batches, by whichever writer acquires the lock. In that case, functions passed to methods like
+ * {@link #compute(Object, BiFunction)} or {@link #replaceAll(BiFunction)} may be invoked by a
+ * thread other than the caller's. By default, writes are {@linkplain WriteStrategy#SERIAL serial}.
  *
  * @param <K> the type of keys in the map
  * @param <V> the type of values in the map
@@ -51,7 +63,27 @@ public class DoubleInstanceLockedTreeMap<K, V> implements ConcurrentMap<K, V>, N
     * Creates a new, empty map.
     */
    public DoubleInstanceLockedTreeMap() {
-      this.lock = DoubleInstanceLock.newLock(new TreeMap<>());
+      this(ReaderIndicator.CENTRALIZED);
+   }
+
+   /**
+    * Creates a new, empty map that uses the given kind of reader indicator.
+    *
+    * @param readerIndicator the kind of reader indicator used by the map's lock
+    */
+   public DoubleInstanceLockedTreeMap(ReaderIndicator readerIndicator) {
+      this(readerIndicator, WriteStrategy.SERIAL);
+   }
+
+   /**
+    * Creates a new, empty map that uses the given kind of reader indicator and write strategy.
+    *
+    * @param readerIndicator the kind of reader indicator used by the map's lock
+    * @param writeStrategy the strategy used by the map's lock to apply writes
+    */
+   public DoubleInstanceLockedTreeMap(ReaderIndicator readerIndicator,
+         WriteStrategy writeStrategy) {
+      this.lock = DoubleInstanceLock.newLock(new TreeMap<>(), readerIndicator, writeStrategy);
    }
 
    /**
@@ -60,7 +92,31 @@ public class DoubleInstanceLockedTreeMap<K, V> implements ConcurrentMap<K, V>, N
     * @param map mappings used to initialize the new map
     */
    public DoubleInstanceLockedTreeMap(Map<? extends K, ? extends V> map) {
-      this.lock = DoubleInstanceLock.newLock(new TreeMap<>(map));
+      this(map, ReaderIndicator.CENTRALIZED);
+   }
+
+   /**
+    * Creates a new map with the given mappings that uses the given kind of reader indicator.
+    *
+    * @param map mappings used to initialize the new map
+    * @param readerIndicator the kind of reader indicator used by the map's lock
+    */
+   public DoubleInstanceLockedTreeMap(Map<? extends K, ? extends V> map,
+         ReaderIndicator readerIndicator) {
+      this(map, readerIndicator, WriteStrategy.SERIAL);
+   }
+
+   /**
+    * Creates a new map with the given mappings that uses the given kind of reader indicator and
+    * write strategy.
+    *
+    * @param map mappings used to initialize the new map
+    * @param readerIndicator the kind of reader indicator used by the map's lock
+    * @param writeStrategy the strategy used by the map's lock to apply writes
+    */
+   public DoubleInstanceLockedTreeMap(Map<? extends K, ? extends V> map,
+         ReaderIndicator readerIndicator, WriteStrategy writeStrategy) {
+      this.lock = DoubleInstanceLock.newLock(new TreeMap<>(map), readerIndicator, writeStrategy);
    }
 
    @Override
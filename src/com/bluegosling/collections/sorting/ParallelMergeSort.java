@@ -0,0 +1,651 @@
+package com.bluegosling.collections.sorting;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A parallel merge sort for arrays, using a {@link ForkJoinPool}. Unlike {@link ParallelSort},
+ * {@link ParallelSort2}, and {@link SlowParallelSort}, this sorts arrays directly (instead of
+ * lists, through {@link java.util.List#get(int) get} and {@link java.util.List#set(int, Object)
+ * set}), uses a pool of worker threads instead of creating its own threads, and parallelizes every
+ * merge, not just the sorting of chunks.
+ *
+ * <p>The array is recursively halved, and halves are sorted concurrently. Once a range is small
+ * enough, it is sorted sequentially with {@link Arrays#sort}. Two sorted halves are merged by
+ * finding, with a binary search, the <em>co-rank</em> of the middle of the output: the number of
+ * elements that come from each half. That splits the merge into two independent merges, of half
+ * the size, that are also done concurrently. Merges alternate between the array and a single
+ * buffer, the same size as the range being sorted, so results are never copied back and forth.
+ *
+ * <p>The size below which ranges are sorted and merged sequentially adapts to the size of the
+ * input and the parallelism of the pool, so that each worker thread gets a few chunks. If the pool
+ * has a parallelism of one, or the input is small, the whole range is just sorted with
+ * {@link Arrays#sort}.
+ *
+ * <p>This sort is adaptive: input that is already sorted is detected in linear time, and no
+ * buffer is allocated. And when two halves are already in order, or in exactly reversed order,
+ * their merge is just a copy, with no comparisons. Along with {@link Arrays#sort(Object[])}'s
+ * detection of runs in each chunk, this makes sorting partially sorted data much faster than
+ * sorting random data. Sorts of reference types are stable.
+ *
+ * @author Joshua Humphries (jhumphries131@gmail.com)
+ *
+ * @see Arrays#parallelSort(Object[])
+ */
+public final class ParallelMergeSort {
+
+   /** Prevents instantiation. */
+   private ParallelMergeSort() {
+   }
+
+   /**
+    * The smallest range that is ever sorted or merged in parallel.
+    */
+   private static final int MIN_CHUNK = 1 << 13;
+
+   /**
+    * Sorts the given array according to the elements' {@linkplain Comparable natural ordering},
+    * using the {@linkplain ForkJoinPool#commonPool() common pool}.
+    *
+    * @param array the array which will be sorted in place
+    */
+   public static <T extends Comparable<? super T>> void sort(T[] array) {
+      sort(array, Comparator.naturalOrder());
+   }
+
+   /**
+    * Sorts the given array according to the specified comparator, using the
+    * {@linkplain ForkJoinPool#commonPool() common pool}.
+    *
+    * @param array the array which will be sorted in place
+    * @param comp the comparator for comparing two elements
+    */
+   public static <T> void sort(T[] array, Comparator<? super T> comp) {
+      sort(array, 0, array.length, comp, ForkJoinPool.commonPool());
+   }
+
+   /**
+    * Sorts the given range of the given array according to the specified comparator, using the
+    * {@linkplain ForkJoinPool#commonPool() common pool}.
+    *
+    * @param array the array which will be sorted in place
+    * @param fromIndex the index of the first element to sort, inclusive
+    * @param toIndex the index of the last element to sort, exclusive
+    * @param comp the comparator for comparing two elements
+    * @throws IllegalArgumentException if {@code fromIndex > toIndex}
+    * @throws ArrayIndexOutOfBoundsException if {@code fromIndex < 0} or
+    *       {@code toIndex > array.length}
+    */
+   public static <T> void sort(T[] array, int fromIndex, int toIndex,
+         Comparator<? super T> comp) {
+      sort(array, fromIndex, toIndex, comp, ForkJoinPool.commonPool());
+   }
+
+   /**
+    * Sorts the given range of the given array according to the specified comparator, using the
+    * given pool.
+    *
+    * @param array the array which will be sorted in place
+    * @param fromIndex the index of the first element to sort, inclusive
+    * @param toIndex the index of the last element to sort, exclusive
+    * @param comp the comparator for comparing two elements
+    * @param pool the pool in which the sort is run
+    * @throws IllegalArgumentException if {@code fromIndex > toIndex}
+    * @throws ArrayIndexOutOfBoundsException if {@code fromIndex < 0} or
+    *       {@code toIndex > array.length}
+    */
+   @SuppressWarnings("unchecked") // only ever compares elements of the given array
+   public static <T> void sort(T[] array, int fromIndex, int toIndex,
+         Comparator<? super T> comp, ForkJoinPool pool) {
+      requireNonNull(comp);
+      sort(new ObjectOps((Comparator<Object>) comp), array, fromIndex, toIndex, array.length,
+            pool);
+   }
+
+   /**
+    * Sorts the given array in ascending order, using the {@linkplain ForkJoinPool#commonPool()
+    * common pool}.
+    *
+    * @param array the array which will be sorted in place
+    */
+   public static void sort(int[] array) {
+      sort(array, 0, array.length, ForkJoinPool.commonPool());
+   }
+
+   /**
+    * Sorts the given range of the given array in ascending order, using the
+    * {@linkplain ForkJoinPool#commonPool() common pool}.
+    *
+    * @param array the array which will be sorted in place
+    * @param fromIndex the index of the first element to sort, inclusive
+    * @param toIndex the index of the last element to sort, exclusive
+    * @throws IllegalArgumentException if {@code fromIndex > toIndex}
+    * @throws ArrayIndexOutOfBoundsException if {@code fromIndex < 0} or
+    *       {@code toIndex > array.length}
+    */
+   public static void sort(int[] array, int fromIndex, int toIndex) {
+      sort(array, fromIndex, toIndex, ForkJoinPool.commonPool());
+   }
+
+   /**
+    * Sorts the given range of the given array in ascending order, using the given pool.
+    *
+    * @param array the array which will be sorted in place
+    * @param fromIndex the index of the first element to sort, inclusive
+    * @param toIndex the index of the last element to sort, exclusive
+    * @param pool the pool in which the sort is run
+    * @throws IllegalArgumentException if {@code fromIndex > toIndex}
+    * @throws ArrayIndexOutOfBoundsException if {@code fromIndex < 0} or
+    *       {@code toIndex > array.length}
+    */
+   public static void sort(int[] array, int fromIndex, int toIndex, ForkJoinPool pool) {
+      sort(IntOps.INSTANCE, array, fromIndex, toIndex, array.length, pool);
+   }
+
+   /**
+    * Sorts the given array in ascending order, using the {@linkplain ForkJoinPool#commonPool()
+    * common pool}.
+    *
+    * @param array the array which will be sorted in place
+    */
+   public static void sort(long[] array) {
+      sort(array, 0, array.length, ForkJoinPool.commonPool());
+   }
+
+   /**
+    * Sorts the given range of the given array in ascending order, using the
+    * {@linkplain ForkJoinPool#commonPool() common pool}.
+    *
+    * @param array the array which will be sorted in place
+    * @param fromIndex the index of the first element to sort, inclusive
+    * @param toIndex the index of the last element to sort, exclusive
+    * @throws IllegalArgumentException if {@code fromIndex > toIndex}
+    * @throws ArrayIndexOutOfBoundsException if {@code fromIndex < 0} or
+    *       {@code toIndex > array.length}
+    */
+   public static void sort(long[] array, int fromIndex, int toIndex) {
+      sort(array, fromIndex, toIndex, ForkJoinPool.commonPool());
+   }
+
+   /**
+    * Sorts the given range of the given array in ascending order, using the given pool.
+    *
+    * @param array the array which will be sorted in place
+    * @param fromIndex the index of the first element to sort, inclusive
+    * @param toIndex the index of the last element to sort, exclusive
+    * @param pool the pool in which the sort is run
+    * @throws IllegalArgumentException if {@code fromIndex > toIndex}
+    * @throws ArrayIndexOutOfBoundsException if {@code fromIndex < 0} or
+    *       {@code toIndex > array.length}
+    */
+   public static void sort(long[] array, int fromIndex, int toIndex, ForkJoinPool pool) {
+      sort(LongOps.INSTANCE, array, fromIndex, toIndex, array.length, pool);
+   }
+
+   /**
+    * Sorts the given array in ascending order, using the {@linkplain ForkJoinPool#commonPool()
+    * common pool}. Values are ordered the same as by {@link Arrays#sort(double[])}: {@code -0.0}
+    * is less than {@code 0.0}, and {@code NaN} is greater than all other values.
+    *
+    * @param array the array which will be sorted in place
+    */
+   public static void sort(double[] array) {
+      sort(array, 0, array.length, ForkJoinPool.commonPool());
+   }
+
+   /**
+    * Sorts the given range of the given array in ascending order, using the
+    * {@linkplain ForkJoinPool#commonPool() common pool}. Values are ordered the same as by
+    * {@link Arrays#sort(double[])}.
+    *
+    * @param array the array which will be sorted in place
+    * @param fromIndex the index of the first element to sort, inclusive
+    * @param toIndex the index of the last element to sort, exclusive
+    * @throws IllegalArgumentException if {@code fromIndex > toIndex}
+    * @throws ArrayIndexOutOfBoundsException if {@code fromIndex < 0} or
+    *       {@code toIndex > array.length}
+    */
+   public static void sort(double[] array, int fromIndex, int toIndex) {
+      sort(array, fromIndex, toIndex, ForkJoinPool.commonPool());
+   }
+
+   /**
+    * Sorts the given range of the given array in ascending order, using the given pool. Values
+    * are ordered the same as by {@link Arrays#sort(double[])}.
+    *
+    * @param array the array which will be sorted in place
+    * @param fromIndex the index of the first element to sort, inclusive
+    * @param toIndex the index of the last element to sort, exclusive
+    * @param pool the pool in which the sort is run
+    * @throws IllegalArgumentException if {@code fromIndex > toIndex}
+    * @throws ArrayIndexOutOfBoundsException if {@code fromIndex < 0} or
+    *       {@code toIndex > array.length}
+    */
+   public static void sort(double[] array, int fromIndex, int toIndex, ForkJoinPool pool) {
+      sort(DoubleOps.INSTANCE, array, fromIndex, toIndex, array.length, pool);
+   }
+
+   private static <A> void sort(ArrayOps<A> ops, A array, int fromIndex, int toIndex,
+         int length, ForkJoinPool pool) {
+      requireNonNull(pool);
+      if (fromIndex > toIndex) {
+         throw new IllegalArgumentException(
+               "fromIndex (" + fromIndex + ") > toIndex (" + toIndex + ")");
+      }
+      if (fromIndex < 0) {
+         throw new ArrayIndexOutOfBoundsException(fromIndex);
+      }
+      if (toIndex > length) {
+         throw new ArrayIndexOutOfBoundsException(toIndex);
+      }
+      int n = toIndex - fromIndex;
+      int parallelism = pool.getParallelism();
+      if (n <= MIN_CHUNK || parallelism == 1) {
+         // not worth the overhead of parallelism
+         ops.sort(array, fromIndex, toIndex);
+         return;
+      }
+      if (ops.isSorted(array, fromIndex, toIndex)) {
+         return;
+      }
+      // aim for a few chunks per thread, so that work can be balanced
+      int chunkSize = Math.max(MIN_CHUNK, n / (parallelism << 2));
+      Sorter<A> sorter = new Sorter<>(new Context<>(ops, array, ops.newArray(n), -fromIndex,
+            chunkSize), fromIndex, toIndex, false);
+      pool.invoke(sorter);
+   }
+
+   /**
+    * The state shared by all tasks in a single sort operation. Tasks refer to elements by their
+    * index in the array being sorted. The same element in the buffer is at that index plus an
+    * offset, since the buffer only spans the range being sorted.
+    *
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    *
+    * @param <A> the type of array being sorted
+    */
+   private static class Context<A> {
+      final ArrayOps<A> ops;
+      final A array;
+      final A buffer;
+      final int bufferOffset;
+      final int chunkSize;
+
+      Context(ArrayOps<A> ops, A array, A buffer, int bufferOffset, int chunkSize) {
+         this.ops = ops;
+         this.array = array;
+         this.buffer = buffer;
+         this.bufferOffset = bufferOffset;
+         this.chunkSize = chunkSize;
+      }
+   }
+
+   /**
+    * Sorts a range of the array. The sorted result is left either in the array or in the
+    * corresponding range of the buffer. A sorter leaves its results in the opposite place from
+    * its two halves, so that they can be merged into it.
+    *
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    *
+    * @param <A> the type of array being sorted
+    */
+   private static class Sorter<A> extends RecursiveAction {
+      private static final long serialVersionUID = -6163316325898436437L;
+
+      private final Context<A> ctx;
+      private final int lo;
+      private final int hi;
+      private final boolean toBuffer;
+
+      Sorter(Context<A> ctx, int lo, int hi, boolean toBuffer) {
+         this.ctx = ctx;
+         this.lo = lo;
+         this.hi = hi;
+         this.toBuffer = toBuffer;
+      }
+
+      @Override
+      protected void compute() {
+         ArrayOps<A> ops = ctx.ops;
+         if (hi - lo <= ctx.chunkSize) {
+            ops.sort(ctx.array, lo, hi);
+            if (toBuffer) {
+               System.arraycopy(ctx.array, lo, ctx.buffer, lo + ctx.bufferOffset, hi - lo);
+            }
+            return;
+         }
+         int mid = (lo + hi) >>> 1;
+         invokeAll(new Sorter<>(ctx, lo, mid, !toBuffer), new Sorter<>(ctx, mid, hi, !toBuffer));
+
+         A src, dst;
+         int srcOffset, dstOffset;
+         if (toBuffer) {
+            src = ctx.array;
+            srcOffset = 0;
+            dst = ctx.buffer;
+            dstOffset = ctx.bufferOffset;
+         } else {
+            src = ctx.buffer;
+            srcOffset = ctx.bufferOffset;
+            dst = ctx.array;
+            dstOffset = 0;
+         }
+         if (ops.compare(src, mid - 1 + srcOffset, mid + srcOffset) <= 0) {
+            // halves are already in order
+            System.arraycopy(src, lo + srcOffset, dst, lo + dstOffset, hi - lo);
+         } else if (ops.compare(src, hi - 1 + srcOffset, lo + srcOffset) < 0) {
+            // halves are in reverse order
+            System.arraycopy(src, mid + srcOffset, dst, lo + dstOffset, hi - mid);
+            System.arraycopy(src, lo + srcOffset, dst, lo + hi - mid + dstOffset, mid - lo);
+         } else {
+            new Merger<>(ctx, src, dst, lo + srcOffset, mid + srcOffset, mid + srcOffset,
+                  hi + srcOffset, lo + dstOffset).compute();
+         }
+      }
+   }
+
+   /**
+    * Merges two adjacent sorted runs into the other of the array or buffer. Unlike sorters,
+    * mergers use physical indices, already adjusted for the buffer's offset.
+    *
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    *
+    * @param <A> the type of array being sorted
+    */
+   private static class Merger<A> extends RecursiveAction {
+      private static final long serialVersionUID = 2919738153413226164L;
+
+      private final Context<A> ctx;
+      private final A src;
+      private final A dst;
+      private final int lo1;
+      private final int hi1;
+      private final int lo2;
+      private final int hi2;
+      private final int dstIndex;
+
+      Merger(Context<A> ctx, A src, A dst, int lo1, int hi1, int lo2, int hi2, int dstIndex) {
+         this.ctx = ctx;
+         this.src = src;
+         this.dst = dst;
+         this.lo1 = lo1;
+         this.hi1 = hi1;
+         this.lo2 = lo2;
+         this.hi2 = hi2;
+         this.dstIndex = dstIndex;
+      }
+
+      @Override
+      protected void compute() {
+         int n = (hi1 - lo1) + (hi2 - lo2);
+         if (n <= ctx.chunkSize) {
+            ctx.ops.merge(src, lo1, hi1, lo2, hi2, dst, dstIndex);
+            return;
+         }
+         int k = n >>> 1;
+         int i = coRank(k);
+         int j = k - i;
+         invokeAll(new Merger<>(ctx, src, dst, lo1, lo1 + i, lo2, lo2 + j, dstIndex),
+               new Merger<>(ctx, src, dst, lo1 + i, hi1, lo2 + j, hi2, dstIndex + k));
+      }
+
+      /**
+       * Computes how many of the first {@code k} merged elements come from the first run. Ties
+       * are resolved in favor of the first run, so that merges are stable.
+       */
+      private int coRank(int k) {
+         int n1 = hi1 - lo1;
+         int n2 = hi2 - lo2;
+         int lo = Math.max(0, k - n2);
+         int hi = Math.min(k, n1);
+         while (lo < hi) {
+            int i = (lo + hi) >>> 1;
+            int j = k - i;
+            // if first[i] <= second[j - 1], it precedes it, so more must come from first
+            if (ctx.ops.compare(src, lo1 + i, lo2 + j - 1) <= 0) {
+               lo = i + 1;
+            } else {
+               hi = i;
+            }
+         }
+         return lo;
+      }
+   }
+
+   /**
+    * The operations that differ for each type of array. Sorting and merging chunks is done here,
+    * so their inner loops work on each kind of array directly.
+    *
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    *
+    * @param <A> the type of array
+    */
+   private interface ArrayOps<A> {
+      A newArray(int length);
+
+      void sort(A array, int from, int to);
+
+      boolean isSorted(A array, int from, int to);
+
+      int compare(A array, int i, int j);
+
+      /**
+       * Merges two sorted runs in {@code src} into {@code dst}, starting at the given index.
+       * Ties are resolved in favor of the first run.
+       */
+      void merge(A src, int lo1, int hi1, int lo2, int hi2, A dst, int dstIndex);
+   }
+
+   /**
+    * Operations on arrays of references.
+    *
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    */
+   private static class ObjectOps implements ArrayOps<Object[]> {
+      private final Comparator<Object> comp;
+
+      ObjectOps(Comparator<Object> comp) {
+         this.comp = comp;
+      }
+
+      @Override
+      public Object[] newArray(int length) {
+         return new Object[length];
+      }
+
+      @Override
+      public void sort(Object[] array, int from, int to) {
+         Arrays.sort(array, from, to, comp);
+      }
+
+      @Override
+      public boolean isSorted(Object[] array, int from, int to) {
+         for (int i = from + 1; i < to; i++) {
+            if (comp.compare(array[i - 1], array[i]) > 0) {
+               return false;
+            }
+         }
+         return true;
+      }
+
+      @Override
+      public int compare(Object[] array, int i, int j) {
+         return comp.compare(array[i], array[j]);
+      }
+
+      @Override
+      public void merge(Object[] src, int lo1, int hi1, int lo2, int hi2, Object[] dst, int k) {
+         while (lo1 < hi1 && lo2 < hi2) {
+            Object x = src[lo1];
+            Object y = src[lo2];
+            if (comp.compare(x, y) <= 0) {
+               dst[k++] = x;
+               lo1++;
+            } else {
+               dst[k++] = y;
+               lo2++;
+            }
+         }
+         System.arraycopy(src, lo1, dst, k, hi1 - lo1);
+         System.arraycopy(src, lo2, dst, k + hi1 - lo1, hi2 - lo2);
+      }
+   }
+
+   /**
+    * Operations on arrays of {@code int}s.
+    *
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    */
+   private enum IntOps implements ArrayOps<int[]> {
+      INSTANCE;
+
+      @Override
+      public int[] newArray(int length) {
+         return new int[length];
+      }
+
+      @Override
+      public void sort(int[] array, int from, int to) {
+         Arrays.sort(array, from, to);
+      }
+
+      @Override
+      public boolean isSorted(int[] array, int from, int to) {
+         for (int i = from + 1; i < to; i++) {
+            if (array[i - 1] > array[i]) {
+               return false;
+            }
+         }
+         return true;
+      }
+
+      @Override
+      public int compare(int[] array, int i, int j) {
+         return Integer.compare(array[i], array[j]);
+      }
+
+      @Override
+      public void merge(int[] src, int lo1, int hi1, int lo2, int hi2, int[] dst, int k) {
+         while (lo1 < hi1 && lo2 < hi2) {
+            int x = src[lo1];
+            int y = src[lo2];
+            if (x <= y) {
+               dst[k++] = x;
+               lo1++;
+            } else {
+               dst[k++] = y;
+               lo2++;
+            }
+         }
+         System.arraycopy(src, lo1, dst, k, hi1 - lo1);
+         System.arraycopy(src, lo2, dst, k + hi1 - lo1, hi2 - lo2);
+      }
+   }
+
+   /**
+    * Operations on arrays of {@code long}s.
+    *
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    */
+   private enum LongOps implements ArrayOps<long[]> {
+      INSTANCE;
+
+      @Override
+      public long[] newArray(int length) {
+         return new long[length];
+      }
+
+      @Override
+      public void sort(long[] array, int from, int to) {
+         Arrays.sort(array, from, to);
+      }
+
+      @Override
+      public boolean isSorted(long[] array, int from, int to) {
+         for (int i = from + 1; i < to; i++) {
+            if (array[i - 1] > array[i]) {
+               return false;
+            }
+         }
+         return true;
+      }
+
+      @Override
+      public int compare(long[] array, int i, int j) {
+         return Long.compare(array[i], array[j]);
+      }
+
+      @Override
+      public void merge(long[] src, int lo1, int hi1, int lo2, int hi2, long[] dst, int k) {
+         while (lo1 < hi1 && lo2 < hi2) {
+            long x = src[lo1];
+            long y = src[lo2];
+            if (x <= y) {
+               dst[k++] = x;
+               lo1++;
+            } else {
+               dst[k++] = y;
+               lo2++;
+            }
+         }
+         System.arraycopy(src, lo1, dst, k, hi1 - lo1);
+         System.arraycopy(src, lo2, dst, k + hi1 - lo1, hi2 - lo2);
+      }
+   }
+
+   /**
+    * Operations on arrays of {@code double}s. These use {@link Double#compare(double, double)},
+    * so that {@code -0.0} and {@code NaN} are ordered the same as by {@link Arrays#sort(double[])}.
+    *
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    */
+   private enum DoubleOps implements ArrayOps<double[]> {
+      INSTANCE;
+
+      @Override
+      public double[] newArray(int length) {
+         return new double[length];
+      }
+
+      @Override
+      public void sort(double[] array, int from, int to) {
+         Arrays.sort(array, from, to);
+      }
+
+      @Override
+      public boolean isSorted(double[] array, int from, int to) {
+         for (int i = from + 1; i < to; i++) {
+            if (Double.compare(array[i - 1], array[i]) > 0) {
+               return false;
+            }
+         }
+         return true;
+      }
+
+      @Override
+      public int compare(double[] array, int i, int j) {
+         return Double.compare(array[i], array[j]);
+      }
+
+      @Override
+      public void merge(double[] src, int lo1, int hi1, int lo2, int hi2, double[] dst, int k) {
+         while (lo1 < hi1 && lo2 < hi2) {
+            double x = src[lo1];
+            double y = src[lo2];
+            if (Double.compare(x, y) <= 0) {
+               dst[k++] = x;
+               lo1++;
+            } else {
+               dst[k++] = y;
+               lo2++;
+            }
+         }
+         System.arraycopy(src, lo1, dst, k, hi1 - lo1);
+         System.arraycopy(src, lo2, dst, k + hi1 - lo1, hi2 - lo2);
+      }
+   }
+}
@@ -1,7 +1,12 @@
 /**
- * Implementations of sorting algorithms. These are largely for educational purposes. The multiple
- * parallel sort implementations are not practical, but perhaps useful as a thought experiment as to
- * how to employ parallelism in large sorting operations. The other sort algorithm here,
+ * Implementations of sorting algorithms. These are largely for educational purposes. The parallel
+ * sorts of lists ({@link com.bluegosling.collections.sorting.ParallelSort},
+ * {@link com.bluegosling.collections.sorting.ParallelSort2}, and
+ * {@link com.bluegosling.collections.sorting.SlowParallelSort}) are not practical, but perhaps
+ * useful as a thought experiment as to how to employ parallelism in large sorting operations. The
+ * exception is {@link com.bluegosling.collections.sorting.ParallelMergeSort}, a fork-join merge
+ * sort for arrays that also parallelizes its merges and takes advantage of partially sorted input.
+ * The other sort algorithm here,
  * {@link com.bluegosling.collections.sorting.SmoothSort}, is an interesting algorithm that has
  * ideal properties (logarithmic upper-bound, closer to linear runtime with already-sorted or
  * semi-sorted inputs), but does not actually outperform the JRE's built-in sorting (which uses
@@ -11,6 +11,11 @@ import java.util.function.Supplier;
 
 /**
  * Numerous utility methods related to blocking using {@link ManagedBlocker}s.
+ * 
+ * <p>When called from a {@linkplain ThreadFactories#isVirtual(Thread) virtual thread}, these
+ * methods block directly instead of going through {@link ForkJoinPool#managedBlock}. Blocking a
+ * virtual thread unmounts it from its carrier, so the carrier pool does not need to compensate
+ * with a spare thread.
  *
  * @author Joshua Humphries (jhumphries131@gmail.com)
  */
@@ -61,6 +66,25 @@ public final class ManagedBlockers {
       boolean get(long nanosTimeLimit) throws InterruptedException;
    }
    
+   /**
+    * Blocks using the given blocker. This is the same as {@link ForkJoinPool#managedBlock} except
+    * that no compensation is attempted when the current thread is a virtual thread.
+    *
+    * @param blocker the blocker used to block the current thread
+    * @throws InterruptedException if the current thread is interrupted while blocking
+    */
+   public static void managedBlock(ManagedBlocker blocker) throws InterruptedException {
+      if (ThreadFactories.isVirtual(Thread.currentThread())) {
+         while (!blocker.isReleasable()) {
+            if (blocker.block()) {
+               break;
+            }
+         }
+      } else {
+         ForkJoinPool.managedBlock(blocker);
+      }
+   }
+   
    /**
     * Blocks using a {@link ManagedBlocker} in a non-interruptible way. If the thread is interrupted
     * while blocking, it will be ignored and blocking will continue. If interrupted, the interrupt
@@ -72,7 +96,7 @@ public final class ManagedBlockers {
       boolean interrupted = false;
       while (true) {
          try {
-            ForkJoinPool.managedBlock(blocker);
+            managedBlock(blocker);
             break;
          } catch (InterruptedException e) {
             interrupted = true;
@@ -94,7 +118,7 @@ public final class ManagedBlockers {
    public static <T> T managedBlockFor(InterruptibleSupplier<T> supplier)
          throws InterruptedException {
       SupplierBlocker<T> blocker = new SupplierBlocker<>(supplier);
-      ForkJoinPool.managedBlock(blocker);
+      managedBlock(blocker);
       return blocker.get();
    }
 
@@ -129,7 +153,7 @@ public final class ManagedBlockers {
    public static <T> T managedTimedBlockFor(TimedInterruptibleSupplier<T> supplier, long timeLimit,
          TimeUnit unit) throws InterruptedException, TimeoutException {
       TimedSupplierBlocker<T> blocker = new TimedSupplierBlocker<>(supplier, timeLimit, unit);
-      ForkJoinPool.managedBlock(blocker);
+      managedBlock(blocker);
       return blocker.get();
    }
 
@@ -151,7 +175,7 @@ public final class ManagedBlockers {
          TimeUnit unit) throws InterruptedException {
       TimedSupplierBlocker<Boolean> blocker =
             new TimedSupplierBlocker<>(waiter::get, timeLimit, unit);
-      ForkJoinPool.managedBlock(blocker);
+      managedBlock(blocker);
       return !blocker.timedOut();
    }
    
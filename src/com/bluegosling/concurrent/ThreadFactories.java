@@ -1,10 +1,18 @@
 package com.bluegosling.concurrent;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Utility methods for creating thread factories.
+ * 
+ * <p>This class also provides access to virtual threads, which were added in Java 21. Since this
+ * library targets older versions of Java, virtual threads are accessed reflectively. On older
+ * runtimes, {@link #isVirtualThreadSupported()} returns false and methods that would create
+ * virtual threads throw {@link UnsupportedOperationException}.
  *
  * @author Joshua Humphries (jhumphries131@gmail.com)
  */
@@ -12,6 +20,113 @@ import java.util.concurrent.atomic.AtomicInteger;
 public final class ThreadFactories {
    private ThreadFactories() {
    }
+   
+   /** {@code Thread.isVirtual()}, or {@code null} if virtual threads are not supported. */
+   private static final MethodHandle IS_VIRTUAL;
+   
+   /**
+    * {@code Thread.ofVirtual().name(prefix, start).factory()}, or {@code null} if virtual threads
+    * are not supported.
+    */
+   private static final MethodHandle NEW_VIRTUAL_FACTORY;
+   
+   static {
+      MethodHandle isVirtual = null;
+      MethodHandle newVirtualFactory = null;
+      try {
+         MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+         Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+         Class<?> ofVirtualClass = Class.forName("java.lang.Thread$Builder$OfVirtual");
+         isVirtual = lookup.findVirtual(Thread.class, "isVirtual",
+               MethodType.methodType(boolean.class));
+         MethodHandle ofVirtual = lookup.findStatic(Thread.class, "ofVirtual",
+               MethodType.methodType(ofVirtualClass));
+         MethodHandle name = lookup.findVirtual(ofVirtualClass, "name",
+               MethodType.methodType(ofVirtualClass, String.class, long.class));
+         MethodHandle factory = lookup.findVirtual(builderClass, "factory",
+               MethodType.methodType(ThreadFactory.class));
+         // (String, long) -> ThreadFactory
+         newVirtualFactory = MethodHandles.filterReturnValue(
+               MethodHandles.foldArguments(name, ofVirtual),
+               factory.asType(MethodType.methodType(ThreadFactory.class, ofVirtualClass)));
+         // On some versions, virtual threads are a preview feature and this throws if previews are
+         // not enabled.
+         ofVirtual.invoke();
+      } catch (Throwable t) {
+         isVirtual = null;
+         newVirtualFactory = null;
+      }
+      IS_VIRTUAL = isVirtual;
+      NEW_VIRTUAL_FACTORY = newVirtualFactory;
+   }
+   
+   /**
+    * Returns true if the current runtime supports virtual threads.
+    *
+    * @return true if the current runtime supports virtual threads
+    */
+   public static boolean isVirtualThreadSupported() {
+      return NEW_VIRTUAL_FACTORY != null;
+   }
+   
+   /**
+    * Returns true if the given thread is a virtual thread. This always returns false if the
+    * current runtime does not {@linkplain #isVirtualThreadSupported() support} virtual threads.
+    *
+    * @param thread a thread
+    * @return true if the given thread is a virtual thread
+    */
+   public static boolean isVirtual(Thread thread) {
+      if (IS_VIRTUAL == null) {
+         return false;
+      }
+      try {
+         return (boolean) IS_VIRTUAL.invokeExact(thread);
+      } catch (RuntimeException | Error e) {
+         throw e;
+      } catch (Throwable t) {
+         throw new AssertionError(t);
+      }
+   }
+   
+   /**
+    * Returns a thread factory that creates virtual threads with the given name prefix. Thread
+    * names are in the format {@code "prefix-1"}. The suffix ({@code "-1"} in the example) contains
+    * a unique identifier so that each thread has a distinct name. The identifier starts at 1 for
+    * the first thread created, 2 for the second thread, and so on.
+    * 
+    * <p>Virtual threads are always daemon threads and always belong to the same thread group.
+    *
+    * @param threadNamePrefix the prefix used to create thread names
+    * @return a thread factory that creates virtual threads with the given name prefix
+    * @throws UnsupportedOperationException if the current runtime does not
+    *       {@linkplain #isVirtualThreadSupported() support} virtual threads
+    */
+   public static ThreadFactory newVirtualThreadFactory(String threadNamePrefix) {
+      if (NEW_VIRTUAL_FACTORY == null) {
+         throw new UnsupportedOperationException(
+               "Virtual threads are not supported by this runtime");
+      }
+      ThreadFactory factory;
+      try {
+         factory = (ThreadFactory) NEW_VIRTUAL_FACTORY.invoke(threadNamePrefix + "-", 1L);
+      } catch (RuntimeException | Error e) {
+         throw e;
+      } catch (Throwable t) {
+         throw new AssertionError(t);
+      }
+      return new ThreadFactory() {
+         @Override
+         public Thread newThread(Runnable r) {
+            return factory.newThread(r);
+         }
+         
+         @Override
+         public String toString() {
+            return ThreadFactory.class.getSimpleName() + ": " + threadNamePrefix + " (virtual)";
+         }
+      };
+   }
 
    /**
     * Returns a thread factory that creates threads belonging to the given group and named after the
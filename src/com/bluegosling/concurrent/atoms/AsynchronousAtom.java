@@ -4,16 +4,19 @@ import static com.bluegosling.concurrent.ThreadFactories.newGroupingDaemonThread
 
 import com.bluegosling.concurrent.executors.ActorThreadPool;
 import com.bluegosling.concurrent.executors.SerializingExecutor;
+import com.bluegosling.concurrent.fluent.AbstractFluentFuture;
 import com.bluegosling.concurrent.fluent.FluentFuture;
-import com.bluegosling.concurrent.fluent.FluentFutureTask;
 import com.bluegosling.concurrent.fluent.FutureListener;
 import com.bluegosling.concurrent.fluent.FutureVisitor;
-import com.bluegosling.concurrent.fluent.RunnableFluentFuture;
 import com.bluegosling.function.TriFunction;
 
-import java.util.LinkedList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
@@ -21,6 +24,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
 import java.util.function.Function;
 import java.util.function.Predicate;
 
@@ -54,6 +58,21 @@ import java.util.function.Predicate;
  * interleaved with those submitted from a given thread. Thus this form of atom is most useful when
  * only commutative functions are applied to it.
  * 
+ * <p>Mutations are processed in batches: instead of submitting one task to the thread pool for
+ * each mutation, mutations are added to a queue and a single task drains all of the mutations
+ * that are currently queued, applying them in order in one pass. Watchers are notified just once
+ * per batch, with the atom's value before the batch and its final value after the batch. The
+ * futures for the mutations in a batch are completed together, after the batch's final value has
+ * been published. If a mutation in the batch fails and causes the atom to become blocked, the rest
+ * of the batch is queued until the atom is resumed or restarted.
+ * 
+ * <p>An atom can optionally be configured with a {@linkplain #setCombiner(BinaryOperator) combine
+ * function}, for use with {@link #combineAndGet(Object)} and {@link #getAndCombine(Object)}. When
+ * consecutive mutations in a batch are combine operations, their operands are first merged with
+ * one another and then the merged result is combined with the atom's value, in a single update.
+ * This is useful for things like sums or set unions, where merging many small operands is cheaper
+ * than applying each of them to a large value.
+ * 
  * @param <T> the type of the atom's value
  * 
  * @author Joshua Humphries (jhumphries131@gmail.com)
@@ -131,6 +150,12 @@ public class AsynchronousAtom<T> extends AbstractAtom<T> {
                30, TimeUnit.SECONDS,
                newGroupingDaemonThreadFactory(AsynchronousAtom.class.getSimpleName()));
 
+   /**
+    * The maximum number of mutations that are applied in a single batch. This bounds how long a
+    * busy atom can occupy a thread in the pool before yielding to other atoms.
+    */
+   private static final int MAX_BATCH_SIZE = 1024;
+
    /**
     * The atom's error handler.
     */
@@ -146,10 +171,8 @@ public class AsynchronousAtom<T> extends AbstractAtom<T> {
     * 
     * <p>This field should only be accessed from a thread pool and from tasks that execute
     * sequentially with respect to other tasks for this same atom. So it need not be thread-safe.
-
     */
-   private final LinkedList<RunnableFluentFuture<T>> queued =
-         new LinkedList<RunnableFluentFuture<T>>();
+   private final Deque<Mutation<T>> queued = new ArrayDeque<>();
    
    /**
     * The size of the queue of operations; zero unless the atom is blocked due to prior error. This
@@ -157,6 +180,23 @@ public class AsynchronousAtom<T> extends AbstractAtom<T> {
     */
    private volatile int queueSize;
    
+   /**
+    * The queue of submitted mutations that have not yet been drained by a batch.
+    */
+   private final ConcurrentLinkedQueue<Mutation<T>> pending = new ConcurrentLinkedQueue<>();
+   
+   /**
+    * A flag that indicates whether a task to drain {@link #pending} has been submitted to the
+    * thread pool but has not yet started.
+    */
+   private final AtomicBoolean drainScheduled = new AtomicBoolean();
+   
+   /**
+    * The function used to merge the operands of combine operations, or {@code null} if combine
+    * operations are not supported.
+    */
+   private volatile BinaryOperator<T> combiner;
+   
    /**
     * The atom's value.
     */
@@ -213,6 +253,30 @@ public class AsynchronousAtom<T> extends AbstractAtom<T> {
       this.errorHandler = errorHandler;
    }
    
+   /**
+    * Returns the atom's combine function, or {@code null} if it has none.
+    *
+    * @return this atom's combine function
+    */
+   public BinaryOperator<T> getCombiner() {
+      return combiner;
+   }
+   
+   /**
+    * Sets the atom's combine function, which is used by {@link #combineAndGet(Object)} and
+    * {@link #getAndCombine(Object)}. The function must be associative, so that the operands of
+    * several combine operations can be merged with one another before the result is combined with
+    * the atom's value. A {@code null} function disables combine operations.
+    * 
+    * <p>Combine operations that are already submitted use the function that was configured when
+    * they were submitted.
+    *
+    * @param combiner the combine function that this atom should use
+    */
+   public void setCombiner(BinaryOperator<T> combiner) {
+      this.combiner = combiner;
+   }
+   
    /**
     * Returns true if the atom is blocked due to an earlier failure.
     *
@@ -233,6 +297,7 @@ public class AsynchronousAtom<T> extends AbstractAtom<T> {
          @Override
          public void run() {
             if (blocked) {
+               transferPending();
                blocked = false;
                processQueued();
             }
@@ -290,6 +355,7 @@ public class AsynchronousAtom<T> extends AbstractAtom<T> {
          success.set(blocked);
          latch.countDown();
          if (blocked) {
+            transferPending();
             blocked = false;
             if (seedPresent) {
                seedValue = value = newSeed;
@@ -326,6 +392,21 @@ public class AsynchronousAtom<T> extends AbstractAtom<T> {
       return success.get();
    }
 
+   /**
+    * Moves all mutations that have been submitted but not yet drained into the queue of blocked
+    * operations. This is used during error recovery so that mutations submitted before the atom
+    * was resumed or restarted are handled as if they had been queued while the atom was blocked.
+    * 
+    * <p>This should only be executed in a thread pool and must execute sequentially with respect to
+    * other tasks for this same atom.
+    */
+   private void transferPending() {
+      for (Mutation<T> m = pending.poll(); m != null; m = pending.poll()) {
+         queued.add(m);
+      }
+      queueSize = queued.size();
+   }
+
    /**
     * Processes any tasks in the queue. This is used after error recovery to execute any tasks that
     * were queued while the atom was blocked. This method returns when either a queued task fails
@@ -336,9 +417,7 @@ public class AsynchronousAtom<T> extends AbstractAtom<T> {
     */
    private void processQueued() {
       while (!queued.isEmpty() && !blocked) {
-         RunnableFluentFuture<T> task = queued.remove();
-         queueSize = queued.size();
-         runSingleTask(task);
+         applyBatch(queued);
       }
    }
 
@@ -376,7 +455,7 @@ public class AsynchronousAtom<T> extends AbstractAtom<T> {
     *       complete
     */
    public FluentFuture<T> getPending() {
-      return submit(() -> value);
+      return submit(new Mutation<>(null, null, null, false));
    }
    
    /**
@@ -391,12 +470,7 @@ public class AsynchronousAtom<T> extends AbstractAtom<T> {
     */
    public FluentFuture<T> set(T newValue) {
       validate(newValue);
-      return submit(() -> {
-         T oldValue = value;
-         value = newValue;
-         notify(oldValue, newValue);
-         return oldValue;
-      });
+      return submit(new Mutation<>(v -> newValue, null, null, false));
    }
    
    /**
@@ -443,14 +517,7 @@ public class AsynchronousAtom<T> extends AbstractAtom<T> {
     */
    private FluentFuture<T> doUpdate(Function<? super T, ? extends T> function,
          boolean returnNew) {
-      return submit(() -> {
-         T oldValue = value;
-         T newValue = function.apply(oldValue);
-         validate(newValue);
-         value = newValue;
-         notify(oldValue, newValue);
-         return returnNew ? newValue : oldValue;
-      });
+      return submit(new Mutation<>(function, null, null, returnNew));
    }
    
    // TODO: fix up javadoc for accumulate methods
@@ -476,27 +543,82 @@ public class AsynchronousAtom<T> extends AbstractAtom<T> {
       return getAndUpdate(v -> function.apply(v, t));
    }
 
+   /**
+    * Submits a mutation that will combine the atom's value with the given operand, using the atom's
+    * {@linkplain #setCombiner(BinaryOperator) combine function}, and set the atom's value to the
+    * result. If other combine operations are applied in the same batch, immediately before or
+    * after this one, their operands are merged and they are all applied as a single update. In that
+    * case, the returned future completes with the atom's value after the whole merged update.
+    * 
+    * <p>Validation cannot be done immediately, so a validation failure manifests as a failed
+    * future. Depending on the atom's {@link #getErrorHandler() error handler}, a validation failure
+    * could block subsequent mutations.
+    *
+    * @param operand the value to combine
+    * @return a future result that will be the atom's new value after the operand is combined
+    * @throws IllegalStateException if this atom has no combine function
+    */
+   public FluentFuture<T> combineAndGet(T operand) {
+      return doCombine(operand, true);
+   }
+
+   /**
+    * Submits a mutation that will combine the atom's value with the given operand, using the atom's
+    * {@linkplain #setCombiner(BinaryOperator) combine function}, and set the atom's value to the
+    * result. If other combine operations are applied in the same batch, immediately before or
+    * after this one, their operands are merged and they are all applied as a single update. In that
+    * case, the returned future completes with the atom's value before the whole merged update.
+    * 
+    * <p>Validation cannot be done immediately, so a validation failure manifests as a failed
+    * future. Depending on the atom's {@link #getErrorHandler() error handler}, a validation failure
+    * could block subsequent mutations.
+    *
+    * @param operand the value to combine
+    * @return a future result that will be the atom's initial value (before the operand is
+    *       combined) but that won't complete until after the operand is combined
+    * @throws IllegalStateException if this atom has no combine function
+    */
+   public FluentFuture<T> getAndCombine(T operand) {
+      return doCombine(operand, false);
+   }
+
+   /**
+    * Submits a combine operation, returning a future that either completes with the atom's
+    * initial or resulting value.
+    *
+    * @param operand the value to combine
+    * @param returnNew if true, the returned future completes with the atom's new value, after the
+    *       operand is combined; otherwise returns the atom's initial value
+    * @return a future that completes once the operand has been combined
+    */
+   private FluentFuture<T> doCombine(T operand, boolean returnNew) {
+      BinaryOperator<T> c = combiner;
+      if (c == null) {
+         throw new IllegalStateException("atom has no combine function");
+      }
+      return submit(new Mutation<>(null, c, operand, returnNew));
+   }
+
    /**
     * Submits the specified operation for asynchronous execution. If a transaction is in progress,
     * the operation is queued up in the transaction and will be submitted to a thread pool only
     * when the transaction commits. If no transaction is in progress, the operation is immediately
     * submitted to a thread pool for execution.
     *
-    * @param task the operation to execute asynchronously
+    * @param mutation the operation to execute asynchronously
     * @return a future that completes when the specified operation completes
     */
-   private FluentFuture<T> submit(Callable<T> task) {
-      FluentFutureTask<T> future = new FluentFutureTask<T>(task);
+   private FluentFuture<T> submit(Mutation<T> mutation) {
       Transaction transaction = Transaction.current();
       if (transaction != null) {
          // play nice with transactions -- queue up actions so that they are only submitted
          // when the transaction gets committed
-         TransactionalFutureTask<T> ret = new TransactionalFutureTask<>(future);
+         TransactionalFutureTask<T> ret = new TransactionalFutureTask<>(mutation);
          transaction.enqueueAsynchronousAction(this, ret);
          return ret;
       } else {
-         submitFuture(this, future);
-         return future;
+         enqueue(mutation);
+         return mutation;
       }
    }
    
@@ -505,38 +627,145 @@ public class AsynchronousAtom<T> extends AbstractAtom<T> {
     * operations for the same specified atom.
     *
     * @param atom the atom which this operation affects
-    * @param future a future task that will perform an operation on the specified atom when executed
+    * @param future a future task, created by the atom inside of a transaction, that will perform an
+    *       operation on the specified atom
     */
-   static <T> void submitFuture(AsynchronousAtom<T> atom, RunnableFluentFuture<T> future) {
-      if (future instanceof TransactionalFutureTask) {
-         ((TransactionalFutureTask<T>) future).markCommitted();
+   static <T> void submitFuture(AsynchronousAtom<T> atom, FluentFuture<T> future) {
+      TransactionalFutureTask<T> task = (TransactionalFutureTask<T>) future;
+      task.markCommitted();
+      atom.enqueue(task.delegate);
+   }
+   
+   /**
+    * Adds the given mutation to the queue of pending mutations. If no task is already scheduled to
+    * drain the queue, one is submitted to the thread pool.
+    *
+    * @param mutation the mutation to enqueue
+    */
+   private void enqueue(Mutation<T> mutation) {
+      pending.add(mutation);
+      if (!drainScheduled.get() && drainScheduled.compareAndSet(false, true)) {
+         threadPool.execute(this, this::drain);
       }
-      threadPool.execute(atom, () -> atom.runSingleTask(future));
    }
    
    /**
-    * Runs a single operation for an atom. This should only be executed in a thread pool and must
+    * Drains a batch of pending mutations. This should only be executed in a thread pool and must
     * execute sequentially with respect to other tasks for this same atom. If the current atom is
-    * blocked due to a prior failure, this task is queued for later execution (when the atom is
-    * resumed or restarted). Otherwise, it executes the task immediately and may cause the current
-    * atom to become blocked if the task fails.
+    * blocked due to a prior failure, the mutations are queued for later execution (when the atom is
+    * resumed or restarted). Otherwise, they are applied immediately and may cause the current atom
+    * to become blocked if one fails.
+    * 
+    * <p>If more mutations remain after draining a batch, another task is submitted to drain them.
+    * That way a very busy atom does not monopolize a thread while other atoms have work queued.
+    */
+   private void drain() {
+      // Clear the flag before polling. A mutation enqueued after this point will schedule another
+      // task, so none can be stranded in the queue. (The extra task may find nothing to do.)
+      drainScheduled.set(false);
+      Deque<Mutation<T>> batch = new ArrayDeque<>();
+      for (Mutation<T> m; batch.size() < MAX_BATCH_SIZE && (m = pending.poll()) != null; ) {
+         batch.add(m);
+      }
+      if (!pending.isEmpty() && drainScheduled.compareAndSet(false, true)) {
+         threadPool.execute(this, this::drain);
+      }
+      if (!blocked) {
+         applyBatch(batch);
+      }
+      if (!batch.isEmpty()) {
+         // atom is blocked, so queue what remains of the batch
+         queued.addAll(batch);
+         queueSize = queued.size();
+      }
+   }
+   
+   /**
+    * Removes the next mutation from the given deque. If the deque is the queue of blocked
+    * operations, the queue length is updated immediately, so that it is already current when the
+    * futures of the batch are completed.
     *
-    * @param task a future task that will perform an operation on this atom when executed
+    * @param mutations the deque of mutations
+    * @return the removed mutation
     */
-   private void runSingleTask(RunnableFluentFuture<T> task) {
-      if (blocked) {
-         queued.add(task);
+   private Mutation<T> removeNext(Deque<Mutation<T>> mutations) {
+      Mutation<T> m = mutations.remove();
+      if (mutations == queued) {
          queueSize = queued.size();
-      } else {
-         task.run();
-         if (task.isFailed()) {
-            ErrorAction action = errorHandler.onError(AsynchronousAtom.this, task.getFailure());
+      }
+      return m;
+   }
+   
+   /**
+    * Applies up to {@link #MAX_BATCH_SIZE} mutations, removing them from the head of the given
+    * queue. Processing stops early if the atom becomes blocked, and the remaining mutations are
+    * then moved to the queue of blocked operations (if not already there). This should only be
+    * executed in a thread pool and must execute sequentially with respect to other tasks for this
+    * same atom.
+    * 
+    * <p>Mutations are applied to a local value, which is only published to the {@link #value}
+    * field, and to watchers, once the batch is done. Futures for the applied mutations are then
+    * completed.
+    *
+    * @param mutations the queue of mutations to apply
+    */
+   private void applyBatch(Deque<Mutation<T>> mutations) {
+      T initial = value;
+      T current = initial;
+      boolean changed = false;
+      List<Mutation<T>> applied = new ArrayList<>(Math.min(mutations.size(), MAX_BATCH_SIZE));
+      int count = 0;
+      while (count < MAX_BATCH_SIZE && !blocked && !mutations.isEmpty()) {
+         Mutation<T> m = removeNext(mutations);
+         count++;
+         if (m.isDone()) {
+            continue; // cancelled
+         }
+         int start = applied.size();
+         applied.add(m);
+         try {
+            if (m.combiner != null) {
+               // merge operands of consecutive combine operations before applying them
+               T operand = m.operand;
+               for (Mutation<T> next = mutations.peek();
+                     next != null && next.combiner == m.combiner && count < MAX_BATCH_SIZE;
+                     next = mutations.peek()) {
+                  removeNext(mutations);
+                  count++;
+                  if (!next.isDone()) {
+                     applied.add(next);
+                     operand = m.combiner.apply(operand, next.operand);
+                  }
+               }
+               T newValue = m.combiner.apply(current, operand);
+               validate(newValue);
+               for (int i = start, len = applied.size(); i < len; i++) {
+                  applied.get(i).succeeded(current, newValue);
+               }
+               current = newValue;
+               changed = true;
+            } else if (m.function != null) {
+               T newValue = m.function.apply(current);
+               validate(newValue);
+               m.succeeded(current, newValue);
+               current = newValue;
+               changed = true;
+            } else {
+               m.succeeded(current, current);
+            }
+         } catch (Throwable th) {
+            for (int i = start, len = applied.size(); i < len; i++) {
+               applied.get(i).failure = th;
+            }
+            // let the error handler observe the atom's state at the time of failure
+            value = current;
+            ErrorAction action = errorHandler.onError(AsynchronousAtom.this, th);
             switch (action) {
                case BLOCK:
                   blocked = true;
                   break;
                case RESTART:
-                  value = seedValue;
+                  current = seedValue;
                   break;
                default:
                   assert action == ErrorAction.IGNORE;
@@ -544,6 +773,81 @@ public class AsynchronousAtom<T> extends AbstractAtom<T> {
             }
          }
       }
+      if (blocked && mutations != queued) {
+         // queue the rest before completing any futures, so the queue length is already current
+         queued.addAll(mutations);
+         mutations.clear();
+         queueSize = queued.size();
+      }
+      value = current;
+      if (changed) {
+         notify(initial, current);
+      }
+      for (Mutation<T> m : applied) {
+         m.complete();
+      }
+   }
+   
+   /**
+    * A queued mutation, which is also the future that represents its result. A mutation is one of
+    * three kinds: an update, which applies a function to the atom's value; a combine operation,
+    * which uses a combine function to merge an operand into the atom's value; or a read, which
+    * leaves the atom's value unchanged.
+    * 
+    * <p>A mutation's result is recorded while its batch is being applied and then the future is
+    * completed once the batch is done. The fields that hold the result are only accessed from the
+    * thread that applies the batch, so they need not be volatile.
+    *
+    * @param <T> the type of the atom's value
+    * 
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    */
+   private static class Mutation<T> extends AbstractFluentFuture<T> {
+      final Function<? super T, ? extends T> function;
+      final BinaryOperator<T> combiner;
+      final T operand;
+      final boolean returnNew;
+      T result;
+      Throwable failure;
+      
+      /**
+       * Creates a new mutation. At most one of the given function and combiner is non-null. If both
+       * are null, the mutation is a read.
+       *
+       * @param function the function to apply, for an update
+       * @param combiner the combine function, for a combine operation
+       * @param operand the operand, for a combine operation
+       * @param returnNew if true, the future completes with the atom's new value; otherwise, it
+       *       completes with the atom's initial value
+       */
+      Mutation(Function<? super T, ? extends T> function, BinaryOperator<T> combiner, T operand,
+            boolean returnNew) {
+         this.function = function;
+         this.combiner = combiner;
+         this.operand = operand;
+         this.returnNew = returnNew;
+      }
+      
+      /**
+       * Records the successful result of this mutation.
+       *
+       * @param oldValue the atom's value before this mutation was applied
+       * @param newValue the atom's value after this mutation was applied
+       */
+      void succeeded(T oldValue, T newValue) {
+         result = returnNew ? newValue : oldValue;
+      }
+      
+      /**
+       * Completes this future with the recorded result or cause of failure.
+       */
+      void complete() {
+         if (failure != null) {
+            setFailure(failure);
+         } else {
+            setValue(result);
+         }
+      }
    }
    
    /**
@@ -563,12 +867,12 @@ public class AsynchronousAtom<T> extends AbstractAtom<T> {
     * 
     * @author Joshua Humphries (jhumphries131@gmail.com)
     */
-   private static class TransactionalFutureTask<T> implements RunnableFluentFuture<T> {
+   private static class TransactionalFutureTask<T> implements FluentFuture<T> {
 
       /**
-       * The actual task that will run once submitted for execution.
+       * The actual mutation that will be applied once submitted for execution.
        */
-      private final RunnableFluentFuture<T> delegate;
+      final Mutation<T> delegate;
       
       /**
        * The thread that created/submitted this task inside a transaction.
@@ -581,7 +885,7 @@ public class AsynchronousAtom<T> extends AbstractAtom<T> {
        */
       private volatile boolean pending = true;
       
-      TransactionalFutureTask(RunnableFluentFuture<T> delegate) {
+      TransactionalFutureTask(Mutation<T> delegate) {
          this.delegate = delegate;
       }
       
@@ -592,11 +896,6 @@ public class AsynchronousAtom<T> extends AbstractAtom<T> {
          pending = false;
       }
 
-      @Override
-      public void run() {
-         delegate.run();
-      }
-
       @Override
       public boolean cancel(boolean mayInterruptIfRunning) {
          pending = false;
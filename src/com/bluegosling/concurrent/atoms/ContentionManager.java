@@ -0,0 +1,57 @@
+package com.bluegosling.concurrent.atoms;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Serializes transactions that have failed too many times. A transaction that keeps conflicting
+ * with concurrent transactions can be starved indefinitely, no matter how long it waits between
+ * retries. So, after a configured number of failures, a transaction switches to <em>serial
+ * mode</em>: its subsequent attempts run while holding a global, fair lock. So only one serialized
+ * transaction runs at a time and, while one runs, no other transaction starts a new attempt.
+ *
+ * <p>This does not make a serialized transaction immune to conflicts, since attempts that started
+ * before it acquired the lock can still conflict with it. But once those finish, the serialized
+ * transaction runs without competition. Transactions that are not serialized only pay the cost of
+ * a volatile read, at the start of each attempt, unless a serialized transaction is running.
+ *
+ * <p>Transactions never hold atoms' locks when they start an attempt or wait for the serial lock.
+ * So waiting here cannot cause deadlock.
+ *
+ * @author Joshua Humphries (jhumphries131@gmail.com)
+ */
+final class ContentionManager {
+   private ContentionManager() {
+   }
+
+   /**
+    * The lock held by serialized transactions. It is fair so that serialized transactions, and the
+    * other transactions waiting for them, proceed in order.
+    */
+   private static final ReentrantLock serialLock = new ReentrantLock(true);
+
+   /**
+    * Called before each attempt of a transaction that is not serialized. If a serialized
+    * transaction is running, this waits for it to finish.
+    */
+   static void awaitSerialTransactions() {
+      if (serialLock.isLocked() && !serialLock.isHeldByCurrentThread()) {
+         serialLock.lock();
+         serialLock.unlock();
+      }
+   }
+
+   /**
+    * Enters serial mode, waiting for other serialized transactions to finish first. The caller
+    * must later {@linkplain #exitSerialMode() exit}.
+    */
+   static void enterSerialMode() {
+      serialLock.lock();
+   }
+
+   /**
+    * Exits serial mode, allowing other transactions to proceed.
+    */
+   static void exitSerialMode() {
+      serialLock.unlock();
+   }
+}
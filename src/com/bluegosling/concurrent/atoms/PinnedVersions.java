@@ -0,0 +1,191 @@
+package com.bluegosling.concurrent.atoms;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Tracks the versions pinned by in-progress transactions, so that older versions of atoms' values
+ * can be reclaimed. This is a form of epoch-based reclamation: each thread announces the version
+ * it is reading in its own slot, and committers periodically scan the slots to compute a
+ * <em>horizon</em>, a version that no active reader precedes. When a commit installs a new value
+ * into an atom, it discards values that are older than the horizon.
+ *
+ * <p>Pinning and unpinning a version are just writes to the current thread's slot, so they do not
+ * contend with other threads. Scanning the slots is proportional to the number of threads, so it
+ * is only done once the clock has advanced by {@link #RECLAIM_INTERVAL} versions since the last
+ * scan. In between scans, committers use the last computed horizon. A stale horizon is always safe
+ * since it is lower than the true horizon: it just means that some values are retained longer than
+ * necessary. So each atom retains at most about {@link #RECLAIM_INTERVAL} more versions than are
+ * needed by active readers.
+ *
+ * <p>A slot is associated with a thread for the thread's lifetime. When a thread dies, its slot
+ * can be claimed by a new thread. So the number of slots is bounded by the peak number of threads
+ * that have concurrently used transactions.
+ *
+ * @author Joshua Humphries (jhumphries131@gmail.com)
+ */
+final class PinnedVersions {
+
+   /**
+    * The number of versions the clock must advance before the slots are scanned again to compute a
+    * new horizon.
+    */
+   static final int RECLAIM_INTERVAL = 64;
+
+   /**
+    * The value of a slot whose thread has no pinned version.
+    */
+   private static final long UNPINNED = Long.MAX_VALUE;
+
+   @SuppressWarnings("rawtypes") // class tokens require raw types
+   private static final AtomicReferenceFieldUpdater<Slot, WeakReference> ownerUpdater =
+         AtomicReferenceFieldUpdater.newUpdater(Slot.class, WeakReference.class, "owner");
+
+   private static final AtomicLongFieldUpdater<PinnedVersions> lastScanUpdater =
+         AtomicLongFieldUpdater.newUpdater(PinnedVersions.class, "lastScan");
+
+   private final AtomicLong clock;
+   private final AtomicReference<Slot> slots = new AtomicReference<>();
+   private final ThreadLocal<Slot> forThread = ThreadLocal.withInitial(this::claimSlot);
+
+   /**
+    * The most recently computed horizon.
+    */
+   private volatile long horizon;
+
+   /**
+    * The value of the clock at the last scan.
+    */
+   private volatile long lastScan;
+
+   /**
+    * Creates a new object that tracks versions drawn from the given clock.
+    *
+    * @param clock the global version clock
+    */
+   PinnedVersions(AtomicLong clock) {
+      this.clock = clock;
+      this.horizon = this.lastScan = clock.get();
+   }
+
+   /**
+    * Pins the current version. While pinned, atom values associated with the returned version
+    * will be retained. The caller must {@linkplain #unpin() unpin} it when it is no longer needed.
+    * A thread can pin more than one version at a time, in which case all versions remain pinned
+    * until the thread has unpinned them all.
+    *
+    * @return the pinned version
+    */
+   long pin() {
+      Slot slot = forThread.get();
+      if (slot.depth++ > 0) {
+         // the slot already holds an older version, which protects this one, too
+         return clock.get();
+      }
+      // Announce a version and then re-read the clock. If a concurrent scan missed the
+      // announcement, it must have read the clock before we re-read it. So its horizon can't be
+      // greater than the version we return.
+      slot.pinned = clock.get();
+      return clock.get();
+   }
+
+   /**
+    * Unpins the version most recently pinned by the current thread.
+    */
+   void unpin() {
+      Slot slot = forThread.get();
+      assert slot.depth > 0;
+      if (--slot.depth == 0) {
+         slot.pinned = UNPINNED;
+      }
+   }
+
+   /**
+    * Returns the oldest version that must be retained when committing the given version. Values
+    * that precede this version in an atom may be discarded. This may trigger a scan of the slots to
+    * compute a new horizon.
+    *
+    * @param commitVersion the version being committed
+    * @return the oldest version that must be retained
+    */
+   long horizon(long commitVersion) {
+      long last = lastScan;
+      if (commitVersion - last >= RECLAIM_INTERVAL
+            && lastScanUpdater.compareAndSet(this, last, commitVersion)) {
+         // Concurrent scans could finish out of order, leaving an older horizon in place. That
+         // is safe and will be corrected by the next scan.
+         horizon = scan();
+      }
+      return Math.min(horizon, commitVersion);
+   }
+
+   /**
+    * Computes the horizon by finding the oldest version pinned by a live thread.
+    *
+    * @return the oldest pinned version, or the current version if none are pinned
+    */
+   private long scan() {
+      // must read the clock before examining slots (see pin)
+      long min = clock.get();
+      for (Slot slot = slots.get(); slot != null; slot = slot.next) {
+         // must check the owner before the pinned version, since a new owner sets the former
+         // before the latter
+         Thread owner = slot.owner.get();
+         if (owner != null && owner.isAlive()) {
+            min = Math.min(min, slot.pinned);
+         }
+      }
+      return min;
+   }
+
+   /**
+    * Claims a slot for the current thread. This re-uses a slot whose thread has died if one is
+    * available. Otherwise, a new slot is created.
+    *
+    * @return the current thread's slot
+    */
+   private Slot claimSlot() {
+      WeakReference<Thread> self = new WeakReference<>(Thread.currentThread());
+      for (Slot slot = slots.get(); slot != null; slot = slot.next) {
+         WeakReference<Thread> ref = slot.owner;
+         Thread owner = ref.get();
+         if ((owner == null || !owner.isAlive()) && ownerUpdater.compareAndSet(slot, ref, self)) {
+            // the previous owner may have died with a pinned version
+            slot.depth = 0;
+            slot.pinned = UNPINNED;
+            return slot;
+         }
+      }
+      Slot slot = new Slot(self);
+      while (true) {
+         Slot head = slots.get();
+         slot.next = head;
+         if (slots.compareAndSet(head, slot)) {
+            return slot;
+         }
+      }
+   }
+
+   /**
+    * A thread's slot, in which it announces its pinned version.
+    *
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    */
+   private static final class Slot {
+      volatile WeakReference<Thread> owner;
+      volatile long pinned = UNPINNED;
+      Slot next;
+
+      /**
+       * The number of versions pinned by the owner. This is only accessed by the owning thread.
+       */
+      int depth;
+
+      Slot(WeakReference<Thread> owner) {
+         this.owner = owner;
+      }
+   }
+}
@@ -0,0 +1,540 @@
+package com.bluegosling.concurrent.atoms;
+
+import com.bluegosling.concurrent.fluent.SettableFluentFuture;
+import com.bluegosling.tuples.Pair;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * The read-set and write-set of a transaction that uses the
+ * {@linkplain Transaction.Engine#OPTIMISTIC optimistic engine}. Reads and writes are recorded in parallel arrays, which are re-used by all
+ * transactions on the same thread. So a typical transaction, which touches just a few atoms, does
+ * not need to allocate any storage to track them. Lookups are linear scans, which is faster than
+ * hashing for small sets. Only when a set grows large is a hash-based index constructed.
+ *
+ * <p>The read-set records the value and version observed for each atom whose version must be
+ * validated when the transaction commits. For serializable transactions, that is every atom read.
+ * For other isolation levels, it is only atoms that have been {@linkplain TransactionalAtom#pin()
+ * pinned}.
+ *
+ * <p>The write-set records the pending value and pending commute operations for each modified
+ * atom. Entries are never removed, except by a (partial) roll-back. If an atom is modified after a
+ * {@linkplain Transaction#savepoint() savepoint} but its entry was created before the savepoint,
+ * a new entry is appended that shadows the old one. That way, rolling back to the savepoint just
+ * truncates the arrays. So the latest entry for a given atom is the one that is committed.
+ *
+ * @author Joshua Humphries (jhumphries131@gmail.com)
+ */
+final class ReadWriteSet {
+
+   /**
+    * The initial size of the arrays.
+    */
+   private static final int INITIAL_CAPACITY = 8;
+
+   /**
+    * When a transaction finishes, if its arrays have grown beyond this size, they are discarded
+    * instead of being retained for re-use.
+    */
+   private static final int MAX_RETAINED_CAPACITY = 1024;
+
+   /**
+    * Once a set has more than this many entries, a hash-based index is used for lookups instead of
+    * a linear scan.
+    */
+   private static final int INDEX_THRESHOLD = 16;
+
+   /**
+    * The maximum number of times to wait for a concurrent commit to release an atom's versioned
+    * write-lock before giving up and aborting the transaction.
+    */
+   private static final int MAX_LOCK_SPINS = 128;
+
+   /**
+    * The read-set and write-set for the current thread.
+    */
+   private static final ThreadLocal<ReadWriteSet> forThread =
+         ThreadLocal.withInitial(ReadWriteSet::new);
+
+   /**
+    * Returns the read-set and write-set for the current thread. Since transactions cannot be
+    * nested, a thread will never need more than one.
+    *
+    * @return the read-set and write-set for the current thread
+    */
+   static ReadWriteSet forCurrentThread() {
+      return forThread.get();
+   }
+
+   // the read-set
+   private TransactionalAtom<?>[] readAtoms;
+   private Object[] readValues;
+   private long[] readVersions;
+   private int readCount;
+   private Map<TransactionalAtom<?>, Integer> readIndex;
+
+   // the write-set
+   private TransactionalAtom<?>[] writeAtoms;
+   private Object[] writeValues;
+   private boolean[] dirty;
+   private List<Pair<Function<Object, Object>, SettableFluentFuture<Object>>>[] commutes;
+   private int[] shadowed;
+   private long[] commuteBases;
+   private long[] lockedStamps;
+   private int writeCount;
+   private Map<TransactionalAtom<?>, Integer> writeIndex;
+
+   private ReadWriteSet() {
+      allocateReads(INITIAL_CAPACITY);
+      allocateWrites(INITIAL_CAPACITY);
+   }
+
+   private void allocateReads(int capacity) {
+      readAtoms = new TransactionalAtom<?>[capacity];
+      readValues = new Object[capacity];
+      readVersions = new long[capacity];
+   }
+
+   @SuppressWarnings({ "unchecked", "rawtypes" }) // can't create generic array
+   private void allocateWrites(int capacity) {
+      writeAtoms = new TransactionalAtom<?>[capacity];
+      writeValues = new Object[capacity];
+      dirty = new boolean[capacity];
+      commutes = new List[capacity];
+      shadowed = new int[capacity];
+      commuteBases = new long[capacity];
+      lockedStamps = new long[capacity];
+   }
+
+   private static int find(TransactionalAtom<?>[] atoms, int count,
+         Map<TransactionalAtom<?>, Integer> index, TransactionalAtom<?> atom) {
+      if (index != null) {
+         Integer i = index.get(atom);
+         return i == null ? -1 : i;
+      }
+      // search backwards so we find the latest entry
+      for (int i = count - 1; i >= 0; i--) {
+         if (atoms[i] == atom) {
+            return i;
+         }
+      }
+      return -1;
+   }
+
+   private static Map<TransactionalAtom<?>, Integer> buildIndex(TransactionalAtom<?>[] atoms,
+         int count) {
+      Map<TransactionalAtom<?>, Integer> index = new IdentityHashMap<>(count * 2);
+      for (int i = 0; i < count; i++) {
+         index.put(atoms[i], i);
+      }
+      return index;
+   }
+
+   /**
+    * Finds the given atom in the read-set.
+    *
+    * @param atom an atom
+    * @return the index of the atom in the read-set or -1 if it is not present
+    */
+   int findRead(TransactionalAtom<?> atom) {
+      return find(readAtoms, readCount, readIndex, atom);
+   }
+
+   /**
+    * Returns the value observed for the given entry in the read-set.
+    *
+    * @param r the index of an entry in the read-set
+    * @return the value read
+    */
+   Object readValue(int r) {
+      return readValues[r];
+   }
+
+   /**
+    * Returns the number of entries in the read-set.
+    *
+    * @return the number of entries in the read-set
+    */
+   int readCount() {
+      return readCount;
+   }
+
+   /**
+    * Adds an entry to the read-set.
+    *
+    * @param atom the atom that was read
+    * @param node the value and version that was read
+    */
+   void addRead(TransactionalAtom<?> atom, TransactionalAtom.Version<?> node) {
+      int r = readCount;
+      if (r == readAtoms.length) {
+         int capacity = r << 1;
+         readAtoms = Arrays.copyOf(readAtoms, capacity);
+         readValues = Arrays.copyOf(readValues, capacity);
+         readVersions = Arrays.copyOf(readVersions, capacity);
+      }
+      readAtoms[r] = atom;
+      readValues[r] = node.value;
+      readVersions[r] = node.version;
+      readCount = r + 1;
+      if (readIndex != null) {
+         readIndex.put(atom, r);
+      } else if (readCount > INDEX_THRESHOLD) {
+         readIndex = buildIndex(readAtoms, readCount);
+      }
+   }
+
+   /**
+    * Validates the read-set. The read-set is valid if none of the atoms therein have been changed
+    * since they were read. If this is called while committing, after locking the write-set, then
+    * atoms that are locked by this transaction are validated using the version that was current
+    * when they were locked. Otherwise, any locked atom is considered invalid.
+    *
+    * @return the first atom found to be invalid or {@code null} if the read-set is valid
+    */
+   TransactionalAtom<?> validateReads() {
+      for (int r = 0; r < readCount; r++) {
+         long s = readAtoms[r].stamp();
+         if (TransactionalAtom.isLocked(s)) {
+            int w = findWrite(readAtoms[r]);
+            if (w == -1 || lockedStamps[w] == -1) {
+               // locked by a concurrent commit
+               return readAtoms[r];
+            }
+            s = lockedStamps[w];
+         }
+         if (TransactionalAtom.version(s) != readVersions[r]) {
+            return readAtoms[r];
+         }
+      }
+      return null;
+   }
+
+   /**
+    * Finds the latest entry for the given atom in the write-set.
+    *
+    * @param atom an atom
+    * @return the index of the latest entry for the atom in the write-set or -1 if it is not present
+    */
+   int findWrite(TransactionalAtom<?> atom) {
+      return find(writeAtoms, writeCount, writeIndex, atom);
+   }
+
+   /**
+    * Returns the number of entries in the write-set.
+    *
+    * @return the number of entries in the write-set
+    */
+   int writeCount() {
+      return writeCount;
+   }
+
+   /**
+    * Returns the atom for the given entry in the write-set.
+    *
+    * @param w the index of an entry in the write-set
+    * @return the atom
+    */
+   TransactionalAtom<?> writeAtom(int w) {
+      return writeAtoms[w];
+   }
+
+   /**
+    * Returns the pending value for the given entry in the write-set. This is only meaningful if the
+    * entry is {@linkplain #isDirty(int) dirty}.
+    *
+    * @param w the index of an entry in the write-set
+    * @return the pending value
+    */
+   Object writeValue(int w) {
+      return writeValues[w];
+   }
+
+   /**
+    * Determines whether the given entry in the write-set has a pending value. If not, the entry
+    * only has commute operations.
+    *
+    * @param w the index of an entry in the write-set
+    * @return true if the entry has a pending value
+    */
+   boolean isDirty(int w) {
+      return dirty[w];
+   }
+
+   /**
+    * Determines whether the given entry is the latest for its atom. Only the latest entries are
+    * committed.
+    *
+    * @param w the index of an entry in the write-set
+    * @return true if the entry is not shadowed by a later one
+    */
+   boolean isLatest(int w) {
+      return findWrite(writeAtoms[w]) == w;
+   }
+
+   /**
+    * Returns an entry in the write-set for the given atom that can be modified. If the latest entry
+    * for the atom was created before the given mark, a new entry is appended that shadows it, so
+    * that the original can be restored on roll-back.
+    *
+    * @param atom an atom
+    * @param mark the size of the write-set when the current savepoint was created
+    * @return the index of the entry for the atom
+    */
+   int writeEntry(TransactionalAtom<?> atom, int mark) {
+      int prev = findWrite(atom);
+      if (prev >= mark) {
+         return prev;
+      }
+      int w = writeCount;
+      if (w == writeAtoms.length) {
+         int capacity = w << 1;
+         writeAtoms = Arrays.copyOf(writeAtoms, capacity);
+         writeValues = Arrays.copyOf(writeValues, capacity);
+         dirty = Arrays.copyOf(dirty, capacity);
+         commutes = Arrays.copyOf(commutes, capacity);
+         shadowed = Arrays.copyOf(shadowed, capacity);
+         commuteBases = Arrays.copyOf(commuteBases, capacity);
+         lockedStamps = Arrays.copyOf(lockedStamps, capacity);
+      }
+      writeAtoms[w] = atom;
+      if (prev >= 0) {
+         writeValues[w] = writeValues[prev];
+         dirty[w] = dirty[prev];
+      }
+      shadowed[w] = prev;
+      commuteBases[w] = -1;
+      lockedStamps[w] = -1;
+      writeCount = w + 1;
+      if (writeIndex != null) {
+         writeIndex.put(atom, w);
+      } else if (writeCount > INDEX_THRESHOLD) {
+         writeIndex = buildIndex(writeAtoms, writeCount);
+      }
+      return w;
+   }
+
+   /**
+    * Sets the pending value for the given entry in the write-set.
+    *
+    * @param w the index of an entry in the write-set
+    * @param value the pending value
+    * @return the entry's previous pending value or {@code null} if it was not dirty
+    */
+   Object setWrite(int w, Object value) {
+      Object ret = writeValues[w];
+      writeValues[w] = value;
+      dirty[w] = true;
+      return ret;
+   }
+
+   /**
+    * Adds a commute operation to the given entry in the write-set.
+    *
+    * @param w the index of an entry in the write-set
+    * @param function the commute function
+    * @param future the future that is completed with the result of the function
+    */
+   @SuppressWarnings({ "unchecked", "rawtypes" }) // erase types to store in the array
+   void addCommute(int w, Function<?, ?> function, SettableFluentFuture<?> future) {
+      if (commutes[w] == null) {
+         commutes[w] = new ArrayList<>(2);
+      }
+      commutes[w].add(Pair.of((Function) function, (SettableFluentFuture) future));
+   }
+
+   /**
+    * Determines whether the given entry, or any entry that it shadows, has commute operations.
+    *
+    * @param w the index of an entry in the write-set
+    * @return true if there are commute operations for the entry's atom
+    */
+   boolean hasCommutes(int w) {
+      for (; w >= 0; w = shadowed[w]) {
+         if (commutes[w] != null) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   /**
+    * Gets the commute operations for the given entry and all entries that it shadows. They are
+    * returned in the order they were enqueued.
+    *
+    * @param w the index of an entry in the write-set
+    * @param into the list to which the commute operations are added
+    */
+   void collectCommutes(int w,
+         List<Pair<Function<Object, Object>, SettableFluentFuture<Object>>> into) {
+      if (w < 0) {
+         return;
+      }
+      collectCommutes(shadowed[w], into);
+      if (commutes[w] != null) {
+         into.addAll(commutes[w]);
+      }
+   }
+
+   /**
+    * Records the result of applying commute operations to an atom's latest value. The result is
+    * stored as the entry's pending value, and the atom's version must still be the given version
+    * when the transaction commits.
+    *
+    * @param w the index of an entry in the write-set
+    * @param value the result of the commute operations
+    * @param baseVersion the version of the value to which commute operations were applied
+    */
+   void setCommuteResult(int w, Object value, long baseVersion) {
+      writeValues[w] = value;
+      dirty[w] = true;
+      commuteBases[w] = baseVersion;
+   }
+
+   /**
+    * Tries to acquire the versioned write-lock for the given entry's atom. The lock is not acquired
+    * if a concurrent commit holds it for too long or if the atom is locked by a transaction that
+    * uses the locking engine.
+    *
+    * @param w the index of an entry in the write-set
+    * @return the atom's version when it was locked, or -1 if the lock could not be acquired
+    */
+   long tryLock(int w) {
+      TransactionalAtom<?> atom = writeAtoms[w];
+      for (int spins = 0; spins < MAX_LOCK_SPINS; spins++) {
+         long s = atom.stamp();
+         if (!TransactionalAtom.isLocked(s) && atom.tryLockStamp(s)) {
+            // We check this *after* acquiring the stamp. A pessimistic transaction does the
+            // reverse: it acquires the hierarchical lock and then checks the stamp. So at least one
+            // of us will notice the other.
+            if (atom.isLockedPessimistically()) {
+               atom.unlockStamp(TransactionalAtom.version(s));
+               return -1;
+            }
+            lockedStamps[w] = s;
+            return TransactionalAtom.version(s);
+         }
+         TransactionalAtom.backoff(spins);
+      }
+      return -1;
+   }
+
+   /**
+    * Returns the version of the value to which commute operations were applied, or -1 if the
+    * entry's pending value did not result from applying commute operations to the atom's latest
+    * value.
+    *
+    * @param w the index of an entry in the write-set
+    * @return the version of the value to which commute operations were applied
+    */
+   long commuteBase(int w) {
+      return commuteBases[w];
+   }
+
+   /**
+    * Installs the pending value of the given entry and releases the atom's versioned write-lock.
+    *
+    * @param w the index of an entry in the write-set
+    * @param version the commit version
+    * @param oldestVersion the oldest active version number
+    * @return the atom's previous value
+    */
+   @SuppressWarnings("unchecked")
+   Object install(int w, long version, long oldestVersion) {
+      TransactionalAtom<Object> atom = (TransactionalAtom<Object>) writeAtoms[w];
+      Object ret = atom.addValue(writeValues[w], version, oldestVersion);
+      lockedStamps[w] = -1;
+      atom.unlockStamp(version);
+      return ret;
+   }
+
+   /**
+    * Releases all versioned write-locks held, restoring the atoms' versions. This is done when a
+    * commit fails.
+    */
+   void unlockAll() {
+      for (int w = 0; w < writeCount; w++) {
+         long s = lockedStamps[w];
+         if (s != -1) {
+            lockedStamps[w] = -1;
+            writeAtoms[w].unlockStamp(TransactionalAtom.version(s));
+         }
+      }
+   }
+
+   /**
+    * Removes all entries in the write-set that were added after the given mark. Futures for any
+    * commute operations in the removed entries are cancelled.
+    *
+    * @param mark the size of the write-set when a savepoint was created
+    */
+   void truncateWrites(int mark) {
+      if (mark >= writeCount) {
+         return;
+      }
+      for (int w = mark; w < writeCount; w++) {
+         cancelCommutes(w);
+         clearWrite(w);
+      }
+      writeCount = mark;
+      if (writeIndex != null) {
+         writeIndex = writeCount > INDEX_THRESHOLD ? buildIndex(writeAtoms, writeCount) : null;
+      }
+   }
+
+   /**
+    * Cancels the futures for all commute operations and then {@linkplain #clear() clears} this
+    * read-set and write-set. This is done when a transaction is rolled back.
+    */
+   void rollback() {
+      for (int w = 0; w < writeCount; w++) {
+         cancelCommutes(w);
+      }
+      clear();
+   }
+
+   private void cancelCommutes(int w) {
+      if (commutes[w] != null) {
+         for (Pair<?, SettableFluentFuture<Object>> commute : commutes[w]) {
+            commute.getSecond().cancel(false);
+         }
+      }
+   }
+
+   private void clearWrite(int w) {
+      assert lockedStamps[w] == -1;
+      writeAtoms[w] = null;
+      writeValues[w] = null;
+      dirty[w] = false;
+      commutes[w] = null;
+   }
+
+   /**
+    * Clears all entries, releasing references to atoms and values, so the storage can be re-used
+    * by the next transaction.
+    */
+   void clear() {
+      if (readAtoms.length > MAX_RETAINED_CAPACITY) {
+         allocateReads(INITIAL_CAPACITY);
+      } else {
+         Arrays.fill(readAtoms, 0, readCount, null);
+         Arrays.fill(readValues, 0, readCount, null);
+      }
+      readCount = 0;
+      readIndex = null;
+      if (writeAtoms.length > MAX_RETAINED_CAPACITY) {
+         allocateWrites(INITIAL_CAPACITY);
+      } else {
+         for (int w = 0; w < writeCount; w++) {
+            clearWrite(w);
+         }
+      }
+      writeCount = 0;
+      writeIndex = null;
+   }
+}
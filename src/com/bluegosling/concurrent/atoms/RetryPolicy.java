@@ -0,0 +1,73 @@
+package com.bluegosling.concurrent.atoms;
+
+import com.bluegosling.concurrent.DeadlockException;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A policy that decides how long a transaction waits before it is retried after a failure. A
+ * transaction is retried when it fails due to a conflict with a concurrent transaction, which is
+ * signaled by a {@link TransactionIsolationException} or a {@link DeadlockException}. The maximum
+ * number of retries is configured separately, via
+ * {@link Transaction.Runner#maxIsolationFailures(int)} and
+ * {@link Transaction.Runner#maxDeadlockFailures(int)}.
+ *
+ * <p>Retrying immediately is best when conflicts are rare. But when many transactions contend
+ * over the same atoms, immediate retries tend to conflict again, which wastes CPU and can starve
+ * all of them. Waiting a random amount of time, which increases with each failure, spreads out
+ * the retries so that more of them succeed.
+ *
+ * @see Transaction.Runner#withRetryPolicy(RetryPolicy)
+ *
+ * @author Joshua Humphries (jhumphries131@gmail.com)
+ */
+@FunctionalInterface
+public interface RetryPolicy {
+   /**
+    * A policy that always retries immediately. This is the default policy.
+    */
+   RetryPolicy IMMEDIATE = (failures, cause) -> 0;
+
+   /**
+    * Computes how long to wait before retrying a transaction.
+    *
+    * @param failures the number of times the transaction has failed so far, always at least one
+    * @param cause the exception that caused the most recent failure
+    * @return the number of nanoseconds to wait before retrying; zero or negative to retry
+    *       immediately
+    */
+   long backoffNanos(int failures, RuntimeException cause);
+
+   /**
+    * Returns a policy that uses exponential backoff with "full jitter". The maximum delay
+    * doubles with each failure, starting at the given initial delay and capped at the given
+    * maximum delay. The actual delay is chosen uniformly at random between zero and that maximum.
+    * Randomization prevents transactions that conflicted with one another from conflicting again
+    * when they retry.
+    *
+    * @param initialDelay the maximum delay after the first failure
+    * @param maxDelay the largest possible delay
+    * @param unit the unit for {@code initialDelay} and {@code maxDelay}
+    * @return a policy that uses exponential backoff with jitter
+    * @throws IllegalArgumentException if the initial delay is not positive or the maximum delay is
+    *       less than the initial delay
+    */
+   static RetryPolicy exponentialBackoff(long initialDelay, long maxDelay, TimeUnit unit) {
+      long initialNanos = unit.toNanos(initialDelay);
+      long maxNanos = unit.toNanos(maxDelay);
+      if (initialNanos <= 0) {
+         throw new IllegalArgumentException("initial delay must be positive");
+      }
+      if (maxNanos < initialNanos) {
+         throw new IllegalArgumentException("max delay must not be less than initial delay");
+      }
+      return (failures, cause) -> {
+         int shift = Math.min(failures - 1, Long.numberOfLeadingZeros(initialNanos) - 1);
+         long bound = Math.min(maxNanos, initialNanos << shift);
+         // the bound is inclusive, unless that would overflow
+         return ThreadLocalRandom.current()
+               .nextLong(bound == Long.MAX_VALUE ? bound : bound + 1);
+      };
+   }
+}
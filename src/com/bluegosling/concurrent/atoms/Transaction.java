@@ -1,8 +1,9 @@
 package com.bluegosling.concurrent.atoms;
 
+import static java.util.Objects.requireNonNull;
+
 import com.bluegosling.concurrent.DeadlockException;
 import com.bluegosling.concurrent.fluent.FluentFuture;
-import com.bluegosling.concurrent.fluent.RunnableFluentFuture;
 import com.bluegosling.concurrent.fluent.SettableFluentFuture;
 import com.bluegosling.concurrent.locks.HierarchicalLock.AcquiredLock;
 import com.bluegosling.concurrent.locks.HierarchicalLock.ExclusiveLock;
@@ -11,6 +12,7 @@ import com.bluegosling.tuples.Pair;
 import com.bluegosling.tuples.Triple;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -19,12 +21,10 @@ import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.CancellationException;
-import java.util.concurrent.ConcurrentNavigableMap;
-import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Future;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.Function;
 
 /**
@@ -47,6 +47,16 @@ import java.util.function.Function;
  * idempotent (which can be retried) and for those that are non-idempotent. The methods each come in
  * two flavors: one for executing tasks that do not produce a value, and another for executing a
  * computation that does produce a value.
+ * 
+ * <p>Two {@linkplain Engine engines} are available for running transactions. The default engine
+ * uses locks to coordinate concurrent transactions and is best when contention is high. The
+ * {@linkplain Engine#OPTIMISTIC optimistic} engine reads atoms without locking and validates at
+ * commit time and is best for short transactions that rarely conflict.
+ * 
+ * <p>Every commit is assigned a version number from a global clock. The strategy for advancing the
+ * clock can be {@linkplain #setVersionClock(VersionClock) configured}, to reduce contention over
+ * the clock when many threads commit concurrently. Old versions of atoms' values are retained only
+ * while in-progress transactions may need them.
  *
  * @author Joshua Humphries (jhumphries131@gmail.com)
  * 
@@ -58,15 +68,6 @@ import java.util.function.Function;
 // TODO: tests
 public class Transaction {
    
-   // NB: Several fields/variables that store version numbers use boxed Longs instead of longs. This
-   // is because the values will eventually need to be boxed (for instance, used as keys in a
-   // HashMap lookup). So keeping a reference to a boxed value means auto-boxing won't need to
-   // create many boxed instances. Similarly, -1 is place holder and frequently used. So we use the
-   // BOXED_NEGATIVE_ONE constant to short-circuit boxing it. The value -1 is cached in Long, but
-   // using a constant lets us even skip the cache lookup for it.
-   
-   private static final Long BOXED_NEGATIVE_ONE = -1L;
-   
    /**
     * The isolation level of a transaction.
     *
@@ -105,6 +106,66 @@ public class Transaction {
       READ_COMMITTED
    }
    
+   /**
+    * The engine used to run a transaction. This determines how concurrent transactions are
+    * coordinated. Both engines support all {@linkplain IsolationLevel isolation levels}, and
+    * transactions that use different engines can safely operate on the same atoms at the same time.
+    *
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    */
+   public enum Engine {
+      /**
+       * An engine that acquires each atom's
+       * {@link com.bluegosling.concurrent.locks.HierarchicalLock} as the transaction accesses it,
+       * in shared mode for pinned atoms (or all atoms read, with serializable isolation) and in
+       * exclusive mode for modified atoms. Locks are held until the transaction completes. So
+       * concurrent transactions that conflict will block one another, and a transaction is
+       * restarted if a deadlock is detected.
+       * 
+       * <p>Since conflicts are detected as soon as an atom is accessed, this engine does the least
+       * amount of wasted work when contention is high or when transactions are long-running. This
+       * is the default engine for a transaction when not otherwise configured.
+       */
+      LOCKING,
+      
+      /**
+       * An optimistic engine, in the style of TL2 (Transactional Locking II). Atoms are read
+       * without any locking. Modifications are buffered in the transaction and only applied when it
+       * commits. To commit, the transaction briefly locks the atoms it modified, using a versioned
+       * write-lock that is a single word per atom. It then validates that none of the atoms it read
+       * have been modified concurrently before installing the new values and releasing the locks.
+       * If validation fails, a {@link TransactionIsolationException} is thrown, and the transaction
+       * is retried. Commits never block on other transactions, so deadlock is not possible.
+       * 
+       * <p>Reads and writes are tracked in arrays that are re-used by all transactions on the same
+       * thread. So small transactions are very cheap, incurring just one atomic update to a global
+       * version counter and one atomic update per modified atom. But, since conflicts are not
+       * detected until the transaction commits, more work is wasted when contention is high.
+       * 
+       * <p>The isolation levels are supported as follows:
+       * <ul>
+       * <li>{@link IsolationLevel#SERIALIZABLE}: Every atom read is recorded and validated when
+       * the transaction commits. Reads are also validated incrementally, so the transaction never
+       * observes an inconsistent state. If a concurrent commit changes an atom before it is read,
+       * the transaction's snapshot is advanced if all prior reads are still valid. Otherwise, the
+       * transaction is aborted.</li>
+       * <li>{@link IsolationLevel#SNAPSHOT}: Reads observe the atoms' values as of a snapshot that
+       * is established at the transaction's first access. When a concurrent commit has modified an
+       * atom since the snapshot, its previous value is read if it has been retained. Otherwise, the
+       * transaction is aborted. Modified atoms and pinned atoms must not have been concurrently
+       * modified since the snapshot.</li>
+       * <li>{@link IsolationLevel#READ_COMMITTED}: Reads observe the atoms' latest committed
+       * values. Only pinned atoms are validated.</li>
+       * </ul>
+       * 
+       * <p>{@linkplain TransactionalAtom#commute(Function) Commutes} are applied to the atom's
+       * latest value when the transaction commits. The atom is not validated unless the transaction
+       * also reads or modifies it, except that the transaction will abort if the atom's latest
+       * value changes while the commute functions are being applied.
+       */
+      OPTIMISTIC
+   }
+   
    /**
     * A task that executes in (or with) a transaction.
     *
@@ -179,9 +240,12 @@ public class Transaction {
     * transaction as well as thresholds for certain types of failures can be defined prior to
     * running the transaction.
     * 
-    * <p>If otherwise unspecified, the default isolation level is {@link IsolationLevel#SNAPSHOT}.
-    * Similarly, if unspecified, the default maximum number of isolation failures is 1000, and the
-    * default maximum number of deadlock failures is 10. 
+    * <p>If otherwise unspecified, the default isolation level is {@link IsolationLevel#SNAPSHOT},
+    * and the default engine is {@link Engine#LOCKING}. Similarly, if unspecified, the default
+    * maximum number of isolation failures is 1000, and the default maximum number of deadlock
+    * failures is 10. By default, failed transactions are {@linkplain RetryPolicy#IMMEDIATE retried
+    * immediately}, are never {@linkplain #serializeAfter(int) serialized}, and no
+    * {@linkplain TransactionMetrics metrics} are reported.
     *
     * @author Joshua Humphries (jhumphries131@gmail.com)
     */
@@ -191,6 +255,11 @@ public class Transaction {
        */
       private IsolationLevel isolationLevel = IsolationLevel.SNAPSHOT;
       
+      /**
+       * The engine used to run the transaction.
+       */
+      private Engine engine = Engine.LOCKING;
+      
       /**
        * The maximum number of isolation failures before the transaction is aborted.
        */
@@ -201,6 +270,21 @@ public class Transaction {
        */
       private int maxDeadlockFailures = 10;
       
+      /**
+       * The policy that decides how long to wait before retrying a failed transaction.
+       */
+      private RetryPolicy retryPolicy = RetryPolicy.IMMEDIATE;
+      
+      /**
+       * The number of failures after which the transaction is serialized.
+       */
+      private int serializeAfter = Integer.MAX_VALUE;
+      
+      /**
+       * The object to which events about the transaction are reported.
+       */
+      private TransactionMetrics metrics = TransactionMetrics.NONE;
+      
       /**
        * Runs transactions using the specified isolation level.
        *
@@ -216,6 +300,21 @@ public class Transaction {
          return this;
       }
       
+      /**
+       * Runs transactions using the specified engine.
+       *
+       * @param engine the engine with which to run transactions
+       * @return this, for method chaining
+       * @throws NullPointerException if the specified engine is null
+       */
+      public Runner withEngine(Engine engine) {
+         if (engine == null) {
+            throw new NullPointerException();
+         }
+         this.engine = engine;
+         return this;
+      }
+      
       /**
        * Defines the maximum number of isolation failures in a transaction. Such a failure occurs
        * when a {@link TransactionIsolationException} is thrown while running the transaction. After
@@ -260,6 +359,58 @@ public class Transaction {
          return this;
       }
       
+      /**
+       * Defines the policy that decides how long to wait before retrying a transaction that failed
+       * due to a conflict with a concurrent transaction. If the transaction is not idempotent, the
+       * policy is not used as such transactions are never re-tried.
+       *
+       * @param policy the retry policy
+       * @return this, for method chaining
+       * @throws NullPointerException if the specified policy is null
+       */
+      public Runner withRetryPolicy(RetryPolicy policy) {
+         this.retryPolicy = requireNonNull(policy);
+         return this;
+      }
+      
+      /**
+       * Defines the number of failures after which a transaction is serialized. A serialized
+       * transaction runs its subsequent attempts while no other serialized transaction is running
+       * and while no other transaction can start a new attempt. This guarantees eventual progress
+       * for transactions that would otherwise be starved by contention. It does so at the expense
+       * of concurrency, so the threshold should be high enough that only transactions that are
+       * truly starved are serialized. A serialized transaction does not wait between attempts,
+       * regardless of the {@linkplain #withRetryPolicy(RetryPolicy) retry policy}.
+       *
+       * <p>Isolation failures and deadlock failures are both counted towards this threshold.
+       *
+       * @param failures the number of failures after which a transaction is serialized
+       * @return this, for method chaining
+       * @throws IllegalArgumentException if the specified number of failures is less than one
+       */
+      public Runner serializeAfter(int failures) {
+         if (failures < 1) {
+            throw new IllegalArgumentException(failures + " < 1");
+         }
+         this.serializeAfter = failures;
+         return this;
+      }
+      
+      /**
+       * Defines the object to which events about transactions are reported. This includes
+       * commits, failures, retries, and the atoms over which conflicts occur.
+       *
+       * @param metrics the metrics object
+       * @return this, for method chaining
+       * @throws NullPointerException if the specified metrics object is null
+       * 
+       * @see TransactionStats
+       */
+      public Runner withMetrics(TransactionMetrics metrics) {
+         this.metrics = requireNonNull(metrics);
+         return this;
+      }
+      
       /**
        * Performs the specified computation in a transaction and returns its result. The computation
        * is assumed to be idempotent, which means may be re-tried if certain failures are observed.
@@ -279,8 +430,8 @@ public class Transaction {
        *       and modifying atoms
        */
       public <T, X extends Throwable> T compute(Computation<T, X> computation) throws X {
-         return new Transaction(isolationLevel, maxIsolationFailures, maxDeadlockFailures)
-               .transact(computation);
+         return new Transaction(isolationLevel, engine, maxIsolationFailures, maxDeadlockFailures,
+               retryPolicy, serializeAfter, metrics).transact(computation);
       }
    
       /**
@@ -321,7 +472,8 @@ public class Transaction {
        */
       public <T, X extends Throwable> T computeNonIdempotent(Computation<T, X> computation)
             throws X {
-         return new Transaction(isolationLevel, 1, 1).transact(computation);
+         return new Transaction(isolationLevel, engine, 1, 1, retryPolicy, serializeAfter, metrics)
+               .transact(computation);
       }
    
       /**
@@ -437,14 +589,14 @@ public class Transaction {
    }
    
    /**
-    * Gets the oldest version that is pinned by in-progress transactions. Version numbers are
-    * monotonically increasing.
+    * Gets the oldest version that must be retained when committing the given version. Atom values
+    * that precede this version are not needed by any in-progress transaction and may be purged.
     *
-    * @return the oldest version pinned by in-progress transactions
+    * @param commitVersion the version being committed
+    * @return the oldest version that must be retained
     */
-   static long oldestVersion() {
-      Map.Entry<Long, ?> entry = pinnedVersions.firstEntry();
-      return entry == null ? versionNumber.get() : entry.getKey();
+   static long oldestVersion(long commitVersion) {
+      return pinnedVersions.horizon(commitVersion);
    }
    
    /**
@@ -459,68 +611,55 @@ public class Transaction {
    }
    
    /**
-    * Pins the specified version. While pinned, atom values associated with this version will be
-    * retained.
+    * Creates a new version number for a commit, using the configured {@linkplain VersionClock
+    * version clock}. The caller must already hold the versioned write-locks for all atoms that it
+    * will modify.
     *
-    * @param version the version to pin
+    * @return the new version number
     */
-   private static void pinVersion(Long version) {
-      while (true) {
-         AtomicInteger count = pinnedVersions.get(version);
-         if (count == null) {
-            count = new AtomicInteger(1);
-            AtomicInteger existing = pinnedVersions.putIfAbsent(version, count);
-            if (existing == null) {
-               return;
-            }
-            // lost race, so try to use the one already there
-            count = existing;
-         }
-         while (true) {
-            int currentValue = count.get();
-            if (currentValue == 0) {
-               // zero? there is a concurrent removal, so try again
-               break;
-            }
-            if (count.compareAndSet(currentValue, currentValue + 1)) {
-               // successfully incremented; if there was a race with removal, we won
-               return;
-            }
-         }
-      }
+   static long newCommitVersion() {
+      return versionClock.advance(versionNumber);
    }
    
    /**
-    * Unpins the specified version. The version must have first been {@linkplain #pinVersion(Long)
-    * pinned}. Once unpinned, atom values associated with this version may be removed.
+    * Pins the current version. While pinned, atom values associated with this version will be
+    * retained. The caller must {@linkplain #unpinVersion() unpin} the version when it is no longer
+    * needed.
     *
-    * @param version the version to unpin
+    * @return the pinned version
     */
-   static void unpinVersion(Long version) {
-      if (pinnedVersions.get(version).decrementAndGet() == 0) {
-         pinnedVersions.remove(version);
-      }
+   static long pinVersion() {
+      return pinnedVersions.pin();
    }
-
+   
    /**
-    * Creates a new version number and pins it. The caller must unpin the returned version number
-    * when it is no longer needed.
+    * Unpins the version most recently {@linkplain #pinVersion() pinned} by the current thread. Once
+    * unpinned, atom values associated with this version may be removed.
+    */
+   static void unpinVersion() {
+      pinnedVersions.unpin();
+   }
+   
+   /**
+    * Sets the strategy used to advance the global version clock. This affects all subsequent
+    * commits, including those of transactions already in progress. The strategy can safely be
+    * changed at any time.
     *
-    * @return the new version number
+    * @param clock the strategy for advancing the version clock
+    * @throws NullPointerException if the given clock is null
     */
-   static long pinNewVersion() {
-      // If we just do volatile read of versionNumber and then pin it, there's a race where a
-      // concurrent commit could increment the versionNumber and, not seeing any pins for prior
-      // version, remove old versions of atom values that we are trying to pin. So we first put down
-      // a value, then get a new version number for this transaction and pin it, and then release
-      // old pin. That way we will never accidentally use a version number for which we have no
-      // data.
-      Long last = currentVersion();
-      pinVersion(last);
-      long ret = versionNumber.incrementAndGet();
-      pinVersion(ret);
-      unpinVersion(last);
-      return ret;
+   public static void setVersionClock(VersionClock clock) {
+      versionClock = requireNonNull(clock);
+   }
+   
+   /**
+    * Returns the strategy used to advance the global version clock. Unless changed via
+    * {@link #setVersionClock(VersionClock)}, this is {@link VersionClock#INCREMENT}.
+    *
+    * @return the strategy used to advance the version clock
+    */
+   public static VersionClock getVersionClock() {
+      return versionClock;
    }
 
    /**
@@ -600,12 +739,14 @@ public class Transaction {
    private static final AtomicLong versionNumber = new AtomicLong();
    
    /**
-    * The set of pinned version numbers. The same version may be pinned more than once, so this map
-    * stores a reference count to the pinned versions. When a count for a given version reaches
-    * zero, that version is removed from the map.
+    * The strategy used to advance {@link #versionNumber}.
     */
-   private static final ConcurrentNavigableMap<Long, AtomicInteger> pinnedVersions =
-         new ConcurrentSkipListMap<Long, AtomicInteger>();
+   private static volatile VersionClock versionClock = VersionClock.INCREMENT;
+   
+   /**
+    * The versions pinned by in-progress transactions.
+    */
+   private static final PinnedVersions pinnedVersions = new PinnedVersions(versionNumber);
    
    /**
     * The transaction for the current thread or null if none is in progress.
@@ -742,8 +883,8 @@ public class Transaction {
        * A sequence of updates made to asynchronous atoms. These updates are only executed if the
        * transaction is committed.
        */
-      final Queue<Pair<AsynchronousAtom<?>, RunnableFluentFuture<?>>> asyncActions =
-            new LinkedList<Pair<AsynchronousAtom<?>, RunnableFluentFuture<?>>>();
+      final Queue<Pair<AsynchronousAtom<?>, FluentFuture<?>>> asyncActions =
+            new LinkedList<Pair<AsynchronousAtom<?>, FluentFuture<?>>>();
       
       /**
        * Information about atoms modified in the scope of this savepoint.
@@ -756,6 +897,12 @@ public class Transaction {
        */
       final Savepoint predecessor;
       
+      /**
+       * The size of the write-set when this savepoint was created. This is only used by the
+       * {@linkplain Engine#OPTIMISTIC optimistic engine}.
+       */
+      int writeMark;
+      
       /**
        * Constructs a new savepoint.
        */
@@ -789,7 +936,7 @@ public class Transaction {
        * is done during a roll-back.
        */
       void cancelFutures() {
-         for (Pair<AsynchronousAtom<?>, RunnableFluentFuture<?>> asyncAction : asyncActions) {
+         for (Pair<AsynchronousAtom<?>, FluentFuture<?>> asyncAction : asyncActions) {
             asyncAction.getSecond().cancel(false);
          }
          for (AtomInfo<?> info : atomInfo.values()) {
@@ -801,12 +948,12 @@ public class Transaction {
        * Submits asynchronous actions for execution. This is done during a commit.
        */
       void submitAsyncActions() {
-         for (Pair<AsynchronousAtom<?>, RunnableFluentFuture<?>> asyncAction : asyncActions) {
+         for (Pair<AsynchronousAtom<?>, FluentFuture<?>> asyncAction : asyncActions) {
             @SuppressWarnings("unchecked")
             AsynchronousAtom<Object> atom = (AsynchronousAtom<Object>) asyncAction.getFirst();
             @SuppressWarnings("unchecked")
-            RunnableFluentFuture<Object> future =
-                  (RunnableFluentFuture<Object>) asyncAction.getSecond();
+            FluentFuture<Object> future =
+                  (FluentFuture<Object>) asyncAction.getSecond();
 
             AsynchronousAtom.submitFuture(atom, future);
          }
@@ -831,6 +978,11 @@ public class Transaction {
     */
    private final IsolationLevel isolationLevel;
    
+   /**
+    * The transaction's engine.
+    */
+   private final Engine engine;
+   
    /**
     * The maximum number of isolation failures. When this many are observed, the transaction is
     * aborted.
@@ -843,6 +995,28 @@ public class Transaction {
     */
    private final int maxDeadlockFailures;
    
+   /**
+    * The policy that decides how long to wait between attempts.
+    */
+   private final RetryPolicy retryPolicy;
+   
+   /**
+    * The number of failures after which the transaction is serialized.
+    */
+   private final int serializeAfter;
+   
+   /**
+    * The object to which events about the transaction are reported.
+    */
+   private final TransactionMetrics metrics;
+   
+   /**
+    * The atom over which the current attempt conflicted with a concurrent transaction. This is set
+    * just before throwing a {@link TransactionIsolationException} or {@link DeadlockException}, so
+    * that the conflict can be attributed to the atom.
+    */
+   private TransactionalAtom<?> conflict;
+   
    /**
     * The state of locks acquired.
     */
@@ -856,7 +1030,7 @@ public class Transaction {
     * isolation level of {@link IsolationLevel#READ_COMMITTED}, this value is never identified and
     * all reads take an atom's most recent committed value.
     */
-   private Long readVersion = BOXED_NEGATIVE_ONE;
+   private long readVersion = -1;
    
    /**
     * The current savepoint. This is a linked list, with each savepoint holding a reference to its
@@ -881,16 +1055,65 @@ public class Transaction {
    private volatile CountDownLatch commitLatch;
    
    /**
-    * Constructs a new transaction.
+    * The read-set and write-set, used by the {@linkplain Engine#OPTIMISTIC optimistic engine}
+    * instead of savepoints' atom information and locks. This is null when using the locking engine.
+    */
+   private ReadWriteSet readWriteSet;
+   
+   /**
+    * The read version used by the {@linkplain Engine#OPTIMISTIC optimistic engine}. A value of
+    * negative one indicates that the read version has not yet been identified. Unlike
+    * {@link #readVersion}, this version is not pinned.
+    */
+   private long optimisticReadVersion = -1;
+   
+   /**
+    * Constructs a new transaction that uses the {@linkplain Engine#LOCKING locking engine}.
     *
     * @param isolationLevel the isolation level for the transaction
     * @param maxIsolationFailures the maximum number of isolation failures before aborting
     * @param maxDeadlockFailures the maximum number of deadlock failures before aborting
     */
    Transaction(IsolationLevel isolationLevel, int maxIsolationFailures, int maxDeadlockFailures) {
+      this(isolationLevel, Engine.LOCKING, maxIsolationFailures, maxDeadlockFailures,
+            RetryPolicy.IMMEDIATE, Integer.MAX_VALUE, TransactionMetrics.NONE);
+   }
+   
+   /**
+    * Constructs a new transaction.
+    *
+    * @param isolationLevel the isolation level for the transaction
+    * @param engine the engine for the transaction
+    * @param maxIsolationFailures the maximum number of isolation failures before aborting
+    * @param maxDeadlockFailures the maximum number of deadlock failures before aborting
+    * @param retryPolicy the policy that decides how long to wait between attempts
+    * @param serializeAfter the number of failures after which the transaction is serialized
+    * @param metrics the object to which events about the transaction are reported
+    */
+   Transaction(IsolationLevel isolationLevel, Engine engine, int maxIsolationFailures,
+         int maxDeadlockFailures, RetryPolicy retryPolicy, int serializeAfter,
+         TransactionMetrics metrics) {
       this.isolationLevel = isolationLevel;
+      this.engine = engine;
       this.maxIsolationFailures = maxIsolationFailures;
       this.maxDeadlockFailures = maxDeadlockFailures;
+      this.retryPolicy = retryPolicy;
+      this.serializeAfter = serializeAfter;
+      this.metrics = metrics;
+   }
+   
+   /**
+    * Gets the read version for a transaction that uses the {@linkplain Engine#OPTIMISTIC optimistic
+    * engine}. Like {@link #getReadVersion()}, the read version is assigned the first time this
+    * method is called.
+    *
+    * @return the read version for the transaction
+    */
+   private long getOptimisticReadVersion() {
+      if (optimisticReadVersion == -1) {
+         optimisticReadVersion = currentVersion();
+      }
+      return optimisticReadVersion;
    }
    
    /**
@@ -904,7 +1127,7 @@ public class Transaction {
     */
    private long getReadVersion() {
       if (readVersion == -1) {
-         readVersion = pinNewVersion();
+         readVersion = pinVersion();
       }
       return readVersion;
    }
@@ -927,48 +1150,113 @@ public class Transaction {
          throw new IllegalStateException("A transaction is already in progress. Another cannot be started.");
       }
       savepoint = new Savepoint();
+      if (engine == Engine.OPTIMISTIC) {
+         readWriteSet = ReadWriteSet.forCurrentThread();
+      }
+      boolean sampled = metrics.shouldSample();
+      long start = sampled ? System.nanoTime() : 0;
       int isolationFailures = 0;
       int deadlocks = 0;
-      while (true) {
-         readVersion = BOXED_NEGATIVE_ONE;
-         currentTransaction.set(this);
-         try {
-            T ret = computation.compute(this);
-            doCommit();
-            return ret;
-         } catch (Throwable t) {
-            doRollback();
-            if (t instanceof TransactionIsolationException) {
-               if (++isolationFailures >= maxIsolationFailures) {
-                  // failed too many times, propagate
-                  throw (TransactionIsolationException) t;
+      boolean serial = false;
+      try {
+         while (true) {
+            if (!serial) {
+               ContentionManager.awaitSerialTransactions();
+            }
+            readVersion = -1;
+            optimisticReadVersion = -1;
+            currentTransaction.set(this);
+            RuntimeException failure;
+            try {
+               T ret = computation.compute(this);
+               long commitStart = sampled ? System.nanoTime() : 0;
+               doCommit();
+               if (sampled) {
+                  long end = System.nanoTime();
+                  metrics.recordCommitTime(end - commitStart);
+                  metrics.recordLatency(end - start);
                }
-            } else if (t instanceof DeadlockException) {
-               if (++deadlocks >= maxDeadlockFailures) {
-                  // failed too many times, propagate
-                  throw (DeadlockException) t;
+               metrics.transactionCommitted(isolationFailures + deadlocks + 1);
+               return ret;
+            } catch (Throwable t) {
+               doRollback();
+               TransactionalAtom<?> atom = conflict;
+               conflict = null;
+               if (t instanceof TransactionIsolationException) {
+                  failure = (TransactionIsolationException) t;
+                  metrics.attemptAborted(atom, failure);
+                  if (++isolationFailures >= maxIsolationFailures) {
+                     // failed too many times, propagate
+                     metrics.transactionFailed(t);
+                     throw failure;
+                  }
+               } else if (t instanceof DeadlockException) {
+                  failure = (DeadlockException) t;
+                  metrics.attemptAborted(atom, failure);
+                  if (++deadlocks >= maxDeadlockFailures) {
+                     // failed too many times, propagate
+                     metrics.transactionFailed(t);
+                     throw failure;
+                  }
+               } else {
+                  metrics.transactionFailed(t);
+                  @SuppressWarnings("unchecked")
+                  X cast = (X) t;
+                  throw cast;
+               }
+            } finally {
+               currentTransaction.set(null);
+               if (readVersion != -1) {
+                  unpinVersion();
                }
-            } else {
-               @SuppressWarnings("unchecked")
-               X cast = (X) t;
-               throw cast;
             }
-         } finally {
-            currentTransaction.set(null);
-            if (readVersion != -1) {
-               unpinVersion(readVersion);
+            // we hold no locks at this point, so it's safe to wait before retrying
+            int failures = isolationFailures + deadlocks;
+            if (!serial && failures >= serializeAfter) {
+               ContentionManager.enterSerialMode();
+               serial = true;
+               metrics.transactionSerialized();
+            }
+            long backoffNanos =
+                  serial ? 0 : Math.max(0, retryPolicy.backoffNanos(failures, failure));
+            metrics.attemptRetried(backoffNanos);
+            if (backoffNanos > 0) {
+               // parking can return early, so park until the whole delay has elapsed (or until the
+               // thread is interrupted)
+               long deadline = System.nanoTime() + backoffNanos;
+               for (long remaining = backoffNanos;
+                     remaining > 0 && !Thread.currentThread().isInterrupted();
+                     remaining = deadline - System.nanoTime()) {
+                  LockSupport.parkNanos(remaining);
+               }
             }
          }
+      } finally {
+         if (serial) {
+            ContentionManager.exitSerialMode();
+         }
       }
    }
    
+   /**
+    * Records the atom over which the current attempt conflicted with a concurrent transaction and
+    * returns an exception that aborts the attempt.
+    *
+    * @param atom the atom over which the conflict occurred
+    * @return an exception to throw
+    */
+   private TransactionIsolationException isolationFailure(TransactionalAtom<?> atom) {
+      conflict = atom;
+      return new TransactionIsolationException();
+   }
+   
    /**
     * Unlocks all atoms that have been locked during this transaction. This also {@linkplain
     * TransactionalAtom#unmark() unmarks} atoms in case we are recovering from a commit failure.
     */
    private void unlockAll() {
       for (Map.Entry<TransactionalAtom<?>, AcquiredLock> lockEntry : locks.entrySet()) {
-         lockEntry.getKey().unmark();
+         lockEntry.getKey().unmark(this);
          lockEntry.getValue().unlock();
       }
       locks.clear();
@@ -1052,14 +1340,18 @@ public class Transaction {
     * Commits the current transaction.
     */
    private void doCommit() {
+      if (readWriteSet != null) {
+         doOptimisticCommit();
+         return;
+      }
       List<Pair<SettableFluentFuture<?>, Object>> pendingFutures =
             new ArrayList<Pair<SettableFluentFuture<?>, Object>>();
       processCommutes(savepoint, pendingFutures);
       // If all pending commutes pass validation, then we should be safe from here on out
       // to successfully complete the transaction
       if (readVersion != -1) {
-         unpinVersion(readVersion);
-         readVersion = BOXED_NEGATIVE_ONE;
+         unpinVersion();
+         readVersion = -1;
       }
       
       // After we generate the commit version, there's a race where concurrent transactions could
@@ -1081,29 +1373,26 @@ public class Transaction {
          
          List<Triple<TransactionalAtom<Object>, Object, Object>> notifications = new ArrayList<>();
          
-         long newVersion = pinNewVersion();
-         try {
-            commitVersion.setValue(newVersion);
-            long oldestVersion = oldestVersion();
-            // now save all values with this version
-            for (Savepoint sp = savepoint; sp != null; sp = sp.predecessor) {
-               for (Map.Entry<TransactionalAtom<?>, AtomInfo<?>> entry : sp.atomInfo.entrySet()) {
-                  @SuppressWarnings("unchecked")
-                  TransactionalAtom<Object> atom = (TransactionalAtom<Object>) entry.getKey();
-                  AtomInfo<?> info = entry.getValue();
-                  if (info.isDirty() && markedAtoms.remove(atom)) {
-                     Object newValue = info.getValue();
-                     Object oldValue = atom.addValue(info.getValue(), newVersion, oldestVersion);
-                     notifications.add(Triple.of(atom, oldValue, newValue));
-                     atom.unmark(); // "release" the atom eagerly
-                  }
+         long newVersion = newCommitVersion();
+         commitVersion.setValue(newVersion);
+         long oldestVersion = oldestVersion(newVersion);
+         // now save all values with this version
+         for (Savepoint sp = savepoint; sp != null; sp = sp.predecessor) {
+            for (Map.Entry<TransactionalAtom<?>, AtomInfo<?>> entry : sp.atomInfo.entrySet()) {
+               @SuppressWarnings("unchecked")
+               TransactionalAtom<Object> atom = (TransactionalAtom<Object>) entry.getKey();
+               AtomInfo<?> info = entry.getValue();
+               if (info.isDirty() && markedAtoms.remove(atom)) {
+                  Object newValue = info.getValue();
+                  Object oldValue = atom.addValue(info.getValue(), newVersion, oldestVersion);
+                  notifications.add(Triple.of(atom, oldValue, newValue));
+                  atom.unmark(this); // "release" the atom eagerly
                }
             }
-            commitLatch.countDown();
-         } finally {
-            unpinVersion(newVersion);
          }
+         commitLatch.countDown();
          
+         Savepoint committed = savepoint;
          savepoint = null;
          unlockAll();
          
@@ -1116,7 +1405,7 @@ public class Transaction {
          }
          
          // submit async tasks
-         processAsyncActions(savepoint);
+         processAsyncActions(committed);
          
          // send notifications
          for (Triple<TransactionalAtom<Object>, Object, Object> notification : notifications) {
@@ -1134,6 +1423,150 @@ public class Transaction {
       }
    }
    
+   /**
+    * Commits the current transaction using the {@linkplain Engine#OPTIMISTIC optimistic engine}.
+    * 
+    * @throws TransactionIsolationException if the transaction conflicts with a concurrent commit
+    */
+   private void doOptimisticCommit() {
+      ReadWriteSet rw = readWriteSet;
+      List<Pair<SettableFluentFuture<?>, Object>> pendingFutures = Collections.emptyList();
+      List<Triple<TransactionalAtom<Object>, Object, Object>> notifications =
+            Collections.emptyList();
+      int n = rw.writeCount();
+      if (n > 0) {
+         // Apply commutes to the atoms' latest values before locking anything, so we never run
+         // user code while holding an atom's versioned write-lock. When we acquire the locks, we
+         // verify that the values to which they were applied are still the latest.
+         List<Pair<Function<Object, Object>, SettableFluentFuture<Object>>> commutes = null;
+         for (int w = 0; w < n; w++) {
+            if (!rw.isLatest(w) || !rw.hasCommutes(w)) {
+               continue;
+            }
+            if (commutes == null) {
+               commutes = new ArrayList<>();
+               pendingFutures = new ArrayList<>();
+            } else {
+               commutes.clear();
+            }
+            rw.collectCommutes(w, commutes);
+            @SuppressWarnings("unchecked")
+            TransactionalAtom<Object> atom = (TransactionalAtom<Object>) rw.writeAtom(w);
+            Object value;
+            long baseVersion;
+            if (rw.isDirty(w)) {
+               value = rw.writeValue(w);
+               baseVersion = -1;
+            } else {
+               TransactionalAtom.Version<Object> node = atom.latestCommitted();
+               value = node.value;
+               baseVersion = node.version;
+            }
+            boolean first = true;
+            for (Pair<Function<Object, Object>, SettableFluentFuture<Object>> commute : commutes) {
+               if (first) {
+                  first = false;
+               } else {
+                  atom.validate(value);
+               }
+               value = commute.getFirst().apply(value);
+               pendingFutures.add(Pair.of(commute.getSecond(), value));
+            }
+            atom.validate(value);
+            rw.setCommuteResult(w, value, baseVersion);
+         }
+         
+         try {
+            // lock all modified atoms
+            for (int w = 0; w < n; w++) {
+               if (!rw.isLatest(w) || !rw.isDirty(w)) {
+                  continue;
+               }
+               long version = rw.tryLock(w);
+               if (version == -1) {
+                  TransactionalAtom<?> atom = rw.writeAtom(w);
+                  if (atom.isLockedPessimistically()) {
+                     // Release our other locks before waiting, since the other transaction may
+                     // need them to make progress. Otherwise, we could retry and re-acquire them
+                     // before it gets a chance.
+                     rw.unlockAll();
+                     awaitPessimisticUnlock(atom);
+                  }
+                  throw isolationFailure(atom);
+               }
+               long baseVersion = rw.commuteBase(w);
+               if (baseVersion != -1) {
+                  if (version != baseVersion) {
+                     throw isolationFailure(rw.writeAtom(w));
+                  }
+               } else if (isolationLevel != IsolationLevel.READ_COMMITTED
+                     && version > optimisticReadVersion) {
+                  throw isolationFailure(rw.writeAtom(w));
+               }
+            }
+            
+            VersionClock clock = versionClock;
+            long newVersion = clock.advance(versionNumber);
+            // If no other transaction committed since our read version, the read-set must still
+            // be valid, so we can skip validation. But we can only tell if the clock gives every
+            // commit a distinct version.
+            if (rw.readCount() > 0 && (isolationLevel != IsolationLevel.SERIALIZABLE
+                  || !clock.isUnique() || newVersion != optimisticReadVersion + 1)) {
+               TransactionalAtom<?> invalid = rw.validateReads();
+               if (invalid != null) {
+                  throw isolationFailure(invalid);
+               }
+            }
+            
+            // now save all values with this version
+            long oldestVersion = oldestVersion(newVersion);
+            notifications = new ArrayList<>(n);
+            for (int w = 0; w < n; w++) {
+               if (rw.isLatest(w) && rw.isDirty(w)) {
+                  @SuppressWarnings("unchecked")
+                  TransactionalAtom<Object> atom = (TransactionalAtom<Object>) rw.writeAtom(w);
+                  Object newValue = rw.writeValue(w);
+                  Object oldValue = rw.install(w, newVersion, oldestVersion);
+                  notifications.add(Triple.of(atom, oldValue, newValue));
+               }
+            }
+         } finally {
+            // this is a no-op if all values were successfully installed above
+            rw.unlockAll();
+         }
+      }
+      rw.clear();
+      
+      // fulfill pending commute futures
+      for (Pair<SettableFluentFuture<?>, Object> pending : pendingFutures) {
+         @SuppressWarnings("unchecked")
+         SettableFluentFuture<Object> future = (SettableFluentFuture<Object>) pending.getFirst();
+         future.setValue(pending.getSecond());
+      }
+      
+      // submit async tasks
+      processAsyncActions(savepoint);
+      savepoint = null;
+      
+      // send notifications
+      for (Triple<TransactionalAtom<Object>, Object, Object> notification : notifications) {
+         notification.getFirst().notify(notification.getSecond(), notification.getThird());
+      }
+   }
+   
+   /**
+    * Waits for a transaction that uses the {@linkplain Engine#LOCKING locking engine} to release
+    * its lock on the given atom. This must only be called when the current transaction holds no
+    * versioned write-locks. The caller then aborts and retries, hopefully without conflict.
+    *
+    * @param atom the contended atom
+    */
+   private static void awaitPessimisticUnlock(TransactionalAtom<?> atom) {
+      for (int spins = 0; atom.isLockedPessimistically(); spins++) {
+         TransactionalAtom.backoff(spins);
+      }
+   }
+   
    /**
     * Rolls back the current transaction.
     */
@@ -1144,6 +1577,9 @@ public class Transaction {
          savepoint = savepoint.predecessor;
       }
       savepoint = new Savepoint();
+      if (readWriteSet != null) {
+         readWriteSet.rollback();
+      }
       unlockAll();
    }
    
@@ -1183,6 +1619,9 @@ public class Transaction {
       checkState();
       Savepoint ret = savepoint;
       savepoint = new Savepoint(ret);
+      if (readWriteSet != null) {
+         savepoint.writeMark = readWriteSet.writeCount();
+      }
       return ret;
    }
 
@@ -1219,10 +1658,17 @@ public class Transaction {
       
       while (savepoint != point) {
          savepoint.cancelFutures();
-         savepoint.reverseLocks(locks);
+         if (readWriteSet != null) {
+            readWriteSet.truncateWrites(savepoint.writeMark);
+         } else {
+            savepoint.reverseLocks(locks);
+         }
          savepoint = savepoint.predecessor;
       }
       savepoint = new Savepoint(point);
+      if (readWriteSet != null) {
+         savepoint.writeMark = readWriteSet.writeCount();
+      }
    }
    
    /**
@@ -1298,6 +1744,9 @@ public class Transaction {
     *    IsolationLevel#SERIALIZABLE} and a deadlock was detected when trying to lock the atom 
     */
    <T> T getAtom(TransactionalAtom<T> atom) {
+      if (readWriteSet != null) {
+         return getAtomOptimistically(atom);
+      }
       if (isolationLevel == IsolationLevel.SERIALIZABLE) {
          return pinAtom(atom);
       }
@@ -1326,11 +1775,16 @@ public class Transaction {
          // have the right lock
          return;
       }
-      realizeLockState(atom, info.currentState, desiredLockState, locks);
+      try {
+         realizeLockState(atom, info.currentState, desiredLockState, locks);
+      } catch (DeadlockException e) {
+         conflict = atom;
+         throw e;
+      }
       info.currentState = desiredLockState;
       if (validateVersion && isolationLevel != IsolationLevel.READ_COMMITTED
-            && atom.getLatestVersion() > getReadVersion()) {
-         throw new TransactionIsolationException();
+            && atom.isModifiedSince(getReadVersion())) {
+         throw isolationFailure(atom);
       }
    }
 
@@ -1368,6 +1822,9 @@ public class Transaction {
     * @throws DeadlockException if a deadlock was detected when trying to lock the atom 
     */
    <T> T pinAtom(TransactionalAtom<T> atom) {
+      if (readWriteSet != null) {
+         return pinAtomOptimistically(atom);
+      }
       return pinAtom(atom, false);
    }
 
@@ -1406,6 +1863,9 @@ public class Transaction {
     * @throws DeadlockException if a deadlock was detected when trying to lock the atom 
     */
    <T> T setAtom(TransactionalAtom<T> atom, T newValue) {
+      if (readWriteSet != null) {
+         return setAtomOptimistically(atom, newValue);
+      }
       return setAtom(atom, newValue, false);
    }
 
@@ -1423,6 +1883,11 @@ public class Transaction {
    <T> FluentFuture<T> enqueueCommute(final TransactionalAtom<T> atom,
          final Function<? super T, ? extends T> function) {
       SettableFluentFuture<T> future = new SettableFluentFuture<T>();
+      if (readWriteSet != null) {
+         int w = readWriteSet.writeEntry(atom, savepoint.writeMark);
+         readWriteSet.addCommute(w, function, future);
+         return future;
+      }
       AtomInfo<T> info = createAtomInfo(atom);
       if (isolationLevel == IsolationLevel.SERIALIZABLE) {
          acquireLock(atom, info, LockState.LOCKED_EXCLUSIVE, false);
@@ -1433,16 +1898,170 @@ public class Transaction {
    }
    
    /**
-    * Enqueues an asynchronous action for the specified atom. The specified runnable future will be
+    * Reads the specified atom using the {@linkplain Engine#OPTIMISTIC optimistic engine}. This
+    * ignores any pending changes in the transaction.
+    *
+    * @param atom an atom
+    * @return the atom's value, as appropriate for the transaction's isolation level
+    * @throws TransactionIsolationException if the atom cannot be read consistently with prior reads
+    *       in this transaction
+    */
+   private <T> T readOptimistically(TransactionalAtom<T> atom) {
+      switch (isolationLevel) {
+         case READ_COMMITTED:
+            return atom.getLatestValue();
+         case SNAPSHOT:
+            TransactionalAtom.Version<T> node = atom.committedAsOf(getOptimisticReadVersion());
+            if (node == null) {
+               // value as of our snapshot has already been purged
+               throw isolationFailure(atom);
+            }
+            return node.value;
+         case SERIALIZABLE:
+            node = readConsistent(atom);
+            readWriteSet.addRead(atom, node);
+            return node.value;
+         default:
+            throw new AssertionError();
+      }
+   }
+   
+   /**
+    * Reads the latest value of the specified atom, which must be consistent with the transaction's
+    * read version. If the atom has been modified since the read version, the read version is
+    * advanced, but only if all prior reads are still valid.
+    *
+    * @param atom an atom
+    * @return the atom's latest value and its version
+    * @throws TransactionIsolationException if the atom has been modified since the transaction's
+    *       read version and the read version could not be advanced
+    */
+   private <T> TransactionalAtom.Version<T> readConsistent(TransactionalAtom<T> atom) {
+      long version = getOptimisticReadVersion();
+      while (true) {
+         TransactionalAtom.Version<T> node = atom.latestCommitted();
+         if (node.version <= version) {
+            return node;
+         }
+         // Try to extend our snapshot. We must query the new version *before* validating so that
+         // any commit that completes after validation gets a newer version.
+         long newVersion = currentVersion();
+         TransactionalAtom<?> invalid = readWriteSet.validateReads();
+         if (invalid != null) {
+            throw isolationFailure(invalid);
+         }
+         optimisticReadVersion = version = newVersion;
+      }
+   }
+   
+   /**
+    * Gets the value for the specified atom using the {@linkplain Engine#OPTIMISTIC optimistic
+    * engine}. If the atom has been modified in this transaction, that last set value is returned.
+    * Like with the locking engine, commute operations are ignored.
+    *
+    * @param atom an atom
+    * @return the atom's value in this transaction
+    * @throws TransactionIsolationException if the atom cannot be read consistently with prior reads
+    *       in this transaction
+    */
+   private <T> T getAtomOptimistically(TransactionalAtom<T> atom) {
+      ReadWriteSet rw = readWriteSet;
+      int w = rw.findWrite(atom);
+      if (w >= 0 && rw.isDirty(w)) {
+         @SuppressWarnings("unchecked")
+         T ret = (T) rw.writeValue(w);
+         return ret;
+      }
+      int r = rw.findRead(atom);
+      if (r >= 0) {
+         @SuppressWarnings("unchecked")
+         T ret = (T) rw.readValue(r);
+         return ret;
+      }
+      return readOptimistically(atom);
+   }
+   
+   /**
+    * Pins the specified atom using the {@linkplain Engine#OPTIMISTIC optimistic engine}. The atom
+    * is added to the read-set, so the transaction will fail to commit if the atom is concurrently
+    * modified.
+    *
+    * @param atom an atom
+    * @return the atom's value in this transaction
+    * @throws TransactionIsolationException if the atom has already been concurrently modified since
+    *    the transaction's read version
+    */
+   private <T> T pinAtomOptimistically(TransactionalAtom<T> atom) {
+      ReadWriteSet rw = readWriteSet;
+      int r = rw.findRead(atom);
+      Object value;
+      if (r >= 0) {
+         value = rw.readValue(r);
+      } else {
+         TransactionalAtom.Version<T> node;
+         if (isolationLevel == IsolationLevel.SERIALIZABLE) {
+            node = readConsistent(atom);
+         } else {
+            node = atom.latestCommitted();
+            if (isolationLevel == IsolationLevel.SNAPSHOT
+                  && node.version > getOptimisticReadVersion()) {
+               throw isolationFailure(atom);
+            }
+         }
+         rw.addRead(atom, node);
+         value = node.value;
+      }
+      int w = rw.findWrite(atom);
+      if (w >= 0 && rw.isDirty(w)) {
+         value = rw.writeValue(w);
+      }
+      @SuppressWarnings("unchecked")
+      T ret = (T) value;
+      return ret;
+   }
+   
+   /**
+    * Sets the value of the specified atom using the {@linkplain Engine#OPTIMISTIC optimistic
+    * engine}. The new value is buffered in the write-set until the transaction commits.
+    *
+    * @param atom an atom
+    * @param newValue the atom's new value
+    * @return the atom's previous value in this transaction
+    * @throws TransactionIsolationException if the atom has already been concurrently modified since
+    *    the transaction's read version
+    */
+   private <T> T setAtomOptimistically(TransactionalAtom<T> atom, T newValue) {
+      atom.validate(newValue);
+      ReadWriteSet rw = readWriteSet;
+      int w = rw.findWrite(atom);
+      T ret;
+      if (w >= 0 && rw.isDirty(w)) {
+         @SuppressWarnings("unchecked")
+         T prev = (T) rw.writeValue(w);
+         ret = prev;
+      } else {
+         ret = getAtomOptimistically(atom);
+         // fail fast, instead of waiting until commit to find the conflict
+         if (isolationLevel != IsolationLevel.READ_COMMITTED
+               && atom.isModifiedSince(getOptimisticReadVersion())) {
+            throw isolationFailure(atom);
+         }
+      }
+      rw.setWrite(rw.writeEntry(atom, savepoint.writeMark), newValue);
+      return ret;
+   }
+   
+   /**
+    * Enqueues an asynchronous action for the specified atom. The specified future will be
     * submitted for execution when the transaction is committed.
     *
     * @param atom an asynchronous atom
-    * @param runnable the runnable future that performs the action
+    * @param future the future that represents the action
     */
    <T> void enqueueAsynchronousAction(AsynchronousAtom<T> atom,
-         RunnableFluentFuture<T> runnable) {
-      Pair<AsynchronousAtom<?>, RunnableFluentFuture<?>> pair =
-            Pair.<AsynchronousAtom<?>, RunnableFluentFuture<?>>of(atom, runnable); 
+         FluentFuture<T> future) {
+      Pair<AsynchronousAtom<?>, FluentFuture<?>> pair =
+            Pair.<AsynchronousAtom<?>, FluentFuture<?>>of(atom, future); 
       savepoint.asyncActions.add(pair);
    }
    
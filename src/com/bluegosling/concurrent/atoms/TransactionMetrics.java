@@ -0,0 +1,114 @@
+package com.bluegosling.concurrent.atoms;
+
+import com.bluegosling.concurrent.DeadlockException;
+
+/**
+ * A service-provider interface for instrumenting transactions. A {@link Transaction.Runner} can
+ * be {@linkplain Transaction.Runner#withMetrics(TransactionMetrics) configured} with an instance of
+ * this interface, to which it reports events about the transactions it runs.
+ *
+ * <p>Of particular interest are aborted attempts. When an attempt fails due to a conflict with a
+ * concurrent transaction, the atom over which the conflict occurred is reported, when known. This
+ * can be used to find "hot" atoms, which cause a disproportionate share of aborts. Such atoms are
+ * good candidates for being split into multiple atoms or for using commute operations instead of
+ * reads and writes.
+ *
+ * <p>Implementations must be thread-safe and should be very cheap since they are invoked on the
+ * hot path of running a transaction. Like
+ * {@link com.bluegosling.concurrent.executors.ExecutorMetrics ExecutorMetrics}, latencies are only
+ * measured for transactions for which {@link #shouldSample()} returns true.
+ *
+ * <p>All methods have default implementations that do nothing, so implementations need only
+ * override the events in which they are interested.
+ *
+ * @see TransactionStats
+ *
+ * @author Joshua Humphries (jhumphries131@gmail.com)
+ */
+public interface TransactionMetrics {
+   /**
+    * A metrics object that ignores all events and never samples transactions.
+    */
+   TransactionMetrics NONE = new TransactionMetrics() {
+   };
+
+   /**
+    * Determines whether the next transaction should be timed. If this returns true, the runner
+    * will record the transaction's latency and commit time via {@link #recordLatency(long)} and
+    * {@link #recordCommitTime(long)}.
+    *
+    * @return true if the next transaction should be timed
+    */
+   default boolean shouldSample() {
+      return false;
+   }
+
+   /**
+    * Called when a transaction commits.
+    *
+    * @param attempts the number of attempts it took to commit, including the successful one
+    */
+   @SuppressWarnings("unused") // args will be used by implementing classes
+   default void transactionCommitted(int attempts) {
+   }
+
+   /**
+    * Called when a transaction finishes without committing. This happens when the transaction
+    * throws an exception or when it has failed too many times due to conflicts.
+    *
+    * @param cause the exception that is thrown from the transaction
+    */
+   @SuppressWarnings("unused") // args will be used by implementing classes
+   default void transactionFailed(Throwable cause) {
+   }
+
+   /**
+    * Called when an attempt is aborted due to a conflict with a concurrent transaction. This is
+    * called whether or not the transaction will be retried.
+    *
+    * @param atom the atom over which the conflict occurred, or {@code null} if it is not known
+    * @param cause the {@link TransactionIsolationException} or {@link DeadlockException} that
+    *       caused the attempt to abort
+    */
+   @SuppressWarnings("unused") // args will be used by implementing classes
+   default void attemptAborted(TransactionalAtom<?> atom, RuntimeException cause) {
+   }
+
+   /**
+    * Called when an aborted transaction is about to be retried.
+    *
+    * @param backoffNanos the number of nanoseconds the transaction will wait before its next
+    *       attempt, as determined by the {@link RetryPolicy}
+    */
+   @SuppressWarnings("unused") // args will be used by implementing classes
+   default void attemptRetried(long backoffNanos) {
+   }
+
+   /**
+    * Called when a transaction switches to serial mode, after failing too many times.
+    *
+    * @see Transaction.Runner#serializeAfter(int)
+    */
+   default void transactionSerialized() {
+   }
+
+   /**
+    * Records the total time taken by a sampled transaction that committed, including all of its
+    * attempts and the time spent waiting between them.
+    *
+    * @param nanos the latency, in nanoseconds
+    */
+   @SuppressWarnings("unused") // args will be used by implementing classes
+   default void recordLatency(long nanos) {
+   }
+
+   /**
+    * Records the time taken by a sampled transaction to commit. This only includes the final,
+    * successful commit operation.
+    *
+    * @param nanos the commit time, in nanoseconds
+    */
+   @SuppressWarnings("unused") // args will be used by implementing classes
+   default void recordCommitTime(long nanos) {
+   }
+}
@@ -0,0 +1,340 @@
+package com.bluegosling.concurrent.atoms;
+
+import com.bluegosling.concurrent.DeadlockException;
+import com.bluegosling.concurrent.executors.LatencyHistogram;
+
+import java.lang.management.ManagementFactory;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.MBeanRegistrationException;
+import javax.management.MBeanServer;
+import javax.management.NotCompliantMBeanException;
+import javax.management.ObjectName;
+
+/**
+ * An implementation of {@link TransactionMetrics} that keeps counters, {@linkplain LatencyHistogram
+ * latency histograms}, and abort counts for each atom. Counters are backed by {@link LongAdder}s so
+ * that they remain cheap even when many threads report events concurrently.
+ *
+ * <p>Latencies are only measured for a sample of transactions. A sample rate of <em>N</em> means
+ * that, on average, one out of every <em>N</em> transactions is timed.
+ *
+ * <p>Aborts are attributed to the atom over which the conflict occurred. The atoms with the most
+ * aborts can be queried via {@link #getHottestAtoms(int)}. Atoms are only weakly referenced, so
+ * tracking them does not prevent them from being garbage collected. Since the per-atom counts are
+ * only updated when an attempt aborts, which is already the slow path, they are guarded by a
+ * simple lock.
+ *
+ * <p>The aggregate statistics can be exported via JMX using {@link #registerMBean(ObjectName)}.
+ *
+ * @author Joshua Humphries (jhumphries131@gmail.com)
+ */
+public class TransactionStats implements TransactionMetrics, TransactionStatsMXBean {
+
+   private final int sampleRate;
+   private final LongAdder committed = new LongAdder();
+   private final LongAdder failed = new LongAdder();
+   private final LongAdder attempts = new LongAdder();
+   private final LongAdder isolationFailures = new LongAdder();
+   private final LongAdder deadlocks = new LongAdder();
+   private final LongAdder retries = new LongAdder();
+   private final LongAdder backoffNanos = new LongAdder();
+   private final LongAdder serialized = new LongAdder();
+   private final LatencyHistogram latency = new LatencyHistogram();
+   private final LatencyHistogram commitTime = new LatencyHistogram();
+   private final Map<TransactionalAtom<?>, LongAdder> abortsByAtom = new WeakHashMap<>();
+
+   /**
+    * Constructs a new object that times every transaction.
+    */
+   public TransactionStats() {
+      this(1);
+   }
+
+   /**
+    * Constructs a new object that times a sample of transactions.
+    *
+    * @param sampleRate the sample rate, such that on average one in this many transactions is timed
+    * @throws IllegalArgumentException if the given sample rate is not positive
+    */
+   public TransactionStats(int sampleRate) {
+      if (sampleRate <= 0) {
+         throw new IllegalArgumentException("sample rate must be positive");
+      }
+      this.sampleRate = sampleRate;
+   }
+
+   /**
+    * Returns the sample rate. On average, one out of this many transactions is timed.
+    *
+    * @return the sample rate
+    */
+   public int getSampleRate() {
+      return sampleRate;
+   }
+
+   @Override
+   public boolean shouldSample() {
+      return sampleRate == 1 || ThreadLocalRandom.current().nextInt(sampleRate) == 0;
+   }
+
+   @Override
+   public void transactionCommitted(int numAttempts) {
+      committed.increment();
+      attempts.add(numAttempts);
+   }
+
+   @Override
+   public void transactionFailed(Throwable cause) {
+      failed.increment();
+   }
+
+   @Override
+   public void attemptAborted(TransactionalAtom<?> atom, RuntimeException cause) {
+      if (cause instanceof DeadlockException) {
+         deadlocks.increment();
+      } else {
+         isolationFailures.increment();
+      }
+      if (atom != null) {
+         LongAdder count;
+         synchronized (abortsByAtom) {
+            count = abortsByAtom.computeIfAbsent(atom, a -> new LongAdder());
+         }
+         count.increment();
+      }
+   }
+
+   @Override
+   public void attemptRetried(long nanos) {
+      retries.increment();
+      if (nanos > 0) {
+         backoffNanos.add(nanos);
+      }
+   }
+
+   @Override
+   public void transactionSerialized() {
+      serialized.increment();
+   }
+
+   @Override
+   public void recordLatency(long nanos) {
+      latency.record(nanos);
+   }
+
+   @Override
+   public void recordCommitTime(long nanos) {
+      commitTime.record(nanos);
+   }
+
+   @Override
+   public long getCommittedCount() {
+      return committed.sum();
+   }
+
+   @Override
+   public long getFailedCount() {
+      return failed.sum();
+   }
+
+   @Override
+   public long getAttemptCount() {
+      return attempts.sum();
+   }
+
+   @Override
+   public long getIsolationFailureCount() {
+      return isolationFailures.sum();
+   }
+
+   @Override
+   public long getDeadlockCount() {
+      return deadlocks.sum();
+   }
+
+   @Override
+   public long getRetryCount() {
+      return retries.sum();
+   }
+
+   @Override
+   public long getBackoffNanos() {
+      return backoffNanos.sum();
+   }
+
+   @Override
+   public long getSerializedCount() {
+      return serialized.sum();
+   }
+
+   @Override
+   public long getSampledCount() {
+      return latency.getCount();
+   }
+
+   @Override
+   public long getLatencyP50() {
+      return latency.getPercentile(50);
+   }
+
+   @Override
+   public long getLatencyP99() {
+      return latency.getPercentile(99);
+   }
+
+   @Override
+   public long getLatencyMax() {
+      return latency.getMax();
+   }
+
+   @Override
+   public long getCommitTimeP50() {
+      return commitTime.getPercentile(50);
+   }
+
+   @Override
+   public long getCommitTimeP99() {
+      return commitTime.getPercentile(99);
+   }
+
+   @Override
+   public long getCommitTimeMax() {
+      return commitTime.getMax();
+   }
+
+   /**
+    * Returns the histogram of latencies for sampled transactions. A transaction's latency includes
+    * all of its attempts and the time spent waiting between them.
+    *
+    * @return the histogram of latencies
+    */
+   public LatencyHistogram getLatency() {
+      return latency;
+   }
+
+   /**
+    * Returns the histogram of commit times for sampled transactions.
+    *
+    * @return the histogram of commit times
+    */
+   public LatencyHistogram getCommitTime() {
+      return commitTime;
+   }
+
+   /**
+    * Returns the number of aborts that were caused by conflicts over the given atom.
+    *
+    * @param atom an atom
+    * @return the number of aborts attributed to the given atom
+    */
+   public long getAbortCount(TransactionalAtom<?> atom) {
+      LongAdder count;
+      synchronized (abortsByAtom) {
+         count = abortsByAtom.get(atom);
+      }
+      return count == null ? 0 : count.sum();
+   }
+
+   /**
+    * Returns the atoms that have caused the most aborts, along with their abort counts, in
+    * decreasing order of abort count.
+    *
+    * @param limit the maximum number of atoms to return
+    * @return the atoms with the most aborts and their abort counts
+    */
+   public List<Map.Entry<TransactionalAtom<?>, Long>> getHottestAtoms(int limit) {
+      List<Map.Entry<TransactionalAtom<?>, Long>> entries;
+      synchronized (abortsByAtom) {
+         entries = new ArrayList<>(abortsByAtom.size());
+         for (Map.Entry<TransactionalAtom<?>, LongAdder> entry : abortsByAtom.entrySet()) {
+            entries.add(new SimpleImmutableEntry<>(entry.getKey(), entry.getValue().sum()));
+         }
+      }
+      entries.sort(Collections.reverseOrder(Comparator.comparing(Map.Entry::getValue)));
+      return entries.size() > limit ? new ArrayList<>(entries.subList(0, limit)) : entries;
+   }
+
+   @Override
+   public List<String> getHotAtoms() {
+      List<String> ret = new ArrayList<>();
+      for (Map.Entry<TransactionalAtom<?>, Long> entry : getHottestAtoms(10)) {
+         ret.add(entry.getKey() + ": " + entry.getValue() + " aborts");
+      }
+      return ret;
+   }
+
+   /**
+    * Clears all counters, histograms, and per-atom abort counts.
+    */
+   @Override
+   public void reset() {
+      committed.reset();
+      failed.reset();
+      attempts.reset();
+      isolationFailures.reset();
+      deadlocks.reset();
+      retries.reset();
+      backoffNanos.reset();
+      serialized.reset();
+      latency.reset();
+      commitTime.reset();
+      synchronized (abortsByAtom) {
+         abortsByAtom.clear();
+      }
+   }
+
+   /**
+    * Registers this object with the platform MBean server, using the given name.
+    *
+    * @param name the name of the MBean
+    * @throws IllegalStateException if an MBean with the given name is already registered
+    */
+   public void registerMBean(ObjectName name) {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      try {
+         server.registerMBean(this, name);
+      } catch (InstanceAlreadyExistsException e) {
+         throw new IllegalStateException(e);
+      } catch (MBeanRegistrationException | NotCompliantMBeanException e) {
+         // should not be possible since this is a compliant MXBean with no registration hooks
+         throw new AssertionError(e);
+      }
+   }
+
+   /**
+    * Unregisters the MBean with the given name from the platform MBean server. If no such MBean is
+    * registered, this does nothing.
+    *
+    * @param name the name of the MBean
+    */
+   public static void unregisterMBean(ObjectName name) {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      try {
+         server.unregisterMBean(name);
+      } catch (InstanceNotFoundException e) {
+         // already unregistered
+      } catch (MBeanRegistrationException e) {
+         throw new AssertionError(e);
+      }
+   }
+
+   @Override
+   public String toString() {
+      return "TransactionStats[committed=" + getCommittedCount() + ", failed=" + getFailedCount()
+            + ", attempts=" + getAttemptCount() + ", isolationFailures="
+            + getIsolationFailureCount() + ", deadlocks=" + getDeadlockCount() + ", retries="
+            + getRetryCount() + ", serialized=" + getSerializedCount() + ", latency=" + latency
+            + ", commitTime=" + commitTime + "]";
+   }
+}
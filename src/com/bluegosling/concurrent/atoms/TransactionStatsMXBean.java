@@ -0,0 +1,132 @@
+package com.bluegosling.concurrent.atoms;
+
+import java.util.List;
+
+/**
+ * The management interface for {@link TransactionStats}, for exporting transaction metrics via
+ * JMX. Latencies are reported in nanoseconds and only reflect sampled transactions.
+ *
+ * @see TransactionStats#registerMBean(javax.management.ObjectName)
+ *
+ * @author Joshua Humphries (jhumphries131@gmail.com)
+ */
+public interface TransactionStatsMXBean {
+   /**
+    * Returns the total number of transactions committed.
+    *
+    * @return the total number of transactions committed
+    */
+   long getCommittedCount();
+
+   /**
+    * Returns the total number of transactions that finished without committing.
+    *
+    * @return the total number of failed transactions
+    */
+   long getFailedCount();
+
+   /**
+    * Returns the total number of attempts, across all committed transactions.
+    *
+    * @return the total number of attempts by committed transactions
+    */
+   long getAttemptCount();
+
+   /**
+    * Returns the total number of attempts aborted due to isolation failures.
+    *
+    * @return the total number of isolation failures
+    */
+   long getIsolationFailureCount();
+
+   /**
+    * Returns the total number of attempts aborted due to deadlocks.
+    *
+    * @return the total number of deadlocks
+    */
+   long getDeadlockCount();
+
+   /**
+    * Returns the total number of retries.
+    *
+    * @return the total number of retries
+    */
+   long getRetryCount();
+
+   /**
+    * Returns the total amount of time, in nanoseconds, that transactions were told to wait
+    * between attempts.
+    *
+    * @return the total backoff time
+    */
+   long getBackoffNanos();
+
+   /**
+    * Returns the total number of transactions that switched to serial mode.
+    *
+    * @return the total number of serialized transactions
+    */
+   long getSerializedCount();
+
+   /**
+    * Returns the number of transactions sampled for timing.
+    *
+    * @return the number of transactions sampled for timing
+    */
+   long getSampledCount();
+
+   /**
+    * Returns the median transaction latency, in nanoseconds.
+    *
+    * @return the median latency
+    */
+   long getLatencyP50();
+
+   /**
+    * Returns the 99th percentile transaction latency, in nanoseconds.
+    *
+    * @return the 99th percentile latency
+    */
+   long getLatencyP99();
+
+   /**
+    * Returns the maximum transaction latency, in nanoseconds.
+    *
+    * @return the maximum latency
+    */
+   long getLatencyMax();
+
+   /**
+    * Returns the median commit time, in nanoseconds.
+    *
+    * @return the median commit time
+    */
+   long getCommitTimeP50();
+
+   /**
+    * Returns the 99th percentile commit time, in nanoseconds.
+    *
+    * @return the 99th percentile commit time
+    */
+   long getCommitTimeP99();
+
+   /**
+    * Returns the maximum commit time, in nanoseconds.
+    *
+    * @return the maximum commit time
+    */
+   long getCommitTimeMax();
+
+   /**
+    * Returns descriptions of the atoms that have caused the most aborts, in decreasing order of
+    * abort count. At most ten atoms are described.
+    *
+    * @return descriptions of the atoms that have caused the most aborts
+    */
+   List<String> getHotAtoms();
+
+   /**
+    * Clears all counters and histograms.
+    */
+   void reset();
+}
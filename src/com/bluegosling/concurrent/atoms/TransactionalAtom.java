@@ -6,6 +6,7 @@ import com.bluegosling.concurrent.locks.HierarchicalLock;
 import com.bluegosling.concurrent.locks.HierarchicalLock.ExclusiveLock;
 import com.bluegosling.concurrent.locks.HierarchicalLock.SharedLock;
 
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 import java.util.function.Predicate;
@@ -25,6 +26,17 @@ import java.util.function.Predicate;
  * potentially multiple concurrent transactions. Transactions that pin the atom's value acquire
  * shared locks; those that modify atom's value acquire exclusive locks. Transactions are restarted
  * if a deadlock is detected when acquiring atoms' locks.
+ * 
+ * <p>Every transactional atom also has a versioned write-lock: a single word that holds the version
+ * number of the atom's latest value and a bit that is set while a commit is installing a new value.
+ * Transactions that use the {@linkplain Transaction.Engine#OPTIMISTIC optimistic engine} never
+ * acquire the {@link HierarchicalLock}. Instead they read atoms without any locking and only
+ * acquire the versioned write-locks of the atoms they modify, and only while committing. Since all
+ * writers, regardless of engine, acquire the versioned write-lock when installing new values, both
+ * kinds of transactions can safely be used with the same atoms. An optimistic transaction will not
+ * commit changes to an atom while the atom's {@link HierarchicalLock} is held by a transaction that
+ * uses the locking engine. But, unlike the locking engine, the optimistic engine does not enforce
+ * the relationship between an atom and its {@linkplain #newComponent() components}.
  */
 public class TransactionalAtom<T> extends AbstractSynchronousAtom<T> {
 
@@ -39,7 +51,7 @@ public class TransactionalAtom<T> extends AbstractSynchronousAtom<T> {
     * @param <T> the type of the atom's value
     * @author Joshua Humphries (jhumphries131@gmail.com)
     */
-   private static class Version<T> {
+   static class Version<T> {
       final T value;
       final long version;
       volatile Version<T> predecessor;
@@ -51,6 +63,16 @@ public class TransactionalAtom<T> extends AbstractSynchronousAtom<T> {
       }
    }
    
+   @SuppressWarnings("rawtypes") // class tokens require raw types
+   private static final AtomicLongFieldUpdater<TransactionalAtom> stampUpdater =
+         AtomicLongFieldUpdater.newUpdater(TransactionalAtom.class, "stamp");
+   
+   /**
+    * The number of times to spin, waiting for a concurrent commit to release an atom's stamp,
+    * before yielding the processor.
+    */
+   private static final int SPINS_BEFORE_YIELD = 64;
+   
    /**
     * The lock used to acquire shared (read) or exclusive (write) access to this atom.
     */
@@ -67,6 +89,13 @@ public class TransactionalAtom<T> extends AbstractSynchronousAtom<T> {
     */
    private volatile Version<T> latest;
    
+   /**
+    * The atom's versioned write-lock. The low bit is set while a commit is in the process of
+    * installing a new value. The remaining bits are the version number of the latest value. So,
+    * when the low bit is clear, this is always twice the version of {@link #latest}.
+    */
+   private volatile long stamp;
+   
    /**
     * Constructs a new atom with a {@code null} value and no validator.
     */
@@ -100,7 +129,10 @@ public class TransactionalAtom<T> extends AbstractSynchronousAtom<T> {
       super(validator);
       validate(value);
       this.lock = lock;
-      latest = new Version<T>(value, Transaction.currentVersion(), null);
+      // The initial value precedes all versions, even one that a concurrent commit may share
+      // with the current version (see VersionClock.SHARED).
+      latest = new Version<T>(value, 0, null);
+      stamp = latest.version << 1;
    }
    
    /**
@@ -175,23 +207,169 @@ public class TransactionalAtom<T> extends AbstractSynchronousAtom<T> {
 
    /**
     * Marks the current atom with a reference to the transaction that is currently modifying it. The
-    * atom is only marked when the transaction is being committed.
+    * atom is only marked when the transaction is being committed. This also acquires the atom's
+    * versioned write-lock, waiting for a concurrent optimistic commit to release it if necessary.
     *
     * @param transaction the transaction that is currently committing data to this atom
     */
    void markForCommit(Transaction transaction) {
       Transaction previous = committer.getAndSet(transaction);
       assert previous == null;
+      lockStamp();
    }
    
    /**
     * Marks the current atom as not being modified. The atom is unmarked once the transaction has
-    * finished committing.
+    * finished committing. This also releases the atom's versioned write-lock.
+    *
+    * @param transaction the transaction that marked this atom for commit
     */
-   void unmark() {
+   void unmark(Transaction transaction) {
       // tolerate multiple unmarks, since transaction both unmarks eagerly when it can
       // but also has fail-safe code that may try to unmark again on failure
-      committer.set(null);
+      if (committer.compareAndSet(transaction, null)) {
+         unlockStamp(latest.version);
+      }
+   }
+   
+   /**
+    * Determines whether the given stamp indicates that the atom is locked.
+    *
+    * @param stamp a value of an atom's versioned write-lock
+    * @return true if the stamp is locked
+    */
+   static boolean isLocked(long stamp) {
+      return (stamp & 1) != 0;
+   }
+   
+   /**
+    * Extracts the version number from the given stamp.
+    *
+    * @param stamp a value of an atom's versioned write-lock
+    * @return the version number of the atom's latest value, as of the stamp
+    */
+   static long version(long stamp) {
+      return stamp >>> 1;
+   }
+   
+   /**
+    * Returns the current value of this atom's versioned write-lock.
+    *
+    * @return the current stamp
+    */
+   long stamp() {
+      return stamp;
+   }
+   
+   /**
+    * Tries to acquire this atom's versioned write-lock. This fails if the lock is already held or
+    * if the current stamp does not match the given one.
+    *
+    * @param expected the expected, unlocked stamp
+    * @return true if the lock was acquired
+    */
+   boolean tryLockStamp(long expected) {
+      assert !isLocked(expected);
+      return stampUpdater.compareAndSet(this, expected, expected | 1);
+   }
+   
+   /**
+    * Acquires this atom's versioned write-lock, waiting for a concurrent commit to release it if
+    * necessary. The lock is only ever held for the duration of installing new values, so this spins
+    * instead of blocking.
+    */
+   private void lockStamp() {
+      for (int spins = 0; ; spins++) {
+         long s = stamp;
+         if (!isLocked(s) && tryLockStamp(s)) {
+            return;
+         }
+         backoff(spins);
+      }
+   }
+   
+   /**
+    * Releases this atom's versioned write-lock, setting its version to the given value.
+    *
+    * @param version the version of the atom's latest value
+    */
+   void unlockStamp(long version) {
+      assert isLocked(stamp);
+      stamp = version << 1;
+   }
+   
+   /**
+    * Waits for a concurrent commit to release an atom's versioned write-lock.
+    *
+    * @param spins the number of times the caller has already waited
+    */
+   static void backoff(int spins) {
+      if (spins >= SPINS_BEFORE_YIELD) {
+         Thread.yield();
+      }
+   }
+   
+   /**
+    * Determines whether a transaction that uses the locking engine holds this atom's lock, or holds
+    * an exclusive lock on one of its ancestors (which also guards this atom). An optimistic
+    * transaction will not commit changes to the atom while this is true.
+    *
+    * @return true if this atom's lock is held in any mode or an ancestor's lock is held in
+    *       exclusive mode
+    */
+   boolean isLockedPessimistically() {
+      // a zero stamp means that this lock or one of its ancestors is held in exclusive mode
+      return lock.isLocked() || lock.tryOptimisticRead() == 0;
+   }
+   
+   /**
+    * Determines whether this atom has been changed since the given version. This also returns true
+    * if a concurrent commit is in the process of changing it.
+    *
+    * @param version a version number
+    * @return true if the atom's latest value is newer than the given version or if a commit is in
+    *       progress
+    */
+   boolean isModifiedSince(long version) {
+      long s = stamp;
+      return isLocked(s) || version(s) > version;
+   }
+   
+   /**
+    * Returns the atom's most recently committed value, along with its version. If a commit is in
+    * the process of installing a new value, this waits for it to finish.
+    *
+    * @return the atom's latest committed version
+    */
+   Version<T> latestCommitted() {
+      for (int spins = 0; ; spins++) {
+         long s = stamp;
+         if (!isLocked(s)) {
+            Version<T> node = latest;
+            if (stamp == s) {
+               return node;
+            }
+         }
+         backoff(spins);
+      }
+   }
+   
+   /**
+    * Returns the atom's value as of the given version. If a commit is in the process of installing
+    * a new value, this waits for it to finish. This returns {@code null} if the atom has been
+    * changed since the given version and the value as of that version has already been purged.
+    *
+    * @param version a version number
+    * @return the atom's value as of the given version, along with that value's actual version, or
+    *       {@code null} if the requested version is no longer available
+    */
+   Version<T> committedAsOf(long version) {
+      for (Version<T> node = latestCommitted(); node != null; node = node.predecessor) {
+         if (node.version <= version) {
+            return node;
+         }
+      }
+      return null;
    }
 
    /**
@@ -214,9 +392,10 @@ public class TransactionalAtom<T> extends AbstractSynchronousAtom<T> {
    
    /**
     * Returns the atom's value at the specified version number. Version numbers are system-wide. The
-    * system version number is incremented every time a transaction is started and every time one is
-    * committed. This method essentially walks the list of versions for this atom and returns the
-    * value for the most recent version that is less than or equal to the specified version.
+    * system version number is advanced every time a transaction is committed (see
+    * {@link VersionClock}). This method essentially walks the list of versions for this atom and
+    * returns the value for the most recent version that is less than or equal to the specified
+    * version.
     * 
     * <p>If this atom is marked by an in-process transaction and the requested version number is
     * greater than the most recent version number associated with the atom, this method will block,
@@ -228,9 +407,13 @@ public class TransactionalAtom<T> extends AbstractSynchronousAtom<T> {
    T getValue(long version) {
       Transaction transaction = committer.get();
       Version<T> node = latest;
-      if (transaction != null && version > node.version) {
-         transaction.awaitCommit(version);
-         node = latest; // re-read latest now that commit is complete
+      if (version > node.version) {
+         if (transaction != null) {
+            transaction.awaitCommit(version);
+         }
+         // re-read latest now that commit is complete (also waiting out any optimistic commit
+         // which could be installing a version that precedes the requested one)
+         node = latestCommitted();
       }
       for (; node != null; node = node.predecessor) {
          if (node.version <= version) {
@@ -309,17 +492,17 @@ public class TransactionalAtom<T> extends AbstractSynchronousAtom<T> {
       if (current == null) {
          ExclusiveLock exclusive = lock.exclusiveLock();
          try {
-            oldValue = latest.value;
-            newValue = function.apply(oldValue);
-            if (newValue == oldValue) {
-               return oldValue;
-            }
-            validate(newValue);
-            long version = Transaction.pinNewVersion();
-            try {
-               addValue(newValue, version, Transaction.oldestVersion());
-            } finally {
-               Transaction.unpinVersion(version);
+            while (true) {
+               Version<T> node = latest;
+               oldValue = node.value;
+               newValue = function.apply(oldValue);
+               if (newValue == oldValue) {
+                  return oldValue;
+               }
+               validate(newValue);
+               if (publish(node, newValue)) {
+                  break;
+               }
             }
          } finally {
             exclusive.unlock();
@@ -374,17 +557,17 @@ public class TransactionalAtom<T> extends AbstractSynchronousAtom<T> {
          T oldValue, newValue;
          ExclusiveLock exclusive = lock.exclusiveLock();
          try {
-            oldValue = latest.value;
-            newValue = function.apply(oldValue);
-            if (newValue == oldValue) {
-               return FluentFuture.completedFuture(oldValue);
-            }
-            validate(newValue);
-            long version = Transaction.pinNewVersion();
-            try {
-               addValue(newValue, version, Transaction.oldestVersion());
-            } finally {
-               Transaction.unpinVersion(version);
+            while (true) {
+               Version<T> node = latest;
+               oldValue = node.value;
+               newValue = function.apply(oldValue);
+               if (newValue == oldValue) {
+                  return FluentFuture.completedFuture(oldValue);
+               }
+               validate(newValue);
+               if (publish(node, newValue)) {
+                  break;
+               }
             }
          } finally {
             exclusive.unlock();
@@ -420,15 +603,15 @@ public class TransactionalAtom<T> extends AbstractSynchronousAtom<T> {
          T oldValue;
          ExclusiveLock exclusive = lock.exclusiveLock();
          try {
-            oldValue = latest.value;
-            if (newValue == oldValue) {
-               return oldValue;
-            }
-            long version = Transaction.pinNewVersion();
-            try {
-               addValue(newValue, version, Transaction.oldestVersion());
-            } finally {
-               Transaction.unpinVersion(version);
+            while (true) {
+               Version<T> node = latest;
+               oldValue = node.value;
+               if (newValue == oldValue) {
+                  return oldValue;
+               }
+               if (publish(node, newValue)) {
+                  break;
+               }
             }
          } finally {
             exclusive.unlock();
@@ -441,7 +624,34 @@ public class TransactionalAtom<T> extends AbstractSynchronousAtom<T> {
    }
 
    /**
-    * Adds a new value to this atom. The caller must hold this atom's lock in exclusive mode. Any
+    * Installs a new value for this atom outside of a transaction. The caller must hold this atom's
+    * lock in exclusive mode. That prevents concurrent changes from other non-transactional
+    * operations and from transactions that use the locking engine. But an optimistic transaction
+    * may have committed a new value after the caller read the given latest version but before the
+    * caller acquired the lock. In that case, nothing is installed and the caller must re-compute
+    * the new value.
+    *
+    * @param expected the latest version, from which the new value was computed
+    * @param newValue the atom's new value
+    * @return true if the value was installed or false if the latest version has changed
+    */
+   private boolean publish(Version<T> expected, T newValue) {
+      lockStamp();
+      if (latest != expected) {
+         unlockStamp(latest.version);
+         return false;
+      }
+      try {
+         long version = Transaction.newCommitVersion();
+         addValue(newValue, version, Transaction.oldestVersion(version));
+      } finally {
+         unlockStamp(latest.version);
+      }
+      return true;
+   }
+
+   /**
+    * Adds a new value to this atom. The caller must hold this atom's versioned write-lock. Any
     * versions older than the given oldest active version number will be purged.
     *
     * @param newValue the atom's new value
@@ -450,8 +660,8 @@ public class TransactionalAtom<T> extends AbstractSynchronousAtom<T> {
     * @return the atom's most recent value prior to adding this new one
     */
    T addValue(T newValue, long version, long oldestVersion) {
-      // must hold exclusive lock on this atom when calling this method!
-      assert lock.getExclusiveHolder() == Thread.currentThread();
+      // must hold versioned write-lock on this atom when calling this method!
+      assert isLocked(stamp);
       
       assert oldestVersion <= version;
       Version<T> node = latest;
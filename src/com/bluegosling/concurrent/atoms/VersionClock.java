@@ -0,0 +1,87 @@
+package com.bluegosling.concurrent.atoms;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A strategy for advancing the global version clock. Every value committed to a
+ * {@link TransactionalAtom} is associated with a version number, drawn from a single clock that is
+ * shared by all transactions. Transactions use the clock to decide which values they can see and to
+ * detect conflicting concurrent commits.
+ *
+ * <p>The clock is a hotspot: every commit must advance it. With many cores committing concurrently,
+ * contention over the clock can limit throughput. The strategies here trade off how much
+ * contention they incur against how much information a version number conveys.
+ *
+ * <p>The strategy can be changed at any time via {@link Transaction#setVersionClock(VersionClock)}.
+ * All strategies operate on the same underlying counter, so version numbers remain monotonic when
+ * the strategy changes.
+ *
+ * @author Joshua Humphries (jhumphries131@gmail.com)
+ */
+public enum VersionClock {
+   /**
+    * Every commit atomically increments the clock, so no two commits share a version. This is the
+    * default. Since the commit version is always exactly one more than the prior commit's version,
+    * an {@linkplain Transaction.Engine#OPTIMISTIC optimistic} transaction can skip validation of
+    * its read-set when no other commit has happened since it started.
+    */
+   INCREMENT {
+      @Override
+      long advance(AtomicLong clock) {
+         return clock.incrementAndGet();
+      }
+
+      @Override
+      boolean isUnique() {
+         return true;
+      }
+   },
+
+   /**
+    * Every commit makes a single attempt to increment the clock. If the attempt fails, because a
+    * concurrent commit advanced the clock first, the commit shares the other commit's version
+    * instead of retrying. This is the "GV4" strategy described for TL2.
+    *
+    * <p>This bounds the cost of a commit to a single compare-and-set of the clock, no matter how
+    * many threads are committing. Sharing a version is safe because a commit only draws its
+    * version after it has locked all of the atoms it will modify. So two commits that share a
+    * version cannot modify the same atoms, and a reader whose read version is the shared version
+    * will wait for any of the atoms that are still being installed. The cost is that a version
+    * number no longer uniquely identifies a commit, so optimistic transactions must always
+    * validate their read-sets.
+    */
+   SHARED {
+      @Override
+      long advance(AtomicLong clock) {
+         long current = clock.get();
+         long next = current + 1;
+         if (clock.compareAndSet(current, next)) {
+            return next;
+         }
+         // someone else advanced the clock, so it is now greater than current
+         return clock.get();
+      }
+
+      @Override
+      boolean isUnique() {
+         return false;
+      }
+   };
+
+   /**
+    * Advances the given clock and returns a version number for a commit. The caller must already
+    * hold the versioned write-locks for all atoms that it will modify.
+    *
+    * @param clock the global clock
+    * @return the version number for the commit
+    */
+   abstract long advance(AtomicLong clock);
+
+   /**
+    * Determines whether versions returned by {@link #advance(AtomicLong)} are unique. If so, each
+    * commit gets a version exactly one greater than the previous commit.
+    *
+    * @return true if every commit gets a distinct version
+    */
+   abstract boolean isUnique();
+}
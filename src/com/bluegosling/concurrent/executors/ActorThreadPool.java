@@ -85,6 +85,7 @@ public class ActorThreadPool<T> implements SerializingExecutor<T> {
       private ThreadFactory threadFactory = Executors.defaultThreadFactory();
       private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
       private Duration maxBatchDuration = DEFAULT_MAX_BATCH_DURATION;
+      private ExecutorMetrics metrics = ExecutorMetrics.NONE;
       
       Builder() {
       }
@@ -123,10 +124,15 @@ public class ActorThreadPool<T> implements SerializingExecutor<T> {
          return this;
       }
       
+      public Builder setMetrics(ExecutorMetrics metrics) {
+         this.metrics = requireNonNull(metrics);
+         return this;
+      }
+      
       public <T> ActorThreadPool<T> build() {
          return new ActorThreadPool<>(corePoolSize, maximumPoolSize, keepAliveDuration.length(),
                keepAliveDuration.unit(), threadFactory, maxBatchSize, maxBatchDuration.length(),
-               maxBatchDuration.unit());
+               maxBatchDuration.unit(), metrics);
       }
    }
    
@@ -208,6 +214,11 @@ public class ActorThreadPool<T> implements SerializingExecutor<T> {
     */
    final long maxBatchDurationNanos;
    
+   /**
+    * The metrics to which task submission and execution events are reported.
+    */
+   final ExecutorMetrics metrics;
+   
    /**
     * Creates a new thread pool with the given size. Idle threads are retained for 30 seconds before
     * terminating. Threads are created using a {@linkplain Executors#defaultThreadFactory() default
@@ -321,6 +332,29 @@ public class ActorThreadPool<T> implements SerializingExecutor<T> {
    public ActorThreadPool(int corePoolSize, int maximumPoolSize, long keepAliveTime,
          TimeUnit keepAliveUnit, ThreadFactory threadFactory, int maxBatchSize,
          long maxBatchDuration, TimeUnit maxBatchDurationUnit) {
+      this(corePoolSize, maximumPoolSize, keepAliveTime, keepAliveUnit, threadFactory,
+            maxBatchSize, maxBatchDuration, maxBatchDurationUnit, ExecutorMetrics.NONE);
+   }
+
+   /**
+    * Creates a new thread pool with the given size, keep-alive time, thread factory, and maximum
+    * batch size and duration, that reports events to the given metrics. Events are reported using
+    * the actor as the key.
+    *
+    * @param corePoolSize the size of the core pool
+    * @param maximumPoolSize the maximum number of threads allowed in the pool
+    * @param keepAliveTime the duration for which an idle thread is retained
+    * @param keepAliveUnit the unit for the keep-alive time
+    * @param threadFactory the factory used to create worker threads
+    * @param maxBatchSize the maximum size of a batch of tasks processed for a single worker
+    * @param maxBatchDuration the maximum duration for processing a batch of tasks for a single
+    *       worker
+    * @param maxBatchDurationUnit the unit for the maximum batch duration
+    * @param metrics the metrics to which task submission and execution events are reported
+    */
+   public ActorThreadPool(int corePoolSize, int maximumPoolSize, long keepAliveTime,
+         TimeUnit keepAliveUnit, ThreadFactory threadFactory, int maxBatchSize,
+         long maxBatchDuration, TimeUnit maxBatchDurationUnit, ExecutorMetrics metrics) {
       if (corePoolSize < 0) {
          throw new IllegalArgumentException("corePoolSize must be non-negative");
       }
@@ -340,6 +374,7 @@ public class ActorThreadPool<T> implements SerializingExecutor<T> {
          throw new IllegalArgumentException("maxBatchDuration must be non-negative");
       }
       requireNonNull(threadFactory);
+      this.metrics = requireNonNull(metrics);
       this.poolSizeLimits = poolSizeLimits(corePoolSize, maximumPoolSize);
       this.keepAliveNanos = keepAliveUnit.toNanos(keepAliveTime);
       this.threadFactory = threadFactory;
@@ -361,9 +396,10 @@ public class ActorThreadPool<T> implements SerializingExecutor<T> {
    public void execute(T t, Runnable task) {
       requireNonNull(t);
       requireNonNull(task);
+      task = MeteredTask.submitted(task, t, metrics);
       while (true) {
          if (isShutdown()) {
-            throw new RejectedExecutionException();
+            throw rejected(t);
          }
          ActorQueue<T> queue = actorQueues.get(t);
          if (queue == null) {
@@ -375,16 +411,23 @@ public class ActorThreadPool<T> implements SerializingExecutor<T> {
                   return;
                } else {
                   actorQueues.remove(t, queue);
-                  throw new RejectedExecutionException();
+                  throw rejected(t);
                }
             }
             queue = existing;
          }
-         if (queue.add(task)) {
+         boolean added;
+         try {
+            added = queue.add(task);
+         } catch (RejectedExecutionException e) {
+            metrics.taskRejected(t);
+            throw e;
+         }
+         if (added) {
             while (true) {
                if (isShutdown() && queue.remove(task)) {
                   // we were racing with shutdown
-                  throw new RejectedExecutionException();
+                  throw rejected(t);
                }
                Worker<T> w = queue.getWorker();
                // worker could be null if the thread that added first task to the queue is still
@@ -402,6 +445,17 @@ public class ActorThreadPool<T> implements SerializingExecutor<T> {
          actorQueues.remove(t, queue);
       }
    }
+   
+   /**
+    * Reports a rejected task for the given actor and returns the exception to throw.
+    *
+    * @param t the actor
+    * @return the exception to throw, to indicate that the task was rejected
+    */
+   private RejectedExecutionException rejected(T t) {
+      metrics.taskRejected(t);
+      return new RejectedExecutionException();
+   }
 
    /**
     * Assigns the given new actor to a worker. If adequate worker threads exist in the pool (or if
@@ -802,7 +856,11 @@ public class ActorThreadPool<T> implements SerializingExecutor<T> {
       try {
          sync.shutdownWhileLocked();
          for (ActorQueue<T> queue : actorQueues.values()) {
-            tasks.put(queue.actor, queue.drain());
+            List<Runnable> drained = queue.drain();
+            for (int i = 0, len = drained.size(); i < len; i++) {
+               metrics.taskRejected(queue.actor);
+            }
+            tasks.put(queue.actor, MeteredTask.unwrapAll(drained));
          }
       } finally {
          sync.unlock(sync.getThreadCount());
@@ -1506,7 +1564,7 @@ public class ActorThreadPool<T> implements SerializingExecutor<T> {
        */
       void runTask() {
          try {
-            current.run();
+            MeteredTask.run(current, actor, owner.metrics);
          } finally {
             owner.completedTaskCount.increment();
             current = null;
@@ -1911,6 +1969,7 @@ public class ActorThreadPool<T> implements SerializingExecutor<T> {
                stealer.actors.add(actor);
                actor.setWorker(stealer);
                owner.stealCount.increment();
+               owner.metrics.taskStolen(actor.actor);
                return actor;
             }
          }
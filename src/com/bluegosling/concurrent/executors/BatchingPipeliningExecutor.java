@@ -0,0 +1,354 @@
+package com.bluegosling.concurrent.executors;
+
+import static java.util.Objects.requireNonNull;
+
+import com.bluegosling.concurrent.Cancellable;
+import com.bluegosling.concurrent.fluent.FluentFuture;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * An executor that coalesces items, submitted for a key, into batches and then delivers each batch
+ * to a single drain call. This is useful for processing bursts of small events, like cache
+ * invalidations, where handling many events at once is much cheaper than handling each one
+ * individually.
+ *
+ * <p>Items for a key are accumulated until either the maximum batch size is reached or the oldest
+ * buffered item has waited for the maximum linger time. Either way, a batch of up to the maximum
+ * batch size is then delivered to the drain function. Like a {@link PipeliningExecutor}, calls to
+ * the drain function for a given key are sequential (never concurrent) and deliver items in the
+ * order they were {@linkplain #add(Object, Object) added}. Batches for different keys can be
+ * drained concurrently.
+ *
+ * <p>Also like a {@link PipeliningExecutor}, this executor does not provide its own thread pool.
+ * Drain calls are run by a wrapped executor, and linger deadlines are tracked using a wrapped
+ * scheduled executor (which can be the same object). If the maximum linger time is zero, items are
+ * never deliberately held back: a drain is scheduled as soon as an item is added, and the drain
+ * call includes all items (up to the maximum batch size) added before it starts. So batches
+ * naturally grow when the drain function cannot keep up with the rate of additions.
+ *
+ * <p>If the drain function throws an exception, the items in that batch are lost. The exception is
+ * handled in the same way as one thrown by a task run by a {@link PipeliningExecutor}. If the
+ * wrapped executor rejects a drain call, the affected items remain buffered and another drain is
+ * attempted after the maximum linger time.
+ *
+ * @param <K> the type of keys
+ * @param <E> the type of items
+ *
+ * @author Joshua Humphries (jhumphries131@gmail.com)
+ */
+public class BatchingPipeliningExecutor<K, E> {
+
+   final PipeliningExecutor<K> pipeliner;
+   final ScheduledExecutorService timer;
+   final BiConsumer<? super K, ? super List<E>> drain;
+   final int maxBatchSize;
+   final long maxLingerNanos;
+   final ConcurrentMap<K, Batch> batches = new ConcurrentHashMap<>();
+
+   /**
+    * Constructs a new executor that delivers batches to the given drain function.
+    *
+    * @param executor the executor that runs drain calls
+    * @param timer the executor used to track linger deadlines
+    * @param maxBatchSize the maximum number of items delivered in a single drain call
+    * @param maxLinger the maximum amount of time an item is buffered before it is drained
+    * @param unit the unit for {@code maxLinger}
+    * @param drain the drain function, which accepts a batch of items
+    * @throws IllegalArgumentException if the maximum batch size is not positive or the maximum
+    *       linger time is negative
+    */
+   public BatchingPipeliningExecutor(Executor executor, ScheduledExecutorService timer,
+         int maxBatchSize, long maxLinger, TimeUnit unit, Consumer<? super List<E>> drain) {
+      this(ignoringKey(drain), executor, timer, maxBatchSize, maxLinger, unit);
+   }
+
+   private BatchingPipeliningExecutor(BiConsumer<? super K, ? super List<E>> drain,
+         Executor executor, ScheduledExecutorService timer, int maxBatchSize, long maxLinger,
+         TimeUnit unit) {
+      if (maxBatchSize <= 0) {
+         throw new IllegalArgumentException("Max batch size must be positive");
+      }
+      if (maxLinger < 0) {
+         throw new IllegalArgumentException("Max linger must not be negative");
+      }
+      // Each drain call is a single task, so we don't need the pipeliner to do its own batching.
+      // We keep its default batch parameters so a busy key doesn't starve others.
+      this.pipeliner = new PipeliningExecutor<>(executor);
+      this.timer = requireNonNull(timer);
+      this.maxBatchSize = maxBatchSize;
+      this.maxLingerNanos = unit.toNanos(maxLinger);
+      this.drain = requireNonNull(drain);
+   }
+
+   /**
+    * Creates a new executor that delivers batches to the given drain function, along with the key
+    * with which each batch is associated.
+    *
+    * @param executor the executor that runs drain calls
+    * @param timer the executor used to track linger deadlines
+    * @param maxBatchSize the maximum number of items delivered in a single drain call
+    * @param maxLinger the maximum amount of time an item is buffered before it is drained
+    * @param unit the unit for {@code maxLinger}
+    * @param drain the drain function, which accepts the key and a batch of items for that key
+    * @return a new batching executor
+    * @throws IllegalArgumentException if the maximum batch size is not positive or the maximum
+    *       linger time is negative
+    */
+   public static <K, E> BatchingPipeliningExecutor<K, E> withKeyedDrain(Executor executor,
+         ScheduledExecutorService timer, int maxBatchSize, long maxLinger, TimeUnit unit,
+         BiConsumer<? super K, ? super List<E>> drain) {
+      return new BatchingPipeliningExecutor<>(drain, executor, timer, maxBatchSize, maxLinger,
+            unit);
+   }
+
+   private static <K, E> BiConsumer<K, List<E>> ignoringKey(Consumer<? super List<E>> drain) {
+      requireNonNull(drain);
+      return (k, items) -> drain.accept(items);
+   }
+
+   /**
+    * Adds an item for the given key. The item will be delivered to the drain function in a batch
+    * with other items for the same key.
+    *
+    * @param key the key
+    * @param item the item
+    * @throws NullPointerException if the given key is null
+    */
+   public void add(K key, E item) {
+      requireNonNull(key);
+      while (true) {
+         Batch b = batches.computeIfAbsent(key, Batch::new);
+         synchronized (b) {
+            if (b.retired) {
+               // concurrently drained and removed; try again with a new batch
+               continue;
+            }
+            b.items.add(item);
+            if (b.pendingDrains == 0) {
+               if (b.items.size() >= maxBatchSize || maxLingerNanos == 0) {
+                  b.cancelTimer();
+                  b.submitDrain(false);
+               } else if (b.timer == null) {
+                  b.scheduleTimer();
+               }
+            }
+            return;
+         }
+      }
+   }
+
+   /**
+    * Drains all items buffered for the given key without waiting for the maximum linger time. The
+    * returned future completes after all items buffered for the key at the time of the call have
+    * been delivered to the drain function.
+    *
+    * @param key the key
+    * @return a future that completes when all buffered items for the key have been drained
+    */
+   public FluentFuture<Void> flush(K key) {
+      requireNonNull(key);
+      Batch b = batches.get(key);
+      if (b != null) {
+         synchronized (b) {
+            if (!b.retired && !b.items.isEmpty()) {
+               b.cancelTimer();
+               b.submitDrain(true);
+            }
+         }
+      }
+      // tasks for a key run sequentially, so this completes after the drain above and any others
+      // that were already pending
+      return pipeliner.submit(key, () -> {});
+   }
+
+   /**
+    * Returns the number of items currently buffered for the given key.
+    *
+    * @param key the key
+    * @return the number of buffered items
+    */
+   public int getBufferedCount(K key) {
+      Batch b = batches.get(key);
+      if (b == null) {
+         return 0;
+      }
+      synchronized (b) {
+         return b.items.size();
+      }
+   }
+
+   /**
+    * The buffered items for a single key. All mutable state is guarded by the batch's intrinsic
+    * lock. A batch is retired and removed from the map when it is empty and has no pending drains,
+    * so that the map does not grow without bound as keys come and go.
+    *
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    */
+   private class Batch {
+      final K key;
+      List<E> items = new ArrayList<>();
+      int pendingDrains;
+      ScheduledFuture<?> timer;
+      int timerGeneration;
+      boolean retired;
+
+      Batch(K key) {
+         this.key = key;
+      }
+
+      void scheduleTimer() {
+         scheduleTimer(maxLingerNanos);
+      }
+
+      void scheduleTimer(long delayNanos) {
+         assert Thread.holdsLock(this);
+         int generation = ++timerGeneration;
+         timer = BatchingPipeliningExecutor.this.timer.schedule(() -> lingerExpired(generation),
+               delayNanos, TimeUnit.NANOSECONDS);
+      }
+
+      void cancelTimer() {
+         assert Thread.holdsLock(this);
+         if (timer != null) {
+            timer.cancel(false);
+            timer = null;
+         }
+      }
+
+      synchronized void lingerExpired(int generation) {
+         if (generation != timerGeneration || timer == null) {
+            // stale timer
+            return;
+         }
+         timer = null;
+         if (!retired && pendingDrains == 0 && !items.isEmpty()) {
+            submitDrain(false);
+         }
+      }
+
+      /**
+       * Submits a drain call. If the wrapped executor rejects it, the task is cancelled before
+       * this method returns (re-entering this batch's lock).
+       */
+      void submitDrain(boolean all) {
+         assert Thread.holdsLock(this);
+         pendingDrains++;
+         pipeliner.execute(key, new DrainTask(this, all));
+      }
+
+      /**
+       * Called after a drain finishes taking items, to schedule the next drain or retire this
+       * batch.
+       */
+      void drained() {
+         assert Thread.holdsLock(this);
+         if (--pendingDrains > 0) {
+            return;
+         }
+         if (items.isEmpty()) {
+            cancelTimer();
+            retired = true;
+            batches.remove(key, this);
+         } else if (items.size() >= maxBatchSize || maxLingerNanos == 0) {
+            submitDrain(false);
+         } else if (timer == null) {
+            scheduleTimer();
+         }
+      }
+
+      /**
+       * Removes and returns the next batch of items, or {@code null} if there are none.
+       */
+      List<E> take() {
+         assert Thread.holdsLock(this);
+         int sz = items.size();
+         if (sz == 0) {
+            return null;
+         }
+         List<E> ret;
+         if (sz <= maxBatchSize) {
+            ret = items;
+            items = new ArrayList<>();
+         } else {
+            List<E> head = items.subList(0, maxBatchSize);
+            ret = new ArrayList<>(head);
+            head.clear();
+         }
+         return Collections.unmodifiableList(ret);
+      }
+   }
+
+   /**
+    * A drain call, submitted to the underlying pipelining executor. If the task is cancelled
+    * because the wrapped executor rejected it, the items remain buffered and we retry after the
+    * maximum linger time.
+    *
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    */
+   private class DrainTask implements Runnable, Cancellable {
+      private final Batch batch;
+      private final boolean all;
+
+      DrainTask(Batch batch, boolean all) {
+         this.batch = batch;
+         this.all = all;
+      }
+
+      @Override
+      public void run() {
+         while (true) {
+            List<E> items;
+            boolean more;
+            synchronized (batch) {
+               items = batch.take();
+               more = all && !batch.items.isEmpty();
+               if (!more) {
+                  batch.drained();
+               }
+            }
+            if (items != null) {
+               boolean failed = true;
+               try {
+                  drain.accept(batch.key, items);
+                  failed = false;
+               } finally {
+                  if (failed && more) {
+                     synchronized (batch) {
+                        batch.drained();
+                     }
+                  }
+               }
+            }
+            if (!more) {
+               return;
+            }
+         }
+      }
+
+      @Override
+      public boolean cancel(boolean mayInterrupt) {
+         synchronized (batch) {
+            if (--batch.pendingDrains == 0 && !batch.items.isEmpty() && batch.timer == null) {
+               // Retry later. We don't retry right away, even if max linger is zero, since the
+               // wrapped executor may still be saturated or shutting down.
+               batch.scheduleTimer(Math.max(maxLingerNanos, TimeUnit.MILLISECONDS.toNanos(1)));
+            } else if (batch.pendingDrains == 0 && batch.items.isEmpty()) {
+               batch.retired = true;
+               batches.remove(batch.key, batch);
+            }
+         }
+         return true;
+      }
+   }
+}
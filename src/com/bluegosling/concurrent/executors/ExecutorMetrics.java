@@ -0,0 +1,151 @@
+package com.bluegosling.concurrent.executors;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * A service-provider interface for instrumenting executors. The executors in this package that
+ * maintain their own queues ({@link PipeliningExecutor}, {@link ActorThreadPool}, and
+ * {@link ThreadLimitingExecutorService}) accept an instance of this interface and report events
+ * about task submission and execution to it. Other executors can be instrumented by way of an
+ * {@link InterceptingExecutorService} and the {@linkplain #asInterceptor() interceptor} returned
+ * from this interface.
+ *
+ * <p>Events are associated with a key. For {@link SerializingExecutor}s, the key is the pipeline
+ * key (or actor) with which a task is associated. For other executors, the key is always
+ * {@code null}.
+ *
+ * <p>Implementations must be thread-safe and should be very cheap since they are invoked on the
+ * hot path of task submission and execution. Counting events is cheap. Measuring latencies,
+ * however, requires calls to {@link System#nanoTime()} which may be comparatively expensive. So
+ * latencies are only measured for tasks for which {@link #shouldSample()} returns true. An
+ * implementation that only needs counters can return false from that method to avoid the expense
+ * of timing tasks altogether.
+ *
+ * <p>All methods have default implementations that do nothing, so implementations need only
+ * override the events in which they are interested.
+ *
+ * @see ExecutorStats
+ *
+ * @author Joshua Humphries (jhumphries131@gmail.com)
+ */
+public interface ExecutorMetrics {
+   /**
+    * A metrics object that ignores all events and never samples tasks.
+    */
+   ExecutorMetrics NONE = new ExecutorMetrics() {
+   };
+
+   /**
+    * Determines whether the next submitted task should be timed. If this returns true, the
+    * executor will record the task's queueing delay and run time via
+    * {@link #recordQueueDelay(Object, long)} and {@link #recordRunTime(Object, long)}.
+    *
+    * @return true if the next task should be timed
+    */
+   default boolean shouldSample() {
+      return false;
+   }
+
+   /**
+    * Called when a task is accepted by the executor.
+    *
+    * @param key the key associated with the task
+    */
+   @SuppressWarnings("unused") // args will be used by implementing classes
+   default void taskSubmitted(Object key) {
+   }
+
+   /**
+    * Called when a task is rejected. This can happen when the task is first submitted or later,
+    * after it was accepted, if a wrapped executor rejects it. This is also called for tasks that
+    * are removed from a queue without being run, such as when an executor is shutdown or a
+    * pipeline is aborted. Either way, the task will have first been reported via
+    * {@link #taskSubmitted(Object)}.
+    *
+    * @param key the key associated with the task
+    */
+   @SuppressWarnings("unused") // args will be used by implementing classes
+   default void taskRejected(Object key) {
+   }
+
+   /**
+    * Called immediately before a task is run.
+    *
+    * @param key the key associated with the task
+    */
+   @SuppressWarnings("unused") // args will be used by implementing classes
+   default void taskStarted(Object key) {
+   }
+
+   /**
+    * Called immediately after a task is run.
+    *
+    * @param key the key associated with the task
+    * @param failed true if the task threw an exception
+    */
+   @SuppressWarnings("unused") // args will be used by implementing classes
+   default void taskFinished(Object key, boolean failed) {
+   }
+
+   /**
+    * Called when work associated with the given key is stolen by an idle worker thread from a
+    * busy one.
+    *
+    * @param key the key whose work was stolen
+    */
+   @SuppressWarnings("unused") // args will be used by implementing classes
+   default void taskStolen(Object key) {
+   }
+
+   /**
+    * Records the amount of time that a sampled task waited in a queue before it started.
+    *
+    * @param key the key associated with the task
+    * @param nanos the queueing delay, in nanoseconds
+    */
+   @SuppressWarnings("unused") // args will be used by implementing classes
+   default void recordQueueDelay(Object key, long nanos) {
+   }
+
+   /**
+    * Records the amount of time that a sampled task took to run.
+    *
+    * @param key the key associated with the task
+    * @param nanos the run time, in nanoseconds
+    */
+   @SuppressWarnings("unused") // args will be used by implementing classes
+   default void recordRunTime(Object key, long nanos) {
+   }
+
+   /**
+    * Returns an interceptor that reports events to this metrics object. The interceptor can only
+    * observe execution of a task, not its submission. So it reports when tasks start and finish and
+    * records the run time of sampled tasks. All events are reported with a {@code null} key.
+    *
+    * @return an interceptor that reports events to this metrics object
+    *
+    * @see InterceptingExecutorService
+    */
+   default InterceptingExecutorService.Interceptor asInterceptor() {
+      return new InterceptingExecutorService.Interceptor() {
+         @Override
+         public <T> T intercept(ExecutorService delegate, Callable<T> task) throws Exception {
+            boolean sampled = shouldSample();
+            long start = sampled ? System.nanoTime() : 0;
+            boolean failed = true;
+            taskStarted(null);
+            try {
+               T ret = task.call();
+               failed = false;
+               return ret;
+            } finally {
+               if (sampled) {
+                  recordRunTime(null, System.nanoTime() - start);
+               }
+               taskFinished(null, failed);
+            }
+         }
+      };
+   }
+}
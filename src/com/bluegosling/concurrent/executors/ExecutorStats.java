@@ -0,0 +1,493 @@
+package com.bluegosling.concurrent.executors;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.MBeanRegistrationException;
+import javax.management.MBeanServer;
+import javax.management.NotCompliantMBeanException;
+import javax.management.ObjectName;
+
+/**
+ * An implementation of {@link ExecutorMetrics} that keeps counters and {@linkplain LatencyHistogram
+ * latency histograms}. Counters are backed by {@link LongAdder}s so that they remain cheap even
+ * when many threads report events concurrently.
+ *
+ * <p>Latencies are only measured for a sample of tasks. A sample rate of <em>N</em> means that,
+ * on average, one out of every <em>N</em> tasks is timed. A sample rate of one means that every
+ * task is timed. Sampling keeps the overhead of instrumentation very low, since the bulk of the
+ * cost of timing a task is in the calls to {@link System#nanoTime()}.
+ *
+ * <p>Statistics can optionally be tracked for each key, in addition to the aggregate statistics
+ * for the whole executor. This is useful with {@link SerializingExecutor}s, for observing per-key
+ * queue depths and latencies. Since keys are retained until {@linkplain #removeKey(Object)
+ * removed}, this should only be enabled when the set of keys is bounded. Per-key histograms are
+ * allocated lazily, the first time a sampled task for the key is recorded.
+ *
+ * <p>The aggregate statistics can be exported via JMX using {@link #registerMBean(ObjectName)}.
+ *
+ * @author Joshua Humphries (jhumphries131@gmail.com)
+ */
+public class ExecutorStats implements ExecutorMetrics, ExecutorStatsMXBean {
+
+   private final int sampleRate;
+   private final Counters total = new Counters();
+   private final ConcurrentMap<Object, Counters> perKey;
+
+   /**
+    * Constructs a new object that tracks aggregate statistics and times every task.
+    */
+   public ExecutorStats() {
+      this(1, false);
+   }
+
+   /**
+    * Constructs a new object that tracks aggregate statistics and times a sample of tasks.
+    *
+    * @param sampleRate the sample rate, such that on average one in this many tasks is timed
+    * @throws IllegalArgumentException if the given sample rate is not positive
+    */
+   public ExecutorStats(int sampleRate) {
+      this(sampleRate, false);
+   }
+
+   /**
+    * Constructs a new object that times a sample of tasks and optionally tracks statistics for
+    * each key.
+    *
+    * @param sampleRate the sample rate, such that on average one in this many tasks is timed
+    * @param trackKeys if true, statistics are tracked for each key in addition to aggregate
+    *       statistics
+    * @throws IllegalArgumentException if the given sample rate is not positive
+    */
+   public ExecutorStats(int sampleRate, boolean trackKeys) {
+      if (sampleRate <= 0) {
+         throw new IllegalArgumentException("sample rate must be positive");
+      }
+      this.sampleRate = sampleRate;
+      this.perKey = trackKeys ? new ConcurrentHashMap<>() : null;
+   }
+
+   /**
+    * Returns the sample rate. On average, one out of this many tasks is timed.
+    *
+    * @return the sample rate
+    */
+   public int getSampleRate() {
+      return sampleRate;
+   }
+
+   /**
+    * Returns true if statistics are tracked for each key.
+    *
+    * @return true if statistics are tracked for each key
+    */
+   public boolean isTrackingKeys() {
+      return perKey != null;
+   }
+
+   /**
+    * Returns the aggregate statistics, across all keys.
+    *
+    * @return the aggregate statistics
+    */
+   public Counters getTotals() {
+      return total;
+   }
+
+   /**
+    * Returns the statistics for the given key. If keys are not being tracked or if no events have
+    * been reported for the given key, {@code null} is returned.
+    *
+    * @param key a key
+    * @return the statistics for the given key or {@code null}
+    */
+   public Counters getStatsForKey(Object key) {
+      return perKey == null ? null : perKey.get(key);
+   }
+
+   /**
+    * Returns a view of the statistics for all keys. If keys are not being tracked, an empty map is
+    * returned.
+    *
+    * @return a view of the statistics for all keys
+    */
+   public Map<Object, Counters> getStatsByKey() {
+      return perKey == null ? Collections.emptyMap() : Collections.unmodifiableMap(perKey);
+   }
+
+   /**
+    * Removes the statistics for the given key. This can be used to prevent unbounded growth when
+    * tracking keys and keys are known to no longer be in use.
+    *
+    * @param key a key
+    * @return the statistics that were removed or {@code null} if there were none
+    */
+   public Counters removeKey(Object key) {
+      return perKey == null ? null : perKey.remove(key);
+   }
+
+   private Counters forKey(Object key) {
+      if (perKey == null || key == null) {
+         return null;
+      }
+      Counters c = perKey.get(key);
+      return c != null ? c : perKey.computeIfAbsent(key, k -> new Counters());
+   }
+
+   @Override
+   public boolean shouldSample() {
+      return sampleRate == 1 || ThreadLocalRandom.current().nextInt(sampleRate) == 0;
+   }
+
+   @Override
+   public void taskSubmitted(Object key) {
+      total.submitted.increment();
+      Counters c = forKey(key);
+      if (c != null) {
+         c.submitted.increment();
+      }
+   }
+
+   @Override
+   public void taskRejected(Object key) {
+      total.rejected.increment();
+      Counters c = forKey(key);
+      if (c != null) {
+         c.rejected.increment();
+      }
+   }
+
+   @Override
+   public void taskStarted(Object key) {
+      total.started.increment();
+      Counters c = forKey(key);
+      if (c != null) {
+         c.started.increment();
+      }
+   }
+
+   @Override
+   public void taskFinished(Object key, boolean failed) {
+      total.finished(failed);
+      Counters c = forKey(key);
+      if (c != null) {
+         c.finished(failed);
+      }
+   }
+
+   @Override
+   public void taskStolen(Object key) {
+      total.stolen.increment();
+      Counters c = forKey(key);
+      if (c != null) {
+         c.stolen.increment();
+      }
+   }
+
+   @Override
+   public void recordQueueDelay(Object key, long nanos) {
+      total.getQueueDelay().record(nanos);
+      Counters c = forKey(key);
+      if (c != null) {
+         c.getQueueDelay().record(nanos);
+      }
+   }
+
+   @Override
+   public void recordRunTime(Object key, long nanos) {
+      total.getRunTime().record(nanos);
+      Counters c = forKey(key);
+      if (c != null) {
+         c.getRunTime().record(nanos);
+      }
+   }
+
+   @Override
+   public long getSubmittedCount() {
+      return total.getSubmittedCount();
+   }
+
+   @Override
+   public long getRejectedCount() {
+      return total.getRejectedCount();
+   }
+
+   @Override
+   public long getCompletedCount() {
+      return total.getCompletedCount();
+   }
+
+   @Override
+   public long getFailedCount() {
+      return total.getFailedCount();
+   }
+
+   @Override
+   public long getStealCount() {
+      return total.getStealCount();
+   }
+
+   @Override
+   public long getQueueDepth() {
+      return total.getQueueDepth();
+   }
+
+   @Override
+   public long getActiveCount() {
+      return total.getActiveCount();
+   }
+
+   @Override
+   public long getSampledCount() {
+      return total.getRunTime().getCount();
+   }
+
+   @Override
+   public long getQueueDelayP50() {
+      return total.getQueueDelay().getPercentile(50);
+   }
+
+   @Override
+   public long getQueueDelayP99() {
+      return total.getQueueDelay().getPercentile(99);
+   }
+
+   @Override
+   public long getQueueDelayMax() {
+      return total.getQueueDelay().getMax();
+   }
+
+   @Override
+   public long getRunTimeP50() {
+      return total.getRunTime().getPercentile(50);
+   }
+
+   @Override
+   public long getRunTimeP99() {
+      return total.getRunTime().getPercentile(99);
+   }
+
+   @Override
+   public long getRunTimeMax() {
+      return total.getRunTime().getMax();
+   }
+
+   /**
+    * Clears all aggregate counters and histograms and discards all per-key statistics. Note that
+    * tasks that are queued or running when this is called will cause the
+    * {@linkplain #getQueueDepth() queue depth} and {@linkplain #getActiveCount() active count} to
+    * be inaccurate until they complete.
+    */
+   @Override
+   public void reset() {
+      total.reset();
+      if (perKey != null) {
+         perKey.clear();
+      }
+   }
+
+   /**
+    * Registers this object with the platform MBean server, using the given name.
+    *
+    * @param name the name of the MBean
+    * @throws IllegalStateException if an MBean with the given name is already registered
+    */
+   public void registerMBean(ObjectName name) {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      try {
+         server.registerMBean(this, name);
+      } catch (InstanceAlreadyExistsException e) {
+         throw new IllegalStateException(e);
+      } catch (MBeanRegistrationException | NotCompliantMBeanException e) {
+         // should not be possible since this is a compliant MXBean with no registration hooks
+         throw new AssertionError(e);
+      }
+   }
+
+   /**
+    * Unregisters the MBean with the given name from the platform MBean server. If no such MBean is
+    * registered, this does nothing.
+    *
+    * @param name the name of the MBean
+    */
+   public static void unregisterMBean(ObjectName name) {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      try {
+         server.unregisterMBean(name);
+      } catch (InstanceNotFoundException e) {
+         // already unregistered
+      } catch (MBeanRegistrationException e) {
+         throw new AssertionError(e);
+      }
+   }
+
+   @Override
+   public String toString() {
+      return "ExecutorStats" + total;
+   }
+
+   /**
+    * Counters and histograms for a single key or for the whole executor.
+    *
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    */
+   public static class Counters {
+      private static final AtomicReferenceFieldUpdater<Counters, LatencyHistogram>
+            queueDelayUpdater = AtomicReferenceFieldUpdater.newUpdater(Counters.class,
+                  LatencyHistogram.class, "queueDelay");
+      private static final AtomicReferenceFieldUpdater<Counters, LatencyHistogram>
+            runTimeUpdater = AtomicReferenceFieldUpdater.newUpdater(Counters.class,
+                  LatencyHistogram.class, "runTime");
+
+      final LongAdder submitted = new LongAdder();
+      final LongAdder rejected = new LongAdder();
+      final LongAdder started = new LongAdder();
+      final LongAdder completed = new LongAdder();
+      final LongAdder failed = new LongAdder();
+      final LongAdder stolen = new LongAdder();
+      private volatile LatencyHistogram queueDelay;
+      private volatile LatencyHistogram runTime;
+
+      Counters() {
+      }
+
+      void finished(boolean wasFailure) {
+         completed.increment();
+         if (wasFailure) {
+            failed.increment();
+         }
+      }
+
+      void reset() {
+         submitted.reset();
+         rejected.reset();
+         started.reset();
+         completed.reset();
+         failed.reset();
+         stolen.reset();
+         LatencyHistogram h = queueDelay;
+         if (h != null) {
+            h.reset();
+         }
+         h = runTime;
+         if (h != null) {
+            h.reset();
+         }
+      }
+
+      /**
+       * Returns the number of tasks submitted.
+       *
+       * @return the number of tasks submitted
+       */
+      public long getSubmittedCount() {
+         return submitted.sum();
+      }
+
+      /**
+       * Returns the number of tasks rejected.
+       *
+       * @return the number of tasks rejected
+       */
+      public long getRejectedCount() {
+         return rejected.sum();
+      }
+
+      /**
+       * Returns the number of tasks that have finished, successfully or not.
+       *
+       * @return the number of tasks that have finished
+       */
+      public long getCompletedCount() {
+         return completed.sum();
+      }
+
+      /**
+       * Returns the number of tasks that finished by throwing an exception.
+       *
+       * @return the number of tasks that failed
+       */
+      public long getFailedCount() {
+         return failed.sum();
+      }
+
+      /**
+       * Returns the number of times work was stolen.
+       *
+       * @return the number of times work was stolen
+       */
+      public long getStealCount() {
+         return stolen.sum();
+      }
+
+      /**
+       * Returns the number of tasks submitted but not yet started or rejected. Since the
+       * underlying counters are not read atomically, this is an estimate when events are being
+       * reported concurrently.
+       *
+       * @return the number of queued tasks
+       */
+      public long getQueueDepth() {
+         return Math.max(0, submitted.sum() - started.sum() - rejected.sum());
+      }
+
+      /**
+       * Returns the number of tasks started but not yet finished. Since the underlying counters
+       * are not read atomically, this is an estimate when events are being reported concurrently.
+       *
+       * @return the number of running tasks
+       */
+      public long getActiveCount() {
+         return Math.max(0, started.sum() - completed.sum());
+      }
+
+      /**
+       * Returns the histogram of queueing delays for sampled tasks.
+       *
+       * @return the histogram of queueing delays
+       */
+      public LatencyHistogram getQueueDelay() {
+         LatencyHistogram h = queueDelay;
+         if (h == null) {
+            h = new LatencyHistogram();
+            if (!queueDelayUpdater.compareAndSet(this, null, h)) {
+               h = queueDelay;
+            }
+         }
+         return h;
+      }
+
+      /**
+       * Returns the histogram of run times for sampled tasks.
+       *
+       * @return the histogram of run times
+       */
+      public LatencyHistogram getRunTime() {
+         LatencyHistogram h = runTime;
+         if (h == null) {
+            h = new LatencyHistogram();
+            if (!runTimeUpdater.compareAndSet(this, null, h)) {
+               h = runTime;
+            }
+         }
+         return h;
+      }
+
+      @Override
+      public String toString() {
+         return "[submitted=" + getSubmittedCount() + ", rejected=" + getRejectedCount()
+               + ", completed=" + getCompletedCount() + ", failed=" + getFailedCount()
+               + ", stolen=" + getStealCount() + ", queueDelay=" + getQueueDelay()
+               + ", runTime=" + getRunTime() + "]";
+      }
+   }
+}
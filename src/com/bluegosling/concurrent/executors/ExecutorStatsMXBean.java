@@ -0,0 +1,114 @@
+package com.bluegosling.concurrent.executors;
+
+/**
+ * The management interface for {@link ExecutorStats}, for exporting executor metrics via JMX.
+ * Latencies are reported in nanoseconds and only reflect sampled tasks.
+ *
+ * @see ExecutorStats#registerMBean(javax.management.ObjectName)
+ *
+ * @author Joshua Humphries (jhumphries131@gmail.com)
+ */
+public interface ExecutorStatsMXBean {
+   /**
+    * Returns the total number of tasks submitted.
+    *
+    * @return the total number of tasks submitted
+    */
+   long getSubmittedCount();
+
+   /**
+    * Returns the total number of tasks rejected.
+    *
+    * @return the total number of tasks rejected
+    */
+   long getRejectedCount();
+
+   /**
+    * Returns the total number of tasks that have finished, successfully or not.
+    *
+    * @return the total number of tasks that have finished
+    */
+   long getCompletedCount();
+
+   /**
+    * Returns the total number of tasks that finished by throwing an exception.
+    *
+    * @return the total number of tasks that failed
+    */
+   long getFailedCount();
+
+   /**
+    * Returns the total number of times work was stolen by one worker from another.
+    *
+    * @return the total number of steals
+    */
+   long getStealCount();
+
+   /**
+    * Returns the number of tasks that have been submitted but not yet started.
+    *
+    * @return the current queue depth
+    */
+   long getQueueDepth();
+
+   /**
+    * Returns the number of tasks that are currently running.
+    *
+    * @return the number of tasks currently running
+    */
+   long getActiveCount();
+
+   /**
+    * Returns the number of tasks sampled for timing.
+    *
+    * @return the number of tasks sampled for timing
+    */
+   long getSampledCount();
+
+   /**
+    * Returns the median queueing delay, in nanoseconds.
+    *
+    * @return the median queueing delay
+    */
+   long getQueueDelayP50();
+
+   /**
+    * Returns the 99th percentile queueing delay, in nanoseconds.
+    *
+    * @return the 99th percentile queueing delay
+    */
+   long getQueueDelayP99();
+
+   /**
+    * Returns the maximum queueing delay, in nanoseconds.
+    *
+    * @return the maximum queueing delay
+    */
+   long getQueueDelayMax();
+
+   /**
+    * Returns the median run time, in nanoseconds.
+    *
+    * @return the median run time
+    */
+   long getRunTimeP50();
+
+   /**
+    * Returns the 99th percentile run time, in nanoseconds.
+    *
+    * @return the 99th percentile run time
+    */
+   long getRunTimeP99();
+
+   /**
+    * Returns the maximum run time, in nanoseconds.
+    *
+    * @return the maximum run time
+    */
+   long getRunTimeMax();
+
+   /**
+    * Clears all counters and histograms.
+    */
+   void reset();
+}
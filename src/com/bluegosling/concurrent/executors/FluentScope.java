@@ -0,0 +1,506 @@
+package com.bluegosling.concurrent.executors;
+
+import static java.util.Objects.requireNonNull;
+
+import com.bluegosling.concurrent.SameThreadExecutor;
+import com.bluegosling.concurrent.fluent.AbstractFluentFuture;
+import com.bluegosling.concurrent.fluent.FluentFuture;
+import com.bluegosling.concurrent.fluent.FutureVisitor;
+import com.bluegosling.concurrent.fluent.SettableRunnableFluentFuture;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * A scope that owns a group of concurrent child tasks. Tasks are {@linkplain #fork(Callable) forked}
+ * into the scope, which runs them using a given executor. The scope provides combinators for the
+ * resulting futures that wait for {@linkplain #all(Collection) all of them}, for
+ * {@linkplain #anyOf(Collection) the first success}, or for a {@linkplain #quorum(int, Collection)
+ * quorum} of successes. Unlike {@link FluentFuture#join}, {@link FluentFuture#firstOf}, and
+ * {@link FluentFuture#firstSuccessfulOf}, these combinators cancel the remaining inputs (and
+ * interrupt their threads) as soon as the outcome is known. So losing tasks in a scatter-gather or
+ * hedged request stop doing work promptly.
+ *
+ * <p>A scope may have a deadline. When the deadline elapses, all unfinished children are cancelled
+ * and all unfinished combinator results fail with a {@link TimeoutException}. The deadline is
+ * visible to child tasks via {@link #remainingNanos()}, and a scope opened by a child task inherits
+ * it (a nested scope can only shorten the deadline, never extend it). The deadline can also be
+ * carried across other executors using {@link #deadlinePropagator()} with a
+ * {@link ContextPropagatingExecutor}.
+ *
+ * <p>Closing the scope cancels any children that are still running. Typical usage:
+ * <pre>
+ * try (FluentScope scope = FluentScope.open(executor, 200, TimeUnit.MILLISECONDS)) {
+ *    FluentFuture&lt;Response&gt; r1 = scope.fork(() -&gt; replica1.query(request));
+ *    FluentFuture&lt;Response&gt; r2 = scope.fork(() -&gt; replica2.query(request));
+ *    return scope.anyOf(r1, r2).get();
+ * }
+ * </pre>
+ * Closing a scope does not wait for cancelled children to actually finish. Tasks that do not
+ * respond to interruption may continue running after the scope is closed.
+ *
+ * @author Joshua Humphries (jhumphries131@gmail.com)
+ */
+public class FluentScope implements AutoCloseable {
+
+   /**
+    * The deadline, in terms of {@link System#nanoTime()}, for the current thread or {@code null}
+    * if there is no deadline.
+    */
+   private static final ThreadLocal<Long> DEADLINE = new ThreadLocal<>();
+
+   private static final ContextPropagator<Long> DEADLINE_PROPAGATOR =
+         ContextPropagator.forThreadLocal(DEADLINE);
+
+   private static final int OPEN = 0;
+   private static final int CLOSED = 1;
+   private static final int EXPIRED = 2;
+
+   private final Executor executor;
+   private final Long deadline;
+   private final FluentFuture<Void> timer;
+   private final Set<FluentFuture<?>> children = ConcurrentHashMap.newKeySet();
+   private final Set<Gatherer<?, ?>> results = ConcurrentHashMap.newKeySet();
+   private final AtomicInteger state = new AtomicInteger(OPEN);
+
+   private FluentScope(Executor executor, Long deadline) {
+      this.executor = requireNonNull(executor);
+      this.deadline = deadline;
+      if (deadline == null) {
+         timer = null;
+      } else {
+         timer = FluentFuture.deferredFuture(null, deadline - System.nanoTime(),
+               TimeUnit.NANOSECONDS);
+         timer.addListener(() -> {
+            // timer is cancelled when the scope is closed
+            if (timer.isSuccessful()) {
+               expire();
+            }
+         }, SameThreadExecutor.get());
+      }
+   }
+
+   /**
+    * Opens a new scope that runs tasks using the given executor. If the current thread is running
+    * a task in a scope with a deadline, the new scope has the same deadline.
+    *
+    * @param executor the executor that runs forked tasks
+    * @return a new scope
+    */
+   public static FluentScope open(Executor executor) {
+      return new FluentScope(executor, DEADLINE.get());
+   }
+
+   /**
+    * Opens a new scope that runs tasks using the given executor and that expires after the given
+    * timeout. If the current thread is running a task in a scope with an earlier deadline, the new
+    * scope uses that earlier deadline.
+    *
+    * @param executor the executor that runs forked tasks
+    * @param timeout the time after which the scope expires
+    * @param unit the unit for the timeout
+    * @return a new scope
+    */
+   public static FluentScope open(Executor executor, long timeout, TimeUnit unit) {
+      long d = System.nanoTime() + unit.toNanos(timeout);
+      Long inherited = DEADLINE.get();
+      if (inherited != null && inherited - d < 0) {
+         d = inherited;
+      }
+      return new FluentScope(executor, d);
+   }
+
+   /**
+    * Returns a propagator for the deadline of the current thread's scope. This can be used with a
+    * {@link ContextPropagatingExecutor} so that deadlines are visible to tasks that are not forked
+    * directly by a scope.
+    *
+    * @return a propagator for the deadline of the current thread's scope
+    */
+   public static ContextPropagator<?> deadlinePropagator() {
+      return DEADLINE_PROPAGATOR;
+   }
+
+   /**
+    * Returns true if the current thread is running a task in a scope that has a deadline.
+    *
+    * @return true if the current thread has a deadline
+    */
+   public static boolean hasDeadline() {
+      return DEADLINE.get() != null;
+   }
+
+   /**
+    * Returns the number of nanoseconds remaining until the deadline of the current thread's scope.
+    * This can be used to set timeouts on blocking operations performed by child tasks. If the
+    * current thread has no deadline, {@link Long#MAX_VALUE} is returned. If the deadline has
+    * passed, zero or a negative value is returned.
+    *
+    * @return the number of nanoseconds remaining until the current thread's deadline
+    */
+   public static long remainingNanos() {
+      Long d = DEADLINE.get();
+      return d == null ? Long.MAX_VALUE : d - System.nanoTime();
+   }
+
+   /**
+    * Returns true if this scope's deadline has elapsed.
+    *
+    * @return true if this scope's deadline has elapsed
+    */
+   public boolean isExpired() {
+      return state.get() == EXPIRED;
+   }
+
+   /**
+    * Returns true if this scope has been closed or has expired. No new tasks can be forked once a
+    * scope is closed.
+    *
+    * @return true if this scope has been closed
+    */
+   public boolean isClosed() {
+      return state.get() != OPEN;
+   }
+
+   /**
+    * Forks a child task. The task runs with this scope's deadline installed, so that it is visible
+    * to {@link #remainingNanos()} and inherited by scopes that the task opens.
+    *
+    * @param task the task
+    * @return a future that completes when the task completes
+    * @throws IllegalStateException if this scope is closed
+    */
+   public <T> FluentFuture<T> fork(Callable<T> task) {
+      requireNonNull(task);
+      if (state.get() != OPEN) {
+         throw new IllegalStateException("Scope is closed");
+      }
+      SettableRunnableFluentFuture<T> f = new SettableRunnableFluentFuture<>(() -> {
+         Long prev = DEADLINE_PROPAGATOR.install(deadline);
+         try {
+            return task.call();
+         } finally {
+            DEADLINE_PROPAGATOR.restore(prev);
+         }
+      });
+      children.add(f);
+      f.addListener(() -> children.remove(f), SameThreadExecutor.get());
+      if (state.get() != OPEN) {
+         // raced with close() or expiry
+         f.cancel(false);
+         return f;
+      }
+      try {
+         executor.execute(f);
+      } catch (RejectedExecutionException e) {
+         f.setFailure(e);
+      }
+      return f;
+   }
+
+   /**
+    * Forks a child task.
+    *
+    * @param task the task
+    * @return a future that completes when the task completes
+    * @throws IllegalStateException if this scope is closed
+    * @see #fork(Callable)
+    */
+   public FluentFuture<Void> fork(Runnable task) {
+      return fork(Executors.callable(task, null));
+   }
+
+   /**
+    * Returns a future that completes when all of the given futures complete successfully. The
+    * values are in the same order as the given futures. If any of them fails or is cancelled, the
+    * returned future fails and all remaining futures are cancelled.
+    *
+    * @param futures the futures
+    * @return a future that completes with the values of all of the given futures
+    */
+   public <T> FluentFuture<List<T>> all(Collection<? extends FluentFuture<? extends T>> futures) {
+      return register(new Gatherer<>(futures, futures.size(), true, Function.identity()));
+   }
+
+   /**
+    * Returns a future that completes when all of the given futures complete successfully.
+    *
+    * @param futures the futures
+    * @return a future that completes with the values of all of the given futures
+    * @see #all(Collection)
+    */
+   @SafeVarargs
+   public final <T> FluentFuture<List<T>> all(FluentFuture<? extends T>... futures) {
+      // copy explicitly, instead of letting the generic array escape via Arrays.asList
+      List<FluentFuture<? extends T>> list = new ArrayList<>(futures.length);
+      for (FluentFuture<? extends T> f : futures) {
+         list.add(f);
+      }
+      return all(list);
+   }
+
+   /**
+    * Returns a future that completes with the value of the first of the given futures to complete
+    * successfully. All remaining futures are then cancelled. The returned future fails only if all
+    * of the given futures fail (or are cancelled), in which case the cause is that of the first
+    * failure.
+    *
+    * @param futures the futures
+    * @return a future that completes with the value of the first successful future
+    * @throws IllegalArgumentException if no futures are given
+    */
+   public <T> FluentFuture<T> anyOf(Collection<? extends FluentFuture<? extends T>> futures) {
+      if (futures.isEmpty()) {
+         throw new IllegalArgumentException("Must provide at least one future");
+      }
+      // gather the first value directly, instead of mapping the result of a quorum, so that
+      // cancelling the returned future cancels the remaining futures
+      return register(new Gatherer<T, T>(futures, 1, false, l -> l.get(0)));
+   }
+
+   /**
+    * Returns a future that completes with the value of the first of the given futures to complete
+    * successfully.
+    *
+    * @param futures the futures
+    * @return a future that completes with the value of the first successful future
+    * @throws IllegalArgumentException if no futures are given
+    * @see #anyOf(Collection)
+    */
+   @SafeVarargs
+   public final <T> FluentFuture<T> anyOf(FluentFuture<? extends T>... futures) {
+      List<FluentFuture<? extends T>> list = new ArrayList<>(futures.length);
+      for (FluentFuture<? extends T> f : futures) {
+         list.add(f);
+      }
+      return anyOf(list);
+   }
+
+   /**
+    * Returns a future that completes when the given number of futures have completed successfully.
+    * The values are in the order in which the futures completed. All remaining futures are then
+    * cancelled. If so many futures fail (or are cancelled) that a quorum is no longer possible, the
+    * returned future fails with the cause of the first failure and all remaining futures are
+    * cancelled.
+    *
+    * @param quorum the number of successful futures required
+    * @param futures the futures
+    * @return a future that completes with the values of the first {@code quorum} futures to
+    *       complete successfully
+    * @throws IllegalArgumentException if the quorum is not positive or is greater than the number
+    *       of futures
+    */
+   public <T> FluentFuture<List<T>> quorum(int quorum,
+         Collection<? extends FluentFuture<? extends T>> futures) {
+      if (quorum <= 0 || quorum > futures.size()) {
+         throw new IllegalArgumentException(
+               "Quorum must be between 1 and " + futures.size() + ": " + quorum);
+      }
+      return register(new Gatherer<>(futures, quorum, false, Function.identity()));
+   }
+
+   private <R> FluentFuture<R> register(Gatherer<?, R> g) {
+      if (state.get() == EXPIRED) {
+         g.finish(null, new TimeoutException("Scope deadline exceeded"));
+         return g;
+      }
+      results.add(g);
+      g.addListener(() -> results.remove(g), SameThreadExecutor.get());
+      if (state.get() == EXPIRED) {
+         // raced with expiry
+         g.finish(null, new TimeoutException("Scope deadline exceeded"));
+      }
+      g.start();
+      return g;
+   }
+
+   private void expire() {
+      if (!state.compareAndSet(OPEN, EXPIRED)) {
+         return;
+      }
+      TimeoutException timeout = new TimeoutException("Scope deadline exceeded");
+      for (Gatherer<?, ?> g : results) {
+         g.finish(null, timeout);
+      }
+      cancelChildren();
+   }
+
+   private void cancelChildren() {
+      for (FluentFuture<?> f : children) {
+         f.cancel(true);
+      }
+   }
+
+   /**
+    * Closes this scope. Any children that have not yet completed are cancelled, and their threads
+    * interrupted. No new tasks can be forked after the scope is closed, but combinators can still
+    * be used with children that have already completed.
+    */
+   @Override
+   public void close() {
+      if (state.compareAndSet(OPEN, CLOSED) && timer != null) {
+         timer.cancel(false);
+      }
+      cancelChildren();
+   }
+
+   /**
+    * Gathers the values of a collection of futures, completing when a given number of them have
+    * succeeded or when so many have failed that such a quorum is impossible. When the gatherer
+    * completes, for whatever reason, remaining input futures are cancelled. They are cancelled
+    * <em>before</em> the gatherer's result is set, so callers that observe the result can rely on
+    * the losers already being cancelled.
+    *
+    * @param <T> the type of value gathered
+    * @param <R> the type of the gatherer's result, computed from the gathered values
+    *
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    */
+   private static class Gatherer<T, R> extends AbstractFluentFuture<R> {
+      private final List<FluentFuture<? extends T>> inputs;
+      private final int quorum;
+      private final boolean ordered;
+      private final Function<? super List<T>, ? extends R> finisher;
+      // these are guarded by this object's intrinsic lock
+      private final Object[] values;
+      private final List<T> completionOrder;
+      private int successes;
+      private int failures;
+      private Throwable firstFailure;
+      private boolean finished;
+
+      Gatherer(Collection<? extends FluentFuture<? extends T>> inputs, int quorum,
+            boolean ordered, Function<? super List<T>, ? extends R> finisher) {
+         this.inputs = new ArrayList<>(inputs);
+         this.quorum = quorum;
+         this.ordered = ordered;
+         this.finisher = finisher;
+         this.values = ordered ? new Object[this.inputs.size()] : null;
+         this.completionOrder = ordered ? null : new ArrayList<>(quorum);
+      }
+
+      void start() {
+         if (inputs.isEmpty()) {
+            finish(Collections.emptyList(), null);
+            return;
+         }
+         for (int i = 0, len = inputs.size(); i < len; i++) {
+            int index = i;
+            inputs.get(i).visitWhenDone(new FutureVisitor<T>() {
+               @Override
+               public void successful(T result) {
+                  succeeded(index, result);
+               }
+
+               @Override
+               public void failed(Throwable t) {
+                  Gatherer.this.failed(t);
+               }
+
+               @Override
+               public void cancelled() {
+                  Gatherer.this.failed(new CancellationException());
+               }
+            });
+         }
+      }
+
+      private void succeeded(int index, T result) {
+         List<T> ret;
+         synchronized (this) {
+            if (finished) {
+               return;
+            }
+            if (ordered) {
+               values[index] = result;
+            } else {
+               completionOrder.add(result);
+            }
+            if (++successes < quorum) {
+               return;
+            }
+            if (ordered) {
+               @SuppressWarnings("unchecked") // we only store Ts in the array
+               List<T> l = (List<T>) Arrays.asList(values);
+               ret = l;
+            } else {
+               ret = completionOrder;
+            }
+            finished = true;
+         }
+         cancelInputs();
+         setValue(finisher.apply(Collections.unmodifiableList(ret)));
+      }
+
+      private void failed(Throwable t) {
+         Throwable failure;
+         synchronized (this) {
+            if (finished) {
+               return;
+            }
+            if (firstFailure == null) {
+               firstFailure = t;
+            }
+            if (inputs.size() - ++failures >= quorum) {
+               // quorum still possible
+               return;
+            }
+            failure = firstFailure;
+            finished = true;
+         }
+         cancelInputs();
+         setFailure(failure);
+      }
+
+      /**
+       * Completes this gatherer with the given value or failure, unless it is already complete.
+       * Remaining inputs are cancelled first.
+       */
+      void finish(List<T> value, Throwable failure) {
+         synchronized (this) {
+            if (finished) {
+               return;
+            }
+            finished = true;
+         }
+         cancelInputs();
+         if (failure != null) {
+            setFailure(failure);
+         } else {
+            setValue(finisher.apply(value));
+         }
+      }
+
+      @Override
+      public boolean cancel(boolean mayInterrupt) {
+         synchronized (this) {
+            if (finished) {
+               return false;
+            }
+            finished = true;
+         }
+         cancelInputs();
+         return super.cancel(mayInterrupt);
+      }
+
+      private void cancelInputs() {
+         for (FluentFuture<?> f : inputs) {
+            f.cancel(true);
+         }
+      }
+   }
+}
@@ -0,0 +1,176 @@
+package com.bluegosling.concurrent.executors;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A concurrent histogram of latencies, in nanoseconds. Like an
+ * <a href="http://hdrhistogram.org/">HDR histogram</a>, this uses log-linear buckets: values are
+ * bucketed by their magnitude (power of two) and then each magnitude is divided linearly into eight
+ * sub-buckets. So values are tracked with a fixed amount of memory and with a relative precision of
+ * 1/8 (12.5%), across the full range of non-negative {@code long} values.
+ *
+ * <p>Recording a value is lock-free and does not allocate. Queries, on the other hand, scan all
+ * buckets and are not atomic with respect to concurrent recording. So they may reflect some but not
+ * all of the values recorded concurrently with the query.
+ *
+ * @author Joshua Humphries (jhumphries131@gmail.com)
+ */
+public class LatencyHistogram {
+   private static final int SUB_BUCKET_BITS = 3;
+   private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+   private static final int SUB_BUCKET_MASK = SUB_BUCKET_COUNT - 1;
+   private static final int BUCKET_COUNT = bucketIndex(Long.MAX_VALUE) + 1;
+
+   private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+   private final AtomicLong max = new AtomicLong();
+
+   /**
+    * Constructs a new, empty histogram.
+    */
+   public LatencyHistogram() {
+   }
+
+   /**
+    * Computes the index of the bucket for the given value.
+    */
+   private static int bucketIndex(long value) {
+      if (value < SUB_BUCKET_COUNT) {
+         return (int) value;
+      }
+      int magnitude = 63 - Long.numberOfLeadingZeros(value);
+      int subBucket = (int) (value >>> (magnitude - SUB_BUCKET_BITS)) & SUB_BUCKET_MASK;
+      return ((magnitude - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + subBucket;
+   }
+
+   /**
+    * Computes the smallest value that is tracked in the bucket at the given index.
+    */
+   private static long bucketLowerBound(int index) {
+      if (index < SUB_BUCKET_COUNT) {
+         return index;
+      }
+      int magnitude = (index >>> SUB_BUCKET_BITS) + SUB_BUCKET_BITS - 1;
+      long subBucket = index & SUB_BUCKET_MASK;
+      return (1L << magnitude) | (subBucket << (magnitude - SUB_BUCKET_BITS));
+   }
+
+   /**
+    * Computes the largest value that is tracked in the bucket at the given index.
+    */
+   private static long bucketUpperBound(int index) {
+      return index == BUCKET_COUNT - 1 ? Long.MAX_VALUE : bucketLowerBound(index + 1) - 1;
+   }
+
+   /**
+    * Records the given value. Negative values (which can result from measuring elapsed time on
+    * some platforms) are recorded as zero.
+    *
+    * @param nanos the value to record
+    */
+   public void record(long nanos) {
+      if (nanos < 0) {
+         nanos = 0;
+      }
+      counts.incrementAndGet(bucketIndex(nanos));
+      long m;
+      while ((m = max.get()) < nanos) {
+         if (max.compareAndSet(m, nanos)) {
+            break;
+         }
+      }
+   }
+
+   /**
+    * Returns the number of values recorded.
+    *
+    * @return the number of values recorded
+    */
+   public long getCount() {
+      long total = 0;
+      for (int i = 0; i < BUCKET_COUNT; i++) {
+         total += counts.get(i);
+      }
+      return total;
+   }
+
+   /**
+    * Returns the largest value recorded or zero if no values have been recorded.
+    *
+    * @return the largest value recorded
+    */
+   public long getMax() {
+      return max.get();
+   }
+
+   /**
+    * Returns an estimate of the mean of all values recorded. Since values are bucketed, the mean
+    * is computed using the mid-point of each bucket. Zero is returned if no values have been
+    * recorded.
+    *
+    * @return an estimate of the mean of recorded values
+    */
+   public double getMean() {
+      long total = 0;
+      double sum = 0;
+      for (int i = 0; i < BUCKET_COUNT; i++) {
+         long c = counts.get(i);
+         if (c != 0) {
+            total += c;
+            long lower = bucketLowerBound(i);
+            sum += c * (lower + (bucketUpperBound(i) - lower) / 2.0);
+         }
+      }
+      return total == 0 ? 0 : sum / total;
+   }
+
+   /**
+    * Returns an estimate of the given percentile. The returned value is the upper bound of the
+    * bucket that contains the given percentile, but never more than the {@linkplain #getMax()
+    * largest recorded value}. Zero is returned if no values have been recorded.
+    *
+    * @param percentile the percentile, between zero and one hundred (inclusive)
+    * @return an estimate of the value at the given percentile
+    * @throws IllegalArgumentException if the given percentile is not in the range zero to one
+    *       hundred
+    */
+   public long getPercentile(double percentile) {
+      if (percentile < 0 || percentile > 100) {
+         throw new IllegalArgumentException("percentile must be between 0 and 100");
+      }
+      long snapshot[] = new long[BUCKET_COUNT];
+      long total = 0;
+      for (int i = 0; i < BUCKET_COUNT; i++) {
+         total += (snapshot[i] = counts.get(i));
+      }
+      if (total == 0) {
+         return 0;
+      }
+      long target = Math.max(1, (long) Math.ceil(total * (percentile / 100)));
+      long running = 0;
+      for (int i = 0; i < BUCKET_COUNT; i++) {
+         running += snapshot[i];
+         if (running >= target) {
+            return Math.min(bucketUpperBound(i), getMax());
+         }
+      }
+      return getMax();
+   }
+
+   /**
+    * Clears all recorded values. This is not atomic with respect to concurrent recording, so some
+    * values recorded concurrently with a call to reset may be retained.
+    */
+   public void reset() {
+      for (int i = 0; i < BUCKET_COUNT; i++) {
+         counts.set(i, 0);
+      }
+      max.set(0);
+   }
+
+   @Override
+   public String toString() {
+      return "LatencyHistogram[count=" + getCount() + ", p50=" + getPercentile(50)
+            + ", p99=" + getPercentile(99) + ", max=" + getMax() + "]";
+   }
+}
@@ -0,0 +1,104 @@
+package com.bluegosling.concurrent.executors;
+
+import java.util.List;
+import java.util.ListIterator;
+
+/**
+ * A task that has been sampled for timing by an {@link ExecutorMetrics}. This wrapper records the
+ * time at which the task was submitted, so its queueing delay can be computed when it is run.
+ * Executors that support metrics must take care to {@linkplain #unwrap(Runnable) unwrap} tasks
+ * before handing them back to callers (like when aborting or rejecting them).
+ *
+ * @author Joshua Humphries (jhumphries131@gmail.com)
+ */
+final class MeteredTask implements Runnable {
+   final Runnable task;
+   final long submitNanos;
+
+   private MeteredTask(Runnable task, long submitNanos) {
+      this.task = task;
+      this.submitNanos = submitNanos;
+   }
+
+   /**
+    * Reports the submission of the given task and, if it is sampled, wraps it so that it can later
+    * be timed.
+    *
+    * @param task the submitted task
+    * @param key the key associated with the task
+    * @param metrics the metrics to which events are reported
+    * @return the task to enqueue, which may be a wrapper around the given task
+    */
+   static Runnable submitted(Runnable task, Object key, ExecutorMetrics metrics) {
+      metrics.taskSubmitted(key);
+      return metrics.shouldSample() ? new MeteredTask(task, System.nanoTime()) : task;
+   }
+
+   /**
+    * Runs the given task, reporting events to the given metrics. If the given task is a
+    * {@link MeteredTask}, its queueing delay and run time are also recorded.
+    *
+    * @param r the task to run, possibly a wrapper created by
+    *       {@link #submitted(Runnable, Object, ExecutorMetrics)}
+    * @param key the key associated with the task
+    * @param metrics the metrics to which events are reported
+    */
+   static void run(Runnable r, Object key, ExecutorMetrics metrics) {
+      if (metrics == ExecutorMetrics.NONE) {
+         // fast path
+         r.run();
+         return;
+      }
+      boolean timed = r instanceof MeteredTask;
+      long start = 0;
+      if (timed) {
+         MeteredTask m = (MeteredTask) r;
+         start = System.nanoTime();
+         metrics.recordQueueDelay(key, start - m.submitNanos);
+         r = m.task;
+      }
+      boolean failed = true;
+      metrics.taskStarted(key);
+      try {
+         r.run();
+         failed = false;
+      } finally {
+         if (timed) {
+            metrics.recordRunTime(key, System.nanoTime() - start);
+         }
+         metrics.taskFinished(key, failed);
+      }
+   }
+
+   /**
+    * Returns the task wrapped by the given one, if it is a {@link MeteredTask}. Otherwise, returns
+    * the given task.
+    *
+    * @param r a task
+    * @return the underlying task
+    */
+   static Runnable unwrap(Runnable r) {
+      return r instanceof MeteredTask ? ((MeteredTask) r).task : r;
+   }
+
+   /**
+    * Unwraps all elements of the given list, in place.
+    *
+    * @param tasks a list of tasks
+    * @return the given list, after all elements have been unwrapped
+    */
+   static List<Runnable> unwrapAll(List<Runnable> tasks) {
+      for (ListIterator<Runnable> iter = tasks.listIterator(); iter.hasNext(); ) {
+         Runnable r = iter.next();
+         if (r instanceof MeteredTask) {
+            iter.set(((MeteredTask) r).task);
+         }
+      }
+      return tasks;
+   }
+
+   @Override
+   public void run() {
+      task.run();
+   }
+}
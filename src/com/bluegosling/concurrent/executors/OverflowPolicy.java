@@ -0,0 +1,34 @@
+package com.bluegosling.concurrent.executors;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * The action taken when a task is submitted to a bounded executor whose queue is full.
+ *
+ * @see PipeliningExecutor.Builder#setOverflowPolicy(OverflowPolicy)
+ *
+ * @author Joshua Humphries (jhumphries131@gmail.com)
+ */
+public enum OverflowPolicy {
+   /**
+    * The submitting thread blocks until there is space in the queue. If the thread is interrupted
+    * while waiting, the task is rejected with a {@link RejectedExecutionException} and the thread's
+    * interrupt status is restored.
+    */
+   BLOCK,
+
+   /**
+    * The task is rejected with a {@link RejectedExecutionException}.
+    */
+   REJECT,
+
+   /**
+    * The oldest queued task with the same key is dropped to make room for the new task. The
+    * dropped task is aborted in the same way as tasks that are rejected by an underlying executor:
+    * it is failed with a {@link RejectedExecutionException} if it is a settable or completable
+    * future and otherwise cancelled if it is a future or {@linkplain
+    * com.bluegosling.concurrent.Cancellable cancellable}. If there is no queued task with the same
+    * key to drop, the new task is rejected.
+    */
+   DROP_OLDEST
+}
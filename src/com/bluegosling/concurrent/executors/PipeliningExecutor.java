@@ -13,15 +13,18 @@ import com.bluegosling.concurrent.fluent.RunnableFluentFuture;
 import com.bluegosling.concurrent.fluent.SettableFluentFuture;
 import com.bluegosling.concurrent.fluent.SettableRunnableFluentFuture;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.AbstractExecutorService;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
@@ -38,6 +41,9 @@ import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.RunnableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Predicate;
 
 /**
@@ -54,6 +60,15 @@ import java.util.function.Predicate;
  * (for assuring serial delivery to each pipeline), it is possible for tasks to be accepted by this
  * executor but then later rejected by the underlying executor. Care should be exercised to
  * coordinate the life cycle of the underlying executor and the sources of submissions to pipelines.
+ * 
+ * <p>By default, the queue for each pipeline is unbounded. A {@linkplain #newBuilder(Executor)
+ * builder} can be used to create a bounded executor, with a capacity for each pipeline and a total
+ * capacity across all pipelines. Capacity is consumed by tasks that have been accepted but not yet
+ * started. When a task is submitted and there is no room for it, the executor's
+ * {@link OverflowPolicy} decides whether the submitting thread blocks, the task is rejected, or the
+ * oldest queued task for the same pipeline is dropped. The {@link #submitAsync(Object, Callable)}
+ * methods never block or reject due to lack of capacity; they instead return a future that
+ * completes once the task is accepted.
  *
  * @param <K> the type of keys that identify a pipeline
  * 
@@ -65,10 +80,146 @@ public class PipeliningExecutor<K> implements SerializingExecutor<K> {
    private static final int DEFAULT_MAX_BATCH_SIZE = 32;
    private static final Duration DEFAULT_MAX_BATCH_DURATION = Duration.millis(500);
    
+   /**
+    * Builds a {@link PipeliningExecutor}. Unless otherwise configured, the executor will process
+    * batches of up to 32 tasks or for up to 500 milliseconds (whichever occurs first), will not
+    * report metrics, and will have unbounded queues.
+    *
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    */
+   public static class Builder {
+      private final Executor executor;
+      private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+      private Duration maxBatchDuration = DEFAULT_MAX_BATCH_DURATION;
+      private ExecutorMetrics metrics = ExecutorMetrics.NONE;
+      private int pipelineCapacity = Integer.MAX_VALUE;
+      private int totalCapacity = Integer.MAX_VALUE;
+      private OverflowPolicy overflowPolicy = OverflowPolicy.REJECT;
+      
+      Builder(Executor executor) {
+         this.executor = requireNonNull(executor);
+      }
+      
+      /**
+       * Sets the maximum number of tasks a pipeline processes in a batch before yielding.
+       *
+       * @param maxBatchSize the maximum batch size
+       * @return {@code this}, for method chaining
+       */
+      public Builder setMaxBatchSize(int maxBatchSize) {
+         this.maxBatchSize = maxBatchSize;
+         return this;
+      }
+      
+      /**
+       * Sets the maximum duration for which a pipeline processes a batch before yielding.
+       *
+       * @param maxBatchDuration the maximum batch duration
+       * @param unit the unit of the maximum batch duration
+       * @return {@code this}, for method chaining
+       */
+      public Builder setMaxBatchDuration(long maxBatchDuration, TimeUnit unit) {
+         this.maxBatchDuration = Duration.of(maxBatchDuration, unit);
+         return this;
+      }
+      
+      /**
+       * Sets the metrics to which task submission and execution events are reported.
+       *
+       * @param metrics the metrics
+       * @return {@code this}, for method chaining
+       */
+      public Builder setMetrics(ExecutorMetrics metrics) {
+         this.metrics = requireNonNull(metrics);
+         return this;
+      }
+      
+      /**
+       * Sets the maximum number of accepted but not yet started tasks for any single pipeline.
+       *
+       * @param pipelineCapacity the capacity of each pipeline
+       * @return {@code this}, for method chaining
+       */
+      public Builder setPipelineCapacity(int pipelineCapacity) {
+         this.pipelineCapacity = pipelineCapacity;
+         return this;
+      }
+      
+      /**
+       * Sets the maximum number of accepted but not yet started tasks across all pipelines.
+       *
+       * @param totalCapacity the total capacity of the executor
+       * @return {@code this}, for method chaining
+       */
+      public Builder setTotalCapacity(int totalCapacity) {
+         this.totalCapacity = totalCapacity;
+         return this;
+      }
+      
+      /**
+       * Sets the action taken when a task is submitted but there is no capacity for it. If not
+       * set, such tasks are {@linkplain OverflowPolicy#REJECT rejected}. This has no effect if
+       * the executor is unbounded.
+       *
+       * @param overflowPolicy the overflow policy
+       * @return {@code this}, for method chaining
+       */
+      public Builder setOverflowPolicy(OverflowPolicy overflowPolicy) {
+         this.overflowPolicy = requireNonNull(overflowPolicy);
+         return this;
+      }
+      
+      /**
+       * Builds a pipelining executor with the current configuration.
+       *
+       * @return a new pipelining executor
+       */
+      public <K> PipeliningExecutor<K> build() {
+         return new PipeliningExecutor<>(executor, maxBatchSize, maxBatchDuration.length(),
+               maxBatchDuration.unit(), metrics, pipelineCapacity, totalCapacity, overflowPolicy);
+      }
+   }
+   
+   /**
+    * Returns a new builder, for constructing a pipelining executor that runs tasks using the
+    * given executor.
+    *
+    * @param executor the executor that will run individual tasks across all pipelines
+    * @return a new builder
+    */
+   public static Builder newBuilder(Executor executor) {
+      return new Builder(executor);
+   }
+   
    final Executor executor;
    final ConcurrentMap<K, Pipeline> pipelines = new ConcurrentHashMap<>();
    final int maxBatchSize;
    final long maxBatchDurationNanos;
+   final ExecutorMetrics metrics;
+   final int pipelineCapacity;
+   final int totalCapacity;
+   final OverflowPolicy overflowPolicy;
+   final boolean bounded;
+   /** The number of accepted but not yet started tasks, across all pipelines. */
+   final AtomicInteger pendingCount = new AtomicInteger();
+   /**
+    * The number of accepted but not yet started tasks, per pipeline. A counter whose value is
+    * negative has been retired and is in the process of being removed from the map.
+    */
+   final ConcurrentMap<K, AtomicInteger> pendingByPipeline = new ConcurrentHashMap<>();
+   /** Guards {@link #waiters}, {@link #admitted}, and {@link #admitter}. */
+   final ReentrantLock waiterLock = new ReentrantLock();
+   /** Submissions that are waiting for capacity, in FIFO order. */
+   final ArrayDeque<Waiter<?>> waiters = new ArrayDeque<>();
+   /** Submissions that have been given capacity but not yet enqueued, in FIFO order. */
+   final ArrayDeque<Waiter<?>> admitted = new ArrayDeque<>();
+   /** The thread that is enqueuing admitted submissions, or {@code null} if there is none. */
+   Thread admitter;
+   /**
+    * The combined size of {@link #waiters} and {@link #admitted}, readable without acquiring the
+    * lock.
+    */
+   volatile int waiterCount;
    final Phaser phaser = new Phaser() {
       @Override protected boolean onAdvance(int phase, int registeredParties) {
          return false; // never terminates
@@ -122,6 +273,32 @@ public class PipeliningExecutor<K> implements SerializingExecutor<K> {
     */
    public PipeliningExecutor(Executor executor, int maxBatchSize, long maxBatchDuration,
          TimeUnit unit) {
+      this(executor, maxBatchSize, maxBatchDuration, unit, ExecutorMetrics.NONE);
+   }
+
+   /**
+    * Constructs a new pipelining executor that uses the specified executor for actually running
+    * tasks, runs up to the given number of tasks in a batch for up to the given duration, and
+    * reports events to the given metrics. The pipeline key is the key associated with each event.
+    *
+    * @param executor the executor that will run individual tasks across all pipelines
+    * @param metrics the metrics to which task submission and execution events are reported
+    */
+   public PipeliningExecutor(Executor executor, int maxBatchSize, long maxBatchDuration,
+         TimeUnit unit, ExecutorMetrics metrics) {
+      this(executor, maxBatchSize, maxBatchDuration, unit, metrics, Integer.MAX_VALUE,
+            Integer.MAX_VALUE, OverflowPolicy.REJECT);
+   }
+   
+   PipeliningExecutor(Executor executor, int maxBatchSize, long maxBatchDuration, TimeUnit unit,
+         ExecutorMetrics metrics, int pipelineCapacity, int totalCapacity,
+         OverflowPolicy overflowPolicy) {
+      if (pipelineCapacity <= 0) {
+         throw new IllegalArgumentException("Pipeline capacity must be positive");
+      }
+      if (totalCapacity <= 0) {
+         throw new IllegalArgumentException("Total capacity must be positive");
+      }
       if (maxBatchSize <= 0) {
          throw new IllegalArgumentException("Max batch size must be positive");
       }
@@ -131,6 +308,11 @@ public class PipeliningExecutor<K> implements SerializingExecutor<K> {
       this.executor = requireNonNull(executor);
       this.maxBatchSize = maxBatchSize;
       this.maxBatchDurationNanos = unit.toNanos(maxBatchDuration);
+      this.metrics = requireNonNull(metrics);
+      this.pipelineCapacity = pipelineCapacity;
+      this.totalCapacity = totalCapacity;
+      this.overflowPolicy = requireNonNull(overflowPolicy);
+      this.bounded = pipelineCapacity != Integer.MAX_VALUE || totalCapacity != Integer.MAX_VALUE;
    }
 
    /**
@@ -146,15 +328,91 @@ public class PipeliningExecutor<K> implements SerializingExecutor<K> {
     * <p>Note that if the given task is not a form of future task and is not cancellable, <i>the
     * exception is swallowed</i>. Care must be exercised in coordinating task submission with the
     * underlying executor's life cycle to prevent such exception suppression. 
+    * 
+    * <p>If this executor is bounded and there is no capacity for the task, the executor's
+    * {@link OverflowPolicy} determines whether this method blocks, rejects the task, or drops the
+    * oldest queued task for the same pipeline. While other submissions are waiting for capacity,
+    * the executor is considered full, so that tasks for the same pipeline are accepted in the
+    * order they were submitted.
     *
     * @param pipelineKey the key that identifies the pipeline
     * @param task a task
     * @throws NullPointerException if either the pipeline key or task is null
+    * @throws RejectedExecutionException if this executor is bounded and the task is rejected for
+    *       lack of capacity
     */
    @Override
    public void execute(K pipelineKey, Runnable task) {
       requireNonNull(pipelineKey);
       requireNonNull(task);
+      task = MeteredTask.submitted(task, pipelineKey, metrics);
+      if (bounded && !acquireCapacity(pipelineKey, task)) {
+         // task was enqueued by another thread when capacity became available
+         return;
+      }
+      enqueue(pipelineKey, task);
+   }
+   
+   /**
+    * Submits the given task without blocking. If this executor is unbounded or has capacity for
+    * the task, it is accepted immediately. Otherwise, the task waits for capacity and will be
+    * accepted, in FIFO order with other waiting submissions, when capacity becomes available. This
+    * method never rejects a task for lack of capacity, regardless of the executor's
+    * {@link OverflowPolicy}.
+    * 
+    * <p>If the returned future is cancelled before the task is accepted, the task is withdrawn.
+    * Once the task has been accepted, the returned future can no longer be cancelled.
+    *
+    * @param pipelineKey the key that identifies the pipeline
+    * @param task a task
+    * @return a future that completes when the task is accepted, whose value is a future that
+    *       completes when the task completes
+    * @throws NullPointerException if either the pipeline key or task is null
+    */
+   @Override
+   public FluentFuture<FluentFuture<Void>> submitAsync(K pipelineKey, Runnable task) {
+      SettableRunnableFluentFuture<Void> f = new SettableRunnableFluentFuture<>(task, null);
+      return submitAsync(pipelineKey, f, f);
+   }
+
+   /**
+    * Submits the given task without blocking. This is the same as
+    * {@link #submitAsync(Object, Runnable)} except that the task's future completes with the value
+    * returned by the given task.
+    *
+    * @param pipelineKey the key that identifies the pipeline
+    * @param task a task
+    * @return a future that completes when the task is accepted, whose value is a future that
+    *       completes when the task completes
+    * @throws NullPointerException if either the pipeline key or task is null
+    */
+   @Override
+   public <T> FluentFuture<FluentFuture<T>> submitAsync(K pipelineKey, Callable<T> task) {
+      SettableRunnableFluentFuture<T> f = new SettableRunnableFluentFuture<>(task);
+      return submitAsync(pipelineKey, f, f);
+   }
+   
+   private <T> FluentFuture<FluentFuture<T>> submitAsync(K pipelineKey, Runnable task,
+         FluentFuture<T> result) {
+      requireNonNull(pipelineKey);
+      task = MeteredTask.submitted(task, pipelineKey, metrics);
+      if (!bounded || (waiterCount == 0 && tryReserve(pipelineKey))) {
+         enqueue(pipelineKey, task);
+         return FluentFuture.completedFuture(result);
+      }
+      Waiter<T> w = new Waiter<>(pipelineKey, task, result);
+      addWaiter(w);
+      return w;
+   }
+   
+   /**
+    * Enqueues the given task in the given pipeline, creating and starting the pipeline if
+    * necessary. If the executor is bounded, capacity for the task has already been reserved.
+    *
+    * @param pipelineKey the key that identifies the pipeline
+    * @param task the task
+    */
+   void enqueue(K pipelineKey, Runnable task) {
       // Atomically create the pipeline if necessary and enqueue this task therein.
       while (true) {
          Pipeline pipeline = pipelines.get(pipelineKey);
@@ -177,6 +435,288 @@ public class PipeliningExecutor<K> implements SerializingExecutor<K> {
       }
    }
    
+   /**
+    * Acquires capacity for the given task, according to this executor's overflow policy.
+    *
+    * @param pipelineKey the key that identifies the pipeline
+    * @param task the task
+    * @return true if capacity was reserved and the caller should enqueue the task; false if the
+    *       task has already been enqueued (by a thread that released capacity while the caller was
+    *       blocked)
+    * @throws RejectedExecutionException if the task is rejected
+    */
+   private boolean acquireCapacity(K pipelineKey, Runnable task) {
+      if (waiterCount == 0 && tryReserve(pipelineKey)) {
+         return true;
+      }
+      switch (overflowPolicy) {
+         case DROP_OLDEST:
+            if (waiterCount == 0 && dropOldest(pipelineKey)) {
+               // the new task takes over the dropped task's reservation
+               return true;
+            }
+            break;
+         case BLOCK:
+            Waiter<Void> w = new Waiter<>(pipelineKey, task, null);
+            addWaiter(w);
+            try {
+               w.await();
+            } catch (InterruptedException e) {
+               if (w.cancel(false)) {
+                  Thread.currentThread().interrupt();
+                  metrics.taskRejected(pipelineKey);
+                  throw new RejectedExecutionException(e);
+               }
+               // too late to withdraw; task is being enqueued
+               w.awaitUninterruptibly();
+               Thread.currentThread().interrupt();
+            }
+            return false;
+         case REJECT:
+         default:
+            break;
+      }
+      metrics.taskRejected(pipelineKey);
+      throw new RejectedExecutionException("No capacity for pipeline " + pipelineKey);
+   }
+   
+   /**
+    * Tries to reserve capacity for one task in the given pipeline.
+    *
+    * @param pipelineKey the key that identifies the pipeline
+    * @return true if capacity was reserved; false if the pipeline or the executor is full
+    */
+   boolean tryReserve(K pipelineKey) {
+      while (true) {
+         AtomicInteger c = pendingByPipeline.get(pipelineKey);
+         if (c == null) {
+            c = new AtomicInteger(1);
+            if (pendingByPipeline.putIfAbsent(pipelineKey, c) != null) {
+               continue;
+            }
+            break;
+         }
+         int v = c.get();
+         if (v < 0) {
+            // retired counter; help remove it and try again
+            pendingByPipeline.remove(pipelineKey, c);
+            continue;
+         }
+         if (v >= pipelineCapacity) {
+            return false;
+         }
+         if (c.compareAndSet(v, v + 1)) {
+            break;
+         }
+      }
+      while (true) {
+         int v = pendingCount.get();
+         if (v >= totalCapacity) {
+            releasePipeline(pipelineKey);
+            return false;
+         }
+         if (pendingCount.compareAndSet(v, v + 1)) {
+            return true;
+         }
+      }
+   }
+   
+   private void releasePipeline(K pipelineKey) {
+      AtomicInteger c = pendingByPipeline.get(pipelineKey);
+      assert c != null && c.get() > 0;
+      if (c.decrementAndGet() == 0 && c.compareAndSet(0, -1)) {
+         pendingByPipeline.remove(pipelineKey, c);
+      }
+   }
+   
+   /**
+    * Releases capacity reserved for a task in the given pipeline. This is called when the task is
+    * started or when it is removed from the pipeline without being run. If any submissions are
+    * waiting for capacity, they are admitted.
+    *
+    * @param pipelineKey the key that identifies the pipeline
+    */
+   void release(K pipelineKey) {
+      releasePipeline(pipelineKey);
+      pendingCount.decrementAndGet();
+      if (waiterCount > 0) {
+         admitWaiters();
+      }
+   }
+   
+   /**
+    * Releases capacity for the given number of tasks in the given pipeline.
+    *
+    * @param pipelineKey the key that identifies the pipeline
+    * @param count the number of tasks
+    */
+   void release(K pipelineKey, int count) {
+      if (bounded) {
+         for (int i = 0; i < count; i++) {
+            release(pipelineKey);
+         }
+      }
+   }
+   
+   /**
+    * Drops the oldest queued task in the given pipeline, to make room for a new task. This never
+    * drops the pipeline's current task, even if it has not yet started.
+    *
+    * @param pipelineKey the key that identifies the pipeline
+    * @return true if a task was dropped; false if the pipeline has no queued tasks
+    */
+   private boolean dropOldest(K pipelineKey) {
+      Pipeline pipeline = pipelines.get(pipelineKey);
+      Runnable dropped = pipeline == null ? null : pipeline.pollQueued();
+      if (dropped == null) {
+         return false;
+      }
+      metrics.taskRejected(pipelineKey);
+      rejectTask(MeteredTask.unwrap(dropped),
+            new RejectedExecutionException("Dropped to make room for newer task"));
+      return true;
+   }
+   
+   private void addWaiter(Waiter<?> w) {
+      waiterLock.lock();
+      try {
+         waiters.add(w);
+         waiterCount = waiters.size() + admitted.size();
+      } finally {
+         waiterLock.unlock();
+      }
+      // capacity may have been released concurrently, before the waiter was visible
+      admitWaiters();
+   }
+   
+   /**
+    * Admits waiting submissions, in FIFO order, for which there is now capacity. Only one thread
+    * at a time enqueues admitted tasks, so tasks for the same pipeline are enqueued in the order
+    * they were submitted. The tasks are enqueued without holding the lock, since enqueuing may
+    * hand them to the underlying executor.
+    * 
+    * <p>If another thread is already enqueuing admitted tasks, this returns immediately: that
+    * thread re-scans the waiters before it finishes. But a re-entrant call, from a task that the
+    * underlying executor runs synchronously, does the work itself. Otherwise, such a task that
+    * blocks waiting for capacity would never be admitted.
+    */
+   void admitWaiters() {
+      Thread me = Thread.currentThread();
+      Thread outer;
+      waiterLock.lock();
+      try {
+         outer = admitter;
+         if (outer != null && outer != me) {
+            return;
+         }
+         admitter = me;
+      } finally {
+         waiterLock.unlock();
+      }
+      boolean done = false;
+      try {
+         while (true) {
+            Waiter<?> w;
+            waiterLock.lock();
+            try {
+               if (admitted.isEmpty()) {
+                  while (reserveWaiters());
+                  waiterCount = waiters.size() + admitted.size();
+                  if (admitted.isEmpty()) {
+                     if (outer == null) {
+                        admitter = null;
+                     }
+                     done = true;
+                     return;
+                  }
+               }
+               w = admitted.poll();
+               waiterCount = waiters.size() + admitted.size() + 1;
+            } finally {
+               waiterLock.unlock();
+            }
+            enqueue(w.pipelineKey, w.task);
+            w.admit();
+         }
+      } finally {
+         if (!done) {
+            waiterLock.lock();
+            try {
+               if (outer == null) {
+                  admitter = null;
+               }
+               waiterCount = waiters.size() + admitted.size();
+            } finally {
+               waiterLock.unlock();
+            }
+         }
+      }
+   }
+   
+   /**
+    * Reserves capacity for waiting submissions, in FIFO order, and moves them to the queue of
+    * admitted submissions. Once a waiter cannot be admitted, later waiters for the same pipeline
+    * are skipped, so they cannot take capacity ahead of it. This must be called while holding the
+    * lock.
+    *
+    * @return true if capacity was given back by a waiter that was withdrawn concurrently, in which
+    *       case earlier waiters that were skipped may now be admitted
+    */
+   private boolean reserveWaiters() {
+      boolean retry = false;
+      Set<K> blocked = null;
+      for (Iterator<Waiter<?>> iter = waiters.iterator(); iter.hasNext(); ) {
+         Waiter<?> w = iter.next();
+         if (w.isDone()) {
+            // withdrawn
+            iter.remove();
+            continue;
+         }
+         if (blocked != null && blocked.contains(w.pipelineKey)) {
+            continue;
+         }
+         if (!tryReserve(w.pipelineKey)) {
+            if (blocked == null) {
+               blocked = new HashSet<>();
+            }
+            blocked.add(w.pipelineKey);
+            continue;
+         }
+         iter.remove();
+         if (w.claim()) {
+            admitted.add(w);
+         } else {
+            // withdrawn concurrently
+            releasePipeline(w.pipelineKey);
+            pendingCount.decrementAndGet();
+            retry = blocked != null;
+         }
+      }
+      return retry;
+   }
+   
+   /**
+    * Tries to abort the given task with the given exception as the cause. If the given task is
+    * a settable or completable future, then it will be marked as failed. If the given task is
+    * any other kind of future or is {@linkplain Cancellable cancellable}, it will be cancelled.
+    * For all other tasks, nothing can be done to communicate that the task was aborted, so the
+    * failure is swallowed.
+    *
+    * @param failed the task that is being aborted
+    * @param t the cause
+    */
+   static void rejectTask(Runnable failed, Throwable t) {
+      if (failed instanceof SettableFluentFuture) {
+         ((SettableFluentFuture<?>) failed).setFailure(t);
+      } else if (failed instanceof CompletableFuture) {
+         ((CompletableFuture<?>) failed).completeExceptionally(t);
+      } else if (failed instanceof Future) {
+         ((Future<?>) failed).cancel(false);
+      } else if (failed instanceof Cancellable) {
+         ((Cancellable) failed).cancel(false);
+      }
+   }
+   
    /**
     * Removes the specified pipeline. To prevent this executor from hanging on to references to
     * no-longer-needed pipeline keys, this method is used to clean up when the queue for a given
@@ -397,6 +937,15 @@ public class PipeliningExecutor<K> implements SerializingExecutor<K> {
          return true;
       }
       
+      /**
+       * Removes and returns the oldest queued task, not including the current task.
+       *
+       * @return the oldest queued task or {@code null} if there are no queued tasks
+       */
+      synchronized Runnable pollQueued() {
+         return queue.poll();
+      }
+      
       void start() {
          runBatch();
       }
@@ -423,8 +972,11 @@ public class PipeliningExecutor<K> implements SerializingExecutor<K> {
                }
                assert c != null;
                while (true) {
+                  if (bounded) {
+                     release(pipelineKey);
+                  }
                   try {
-                     c.run();
+                     MeteredTask.run(c, pipelineKey, metrics);
                   } catch (Exception e) {
                      // TODO: log?
                   }
@@ -451,9 +1003,11 @@ public class PipeliningExecutor<K> implements SerializingExecutor<K> {
             }
             remove(pipelineKey, this);
             terminated.countDown();
+            release(pipelineKey, failed.size());
             // fail all tasks
             for (Runnable r : failed) {
-               rejectTask(r, e);
+               metrics.taskRejected(pipelineKey);
+               rejectTask(MeteredTask.unwrap(r), e);
             }
          }
       }
@@ -468,10 +1022,14 @@ public class PipeliningExecutor<K> implements SerializingExecutor<K> {
          List<Runnable> aborted;
          Runnable c;
          synchronized (this) {
-            aborted = new ArrayList<>(queue);
+            aborted = MeteredTask.unwrapAll(new ArrayList<>(queue));
             queue.clear();
-            c = current;
+            c = MeteredTask.unwrap(current);
+         }
+         for (int i = 0, len = aborted.size(); i < len; i++) {
+            metrics.taskRejected(pipelineKey);
          }
+         release(pipelineKey, aborted.size());
          if (c instanceof Future) {
             // try to interrupt current task
             ((Future<?>) c).cancel(true);
@@ -494,14 +1052,18 @@ public class PipeliningExecutor<K> implements SerializingExecutor<K> {
          Runnable c;
          synchronized (this) {
             for (Iterator<Runnable> iter = queue.iterator(); iter.hasNext();) {
-               Runnable r = iter.next();
+               Runnable r = MeteredTask.unwrap(iter.next());
                if (filter.test(r)) {
                   iter.remove();
                   purged.add(r);
                }
             }
-            c = current;
+            c = MeteredTask.unwrap(current);
          }
+         for (int i = 0, len = purged.size(); i < len; i++) {
+            metrics.taskRejected(pipelineKey);
+         }
+         release(pipelineKey, purged.size());
          if (filter.test(c)) {
             // try to interrupt current task if it matches predicate
             if (c instanceof Future) {
@@ -513,28 +1075,6 @@ public class PipeliningExecutor<K> implements SerializingExecutor<K> {
          return Collections.unmodifiableList(purged);
       }
       
-      /**
-       * Tries to abort the given task with the given exception as the cause. If the given task is
-       * a settable or completable future, then it will be marked as failed. If the given task is
-       * any other kind of future or is {@linkplain Cancellable cancellable}, it will be cancelled.
-       * For all other tasks, nothing can be done to communicate that the task was aborted, so the
-       * failure is swallowed.
-       *
-       * @param failed the task that is being aborted
-       * @param t the cause
-       */
-      private void rejectTask(Runnable failed, Throwable t) {
-         if (failed instanceof SettableFluentFuture) {
-            ((SettableFluentFuture<?>) failed).setFailure(t);
-         } else if (failed instanceof CompletableFuture) {
-            ((CompletableFuture<?>) failed).completeExceptionally(t);
-         } else if (failed instanceof Future) {
-            ((Future<?>) failed).cancel(false);
-         } else if (failed instanceof Cancellable) {
-            ((Cancellable) failed).cancel(false);
-         }
-      }
-      
       /**
        * Runs the next item in the queue or cleans up this pipeline if the queue is empty.
        */
@@ -548,6 +1088,60 @@ public class PipeliningExecutor<K> implements SerializingExecutor<K> {
       }
    }
    
+   /**
+    * A submission that is waiting for capacity. The waiter is itself a future that completes when
+    * the task is admitted. Its value is the task's future (which is {@code null} for tasks
+    * submitted via {@link PipeliningExecutor#execute(Object, Runnable)}).
+    *
+    * @param <T> the type of the task's result
+    * 
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    */
+   private class Waiter<T> extends SettableFluentFuture<FluentFuture<T>> {
+      final K pipelineKey;
+      final Runnable task;
+      private final FluentFuture<T> result;
+      private final AtomicBoolean claimed = new AtomicBoolean();
+      
+      Waiter(K pipelineKey, Runnable task, FluentFuture<T> result) {
+         this.pipelineKey = pipelineKey;
+         this.task = task;
+         this.result = result;
+      }
+      
+      /**
+       * Claims this waiter, either to admit it or to withdraw it.
+       *
+       * @return true if claimed; false if it was already claimed
+       */
+      boolean claim() {
+         return claimed.compareAndSet(false, true);
+      }
+      
+      /**
+       * Completes this waiter after its task has been enqueued.
+       */
+      void admit() {
+         setValue(result);
+      }
+      
+      @Override
+      public boolean cancel(boolean mayInterruptIfRunning) {
+         // can only be withdrawn if not yet admitted
+         if (claim()) {
+            boolean ret = super.cancel(mayInterruptIfRunning);
+            assert ret;
+            if (result != null) {
+               // the task's result is unreachable, so make sure it's not left incomplete
+               result.cancel(false);
+            }
+            metrics.taskRejected(pipelineKey);
+            return true;
+         }
+         return false;
+      }
+   }
+   
    private static class SinglePipelineExecutorService<K> extends AbstractExecutorService
          implements FluentExecutorService {
       private final PipeliningExecutor<K> pipeliner;
@@ -6,6 +6,7 @@ import com.bluegosling.concurrent.fluent.SettableRunnableFluentFuture;
 
 import java.util.concurrent.Callable;
 import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * An executor that serializes multiple tasks that correspond to the same key. So tasks submitted
@@ -98,4 +99,52 @@ public interface SerializingExecutor<K> {
       execute(k, f);
       return f;
    }
+
+   /**
+    * Submits the given task, associated with the given key, without blocking. The returned future
+    * completes once the task has been accepted, and its value is a future that completes when the
+    * task completes. For executors with bounded queues, this allows producers to apply
+    * back-pressure without blocking a thread: the task is accepted once there is space for it.
+    * Cancelling the returned future before the task is accepted withdraws the task.
+    *
+    * <p>This default implementation submits the task immediately, via
+    * {@link #submit(Object, Runnable)}. If the task is rejected then the returned future fails
+    * with the {@link RejectedExecutionException}.
+    *
+    * @param k the key
+    * @param task the task
+    * @return a future that completes when the task is accepted, whose value is a future that
+    *       completes when the task completes
+    */
+   default FluentFuture<FluentFuture<Void>> submitAsync(K k, Runnable task) {
+      try {
+         return FluentFuture.completedFuture(submit(k, task));
+      } catch (RejectedExecutionException e) {
+         return FluentFuture.failedFuture(e);
+      }
+   }
+
+   /**
+    * Submits the given task, associated with the given key, without blocking. The returned future
+    * completes once the task has been accepted, and its value is a future that completes when the
+    * task completes, with the value returned by the given task.
+    *
+    * <p>This default implementation submits the task immediately, via
+    * {@link #submit(Object, Callable)}. If the task is rejected then the returned future fails with
+    * the {@link RejectedExecutionException}.
+    *
+    * @param k the key
+    * @param task the task, which produces the value of the future on success
+    * @return a future that completes when the task is accepted, whose value is a future that
+    *       completes when the task completes
+    *
+    * @see #submitAsync(Object, Runnable)
+    */
+   default <T> FluentFuture<FluentFuture<T>> submitAsync(K k, Callable<T> task) {
+      try {
+         return FluentFuture.completedFuture(submit(k, task));
+      } catch (RejectedExecutionException e) {
+         return FluentFuture.failedFuture(e);
+      }
+   }
 }
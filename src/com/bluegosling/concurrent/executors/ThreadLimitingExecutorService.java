@@ -1,5 +1,7 @@
 package com.bluegosling.concurrent.executors;
 
+import static java.util.Objects.requireNonNull;
+
 import com.bluegosling.concurrent.Cancellable;
 import com.bluegosling.concurrent.fluent.FluentExecutorService;
 import com.bluegosling.concurrent.fluent.FluentFuture;
@@ -20,6 +22,7 @@ import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -38,6 +41,15 @@ import java.util.concurrent.TimeUnit;
  * be exercised to coordinate the life cycle of the underlying executor and the sources of task
  * submissions.
  * 
+ * <p>An executor created via {@link #withPermits(Executor, int)} limits concurrency differently:
+ * instead of queueing tasks until one of its limited threads is free, it hands every task to the
+ * underlying executor right away, and each task acquires a permit before it runs. So tasks wait in
+ * the underlying executor's threads instead of in this executor's queue. This is the right choice
+ * when the underlying executor starts a {@linkplain
+ * com.bluegosling.concurrent.fluent.FluentExecutorService#newVirtualThreadPerTaskExecutor() virtual
+ * thread per task}, where a blocked thread is cheap, and the goal is to bound concurrent access to
+ * some resource (like a backend that can only handle so many concurrent requests).
+ * 
  * @author Joshua Humphries (jhumphries131@gmail.com)
  */
 // TODO: javadoc
@@ -49,14 +61,78 @@ public class ThreadLimitingExecutorService extends AbstractExecutorService
 
    final Executor executor;
    final int threadLimit;
+   final ExecutorMetrics metrics;
+   /** Permits for running tasks, or {@code null} if concurrency is limited by queueing tasks. */
+   final Semaphore permits;
    final Object lock = new Object(); // guards the next three members
    final Queue<Runnable> queue = new LinkedList<>();
    final Set<VirtualThread> activeThreads = new HashSet<>();
    boolean shutdown;
+   /** Set by {@link #shutdownNow()} so that tasks waiting for permits do not start. */
+   volatile boolean stopped;
    
    public ThreadLimitingExecutorService(Executor executor, int threadLimit) {
+      this(executor, threadLimit, ExecutorMetrics.NONE);
+   }
+
+   /**
+    * Constructs a new executor service that uses threads from the given executor, allows at most
+    * the given number of them to run concurrently, and reports events to the given metrics. Events
+    * are reported with a {@code null} key.
+    *
+    * @param executor the executor that provides threads
+    * @param threadLimit the maximum number of concurrently running tasks
+    * @param metrics the metrics to which task submission and execution events are reported
+    */
+   public ThreadLimitingExecutorService(Executor executor, int threadLimit,
+         ExecutorMetrics metrics) {
+      this(executor, threadLimit, metrics, false);
+   }
+   
+   private ThreadLimitingExecutorService(Executor executor, int threadLimit,
+         ExecutorMetrics metrics, boolean usePermits) {
       this.executor = executor;
       this.threadLimit = threadLimit;
+      this.metrics = requireNonNull(metrics);
+      this.permits = usePermits ? new Semaphore(threadLimit, true) : null;
+   }
+   
+   /**
+    * Creates a new executor service that submits every task to the given executor immediately but
+    * allows at most the given number of tasks to run concurrently. Each task acquires a permit
+    * before running, so tasks in excess of the limit block threads of the given executor while
+    * they wait. Permits are granted in FIFO order.
+    * 
+    * <p>Since there is no queue, {@link #shutdownNow()} always returns an empty list. Tasks that
+    * are waiting for a permit when it is called are interrupted and cancelled.
+    *
+    * @param executor the executor that provides threads, typically one that starts a new virtual
+    *       thread for each task
+    * @param concurrencyLimit the maximum number of concurrently running tasks
+    * @return a new executor service that uses permits to limit concurrency
+    */
+   public static ThreadLimitingExecutorService withPermits(Executor executor,
+         int concurrencyLimit) {
+      return withPermits(executor, concurrencyLimit, ExecutorMetrics.NONE);
+   }
+
+   /**
+    * Creates a new executor service that uses permits to limit concurrency and reports events to
+    * the given metrics.
+    *
+    * @param executor the executor that provides threads
+    * @param concurrencyLimit the maximum number of concurrently running tasks
+    * @param metrics the metrics to which task submission and execution events are reported
+    * @return a new executor service that uses permits to limit concurrency
+    * 
+    * @see #withPermits(Executor, int)
+    */
+   public static ThreadLimitingExecutorService withPermits(Executor executor,
+         int concurrencyLimit, ExecutorMetrics metrics) {
+      if (concurrencyLimit <= 0) {
+         throw new IllegalArgumentException("Concurrency limit must be positive");
+      }
+      return new ThreadLimitingExecutorService(executor, concurrencyLimit, metrics, true);
    }
 
    @Override
@@ -71,19 +147,15 @@ public class ThreadLimitingExecutorService extends AbstractExecutorService
       List<Runnable> aborted;
       synchronized (lock) {
          shutdown = true;
+         stopped = true;
          aborted = new ArrayList<>(queue);
          queue.clear();
          for (VirtualThread thread : activeThreads) {
             thread.interrupt();
          }
       }
-      for (Runnable r : aborted) {
-         if (r instanceof Future) {
-            ((Future<?>) r).cancel(false);
-         } else if (r instanceof Cancellable) {
-            ((Cancellable) r).cancel(false);
-         }
-      }
+      // unwraps the tasks in place, so they can be returned to the caller
+      abort(aborted);
       return aborted;
    }
 
@@ -133,12 +205,14 @@ public class ThreadLimitingExecutorService extends AbstractExecutorService
 
    @Override
    public void execute(Runnable command) {
+      command = MeteredTask.submitted(command, null, metrics);
       VirtualThread t;
       synchronized (lock) {
          if (shutdown) {
+            metrics.taskRejected(null);
             throw new RejectedExecutionException();
          }
-         if (activeThreads.size() == threadLimit) {
+         if (permits == null && activeThreads.size() == threadLimit) {
             queue.add(command);
             return;
          } else {
@@ -161,6 +235,8 @@ public class ThreadLimitingExecutorService extends AbstractExecutorService
       synchronized (lock) {
          activeThreads.remove(thread);
          if (isTerminated()) {
+            // notify any threads waiting for termination
+            lock.notifyAll();
             return Collections.emptyList();
          }
          // time to terminate the service
@@ -185,8 +261,13 @@ public class ThreadLimitingExecutorService extends AbstractExecutorService
       return null;
    }
    
-   private static void abort(List<Runnable> aborted) {
-      for (Runnable r : aborted) {
+   /**
+    * Aborts the given tasks, which were accepted but will never run. The given list is modified in
+    * place, so that it contains the unwrapped tasks.
+    */
+   private void abort(List<Runnable> aborted) {
+      for (Runnable r : MeteredTask.unwrapAll(aborted)) {
+         metrics.taskRejected(null);
          if (r instanceof Future) {
             ((Future<?>) r).cancel(false);
          } else if (r instanceof Cancellable) {
@@ -234,9 +315,17 @@ public class ThreadLimitingExecutorService extends AbstractExecutorService
                   executor.execute(() -> {
                      synchronized (this) {
                         current = Thread.currentThread();
+                        if (interrupted) {
+                           // shutdownNow was called after this was submitted but before it started
+                           current.interrupt();
+                        }
                      }
                      try {
-                        r.run();
+                        if (permits == null) {
+                           MeteredTask.run(r, null, metrics);
+                        } else {
+                           runWithPermit(r);
+                        }
                      } finally {
                         synchronized (this) {
                            current = null;
@@ -246,7 +335,8 @@ public class ThreadLimitingExecutorService extends AbstractExecutorService
                   });
                   return;
                } catch (RejectedExecutionException ree) {
-                  rejectTask(r, ree);
+                  metrics.taskRejected(null);
+                  rejectTask(MeteredTask.unwrap(r), ree);
                }
             }
          }
@@ -257,6 +347,27 @@ public class ThreadLimitingExecutorService extends AbstractExecutorService
          removeAndCleanupThread(this);
       }
       
+      private void runWithPermit(Runnable r) {
+         try {
+            permits.acquire();
+         } catch (InterruptedException e) {
+            // interrupted by shutdownNow before the task could start
+            abort(Collections.singletonList(MeteredTask.unwrap(r)));
+            return;
+         }
+         if (stopped) {
+            // acquired a permit released by a task that shutdownNow interrupted
+            permits.release();
+            abort(Collections.singletonList(MeteredTask.unwrap(r)));
+            return;
+         }
+         try {
+            MeteredTask.run(r, null, metrics);
+         } finally {
+            permits.release();
+         }
+      }
+      
       private void rejectTask(Runnable failed, Throwable t) {
          if (failed instanceof SettableFluentFuture) {
             ((SettableFluentFuture<?>) failed).setFailure(t);
@@ -13,6 +13,17 @@
  * {@linkplain com.bluegosling.concurrent.executors.PipeliningExecutor One} that wraps a given
  * executor and enforces the parallelism and sequencing independent of the underlying execution
  * mechanism, and {@linkplain com.bluegosling.concurrent.executors.ActorThreadPool another} that is
- * a novel thread pool implementation.
+ * a novel thread pool implementation. Related to these is the
+ * {@link com.bluegosling.concurrent.executors.BatchingPipeliningExecutor}, which coalesces items
+ * for a key into batches that are delivered, sequentially per key, to a single drain function.
+ * 
+ * <p>A {@link com.bluegosling.concurrent.executors.FluentScope} provides structured concurrency
+ * on top of any executor: it owns forked child tasks, combines their results, and cancels the
+ * children that are no longer needed, including when the scope's deadline elapses.
+ * 
+ * <p>Executors in this package can be instrumented using an
+ * {@link com.bluegosling.concurrent.executors.ExecutorMetrics}, a small SPI for reporting task
+ * submission and execution events. The {@link com.bluegosling.concurrent.executors.ExecutorStats}
+ * implementation tracks counters and sampled latency histograms and can export them via JMX.
  */
 package com.bluegosling.concurrent.executors;
\ No newline at end of file
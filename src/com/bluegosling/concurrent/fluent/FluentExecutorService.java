@@ -1,9 +1,13 @@
 package com.bluegosling.concurrent.fluent;
 
+import static java.util.Objects.requireNonNull;
+
+import com.bluegosling.concurrent.ThreadFactories;
 import com.bluegosling.concurrent.fluent.FluentExecutors.FluentExecutorServiceWrapper;
 import com.bluegosling.concurrent.fluent.FluentExecutors.FluentScheduledExecutorServiceSchedulingWrapper;
 import com.bluegosling.concurrent.fluent.FluentExecutors.FluentScheduledExecutorServiceWrapper;
 import com.bluegosling.concurrent.fluent.FluentExecutors.SameThreadExecutorService;
+import com.bluegosling.concurrent.fluent.FluentExecutors.ThreadPerTaskExecutorService;
 import com.google.common.util.concurrent.ListeningExecutorService;
 
 import java.util.Collection;
@@ -12,6 +16,7 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -67,6 +72,34 @@ public interface FluentExecutorService extends ListeningExecutorService {
       return new SameThreadExecutorService();
    }
 
+   /**
+    * Returns a new executor service that starts a new thread, using the given factory, for each
+    * task. The service has no queue and imposes no limit on the number of concurrent threads.
+    *
+    * @param threadFactory the factory used to create threads
+    * @return a new executor service that starts a new thread for each task
+    * 
+    * @see #newVirtualThreadPerTaskExecutor()
+    */
+   static FluentExecutorService newThreadPerTaskExecutor(ThreadFactory threadFactory) {
+      return new ThreadPerTaskExecutorService(requireNonNull(threadFactory));
+   }
+
+   /**
+    * Returns a new executor service that starts a new virtual thread for each task. Since virtual
+    * threads are cheap to create and to block, this is well suited to running very large numbers
+    * of concurrent tasks that perform blocking I/O, without needing to size a thread pool. To
+    * bound the concurrency of such tasks, wrap the returned service with a permit-based
+    * {@code ThreadLimitingExecutorService} (see {@code ThreadLimitingExecutorService.withPermits}).
+    *
+    * @return a new executor service that starts a new virtual thread for each task
+    * @throws UnsupportedOperationException if the current runtime does not
+    *       {@linkplain ThreadFactories#isVirtualThreadSupported() support} virtual threads
+    */
+   static FluentExecutorService newVirtualThreadPerTaskExecutor() {
+      return newThreadPerTaskExecutor(ThreadFactories.newVirtualThreadFactory("virtual"));
+   }
+
    /**
     * Converts the specified service into a {@link FluentExecutorService}. If the specified
     * service <em>is</em> already fluent, it is returned without any conversion.
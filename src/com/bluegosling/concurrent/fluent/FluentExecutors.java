@@ -15,16 +15,21 @@ import java.util.ConcurrentModificationException;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.concurrent.AbstractExecutorService;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.DelayQueue;
 import java.util.concurrent.Delayed;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
@@ -736,4 +741,135 @@ final class FluentExecutors {
          }
       }
    }
+   
+   /**
+    * A {@link FluentExecutorService} that starts a new thread for each task. There is no queue and
+    * no limit on the number of threads. This is primarily intended for use with virtual threads,
+    * which are cheap to create and to block.
+    *
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    */
+   static class ThreadPerTaskExecutorService extends AbstractExecutorService
+         implements FluentExecutorService {
+      private final ThreadFactory threadFactory;
+      private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+      private final Object lock = new Object(); // guards the next member
+      private boolean shutdown;
+      
+      ThreadPerTaskExecutorService(ThreadFactory threadFactory) {
+         this.threadFactory = threadFactory;
+      }
+      
+      @Override
+      public void execute(Runnable command) {
+         if (command == null) {
+            throw new NullPointerException();
+         }
+         Thread t = threadFactory.newThread(() -> {
+            try {
+               command.run();
+            } finally {
+               threads.remove(Thread.currentThread());
+               if (threads.isEmpty()) {
+                  synchronized (lock) {
+                     lock.notifyAll();
+                  }
+               }
+            }
+         });
+         if (t == null) {
+            throw new RejectedExecutionException("Thread factory did not create a thread");
+         }
+         // add under lock so that shutdown can't race with a thread being registered
+         synchronized (lock) {
+            if (shutdown) {
+               throw new RejectedExecutionException();
+            }
+            threads.add(t);
+         }
+         try {
+            t.start();
+         } catch (Throwable th) {
+            threads.remove(t);
+            throw new RejectedExecutionException(th);
+         }
+      }
+
+      @Override
+      public void shutdown() {
+         synchronized (lock) {
+            shutdown = true;
+            lock.notifyAll();
+         }
+      }
+
+      @Override
+      public List<Runnable> shutdownNow() {
+         shutdown();
+         for (Thread t : threads) {
+            t.interrupt();
+         }
+         // no queue, so there are never any tasks that were accepted but not started
+         return Collections.emptyList();
+      }
+
+      @Override
+      public boolean isShutdown() {
+         synchronized (lock) {
+            return shutdown;
+         }
+      }
+
+      @Override
+      public boolean isTerminated() {
+         synchronized (lock) {
+            return shutdown && threads.isEmpty();
+         }
+      }
+
+      @Override
+      public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+         long deadline = System.nanoTime() + unit.toNanos(timeout);
+         synchronized (lock) {
+            while (!isTerminated()) {
+               long nanosLeft = deadline - System.nanoTime();
+               if (nanosLeft <= 0) {
+                  return false;
+               }
+               TimeUnit.NANOSECONDS.timedWait(lock, nanosLeft);
+            }
+            return true;
+         }
+      }
+
+      @Override
+      protected <T> RunnableFuture<T> newTaskFor(Callable<T> task) {
+         return new SettableRunnableFluentFuture<>(task);
+      }
+
+      @Override
+      protected <T> RunnableFuture<T> newTaskFor(Runnable task, T result) {
+         return new SettableRunnableFluentFuture<>(task, result);
+      }
+
+      @Override
+      public <T> FluentFuture<T> submit(Callable<T> task) {
+         return (FluentFuture<T>) super.submit(task);
+      }
+
+      @Override
+      public <T> FluentFuture<T> submit(Runnable task, T result) {
+         return (FluentFuture<T>) super.submit(task, result);
+      }
+
+      @Override
+      public FluentFuture<Void> submit(Runnable task) {
+         return (FluentFuture<Void>) super.<Void>submit(task, null);
+      }
+      
+      @Override
+      public String toString() {
+         return getClass().getSimpleName() + "[" + threadFactory + "]";
+      }
+   }
 }
@@ -0,0 +1,271 @@
+package com.bluegosling.concurrent.locks;
+
+import java.util.Date;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An abstract base class for the spin locks in this package. These locks have no owner thread, so
+ * they can be locked in one thread and unlocked in another. Their conditions, unlike their lock
+ * acquisitions, do not spin: threads awaiting a condition are enqueued and parked, and they are
+ * signaled in FIFO order.
+ * 
+ * <p>Like normal locks, awaiting or signaling a condition requires that the lock be locked. But
+ * since the lock has no concept of an "owner", it cannot be verified that it is the awaiting or
+ * signaling thread that has locked it.
+ *
+ * @see SpinLock
+ * @see McsSpinLock
+ * @see ClhSpinLock
+ * @see CohortLock
+ *
+ * @author Joshua Humphries (jhumphries131@gmail.com)
+ */
+abstract class AbstractSpinLock implements Lock {
+   
+   /**
+    * The number of times to "spin" in a busy-wait loop before yielding.
+    */
+   static final int SPIN_TIMES = 1000;
+
+   /**
+    * Queries if this lock is held by any thread. This method is designed for use in monitoring of
+    * the system state, not for synchronization control.
+    *
+    * @return true if any thread holds this lock
+    */
+   public abstract boolean isLocked();
+   
+   /**
+    * Releases the lock.
+    *
+    * @return true if the lock was released or false if it could not be because it was not locked
+    */
+   abstract boolean tryRelease();
+   
+   /**
+    * {@inheritDoc}
+    * 
+    * <p>The lock can be unlocked by a thread other than the one that locked it.
+    * 
+    * @throws IllegalMonitorStateException if the lock is not locked
+    */
+   @Override
+   public void unlock() {
+      if (!tryRelease()) {
+         throw new IllegalMonitorStateException();
+      }
+   }
+
+   @Override
+   public Condition newCondition() {
+      return new ConditionObject();
+   }
+   
+   /**
+    * A thread in a condition wait queue. In addition to the thread reference, this also tracks a
+    * flag indicating whether the thread has been signaled or not.
+    *
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    */
+   private static class WaitingThread {
+      final Thread thread;
+      volatile boolean signaled;
+      
+      WaitingThread(Thread thread) {
+         this.thread = thread;
+      }
+   }
+   
+   /**
+    * A simple condition queue associated with a spin lock.
+    *
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    */
+   private class ConditionObject extends ConcurrentLinkedQueue<WaitingThread> implements Condition {
+      
+      private static final long serialVersionUID = -924227956590939763L;
+
+      ConditionObject() {
+      }
+      
+      /**
+       * Ensures that the spin lock associated with this condition is locked.
+       * 
+       * @throws IllegalMonitorStateException if the lock is not locked
+       */
+      private void checkLock() {
+         if (!isLocked()) {
+            throw new IllegalMonitorStateException();
+         }
+      }
+      
+      /**
+       * Adds the given thread to the condition queue and unlocks this lock. If the lock is already
+       * unlocked then an {@link IllegalMonitorStateException} and the thread will not be in the
+       * queue.
+       *
+       * @param th a thread to enqueue
+       */
+      private void enqueueAndUnlock(WaitingThread th) {
+         // We need the thread in the queue before the lock is released to prevent race conditions
+         // between await and signal, so add it first.
+         add(th);
+         if (!tryRelease()) {
+            // but we can't leave the thread in the queue if the lock was in an invalid state, so
+            // remove before throwing
+            if (!remove(th)) {
+               // a concurrent thread tried (or is trying) to signal this thread, so we need to
+               // propagate that signal to another waiting thread so it's not lost
+               signal();
+            }
+            throw new IllegalMonitorStateException();
+         }
+      }
+
+      @Override
+      public void await() throws InterruptedException {
+         checkLock();
+         if (Thread.interrupted()) {
+            throw new InterruptedException();
+         }
+         WaitingThread th = new WaitingThread(Thread.currentThread());
+         boolean failed = false;
+         enqueueAndUnlock(th);
+         try {
+            LockSupport.park(this);
+            if (Thread.interrupted()) {
+               failed = true;
+               throw new InterruptedException();
+            }
+         } catch (RuntimeException | Error e) {
+            failed = true;
+            throw e;
+         } finally {
+            lock();
+            if (!th.signaled) {
+               // if removal fails, a concurrent thread tried (or is trying) to signal this thread,
+               // so mark this operation as failed, and we'll propagate the signal below
+               failed = !remove(th);
+            }
+            if (failed) {
+               // we were de-queued and should have been signaled; but since we're throwing
+               // instead, propagate signal to next waiter
+               signal();
+            }
+         }
+      }
+
+      @Override
+      public void awaitUninterruptibly() {
+         checkLock();
+         WaitingThread th = new WaitingThread(Thread.currentThread());
+         boolean interrupted = false;
+         boolean failed = false;
+         enqueueAndUnlock(th);
+         try {
+            do {
+               LockSupport.park(this);
+                if (Thread.interrupted()) {
+                   // save interrupt status so we can restore on exit
+                   interrupted = true;
+                }
+                // loop until we've been signaled, ignoring wake-ups caused by interruption
+            } while (!th.signaled);
+         } catch (RuntimeException | Error e) {
+            failed = true;
+            throw e;
+         } finally {
+            lock();
+            if (!th.signaled) {
+               // if removal fails, a concurrent thread tried (or is trying) to signal this thread,
+               // so mark this operation as failed, and we'll propagate the signal below
+               failed = !remove(th);
+            }
+            if (failed) {
+               // we were de-queued and should have been signaled; but since we're throwing
+               // instead, propagate signal to next waiter
+               signal();
+            }
+            // restore interrupt status on exit
+            if (interrupted) {
+               th.thread.interrupt();
+            }
+         }
+      }
+
+      @Override
+      public long awaitNanos(long nanosTimeout) throws InterruptedException {
+         checkLock();
+         if (Thread.interrupted()) {
+            throw new InterruptedException();
+         }
+         long start = System.nanoTime();
+         WaitingThread th = new WaitingThread(Thread.currentThread());
+         boolean failed = false;
+         long ret;
+         enqueueAndUnlock(th);
+         try {
+            LockSupport.parkNanos(this, nanosTimeout);
+            if (Thread.interrupted()) {
+               failed = true;
+               throw new InterruptedException();
+            }
+            ret = nanosTimeout - (System.nanoTime() - start);
+         } catch (RuntimeException | Error e) {
+            failed = true;
+            throw e;
+         } finally {
+            lock();
+            if (!th.signaled) {
+               // if removal fails, a concurrent thread tried (or is trying) to signal this thread,
+               // so mark this operation as failed, and we'll propagate the signal below
+               failed = !remove(th);
+            }
+            if (failed) {
+               // we were de-queued and should have been signaled; but since we're throwing
+               // instead, propagate signal to next waiter
+               signal();
+            }
+         }
+         return ret;
+      }
+
+      @Override
+      public boolean await(long time, TimeUnit unit) throws InterruptedException {
+         return awaitNanos(unit.toNanos(time)) > 0;
+      }
+
+      @Override
+      public boolean awaitUntil(Date deadline) throws InterruptedException {
+         Date now = new Date();
+         return awaitNanos(TimeUnit.MILLISECONDS.toNanos(deadline.getTime() - now.getTime())) > 0;
+      }
+
+      @Override
+      public void signal() {
+         checkLock();
+         WaitingThread th = poll();
+         if (th != null) {
+            th.signaled = true;
+            LockSupport.unpark(th.thread);
+         }
+      }
+
+      @Override
+      public void signalAll() {
+         checkLock();
+         while (true) {
+            WaitingThread th = poll();
+            if (th == null) {
+               return;
+            }
+            th.signaled = true;
+            LockSupport.unpark(th.thread);
+         }
+      }
+   }
+}
@@ -0,0 +1,200 @@
+package com.bluegosling.concurrent.locks;
+
+import com.bluegosling.concurrent.contended.ContendedInteger;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.Condition;
+
+/**
+ * A non-reentrant and fair spin lock that uses a CLH queue. Each thread that waits for the lock
+ * appends a node to a queue and then spins on a flag in its predecessor's node. When the thread
+ * that holds the lock releases it, it sets the flag in its own node, which is observed only by its
+ * successor. Like {@link McsSpinLock}, waiting threads spin on different memory locations, and the
+ * lock is granted in FIFO order. Nodes are padded so that each lives in its own cache line.
+ *
+ * <p>The algorithm is named for its inventors, Travis Craig, Erik Hagersten, and Anders Landin.
+ * Compared to {@link McsSpinLock}, releasing the lock is cheaper since it is a single write that
+ * never has to wait for a successor to link itself into the queue. The trade-off is that a waiting
+ * thread spins on a node allocated by another thread, which can be more expensive on machines
+ * whose memory is not cache-coherent.
+ *
+ * <p>This variant supports abandoning a wait, due to timeout or interruption: the waiting thread
+ * marks its node as abandoned and records its predecessor in it. Its successor, upon seeing the
+ * abandoned node, then starts spinning on that predecessor instead.
+ *
+ * <p>Like {@link SpinLock}, this lock is non-reentrant and will deadlock if re-entrance is
+ * accidentally attempted. It has no exclusive owner thread, so it can be locked in one thread and
+ * then unlocked in another. And awaiting a {@link Condition} created by this lock does not spin.
+ * Threads awaiting conditions are enqueued and parked and will be notified in FIFO order by calls
+ * to {@link Condition#signal()}.
+ *
+ * @see McsSpinLock
+ * @see <a href="https://www.cs.rochester.edu/research/synchronization/pseudocode/timeout.html">
+ *       Scalable queue-based spin locks with timeout</a>
+ *
+ * @author Joshua Humphries (jhumphries131@gmail.com)
+ */
+public class ClhSpinLock extends AbstractSpinLock {
+
+   /**
+    * The state of a node whose thread is waiting for or holding the lock.
+    */
+   private static final int WAITING = 0;
+
+   /**
+    * The state of a node whose thread has released the lock.
+    */
+   private static final int RELEASED = 1;
+
+   /**
+    * The state of a node whose thread gave up waiting for the lock.
+    */
+   private static final int ABANDONED = 2;
+
+   private static final AtomicReferenceFieldUpdater<ClhSpinLock, Node> holderUpdater =
+         AtomicReferenceFieldUpdater.newUpdater(ClhSpinLock.class, Node.class, "holder");
+
+   /**
+    * The tail of the queue. This is never {@code null}: when the lock is not held, the tail is a
+    * node whose state is {@link #RELEASED} (possibly followed by abandoned nodes).
+    */
+   private final AtomicReference<Node> tail = new AtomicReference<>(new Node(RELEASED));
+
+   /**
+    * The node of the thread that currently holds the lock, or {@code null} if the lock is not
+    * held. This is what allows a thread other than the one that acquired the lock to release it.
+    */
+   private volatile Node holder;
+
+   /**
+    * Constructs a new CLH spin lock.
+    */
+   public ClhSpinLock() {
+   }
+
+   @Override
+   public void lock() {
+      try {
+         acquire(false, -1);
+      } catch (InterruptedException e) {
+         throw new AssertionError(e);
+      }
+   }
+
+   @Override
+   public void lockInterruptibly() throws InterruptedException {
+      if (Thread.interrupted()) {
+         throw new InterruptedException();
+      }
+      acquire(true, -1);
+   }
+
+   @Override
+   public boolean tryLock() {
+      Node t = tail.get();
+      Node pred = t;
+      while (true) {
+         int state = pred.get();
+         if (state == WAITING) {
+            return false;
+         } else if (state == RELEASED) {
+            break;
+         }
+         pred = pred.prev;
+      }
+      // everything between the tail and the last released node was abandoned, so the lock is free
+      Node node = new Node(WAITING);
+      if (tail.compareAndSet(t, node)) {
+         holder = node;
+         return true;
+      }
+      return false;
+   }
+
+   @Override
+   public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+      if (Thread.interrupted()) {
+         throw new InterruptedException();
+      }
+      long nanos = unit.toNanos(time);
+      return nanos <= 0 ? tryLock() : acquire(true, nanos);
+   }
+
+   /**
+    * Acquires the lock.
+    *
+    * @param interruptible if true, the wait is abandoned if the thread is interrupted
+    * @param nanosTimeout the maximum time to wait, or a negative number to wait indefinitely
+    * @return true if the lock was acquired or false if the timeout elapsed first
+    * @throws InterruptedException if the wait is interruptible and the thread is interrupted
+    */
+   private boolean acquire(boolean interruptible, long nanosTimeout) throws InterruptedException {
+      long deadline = nanosTimeout >= 0 ? System.nanoTime() + nanosTimeout : 0;
+      Node node = new Node(WAITING);
+      Node pred = tail.getAndSet(node);
+      for (int spins = 0; ; ) {
+         int state = pred.get();
+         if (state == RELEASED) {
+            break;
+         } else if (state == ABANDONED) {
+            // predecessor gave up, so wait on its predecessor instead
+            pred = pred.prev;
+            continue;
+         }
+         if (++spins < SPIN_TIMES) {
+            continue;
+         }
+         spins = 0;
+         boolean interrupted = interruptible && Thread.interrupted();
+         if (!interrupted && (nanosTimeout < 0 || deadline - System.nanoTime() > 0)) {
+            Thread.yield();
+            continue;
+         }
+         // interrupted or timed out, so give up; our successor will wait on our predecessor
+         node.prev = pred;
+         node.set(ABANDONED);
+         if (interrupted) {
+            throw new InterruptedException();
+         }
+         return false;
+      }
+      holder = node;
+      return true;
+   }
+
+   @Override
+   public boolean isLocked() {
+      return holder != null;
+   }
+
+   @Override
+   boolean tryRelease() {
+      Node h = holder;
+      if (h == null || !holderUpdater.compareAndSet(this, h, null)) {
+         return false;
+      }
+      h.set(RELEASED);
+      return true;
+   }
+
+   /**
+    * A node in the queue. The node's value is its state, which its successor spins on while
+    * waiting. It extends {@link ContendedInteger} so that each node is padded and lives in its own
+    * cache line.
+    *
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    */
+   private static class Node extends ContendedInteger {
+      /**
+       * The node's predecessor in the queue. This is only set when the node is abandoned, and it
+       * is published by the write of the node's state.
+       */
+      Node prev;
+
+      Node(int state) {
+         super(state);
+      }
+   }
+}
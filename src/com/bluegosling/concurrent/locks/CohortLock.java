@@ -0,0 +1,213 @@
+package com.bluegosling.concurrent.locks;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.Condition;
+import java.util.function.ToIntFunction;
+
+/**
+ * A non-reentrant spin lock that prefers to pass ownership among threads in the same cohort. This
+ * is a lock cohorting scheme: threads are partitioned into clusters, and each cluster has its own
+ * local lock. A thread first acquires its cluster's local lock and then a global lock that is
+ * shared by all clusters. But when a thread releases the lock while other threads in its cluster
+ * are waiting, it hands the local lock to the next one of them <em>without</em> releasing the
+ * global lock. So the lock tends to stay within one cluster for a while, which keeps the data it
+ * guards in caches that are close to the threads of that cluster.
+ *
+ * <p>To prevent starvation of other clusters, ownership is passed within a cluster at most
+ * {@value #MAX_LOCAL_HANDOFFS} consecutive times. After that, the global lock is released so that
+ * other clusters get a turn. The local locks are {@linkplain McsSpinLock MCS locks}, which can
+ * efficiently determine whether there are waiting threads to which the lock can be handed. The
+ * global lock is a {@linkplain ClhSpinLock CLH lock}, which can be released by a thread other than
+ * the one that acquired it (since a cohort may pass it among many threads before releasing it).
+ *
+ * <p>Java does not expose the processor socket or NUMA node on which a thread runs. So clusters are
+ * defined by a function that maps threads to cluster indices. By default, threads are clustered by
+ * their {@link ThreadGroup}, which works well when each pool of related threads (like the workers
+ * of an executor) is created in its own group. Cluster indices are reduced modulo the number of
+ * clusters, so the function may return any integer.
+ *
+ * <p>Like {@link SpinLock}, this lock is non-reentrant and will deadlock if re-entrance is
+ * accidentally attempted. It has no exclusive owner thread, so it can be locked in one thread and
+ * then unlocked in another. And awaiting a {@link Condition} created by this lock does not spin.
+ * Threads awaiting conditions are enqueued and parked and will be notified in FIFO order by calls
+ * to {@link Condition#signal()}.
+ *
+ * @see <a href="https://dl.acm.org/doi/10.1145/2370036.2145848">Lock Cohorting: A General
+ *       Technique for Designing NUMA Locks</a>
+ *
+ * @author Joshua Humphries (jhumphries131@gmail.com)
+ */
+public class CohortLock extends AbstractSpinLock {
+
+   /**
+    * The maximum number of consecutive times ownership is passed between threads in the same
+    * cluster before the lock is released to other clusters.
+    */
+   public static final int MAX_LOCAL_HANDOFFS = 64;
+
+   /**
+    * The default number of clusters.
+    */
+   private static final int DEFAULT_CLUSTERS = 16;
+
+   private static final AtomicReferenceFieldUpdater<CohortLock, Cluster> ownerUpdater =
+         AtomicReferenceFieldUpdater.newUpdater(CohortLock.class, Cluster.class, "owner");
+
+   private final ClhSpinLock global = new ClhSpinLock();
+   private final Cluster[] clusters;
+   private final ToIntFunction<? super Thread> clusterOf;
+
+   /**
+    * The cluster that currently holds the lock, or {@code null} if the lock is not held.
+    */
+   private volatile Cluster owner;
+
+   /**
+    * Constructs a new lock that clusters threads by their {@link ThreadGroup}.
+    */
+   public CohortLock() {
+      this(DEFAULT_CLUSTERS, t -> System.identityHashCode(t.getThreadGroup()));
+   }
+
+   /**
+    * Constructs a new lock that clusters threads using the given function.
+    *
+    * @param numClusters the number of clusters
+    * @param clusterOf a function that computes the cluster of a given thread; its result is
+    *       reduced modulo the number of clusters
+    * @throws IllegalArgumentException if the given number of clusters is not positive
+    */
+   public CohortLock(int numClusters, ToIntFunction<? super Thread> clusterOf) {
+      if (numClusters <= 0) {
+         throw new IllegalArgumentException("number of clusters must be positive");
+      }
+      this.clusterOf = requireNonNull(clusterOf);
+      this.clusters = new Cluster[numClusters];
+      for (int i = 0; i < numClusters; i++) {
+         clusters[i] = new Cluster();
+      }
+   }
+
+   private Cluster currentCluster() {
+      return clusters[Math.floorMod(clusterOf.applyAsInt(Thread.currentThread()), clusters.length)];
+   }
+
+   @Override
+   public void lock() {
+      Cluster c = currentCluster();
+      c.local.lock();
+      if (!c.globalHeld) {
+         global.lock();
+         c.globalHeld = true;
+      }
+      owner = c;
+   }
+
+   @Override
+   public void lockInterruptibly() throws InterruptedException {
+      Cluster c = currentCluster();
+      c.local.lockInterruptibly();
+      if (!c.globalHeld) {
+         try {
+            global.lockInterruptibly();
+         } catch (InterruptedException e) {
+            c.local.unlock();
+            throw e;
+         }
+         c.globalHeld = true;
+      }
+      owner = c;
+   }
+
+   @Override
+   public boolean tryLock() {
+      Cluster c = currentCluster();
+      if (!c.local.tryLock()) {
+         return false;
+      }
+      if (!c.globalHeld) {
+         if (!global.tryLock()) {
+            c.local.unlock();
+            return false;
+         }
+         c.globalHeld = true;
+      }
+      owner = c;
+      return true;
+   }
+
+   @Override
+   public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+      long deadline = System.nanoTime() + unit.toNanos(time);
+      Cluster c = currentCluster();
+      if (!c.local.tryLock(time, unit)) {
+         return false;
+      }
+      if (!c.globalHeld) {
+         boolean acquired;
+         try {
+            acquired = global.tryLock(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+         } catch (InterruptedException e) {
+            c.local.unlock();
+            throw e;
+         }
+         if (!acquired) {
+            c.local.unlock();
+            return false;
+         }
+         c.globalHeld = true;
+      }
+      owner = c;
+      return true;
+   }
+
+   @Override
+   public boolean isLocked() {
+      return global.isLocked();
+   }
+
+   @Override
+   boolean tryRelease() {
+      Cluster c = owner;
+      if (c == null || !ownerUpdater.compareAndSet(this, c, null)) {
+         return false;
+      }
+      if (c.handoffs < MAX_LOCAL_HANDOFFS) {
+         // increment first since the next holder will read it as soon as the hand-off succeeds
+         c.handoffs++;
+         if (c.local.handOff()) {
+            // global lock stays held by this cluster
+            return true;
+         }
+      }
+      // no waiters in this cluster or it's another cluster's turn
+      c.handoffs = 0;
+      c.globalHeld = false;
+      global.unlock();
+      c.local.unlock();
+      return true;
+   }
+
+   /**
+    * The state for a cluster of threads. Other than the local lock, the fields are only accessed
+    * while the local lock is held, so they need not be volatile.
+    *
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    */
+   private static class Cluster {
+      final McsSpinLock local = new McsSpinLock();
+
+      /**
+       * True if the thread holding the local lock also holds the global lock, due to a hand-off.
+       */
+      boolean globalHeld;
+
+      /**
+       * The number of consecutive hand-offs to other threads in this cluster.
+       */
+      int handoffs;
+   }
+}
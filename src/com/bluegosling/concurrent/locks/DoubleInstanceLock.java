@@ -2,12 +2,15 @@ package com.bluegosling.concurrent.locks;
 
 import com.bluegosling.concurrent.ManagedBlockers;
 import com.bluegosling.concurrent.ReentranceException;
+import com.bluegosling.concurrent.contended.ContendedInteger;
 import com.bluegosling.util.Cloner;
 import com.bluegosling.util.Cloners;
 
+import java.lang.reflect.UndeclaredThrowableException;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ForkJoinPool.ManagedBlocker;
 import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.AbstractQueuedLongSynchronizer;
 import java.util.concurrent.locks.LockSupport;
 import java.util.function.Consumer;
@@ -50,6 +53,19 @@ import java.util.function.Function;
  * 
  * <p>This object can safely be used in a {@link ForkJoinPool}. Blocking operations (for writes)
  * will use a {@link ManagedBlocker} if invoked from such a pool.
+ * 
+ * <p>By default, readers record their presence by updating a single word of state that is shared
+ * by all readers and writers. That is cheap when there are few threads, but it means that every
+ * read operation contends for the same cache line, which limits how well reads scale with many
+ * cores. The lock can instead be constructed to use {@linkplain ReaderIndicator#DISTRIBUTED
+ * distributed reader indicators}, in which case reads scale much better at the expense of slower
+ * writes and a larger memory footprint.
+ * 
+ * <p>Similarly, writers by default take turns acquiring an exclusive lock, and each write waits for
+ * readers to drain. The lock can instead be constructed to use {@linkplain
+ * WriteStrategy#FLAT_COMBINING flat combining}, in which case concurrent writes are applied
+ * together in batches, so the costs of swapping instances and waiting for readers are paid once
+ * per batch instead of once per write.
  *
  * @param <T> the type of element that is being accessed by readers and writers
  *
@@ -60,6 +76,66 @@ import java.util.function.Function;
  */
 public class DoubleInstanceLock<T> {
    
+   /**
+    * The ways in which readers can record their presence, so that a writer can wait for them to
+    * drain before modifying the instance they are reading.
+    *
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    */
+   public enum ReaderIndicator {
+      /**
+       * Readers are counted in the same word of state that holds the write lock and the side that
+       * readers should use. Entering and exiting a read operation are each a single atomic update,
+       * but all readers update the same memory location. This is the default.
+       */
+      CENTRALIZED,
+      
+      /**
+       * Readers are counted using an array of striped counters, padded so that each is in its own
+       * cache line. A thread always uses the same stripe, so readers on different threads rarely
+       * contend with one another. This allows read throughput to scale with the number of cores.
+       * 
+       * <p>Since readers no longer atomically update the same word that indicates which side they
+       * should use, a reader must re-check the side after incrementing its counter, retrying if a
+       * writer swapped sides in the meantime. Writers must scan all of the counters for a side to
+       * determine that its readers have drained. The number of stripes is based on the number of
+       * available processors, so each lock consumes a few hundred bytes per processor.
+       * 
+       * <p>This is the "read indicator" technique from the Left-Right concurrency control
+       * algorithm.
+       */
+      DISTRIBUTED
+   }
+   
+   /**
+    * The ways in which concurrent write operations are performed.
+    *
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    */
+   public enum WriteStrategy {
+      /**
+       * Each writer acquires an exclusive lock and then applies its own operation, first to the
+       * instance not being read and then, after swapping instances and waiting for readers to
+       * drain, to the other instance. This is the default.
+       */
+      SERIAL,
+      
+      /**
+       * Writers publish their operations to a shared list and then try to acquire the exclusive
+       * lock. The writer that acquires the lock becomes the <em>combiner</em>: it applies all
+       * published operations, in the order they were published, to the instance not being read,
+       * swaps instances, waits for readers to drain once, and then replays the whole batch on the
+       * other instance. Other writers just wait for the combiner to complete their operations.
+       * 
+       * <p>So, under contention, the cost of swapping and draining is amortized over many writes.
+       * The trade-off is that a write operation may be executed by a different thread than the one
+       * that submitted it, so operations must not depend on thread-local state. Also, when a batch
+       * contains more than one operation, readers observe instances being swapped once per batch,
+       * not once per operation.
+       */
+      FLAT_COMBINING
+   }
+   
    /**
     * Constructs a new double instance lock around the given object. The object's {@link #clone()}
     * method is used to create additional instances.
@@ -68,7 +144,36 @@ public class DoubleInstanceLock<T> {
     * @return a double instance lock around the given object
     */
    public static <T extends Cloneable> DoubleInstanceLock<T> newLock(T t) {
-      return new DoubleInstanceLock<>(t, Cloners.forCloneable());
+      return newLock(t, ReaderIndicator.CENTRALIZED);
+   }
+
+   /**
+    * Constructs a new double instance lock around the given object that uses the given kind of
+    * reader indicator. The object's {@link #clone()} method is used to create additional
+    * instances.
+    *
+    * @param t an object
+    * @param readerIndicator the kind of reader indicator to use
+    * @return a double instance lock around the given object
+    */
+   public static <T extends Cloneable> DoubleInstanceLock<T> newLock(T t,
+         ReaderIndicator readerIndicator) {
+      return newLock(t, readerIndicator, WriteStrategy.SERIAL);
+   }
+
+   /**
+    * Constructs a new double instance lock around the given object that uses the given kind of
+    * reader indicator and the given strategy for writes. The object's {@link #clone()} method is
+    * used to create additional instances.
+    *
+    * @param t an object
+    * @param readerIndicator the kind of reader indicator to use
+    * @param writeStrategy the strategy used to perform writes
+    * @return a double instance lock around the given object
+    */
+   public static <T extends Cloneable> DoubleInstanceLock<T> newLock(T t,
+         ReaderIndicator readerIndicator, WriteStrategy writeStrategy) {
+      return new DoubleInstanceLock<>(t, Cloners.forCloneable(), readerIndicator, writeStrategy);
    }
 
    /**
@@ -85,7 +190,47 @@ public class DoubleInstanceLock<T> {
     * @return a double instance lock around the given object
     */
    public static <T> DoubleInstanceLock<T> newLock(T t, Cloner<T> cloner) {
-      return new DoubleInstanceLock<>(t, cloner);
+      return newLock(t, cloner, ReaderIndicator.CENTRALIZED);
+   }
+   
+   /**
+    * Constructs a new double instance lock around the given object that uses the given cloner to
+    * create additional instances and the given kind of reader indicator.
+    * 
+    * <p><strong>Note</strong>: If the supplied cloner does not properly adhere to the contract,
+    * (e.g. does not produce a different instance that is otherwise identical to the input object)
+    * then the two instances of data used by the lock can get out of sync. This means data
+    * corruption and that subsequent operations will be undefined.
+    *
+    * @param t an object
+    * @param cloner a cloner
+    * @param readerIndicator the kind of reader indicator to use
+    * @return a double instance lock around the given object
+    */
+   public static <T> DoubleInstanceLock<T> newLock(T t, Cloner<T> cloner,
+         ReaderIndicator readerIndicator) {
+      return newLock(t, cloner, readerIndicator, WriteStrategy.SERIAL);
+   }
+   
+   /**
+    * Constructs a new double instance lock around the given object that uses the given cloner to
+    * create additional instances, the given kind of reader indicator, and the given strategy for
+    * writes.
+    * 
+    * <p><strong>Note</strong>: If the supplied cloner does not properly adhere to the contract,
+    * (e.g. does not produce a different instance that is otherwise identical to the input object)
+    * then the two instances of data used by the lock can get out of sync. This means data
+    * corruption and that subsequent operations will be undefined.
+    *
+    * @param t an object
+    * @param cloner a cloner
+    * @param readerIndicator the kind of reader indicator to use
+    * @param writeStrategy the strategy used to perform writes
+    * @return a double instance lock around the given object
+    */
+   public static <T> DoubleInstanceLock<T> newLock(T t, Cloner<T> cloner,
+         ReaderIndicator readerIndicator, WriteStrategy writeStrategy) {
+      return new DoubleInstanceLock<>(t, cloner, readerIndicator, writeStrategy);
    }
    
    /*
@@ -107,11 +252,30 @@ public class DoubleInstanceLock<T> {
     */
    private static final int RIGHT = 1;
    
-   private final Sync sync = new Sync();
+   private final Sync sync;
    private final Cloner<T> cloner;
    private final T values[];
    
-   private DoubleInstanceLock(T value, Cloner<T> cloner) {
+   /**
+    * The stack of operations published by writers, waiting for a combiner to apply them. This is
+    * {@code null} unless the lock uses {@linkplain WriteStrategy#FLAT_COMBINING flat combining}.
+    */
+   private final AtomicReference<WriteOp<T>> published;
+   
+   private DoubleInstanceLock(T value, Cloner<T> cloner, ReaderIndicator readerIndicator,
+         WriteStrategy writeStrategy) {
+      switch (readerIndicator) {
+         case CENTRALIZED:
+            sync = new Sync();
+            break;
+         case DISTRIBUTED:
+            sync = new DistributedSync();
+            break;
+         default:
+            throw new AssertionError();
+      }
+      this.published =
+            writeStrategy == WriteStrategy.FLAT_COMBINING ? new AtomicReference<>() : null;
       this.cloner = cloner;
       @SuppressWarnings("unchecked")
       T a[] = (T[]) new Object[2];
@@ -187,6 +351,9 @@ public class DoubleInstanceLock<T> {
     * @throws ReentranceException if the given action is reentrant
     */
    public <U> U write(Function<? super T, ? extends U> action) {
+      if (published != null) {
+         return combiningWrite(action);
+      }
       // only one writer at a time allowed 
       sync.acquireWriteLock();
       try {
@@ -213,6 +380,118 @@ public class DoubleInstanceLock<T> {
       }
    }
    
+   /**
+    * Performs a write operation using {@linkplain WriteStrategy#FLAT_COMBINING flat combining}.
+    * The operation is published and then the current thread either becomes the combiner, applying
+    * all published operations, or waits for another combiner to apply it.
+    *
+    * @param action the write operation to perform
+    * @return the result of the write operation
+    * @throws ReentranceException if the given action is reentrant
+    */
+   private <U> U combiningWrite(Function<? super T, ? extends U> action) {
+      if (sync.isWriteLockedByCurrentThread()) {
+         // re-entrance not allowed!
+         throw new ReentranceException();
+      }
+      WriteOp<T> op = new WriteOp<>(action);
+      while (true) {
+         WriteOp<T> head = published.get();
+         op.next = head;
+         if (published.compareAndSet(head, op)) {
+            break;
+         }
+      }
+      
+      CombiningBlocker blocker = new CombiningBlocker(op);
+      if (ForkJoinTask.inForkJoinPool()) {
+         ManagedBlockers.blockUninterruptibly(blocker);
+      } else {
+         while (!blocker.isReleasable()) {
+            blocker.block();
+         }
+      }
+      blocker.restoreInterrupt();
+      
+      if (blocker.acquired) {
+         try {
+            combine();
+         } finally {
+            sync.release(-1);
+            // If more operations were published while we were combining, wake one of their writers
+            // so it can become the next combiner. Since we released the lock first, a writer that
+            // publishes after this check will be able to acquire the lock itself.
+            WriteOp<T> next = published.get();
+            if (next != null) {
+               LockSupport.unpark(next.writer);
+            }
+         }
+      }
+      assert op.done;
+      @SuppressWarnings("unchecked")
+      U ret = (U) op.getResult();
+      return ret;
+   }
+   
+   /**
+    * Applies all published operations as a single batch. This must only be called by a thread
+    * that holds the write lock.
+    */
+   private void combine() {
+      // take all published operations, reversing the stack so they're applied in FIFO order
+      WriteOp<T> batch = null;
+      for (WriteOp<T> op = published.getAndSet(null); op != null; ) {
+         WriteOp<T> next = op.next;
+         op.next = batch;
+         batch = op;
+         op = next;
+      }
+      if (batch == null) {
+         return;
+      }
+      
+      // first get side that readers aren't using
+      int s2 = sync.leftOrRight();
+      int s1 = s2 == LEFT ? RIGHT : LEFT;
+      T val = values[s1];
+      if (sync.resetSnapshot(s1)) {
+         values[s1] = val = cloner.clone(val);
+      }
+      for (WriteOp<T> op = batch; op != null; op = op.next) {
+         try {
+            op.action.apply(val); // write the first side!
+         } catch (Throwable th) {
+            // deterministic operations fail the same way when replayed below, and it's the outcome
+            // of the replay that is reported to the writer
+         }
+      }
+      
+      // then flip which side readers are using, and wait for them to drain just once
+      int s = sync.flip();
+      assert s == s2;
+      sync.awaitDrain(s2);
+      val = values[s2];
+      if (sync.resetSnapshot(s2)) {
+         values[s2] = val = cloner.clone(val);
+      }
+      for (WriteOp<T> op = batch; op != null; op = op.next) {
+         try {
+            op.result = op.action.apply(val); // write the second side!
+         } catch (Throwable th) {
+            op.failure = th;
+         }
+      }
+      
+      // finally, let the writers know their operations are done
+      Thread current = Thread.currentThread();
+      for (WriteOp<T> op = batch; op != null; op = op.next) {
+         op.done = true;
+         if (op.writer != current) {
+            LockSupport.unpark(op.writer);
+         }
+      }
+   }
+   
    /**
     * Returns a snapshot of the data, like for performing expensive work that requires a strongly
     * consistent view.
@@ -292,6 +571,24 @@ public class DoubleInstanceLock<T> {
          }
       }
       
+      /**
+       * Tries to acquire the write lock without blocking.
+       *
+       * @return true if the write lock was acquired
+       */
+      boolean tryAcquireWriteLock() {
+         return tryAcquire(-1);
+      }
+      
+      /**
+       * Determines whether the current thread holds the write lock.
+       *
+       * @return true if the current thread holds the write lock
+       */
+      boolean isWriteLockedByCurrentThread() {
+         return getExclusiveOwnerThread() == Thread.currentThread();
+      }
+      
       /**
        * Awaits the readers of the given side to drain. This is a wrapper around
        * {@link #doAwaitDrain(int)} that is safe to invoke in a {@link ForkJoinPool}. If in such a
@@ -340,18 +637,15 @@ public class DoubleInstanceLock<T> {
        */
       private void doAwaitDrain(int leftOrRight) {
          // eagerly set the thread field, so exiting readers can unpark us
-         long mask;
          if (leftOrRight == LEFT) {
             awaitingDrainLeft = Thread.currentThread();
-            mask = LEFT_READER_MASK;
          } else {
             awaitingDrainRight = Thread.currentThread();
-            mask = RIGHT_READER_MASK;
          }            
          try {
             // wait for the reader count to drain to zero
             while (true) {
-               if ((getState() & mask) == 0) {
+               if (isDrained(leftOrRight)) {
                   return;
                } else {
                   LockSupport.park(this);
@@ -366,6 +660,30 @@ public class DoubleInstanceLock<T> {
          }
       }
       
+      /**
+       * Determines whether the given side has no readers.
+       *
+       * @param leftOrRight the side to check
+       * @return true if no readers are using the given side
+       */
+      boolean isDrained(int leftOrRight) {
+         long mask = leftOrRight == LEFT ? LEFT_READER_MASK : RIGHT_READER_MASK;
+         return (getState() & mask) == 0;
+      }
+      
+      /**
+       * Wakes the writer, if any, that is waiting for readers to drain from the given side. Readers
+       * call this after releasing the given side, if they may have been its last reader.
+       *
+       * @param leftOrRight the side that was released
+       */
+      void signalDrained(int leftOrRight) {
+         Thread th = leftOrRight == LEFT ? awaitingDrainLeft : awaitingDrainRight;
+         if (th != null) {
+            LockSupport.unpark(th);
+         }
+      }
+      
       /**
        * Releases the synchronizer when held in "write" mode.
        *
@@ -553,10 +871,7 @@ public class DoubleInstanceLock<T> {
             if (compareAndSetState(s, n)) {
                if ((n & m) == 0) {
                   // no more readers on this side; awake any threads waiting for it to drain
-                  Thread th = i == LEFT ? awaitingDrainLeft : awaitingDrainRight;
-                  if (th != null) {
-                     LockSupport.unpark(th);
-                  }
+                  signalDrained((int) i);
                }
                return false;
             }
@@ -568,6 +883,19 @@ public class DoubleInstanceLock<T> {
          return toString(getClass().getSimpleName() + " { ", getState(), " }");
       }
       
+      /**
+       * Returns the number of readers on the given side.
+       *
+       * @param s state value
+       * @param leftOrRight the side
+       * @return the number of readers on the given side, as encoded in the state value
+       */
+      long readers(long s, int leftOrRight) {
+         return leftOrRight == LEFT
+               ? (s & LEFT_READER_MASK) >> LEFT_READER_SHIFT
+               : s & RIGHT_READER_MASK;
+      }
+      
       /**
        * Constructs a string representation of this synchronizer's state.
        *
@@ -606,10 +934,10 @@ public class DoubleInstanceLock<T> {
          }
          sb.append(", ");
          sb.append("Reading left: ");
-         sb.append((s & LEFT_READER_MASK) >> LEFT_READER_SHIFT);
+         sb.append(readers(s, LEFT));
          sb.append(", ");
          sb.append("Reading right: ");
-         sb.append(s & RIGHT_READER_MASK);
+         sb.append(readers(s, RIGHT));
          sb.append(suffix);
          return sb.toString();
       }
@@ -643,11 +971,9 @@ public class DoubleInstanceLock<T> {
        */
       private class DrainBlocker implements ManagedBlocker {
          private final int side;
-         private final long mask;
          
          DrainBlocker(int side) {
             this.side = side;
-            mask = side == LEFT ? LEFT_READER_MASK : RIGHT_READER_MASK;
          }
          
          @SuppressWarnings("synthetic-access")
@@ -657,11 +983,196 @@ public class DoubleInstanceLock<T> {
             return true;
          }
 
-         @SuppressWarnings("synthetic-access")
          @Override
          public boolean isReleasable() {
-            return (getState() & mask) == 0;
+            return isDrained(side);
+         }
+      }
+   }
+   
+   /**
+    * A write operation that has been published for a combiner to apply, when using
+    * {@linkplain WriteStrategy#FLAT_COMBINING flat combining}. The result fields are written by the
+    * combiner before it sets the volatile {@link #done} flag and are only read by the writer after
+    * it observes that flag, so they need not be volatile.
+    *
+    * @param <T> the type of element that is being written
+    * 
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    */
+   private static class WriteOp<T> {
+      final Function<? super T, ?> action;
+      final Thread writer = Thread.currentThread();
+      WriteOp<T> next;
+      Object result;
+      Throwable failure;
+      volatile boolean done;
+      
+      WriteOp(Function<? super T, ?> action) {
+         this.action = action;
+      }
+      
+      /**
+       * Returns the result of the operation, throwing its cause of failure if it failed.
+       *
+       * @return the result of the operation
+       */
+      Object getResult() {
+         if (failure != null) {
+            if (failure instanceof RuntimeException) {
+               throw (RuntimeException) failure;
+            } else if (failure instanceof Error) {
+               throw (Error) failure;
+            } else {
+               throw new UndeclaredThrowableException(failure);
+            }
+         }
+         return result;
+      }
+   }
+   
+   /**
+    * A managed blocker that awaits either the completion of a published write operation or the
+    * acquisition of the write lock, at which point the current thread becomes the combiner. Since
+    * this parks the current thread directly, instead of using the synchronizer's queue, interrupts
+    * are tracked and cleared so that they do not cause a busy loop.
+    *
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    */
+   private class CombiningBlocker implements ManagedBlocker {
+      private final WriteOp<T> op;
+      boolean acquired;
+      private boolean interrupted;
+      
+      CombiningBlocker(WriteOp<T> op) {
+         this.op = op;
+      }
+      
+      @Override
+      public boolean block() {
+         LockSupport.park(this);
+         if (Thread.interrupted()) {
+            interrupted = true;
+         }
+         return isReleasable();
+      }
+
+      @SuppressWarnings("synthetic-access")
+      @Override
+      public boolean isReleasable() {
+         return acquired || op.done || (acquired = sync.tryAcquireWriteLock());
+      }
+      
+      /**
+       * Restores the current thread's interrupt status if it was interrupted while blocking.
+       */
+      void restoreInterrupt() {
+         if (interrupted) {
+            Thread.currentThread().interrupt();
+         }
+      }
+   }
+   
+   /**
+    * A synchronizer that uses {@linkplain ReaderIndicator#DISTRIBUTED distributed reader
+    * indicators}. The write lock, the side that readers use, and the snapshot flags are still
+    * kept in the synchronizer's state. But readers are counted using striped counters instead of
+    * bits in the state, so a reader only ever reads the state, never updates it.
+    * 
+    * <p>A reader first increments the counter for the side that it observes in the state and then
+    * re-reads the state. If a writer has since flipped sides, the reader decrements its counter
+    * and tries again. Since all of these are volatile accesses, a writer that flips sides and then
+    * observes a zero count for a stripe knows that any reader that subsequently increments that
+    * stripe will see the flip and back off without reading.
+    *
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    */
+   private static class DistributedSync extends Sync {
+      private static final long serialVersionUID = -2838214302651302373L;
+      
+      /**
+       * The number of stripes, which is a power of two that is at least twice the number of
+       * available processors.
+       */
+      private static final int STRIPES =
+            Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) << 1;
+      
+      private final ContendedInteger[] leftReaders = newCounters();
+      private final ContendedInteger[] rightReaders = newCounters();
+      
+      DistributedSync() {
+      }
+      
+      private static ContendedInteger[] newCounters() {
+         ContendedInteger[] counters = new ContendedInteger[STRIPES];
+         for (int i = 0; i < STRIPES; i++) {
+            counters[i] = new ContendedInteger();
+         }
+         return counters;
+      }
+      
+      /**
+       * Returns the reader counter for the current thread and the given side. Thread IDs are
+       * assigned sequentially, so threads in a pool are spread evenly across the stripes.
+       *
+       * @param leftOrRight the side
+       * @return the counter for the current thread's stripe
+       */
+      private ContendedInteger counter(int leftOrRight) {
+         int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+         return (leftOrRight == LEFT ? leftReaders : rightReaders)[stripe];
+      }
+      
+      @Override
+      int addShared() {
+         while (true) {
+            int leftOrRight = leftOrRight();
+            ContendedInteger counter = counter(leftOrRight);
+            counter.incrementAndGet();
+            if (leftOrRight() == leftOrRight) {
+               return leftOrRight;
+            }
+            // a writer flipped sides concurrently; back out and try again
+            counter.decrementAndGet();
+            signalDrained(leftOrRight);
+         }
+      }
+      
+      @Override
+      protected boolean tryReleaseShared(long i) {
+         int leftOrRight = (int) i;
+         ContendedInteger counter = counter(leftOrRight);
+         if (counter.decrementAndGet() < 0) {
+            counter.incrementAndGet();
+            throw new IllegalMonitorStateException();
+         }
+         signalDrained(leftOrRight);
+         return false;
+      }
+      
+      @Override
+      boolean isDrained(int leftOrRight) {
+         for (ContendedInteger counter : leftOrRight == LEFT ? leftReaders : rightReaders) {
+            if (counter.get() != 0) {
+               return false;
+            }
+         }
+         return true;
+      }
+      
+      /**
+       * {@inheritDoc}
+       * 
+       * <p>Readers are not encoded in the state, so this sums the reader counters for the given
+       * side. The result is only an estimate if readers are concurrently entering or exiting.
+       */
+      @Override
+      long readers(long s, int leftOrRight) {
+         long sum = 0;
+         for (ContendedInteger counter : leftOrRight == LEFT ? leftReaders : rightReaders) {
+            sum += counter.get();
          }
+         return sum;
       }
    }
 }
@@ -274,6 +274,65 @@ public class HierarchicalLock implements Serializable {
       return sync.getSharedHolders();
    }
 
+   /**
+    * Determines whether this lock is held, in either mode, by any thread. Like
+    * {@link #getExclusiveHolder()}, this method is best effort unless the current thread holds the
+    * lock. Locks held on this lock's ancestors or descendants are not considered.
+    *
+    * @return true if this lock is held in shared or exclusive mode
+    */
+   public boolean isLocked() {
+      return sync.isHeld();
+   }
+
+   /**
+    * Returns a stamp that can later be {@linkplain #validate(long) validated} to check that no
+    * thread has exclusively locked this lock or any of its ancestors in the interim. This allows
+    * data guarded by this lock to be read without acquiring a shared lock, which would otherwise
+    * require updating the state of this lock and of every one of its ancestors.
+    *
+    * <p>Like optimistic reads of a {@link java.util.concurrent.locks.StampedLock}, values read
+    * under an optimistic stamp may be inconsistent and must not be acted upon until the stamp is
+    * validated. If validation fails, the reader can retry or fall back to acquiring a shared lock.
+    * Since this class has no access to memory fences, fields that are read optimistically should be
+    * volatile (or final) so that the reads are not reordered after validation.
+    *
+    * <p>Validation detects exclusive locks by counting them. A reader that stalls for more than
+    * 2<sup>17</sup> exclusive acquisitions of a single lock in the chain, between getting a stamp
+    * and validating it, could see the count wrap around and wrongly pass validation.
+    *
+    * @return a stamp for an optimistic read, or zero if this lock or one of its ancestors is
+    *       currently locked in exclusive mode
+    *
+    * @see #validate(long)
+    */
+   public long tryOptimisticRead() {
+      long sum = 0;
+      for (HierarchicalLock l = this; l != null; l = l.getParent()) {
+         long version = l.sync.optimisticVersion();
+         if (version < 0) {
+            return 0;
+         }
+         sum += version;
+      }
+      // low bit is always set so that a valid stamp is never zero
+      return (sum << 1) | 1;
+   }
+
+   /**
+    * Determines whether no thread has exclusively locked this lock or any of its ancestors since
+    * the given stamp was issued.
+    *
+    * @param stamp a stamp returned by {@link #tryOptimisticRead()} on this lock
+    * @return true if no exclusive lock has been acquired on this lock or its ancestors since the
+    *       stamp was issued; always false if the stamp is zero
+    *
+    * @see #tryOptimisticRead()
+    */
+   public boolean validate(long stamp) {
+      return stamp != 0 && tryOptimisticRead() == stamp;
+   }
+
    /**
     * Gets the first queued thread. This is the thread that has been waiting the longest to acquire
     * the lock.
@@ -747,8 +806,12 @@ public class HierarchicalLock implements Serializable {
       private static final long EXCLUSIVE_UNIT = 0x0000000080000000L;
       private static final long MAX_EXCLUSIVE_COUNT = 0x0000000000007fffL;
       
+      // the stamp is a version that changes whenever the lock is exclusively acquired or released;
+      // acquiring and releasing shared locks does not change it, so it can be used to validate
+      // optimistic reads
       private static final long STAMP_MASK = 0xffffc00000000000L;
       private static final long STAMP_UNIT = 0x0000400000000000L;
+      private static final int STAMP_SHIFT = 46;
       
       private static final AtomicReferenceFieldUpdater<Sync, HolderNode> holdersUpdater =
             AtomicReferenceFieldUpdater.newUpdater(Sync.class, HolderNode.class, "holders");
@@ -917,7 +980,7 @@ public class HierarchicalLock implements Serializable {
                   if (sharedCount == MAX_SHARED_COUNT) {
                      throw new IllegalStateException("already locked maximum number of times");
                   }
-                  long newState = state + SHARED_UNIT + STAMP_UNIT;
+                  long newState = state + SHARED_UNIT;
                   if (compareAndSetState(state, newState)) {
                      node.holdCount++;
                      return 1;
@@ -940,7 +1003,7 @@ public class HierarchicalLock implements Serializable {
                
                assert node == null;
                
-               long newState = state + SHARED_UNIT + STAMP_UNIT;
+               long newState = state + SHARED_UNIT;
                if (compareAndSetState(state, newState)) {
                   break;
                }
@@ -987,13 +1050,27 @@ public class HierarchicalLock implements Serializable {
             long state = getState();
             assert exclusiveCount(state) == 0;
             assert sharedCount(state) > 0;
-            if (compareAndSetState(state, state - SHARED_UNIT + STAMP_UNIT)) {
+            if (compareAndSetState(state, state - SHARED_UNIT)) {
                break;
             }
          }
          return true;
       }
 
+      boolean isHeld() {
+         return (getState() & (SHARED_MASK | EXCLUSIVE_MASK)) != 0;
+      }
+
+      /**
+       * Returns the current version of the lock, for validating optimistic reads.
+       *
+       * @return the lock's current version or -1 if the lock is held in exclusive mode
+       */
+      long optimisticVersion() {
+         long state = getState();
+         return exclusiveCount(state) != 0 ? -1 : stamp(state) >>> STAMP_SHIFT;
+      }
+
       Thread getExclusiveHolder() {
          HolderNode node;
          while (true) {
@@ -0,0 +1,259 @@
+package com.bluegosling.concurrent.locks;
+
+import com.bluegosling.concurrent.contended.ContendedInteger;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.Condition;
+
+/**
+ * A non-reentrant and fair spin lock that uses an MCS queue. Each thread that waits for the lock
+ * appends a node to a queue and then spins on a flag in its own node. The thread that releases the
+ * lock hands it directly to its successor in the queue by setting the successor's flag. So, unlike
+ * {@link SpinLock}, waiting threads do not all spin on the same memory location, which avoids
+ * a storm of cache coherence traffic each time the lock is released. Nodes are padded so that each
+ * lives in its own cache line. The lock is granted in FIFO order.
+ *
+ * <p>The algorithm is named for its inventors, John Mellor-Crummey and Michael Scott. This variant
+ * supports abandoning a wait, due to timeout or interruption: the waiting thread marks its node as
+ * abandoned, and the thread that releases the lock skips over abandoned nodes.
+ *
+ * <p>Waiting threads periodically {@linkplain Thread#yield() yield} if they have been spinning for
+ * a while. Even so, since the lock is handed to the next thread in the queue, the lock is idle
+ * until that thread is next scheduled. So, like {@link SpinLock}, this lock should only be used to
+ * guard very short critical sections, and it works best when there are no more threads contending
+ * for it than there are available processors.
+ *
+ * <p>Like {@link SpinLock}, this lock is non-reentrant and will deadlock if re-entrance is
+ * accidentally attempted. It has no exclusive owner thread, so it can be locked in one thread and
+ * then unlocked in another. And awaiting a {@link Condition} created by this lock does not spin.
+ * Threads awaiting conditions are enqueued and parked and will be notified in FIFO order by calls
+ * to {@link Condition#signal()}.
+ *
+ * @see ClhSpinLock
+ * @see <a href="https://www.cs.rochester.edu/research/synchronization/pseudocode/ss.html#mcs">
+ *       MCS locks</a>
+ *
+ * @author Joshua Humphries (jhumphries131@gmail.com)
+ */
+public class McsSpinLock extends AbstractSpinLock {
+
+   /**
+    * The state of a node whose thread is waiting for the lock.
+    */
+   private static final int WAITING = 0;
+
+   /**
+    * The state of a node whose thread has been granted the lock.
+    */
+   private static final int GRANTED = 1;
+
+   /**
+    * The state of a node whose thread gave up waiting for the lock.
+    */
+   private static final int ABANDONED = 2;
+
+   private static final AtomicReferenceFieldUpdater<McsSpinLock, Node> holderUpdater =
+         AtomicReferenceFieldUpdater.newUpdater(McsSpinLock.class, Node.class, "holder");
+
+   /**
+    * The tail of the queue, or {@code null} if the lock is not held.
+    */
+   private final AtomicReference<Node> tail = new AtomicReference<>();
+
+   /**
+    * The node of the thread that currently holds the lock, or {@code null} if the lock is not
+    * held. This is what allows a thread other than the one that acquired the lock to release it.
+    */
+   private volatile Node holder;
+
+   /**
+    * Constructs a new MCS spin lock.
+    */
+   public McsSpinLock() {
+   }
+
+   @Override
+   public void lock() {
+      try {
+         acquire(false, -1);
+      } catch (InterruptedException e) {
+         throw new AssertionError(e);
+      }
+   }
+
+   @Override
+   public void lockInterruptibly() throws InterruptedException {
+      if (Thread.interrupted()) {
+         throw new InterruptedException();
+      }
+      acquire(true, -1);
+   }
+
+   @Override
+   public boolean tryLock() {
+      Node node = new Node(GRANTED);
+      if (tail.compareAndSet(null, node)) {
+         holder = node;
+         return true;
+      }
+      return false;
+   }
+
+   @Override
+   public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+      if (Thread.interrupted()) {
+         throw new InterruptedException();
+      }
+      long nanos = unit.toNanos(time);
+      return nanos <= 0 ? tryLock() : acquire(true, nanos);
+   }
+
+   /**
+    * Acquires the lock.
+    *
+    * @param interruptible if true, the wait is abandoned if the thread is interrupted
+    * @param nanosTimeout the maximum time to wait, or a negative number to wait indefinitely
+    * @return true if the lock was acquired or false if the timeout elapsed first
+    * @throws InterruptedException if the wait is interruptible and the thread is interrupted
+    */
+   private boolean acquire(boolean interruptible, long nanosTimeout) throws InterruptedException {
+      long deadline = nanosTimeout >= 0 ? System.nanoTime() + nanosTimeout : 0;
+      Node node = new Node(WAITING);
+      Node pred = tail.getAndSet(node);
+      if (pred != null) {
+         pred.next = node;
+         boolean interrupted = false;
+         for (int spins = 0; node.get() == WAITING; ) {
+            if (++spins < SPIN_TIMES) {
+               continue;
+            }
+            spins = 0;
+            if (interruptible && Thread.interrupted()) {
+               interrupted = true;
+            } else if (nanosTimeout < 0 || deadline - System.nanoTime() > 0) {
+               Thread.yield();
+               continue;
+            }
+            // interrupted or timed out, so try to give up
+            if (node.compareAndSet(WAITING, ABANDONED)) {
+               // gave up; the thread that releases the lock will skip this node
+               if (interrupted) {
+                  throw new InterruptedException();
+               }
+               return false;
+            }
+            // lock was granted concurrently with our giving up
+            if (interrupted) {
+               holder = node;
+               unlock();
+               throw new InterruptedException();
+            }
+            break;
+         }
+      }
+      holder = node;
+      return true;
+   }
+
+   @Override
+   public boolean isLocked() {
+      return holder != null;
+   }
+
+   @Override
+   boolean tryRelease() {
+      Node h = holder;
+      if (h == null || !holderUpdater.compareAndSet(this, h, null)) {
+         return false;
+      }
+      release(h);
+      return true;
+   }
+
+   /**
+    * Releases the lock by handing it to the first non-abandoned successor of the given node. If
+    * there is no such successor, the lock becomes free.
+    *
+    * @param h the node of the thread that holds the lock
+    */
+   private void release(Node h) {
+      while (true) {
+         Node next = h.next;
+         if (next == null) {
+            if (tail.compareAndSet(h, null)) {
+               return;
+            }
+            // a successor is in the process of enqueueing; wait for it to link in
+            for (int spins = 0; (next = h.next) == null; ) {
+               if (++spins == SPIN_TIMES) {
+                  spins = 0;
+                  Thread.yield();
+               }
+            }
+         }
+         if (next.compareAndSet(WAITING, GRANTED)) {
+            return;
+         }
+         // successor abandoned its wait, so skip it
+         h = next;
+      }
+   }
+
+   /**
+    * Hands the lock to a waiting thread, if there is one. Unlike {@link #unlock()}, this never
+    * makes the lock free: if there are no waiting threads, the lock remains held. This is used by
+    * {@link CohortLock} to pass the lock to another thread in the same cohort.
+    *
+    * @return true if the lock was handed to a waiting thread or false if there were none, in which
+    *       case the lock is still held
+    * @throws IllegalMonitorStateException if the lock is not locked
+    */
+   boolean handOff() {
+      Node h = holder;
+      if (h == null || !holderUpdater.compareAndSet(this, h, null)) {
+         throw new IllegalMonitorStateException();
+      }
+      for (Node next = h.next; next != null; next = h.next) {
+         if (next.compareAndSet(WAITING, GRANTED)) {
+            return true;
+         }
+         // successor abandoned its wait, so skip it (and it becomes the holder's position in the
+         // queue if no other successors are found)
+         h = next;
+      }
+      holder = h;
+      return false;
+   }
+
+   /**
+    * Determines whether any threads are waiting for the lock. This is only an estimate since
+    * threads may concurrently enqueue or abandon their waits.
+    *
+    * @return true if any threads may be waiting for the lock
+    */
+   public boolean hasQueuedThreads() {
+      Node h = holder;
+      Node t = tail.get();
+      return t != null && t != h;
+   }
+
+   /**
+    * A node in the queue. The node's value is its state, which its thread spins on while waiting.
+    * It extends {@link ContendedInteger} so that each node is padded and lives in its own cache
+    * line.
+    *
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    */
+   private static class Node extends ContendedInteger {
+      /**
+       * The node's successor in the queue, or {@code null} if it has none (yet).
+       */
+      volatile Node next;
+
+      Node(int state) {
+         super(state);
+      }
+   }
+}
@@ -10,5 +10,13 @@
  * (e.g. "read") mode. This lock also has deadlock-detection and provides the ability to promote
  * locks (e.g. shared → exclusive or child lock → parent lock) and to demote them (exclusive →
  * shared or parent → child).
+ * 
+ * <p>This package also includes several spin locks, for guarding very short critical sections. In
+ * addition to a simple test-and-set {@link com.bluegosling.concurrent.locks.SpinLock}, there are
+ * queue-based locks, {@link com.bluegosling.concurrent.locks.McsSpinLock} and
+ * {@link com.bluegosling.concurrent.locks.ClhSpinLock}, which are fair and have each waiting thread
+ * spin on its own cache line. The {@link com.bluegosling.concurrent.locks.CohortLock} builds on
+ * these to keep ownership within a cluster of related threads, to reduce cache traffic between
+ * clusters.
  */
 package com.bluegosling.concurrent.locks;
\ No newline at end of file
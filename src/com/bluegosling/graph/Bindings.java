@@ -0,0 +1,94 @@
+package com.bluegosling.graph;
+
+import com.bluegosling.reflect.TypeRef;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A set of values bound to input keys. This is used to supply the inputs for each record when
+ * computing a graph in batch mode, via {@link Graph#computeAll(java.util.List)}.
+ *
+ * @see Computation#bindInput(Key, Object)
+ *
+ * @author Joshua Humphries (jhumphries131@gmail.com)
+ */
+public class Bindings {
+   private final Map<Key<?>, Object> values = new HashMap<>();
+
+   /**
+    * Constructs a new, empty set of bindings.
+    */
+   public Bindings() {
+   }
+
+   /**
+    * Binds a value to the unqualified key for the given type.
+    *
+    * @param type the type of the input key
+    * @param value the value to bind to this input
+    * @return {@code this}, for method chaining
+    */
+   public <U> Bindings bind(Class<U> type, U value) {
+      return bind(Key.of(type), value);
+   }
+
+   /**
+    * Binds a value to the unqualified key for the given type.
+    *
+    * @param type the type of the input key
+    * @param value the value to bind to this input
+    * @return {@code this}, for method chaining
+    */
+   public <U> Bindings bind(TypeRef<U> type, U value) {
+      return bind(Key.of(type), value);
+   }
+
+   /**
+    * Binds a value to the given key. If the key was already bound, its value is replaced.
+    *
+    * @param key the input key
+    * @param value the value to bind to this input
+    * @return {@code this}, for method chaining
+    */
+   public <U> Bindings bind(Key<U> key, U value) {
+      values.put(key, value);
+      return this;
+   }
+
+   /**
+    * Determines whether a value is bound to the given key.
+    *
+    * @param key an input key
+    * @return true if a value is bound to the given key
+    */
+   public boolean isBound(Key<?> key) {
+      return values.containsKey(key);
+   }
+
+   /**
+    * Returns the value bound to the given key.
+    *
+    * @param key an input key
+    * @return the value bound to the given key or {@code null} if it is not bound
+    */
+   @SuppressWarnings("unchecked") // bind methods ensure type-safety of entries
+   public <U> U get(Key<U> key) {
+      return (U) values.get(key);
+   }
+
+   /**
+    * Returns the bindings as a map of keys to values.
+    *
+    * @return an unmodifiable view of the bindings
+    */
+   public Map<Key<?>, Object> asMap() {
+      return Collections.unmodifiableMap(values);
+   }
+
+   @Override
+   public String toString() {
+      return "Bindings" + values;
+   }
+}
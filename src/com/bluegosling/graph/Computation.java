@@ -1,27 +1,18 @@
 package com.bluegosling.graph;
 
-import static com.bluegosling.concurrent.fluent.FluentFuture.dereference;
-import static com.bluegosling.concurrent.fluent.FluentFuture.join;
-
 import com.bluegosling.concurrent.fluent.FluentFuture;
-import com.bluegosling.concurrent.fluent.FutureListener;
-import com.bluegosling.concurrent.fluent.SettableRunnableFluentFuture;
 import com.bluegosling.reflect.TypeRef;
-import com.bluegosling.result.Result;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.Callable;
 import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * A single instance of the computation graph. This represents a single invocation of the graph.
  * Executing the computation involves binding its required inputs and then calling the
- * {@link #compute()} method.
+ * {@link #compute()} method. Computations are executed using the graph's
+ * {@linkplain Graph#compile() execution plan}.
  * 
  * <p>This class is not thread safe. Multiple threads can safely share references to the graph
  * and then each create their own computations. Since the result of the computation is a future,
@@ -36,14 +27,23 @@ public class Computation<T> {
    private final Graph<T> graph;
    private final Executor executor;
    private final Iterable<NodeDecorator> decorators;
-   private final Map<Key<?>, FluentFuture<?>> inputs;
+   private final GraphProfiler profiler;
+   private final ExecutionPlan<T> plan;
+   private final FluentFuture<?>[] inputs;
+   private int numBound;
+   private boolean tracing;
+   private ComputationTrace trace;
    private FluentFuture<T> result;
    
-   Computation(Graph<T> graph, Executor executor, Iterable<NodeDecorator> decorators) {
+   Computation(Graph<T> graph, Executor executor, Iterable<NodeDecorator> decorators,
+         GraphProfiler profiler) {
       this.graph = graph;
       this.executor = executor;
       this.decorators = decorators;
-      this.inputs = new HashMap<>(graph.inputKeys().size() * 4 / 3);
+      this.profiler = profiler;
+      this.tracing = profiler != null;
+      this.plan = graph.compile();
+      this.inputs = new FluentFuture<?>[plan.inputKeys().size()];
    }
    
    /**
@@ -181,15 +181,49 @@ public class Computation<T> {
       return this;
    }
    
-   private <U> void bind(Key<U> key, FluentFuture<U> future) {
+   /**
+    * Enables tracing for this computation. When tracing is enabled, the start and end times of
+    * each node are recorded, and the resulting {@linkplain #trace() trace} can be used to find the
+    * computation's critical path. Computations created by a factory that has a
+    * {@linkplain ComputationFactory.Builder#setProfiler(GraphProfiler) profiler} are always traced.
+    *
+    * @return {@code this}, for method chaining
+    * @throws IllegalStateException if this computation has already been executed
+    */
+   public Computation<T> enableTracing() {
+      checkNotStarted();
+      tracing = true;
+      return this;
+   }
+
+   /**
+    * Returns the trace for this computation. The trace should only be examined after the
+    * computation completes.
+    *
+    * @return the trace for this computation or {@code null} if tracing was not enabled or if the
+    *       computation has not been executed
+    */
+   public ComputationTrace trace() {
+      return trace;
+   }
+
+   private void checkNotStarted() {
       if (result != null) {
          throw new IllegalStateException("This computation has already been started. "
                + "Use a new computation to define different inputs and run it again.");
       }
-      if (!graph.inputKeys().contains(key)) {
+   }
+
+   private <U> void bind(Key<U> key, FluentFuture<U> future) {
+      checkNotStarted();
+      int index = plan.indexOf(key);
+      if (index < 0) {
          throw new IllegalArgumentException("This computation has no input of type " + key);
       }
-      inputs.put(key, future);
+      if (inputs[index] == null) {
+         numBound++;
+      }
+      inputs[index] = future;
    }
    
    /**
@@ -206,121 +240,24 @@ public class Computation<T> {
          return result;
       }
       
-      if (inputs.size() != graph.inputKeys().size()) {
-         String message = graph.inputKeys().stream()
-               .filter(k -> !inputs.containsKey(k))
-               .map(Key::toString)
+      if (numBound != inputs.length) {
+         List<Key<?>> keys = plan.inputKeys();
+         String message = IntStream.range(0, inputs.length)
+               .filter(i -> inputs[i] == null)
+               .mapToObj(i -> keys.get(i).toString())
                .collect(Collectors.joining(", ",
                      "Missing input(s) required for computation: ", ""));
          throw new IllegalStateException(message);
       }
       
-      Map<Node<?>, FluentFuture<?>> resolved = new HashMap<>();
-      return result = resolveFuture(graph.resultNode(), resolved);
-   }
-   
-   /**
-    * Resolves the given node into a future value. The value may be an immediate (e.g. already
-    * completed) future. If the node has already been visited and resolved, the previously
-    * resolved value is returned.
-    *
-    * @param node the node to resolve
-    * @param resolved cache of resolved nodes
-    * @return the resolved future value of the given node
-    */
-   private <U> FluentFuture<U> resolveFuture(Node<U> node,
-         Map<Node<?>, FluentFuture<?>> resolved) {
-      @SuppressWarnings("unchecked") // we put the correct type into map, so trust what comes out
-      FluentFuture<U> alreadyResolved = (FluentFuture<U>) resolved.get(node);
-      if (alreadyResolved != null) {
-         return alreadyResolved;
-      }
-      List<Node.Input<?>> nodeInputs = node.inputs();
-      int len = nodeInputs.size();
-      FluentFuture<?> deps[] = new FluentFuture<?>[len];
-      List<FluentFuture<?>> synchronousDeps = new ArrayList<>(len);
-      for (int i = 0; i < len; i++) {
-         Node.Input<?> in = nodeInputs.get(i);
-         FluentFuture<?> future;
-         if (in.node() != null) {
-            future = resolveFuture(in.node(), resolved);
-         } else {
-            future = inputs.get(in.key());
-         }
-         deps[i] = future;
-         if (!in.isAsync()) {
-            synchronousDeps.add(future);
-         }
+      if (tracing) {
+         trace = new ComputationTrace(plan, profiler);
       }
-      FluentFuture<U> ret = dereference(chain(join(synchronousDeps),
-            decorate(node, decorators.iterator(), () -> node.apply(buildArgs(node, deps))),
-            executor));
-      resolved.put(node, ret);
-      return ret;
-   }
-   
-   private <U> Callable<FluentFuture<U>> decorate(Node<U> node, Iterator<NodeDecorator> iter,
-         Callable<FluentFuture<U>> operation) {
-      return iter.hasNext()
-            ? iter.next().decorate(graph, node, decorate(node, iter, operation))
-            : operation;
-   }
-   
-   private Object[] buildArgs(Node<?> node, FluentFuture<?> deps[]) {
-      int len = deps.length;
-      List<Node.Input<?>> nodeInputs = node.inputs();
-      Object args[] = new Object[len];
-      for (int i = 0; i < len; i++) {
-         Node.Input<?> in = nodeInputs.get(i);
-         if (in.isAsync()) {
-            args[i] = deps[i];
-         } else if (in.isOptional()) {
-            args[i] = Result.fromCompletedFuture(deps[i]);
-         } else {
-            if (deps[i].isFailed()) {
-               // we want to propagate the cause of failure, regardless
-               // if it's checked or not...
-               sneakyThrow(deps[i].getFailure());
-            }
-            args[i] = deps[i].getResult();
-         }
-      }
-      return args;
+      return result = plan.execute(inputs, executor, decorators, trace);
    }
    
    @SuppressWarnings("unchecked") // we rely on unchecked exception to be sneaky
    static <X extends Throwable> void sneakyThrow(Throwable th) throws X {
       throw (X) th;
    }
-
-   /**
-    * Chains the given operation to run once the source future completes. This is kind of like
-    * {@link FluentFuture#chainTo(Callable, Executor)} with a couple of exceptions:
-    * <ul>
-    * <li>The cancellation status of the returned future is kept in sync with the source. So
-    * cancelling the returned future will cancel the source and vice versa.</li>
-    * <li>An exception in the source future isn't automatically propagated to the returned future.
-    * Instead, even on failure, the given task is run once the source future completes.
-    * </ul>
-    *
-    * @param src the source, or input, future
-    * @param op the operation that is executed when the source completes
-    * @param executor the executed used to run the operation
-    * @return a future that represents the future result of the given operation
-    */
-   static <T, U> FluentFuture<U> chain(FluentFuture<T> src, Callable<U> op,
-         Executor executor) {
-      SettableRunnableFluentFuture<U> result = new SettableRunnableFluentFuture<U>(op) {
-         // keep cancellation status in sync
-         @Override public boolean cancel(boolean mayInterrupt) {
-            if (super.cancel(mayInterrupt)) {
-               src.cancel(mayInterrupt);
-               return true;
-            }
-            return false;
-         }
-      };
-      src.addListener(FutureListener.forRunnable(result), executor);
-      return result;
-   }
 }
@@ -1,8 +1,11 @@
 package com.bluegosling.graph;
 
+import com.bluegosling.concurrent.fluent.FluentFuture;
+
 import com.google.common.collect.Iterables;
 
 import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Executor;
 
 // TODO: doc
@@ -10,14 +13,64 @@ import java.util.concurrent.Executor;
 public class ComputationFactory {
    private final Executor executor;
    private final Iterable<NodeDecorator> decorators;
+   private final GraphProfiler profiler;
    
-   ComputationFactory(Executor executor, Iterable<NodeDecorator> decorators) {
+   ComputationFactory(Executor executor, Iterable<NodeDecorator> decorators,
+         GraphProfiler profiler) {
       this.executor = executor;
       this.decorators = decorators;
+      this.profiler = profiler;
    }
    
    public <T> Computation<T> newComputation(Graph<T> graph) {
-      return new Computation<>(graph, executor, decorators);
+      return new Computation<>(graph, executor, decorators, profiler);
+   }
+   
+   /**
+    * Computes the given graph for a batch of records. Each record supplies the values for all of
+    * the graph's input keys. Instead of running each node once per record, as would happen with a
+    * separate computation for each record, each node runs once for the whole batch. Nodes that are
+    * {@linkplain Node#markBatched(NodeOperations.BatchOperation) batched} are invoked just once,
+    * with the arguments for all records, which allows them to amortize per-call costs (like remote
+    * calls or lookups) across the batch.
+    *
+    * <p>A failure in one record does not affect the others: nodes that depend on a failed input
+    * fail for that record only. But if a batch operation throws, the node fails for all records in
+    * the batch.
+    *
+    * <p>Batch computations are not traced, even if this factory has a profiler. Decorators are
+    * applied to each record's invocation of nodes that are not batched.
+    *
+    * @param graph the graph to compute
+    * @param records the input bindings for each record
+    * @return the future results of the graph, one per record and in the same order as the records
+    * @throws IllegalStateException if any record does not bind all of the graph's input keys
+    */
+   public <T> List<FluentFuture<T>> computeAll(Graph<T> graph, List<Bindings> records) {
+      ExecutionPlan<T> plan = graph.compile();
+      List<Key<?>> keys = plan.inputKeys();
+      Object[][] values = new Object[records.size()][];
+      for (int r = 0; r < values.length; r++) {
+         Bindings b = records.get(r);
+         Object[] v = values[r] = new Object[keys.size()];
+         List<Key<?>> missing = null;
+         for (int k = 0; k < v.length; k++) {
+            Key<?> key = keys.get(k);
+            if (!b.isBound(key)) {
+               if (missing == null) {
+                  missing = new ArrayList<>();
+               }
+               missing.add(key);
+               continue;
+            }
+            v[k] = b.get(key);
+         }
+         if (missing != null) {
+            throw new IllegalStateException("Missing input(s) required for record " + r + ": "
+                  + missing);
+         }
+      }
+      return plan.executeBatch(values, executor, decorators);
    }
    
    public static Builder newBuilder() {
@@ -27,6 +80,7 @@ public class ComputationFactory {
    public static class Builder {
       private Executor executor;
       private final ArrayList<NodeDecorator> decorators = new ArrayList<>();
+      private GraphProfiler profiler;
       
       Builder() {
       }
@@ -46,8 +100,21 @@ public class ComputationFactory {
          return this;
       }
       
+      /**
+       * Sets the profiler for computations created by the factory. If set, all computations are
+       * {@linkplain Computation#enableTracing() traced}, and their traces are recorded by the
+       * given profiler when they complete.
+       *
+       * @param profiler the profiler, or {@code null} to not profile computations
+       * @return {@code this}, for method chaining
+       */
+      public Builder setProfiler(GraphProfiler profiler) {
+         this.profiler = profiler;
+         return this;
+      }
+      
       public ComputationFactory build() {
-         return new ComputationFactory(executor, decorators);
+         return new ComputationFactory(executor, decorators, profiler);
       }
    }
 }
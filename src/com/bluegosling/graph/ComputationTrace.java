@@ -0,0 +1,375 @@
+package com.bluegosling.graph;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A trace of a single {@link Computation}. The trace records, for each node, when it became ready
+ * to run (i.e. when its last synchronous input completed), when it started running, and when its
+ * result completed. It also records which input was the last to complete, which is the input that
+ * gated the node. Times are captured with {@link System#nanoTime()}.
+ *
+ * <p>Following the gating inputs backwards from the graph's result node yields the
+ * {@linkplain #criticalPath() critical path}: the chain of nodes that determined the latency of
+ * the computation. Speeding up nodes that are not on the critical path cannot make the computation
+ * faster. The trace can also be exported in the Chrome trace-event format, for viewing in tools
+ * like {@code chrome://tracing}.
+ *
+ * <p>The trace is filled in as the computation runs, by the threads that run its nodes, so it
+ * should only be examined after the computation completes. Times that have not been recorded are
+ * {@link #NOT_SET}.
+ *
+ * @see Computation#enableTracing()
+ * @see GraphProfiler
+ *
+ * @author Joshua Humphries (jhumphries131@gmail.com)
+ */
+public class ComputationTrace {
+   /**
+    * The gating source of a node that had no synchronous inputs.
+    */
+   static final int NONE = Integer.MIN_VALUE;
+
+   /**
+    * The value of a time that has not been recorded. Since {@link System#nanoTime()} can return any
+    * value, including zero, this is the one value that is assumed never to be a real time.
+    */
+   public static final long NOT_SET = Long.MIN_VALUE;
+
+   private final ExecutionPlan<?> plan;
+   private final GraphProfiler profiler;
+   private final long startNanos;
+   // nodes run in different threads, so these are atomic arrays to safely publish their elements
+   private final AtomicLongArray readyNanos;
+   private final AtomicLongArray runNanos;
+   private final AtomicLongArray endNanos;
+   private final AtomicIntegerArray gatedBy;
+   private final AtomicLongArray threadIds;
+   private final AtomicReferenceArray<String> threadNames;
+
+   ComputationTrace(ExecutionPlan<?> plan, GraphProfiler profiler) {
+      this.plan = plan;
+      this.profiler = profiler;
+      int numNodes = plan.nodes().size();
+      long[] notSet = new long[numNodes];
+      Arrays.fill(notSet, NOT_SET);
+      this.readyNanos = new AtomicLongArray(notSet);
+      this.runNanos = new AtomicLongArray(notSet);
+      this.endNanos = new AtomicLongArray(notSet);
+      int[] none = new int[numNodes];
+      Arrays.fill(none, NONE);
+      this.gatedBy = new AtomicIntegerArray(none);
+      this.threadIds = new AtomicLongArray(numNodes);
+      this.threadNames = new AtomicReferenceArray<>(numNodes);
+      this.startNanos = System.nanoTime();
+   }
+
+   void nodeReady(int index, int source) {
+      gatedBy.set(index, source);
+      readyNanos.set(index, System.nanoTime());
+   }
+
+   void nodeStarted(int index) {
+      Thread th = Thread.currentThread();
+      threadIds.set(index, th.getId());
+      threadNames.set(index, th.getName());
+      // set last, so the thread is visible to anyone that sees the node has started
+      runNanos.set(index, System.nanoTime());
+   }
+
+   void nodeFinished(int index) {
+      endNanos.set(index, System.nanoTime());
+      if (profiler != null && index == endNanos.length() - 1) {
+         // result node is done, so record the trace before the computation's result completes
+         profiler.record(this);
+      }
+   }
+
+   /**
+    * Returns the execution plan for the traced computation.
+    *
+    * @return the execution plan for the traced computation
+    */
+   public ExecutionPlan<?> plan() {
+      return plan;
+   }
+
+   /**
+    * Returns the time, per {@link System#nanoTime()}, when the computation started.
+    *
+    * @return the time when the computation started
+    */
+   public long startNanos() {
+      return startNanos;
+   }
+
+   /**
+    * Returns the total latency of the computation, from when it started until its result node
+    * completed.
+    *
+    * @return the latency of the computation, in nanoseconds, or -1 if it has not completed
+    */
+   public long latencyNanos() {
+      long end = endNanos.get(endNanos.length() - 1);
+      return end == NOT_SET ? -1 : end - startNanos;
+   }
+
+   /**
+    * Returns the traces for all nodes, in the same order as {@link ExecutionPlan#nodes()}.
+    *
+    * @return the traces for all nodes
+    */
+   public List<NodeTrace> nodeTraces() {
+      return new AbstractList<NodeTrace>() {
+         @Override
+         public NodeTrace get(int index) {
+            if (index < 0 || index >= size()) {
+               throw new IndexOutOfBoundsException(String.valueOf(index));
+            }
+            return new NodeTrace(index);
+         }
+
+         @Override
+         public int size() {
+            return readyNanos.length();
+         }
+      };
+   }
+
+   /**
+    * Returns the trace for the given node.
+    *
+    * @param node a node
+    * @return the trace for the given node
+    * @throws IllegalArgumentException if the given node is not part of the traced graph
+    */
+   public NodeTrace nodeTrace(Node<?> node) {
+      int index = plan.nodes().indexOf(node);
+      if (index < 0) {
+         throw new IllegalArgumentException("node is not part of the traced graph");
+      }
+      return new NodeTrace(index);
+   }
+
+   /**
+    * Returns the critical path of the computation. This starts with a node that had no gating
+    * node input and ends with the graph's result node. Each node in the path is the
+    * {@linkplain NodeTrace#gatingNode() gating node} of the next.
+    *
+    * @return the critical path of the computation
+    */
+   public List<Node<?>> criticalPath() {
+      List<Node<?>> path = new ArrayList<>();
+      List<Node<?>> nodes = plan.nodes();
+      int index = nodes.size() - 1;
+      while (true) {
+         path.add(nodes.get(index));
+         int source = gatedBy.get(index);
+         if (source < 0) {
+            break;
+         }
+         index = source;
+      }
+      Collections.reverse(path);
+      return path;
+   }
+
+   /**
+    * Exports this trace in the Chrome trace-event JSON format. Each node that ran is a complete
+    * event (phase {@code "X"}) on the thread that ran it, with timestamps in microseconds relative
+    * to the start of the computation. Event arguments include the time the node spent queued and
+    * the input that gated it.
+    *
+    * @return the trace, as a JSON array of trace events
+    */
+   public String toChromeTraceJson() {
+      StringBuilder sb = new StringBuilder("[");
+      boolean first = true;
+      for (NodeTrace t : nodeTraces()) {
+         if (t.runNanos() < 0) {
+            continue;
+         }
+         if (first) {
+            first = false;
+         } else {
+            sb.append(",");
+         }
+         sb.append("\n{\"name\":");
+         appendJsonString(sb, "node" + t.index + ": " + t.node());
+         sb.append(",\"cat\":\"node\",\"ph\":\"X\",\"pid\":1,\"tid\":")
+               .append(threadIds.get(t.index))
+               .append(",\"ts\":").append(micros(t.startNanos() - startNanos))
+               .append(",\"dur\":").append(micros(t.runNanos()))
+               .append(",\"args\":{\"thread\":");
+         appendJsonString(sb, t.threadName());
+         sb.append(",\"queuedMicros\":").append(micros(t.queuedNanos()));
+         Object gate = t.gatingNode() != null ? "node" + gatedBy.get(t.index) : t.gatingKey();
+         if (gate != null) {
+            sb.append(",\"gatedBy\":");
+            appendJsonString(sb, gate.toString());
+         }
+         sb.append("}}");
+      }
+      return sb.append("\n]").toString();
+   }
+
+   private static String micros(long nanos) {
+      return String.valueOf(nanos / 1000.0);
+   }
+
+   private static void appendJsonString(StringBuilder sb, String s) {
+      sb.append('"');
+      for (int i = 0, len = s.length(); i < len; i++) {
+         char ch = s.charAt(i);
+         switch (ch) {
+            case '"':
+               sb.append("\\\"");
+               break;
+            case '\\':
+               sb.append("\\\\");
+               break;
+            case '\n':
+               sb.append("\\n");
+               break;
+            case '\r':
+               sb.append("\\r");
+               break;
+            case '\t':
+               sb.append("\\t");
+               break;
+            default:
+               if (ch < 0x20) {
+                  sb.append(String.format("\\u%04x", (int) ch));
+               } else {
+                  sb.append(ch);
+               }
+         }
+      }
+      sb.append('"');
+   }
+
+   @Override
+   public String toString() {
+      long latency = latencyNanos();
+      return "ComputationTrace[nodes=" + readyNanos.length() + ", latency="
+            + (latency < 0 ? "incomplete" : TimeUnit.NANOSECONDS.toMicros(latency) + "us")
+            + ", criticalPath=" + criticalPath() + "]";
+   }
+
+   /**
+    * The trace of a single node in a computation.
+    *
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    */
+   public class NodeTrace {
+      final int index;
+
+      NodeTrace(int index) {
+         this.index = index;
+      }
+
+      /**
+       * Returns the traced node.
+       *
+       * @return the traced node
+       */
+      public Node<?> node() {
+         return plan.nodes().get(index);
+      }
+
+      /**
+       * Returns the time, per {@link System#nanoTime()}, when the node became ready to run.
+       *
+       * @return the time when the node became ready or {@link #NOT_SET} if it never did
+       */
+      public long readyNanos() {
+         return readyNanos.get(index);
+      }
+
+      /**
+       * Returns the time, per {@link System#nanoTime()}, when the node started running.
+       *
+       * @return the time when the node started or {@link #NOT_SET} if it never did
+       */
+      public long startNanos() {
+         return runNanos.get(index);
+      }
+
+      /**
+       * Returns the time, per {@link System#nanoTime()}, when the node's result completed.
+       *
+       * @return the time when the node completed or {@link #NOT_SET} if it has not
+       */
+      public long endNanos() {
+         return endNanos.get(index);
+      }
+
+      /**
+       * Returns the amount of time the node spent queued, after it became ready and before it
+       * started running.
+       *
+       * @return the time spent queued, in nanoseconds, or -1 if the node never started
+       */
+      public long queuedNanos() {
+         long start = runNanos.get(index);
+         long ready = readyNanos.get(index);
+         return start == NOT_SET || ready == NOT_SET ? -1 : start - ready;
+      }
+
+      /**
+       * Returns the amount of time from when the node started running until its result completed.
+       * For nodes with asynchronous results, this includes the time waiting for the result.
+       *
+       * @return the time spent running, in nanoseconds, or -1 if the node never completed
+       */
+      public long runNanos() {
+         long start = runNanos.get(index);
+         long end = endNanos.get(index);
+         return start == NOT_SET || end == NOT_SET ? -1 : end - start;
+      }
+
+      /**
+       * Returns the name of the thread that ran the node.
+       *
+       * @return the name of the thread that ran the node or {@code null} if it never ran
+       */
+      public String threadName() {
+         return threadNames.get(index);
+      }
+
+      /**
+       * Returns the node input that was the last to complete, which made this node ready to run.
+       *
+       * @return the gating node or {@code null} if the node was gated by an input key or had no
+       *       synchronous inputs
+       */
+      public Node<?> gatingNode() {
+         int source = gatedBy.get(index);
+         return source >= 0 ? plan.nodes().get(source) : null;
+      }
+
+      /**
+       * Returns the input key that was the last to complete, which made this node ready to run.
+       *
+       * @return the gating key or {@code null} if the node was gated by another node or had no
+       *       synchronous inputs
+       */
+      public Key<?> gatingKey() {
+         int source = gatedBy.get(index);
+         return source < 0 && source != NONE ? plan.inputKeys().get(~source) : null;
+      }
+
+      @Override
+      public String toString() {
+         return "NodeTrace[node" + index + ", queued=" + queuedNanos() + "ns, run="
+               + runNanos() + "ns]";
+      }
+   }
+}
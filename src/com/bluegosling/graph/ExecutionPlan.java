@@ -0,0 +1,663 @@
+package com.bluegosling.graph;
+
+import static com.bluegosling.graph.Computation.sneakyThrow;
+
+import com.bluegosling.concurrent.SameThreadExecutor;
+import com.bluegosling.concurrent.fluent.AbstractFluentFuture;
+import com.bluegosling.concurrent.fluent.FluentFuture;
+import com.bluegosling.result.Result;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A compiled form of a {@link Graph}. The plan is computed once per graph and then shared by all
+ * of the graph's {@linkplain Computation computations}, so that executing a computation does not
+ * need to re-walk the graph.
+ *
+ * <p>The plan contains the graph's nodes in topological order, with the result node last. Each
+ * node's inputs are resolved to indices, either into the list of nodes or into the list of input
+ * keys, and each node has a precomputed fan-in: the number of distinct synchronous inputs it must
+ * wait for before it can run. Executing the plan then only requires allocating a dense array of
+ * node results and an array of counters, one per node. When a node completes, it decrements the
+ * counters of the nodes that depend on it, and any node whose counter reaches zero is scheduled.
+ *
+ * <p>Nodes are normally run using the computation's executor. But nodes that are
+ * {@linkplain Node#markCheap() marked as cheap} are instead run inline, in the thread that
+ * completes their last input. This avoids the overhead of an executor hop for trivial operations.
+ *
+ * @param <T> the type of value produced by the graph
+ *
+ * @see Graph#compile()
+ *
+ * @author Joshua Humphries (jhumphries131@gmail.com)
+ */
+public final class ExecutionPlan<T> {
+   private static final int[] EMPTY = new int[0];
+
+   private final Graph<T> graph;
+   private final List<Node<?>> nodes;
+   private final List<Key<?>> keys;
+   private final Map<Key<?>, Integer> keyIndices;
+
+   /**
+    * For each node, the source of each of its inputs. A non-negative source is the index of a
+    * node. A negative source is the bitwise complement of the index of an input key.
+    */
+   private final int[][] inputSources;
+
+   /**
+    * For each node, the number of distinct synchronous inputs.
+    */
+   private final int[] fanIn;
+
+   /**
+    * For each node, the indices of the nodes that have it as a synchronous input.
+    */
+   private final int[][] nodeDependents;
+
+   /**
+    * For each input key, the indices of the nodes that have it as a synchronous input.
+    */
+   private final int[][] keyDependents;
+
+   /**
+    * For each node, the number of distinct node inputs, both synchronous and asynchronous. This is
+    * the fan-in used for {@linkplain #executeBatch batch execution}.
+    */
+   private final int[] batchFanIn;
+
+   /**
+    * For each node, the indices of the nodes that have it as an input, synchronous or not.
+    */
+   private final int[][] batchDependents;
+
+   /**
+    * For each node, whether it is run inline instead of using an executor.
+    */
+   private final boolean[] inline;
+
+   ExecutionPlan(Graph<T> graph) {
+      this.graph = graph;
+      Map<Node<?>, Integer> nodeIndices = new HashMap<>();
+      List<Node<?>> sorted = new ArrayList<>();
+      visit(graph.resultNode(), nodeIndices, sorted);
+      int numNodes = sorted.size();
+
+      List<Key<?>> keyList = new ArrayList<>();
+      Map<Key<?>, Integer> keyMap = new HashMap<>();
+      List<List<Integer>> nodeDeps = new ArrayList<>(numNodes);
+      List<List<Integer>> keyDeps = new ArrayList<>();
+      List<List<Integer>> batchDeps = new ArrayList<>(numNodes);
+      inputSources = new int[numNodes][];
+      fanIn = new int[numNodes];
+      batchFanIn = new int[numNodes];
+      inline = new boolean[numNodes];
+      for (int i = 0; i < numNodes; i++) {
+         nodeDeps.add(new ArrayList<>());
+         batchDeps.add(new ArrayList<>());
+      }
+      for (int i = 0; i < numNodes; i++) {
+         Node<?> node = sorted.get(i);
+         inline[i] = node.isCheap();
+         List<Node.Input<?>> nodeInputs = node.inputs();
+         int[] sources = new int[nodeInputs.size()];
+         Set<Integer> syncSources = new LinkedHashSet<>();
+         Set<Integer> nodeSources = new LinkedHashSet<>();
+         for (int j = 0; j < sources.length; j++) {
+            Node.Input<?> in = nodeInputs.get(j);
+            if (in.node() != null) {
+               sources[j] = nodeIndices.get(in.node());
+               nodeSources.add(sources[j]);
+            } else {
+               Integer k = keyMap.get(in.key());
+               if (k == null) {
+                  k = keyList.size();
+                  keyList.add(in.key());
+                  keyMap.put(in.key(), k);
+                  keyDeps.add(new ArrayList<>());
+               }
+               sources[j] = ~k;
+            }
+            if (!in.isAsync()) {
+               syncSources.add(sources[j]);
+            }
+         }
+         inputSources[i] = sources;
+         fanIn[i] = syncSources.size();
+         for (int source : syncSources) {
+            (source >= 0 ? nodeDeps.get(source) : keyDeps.get(~source)).add(i);
+         }
+         batchFanIn[i] = nodeSources.size();
+         for (int source : nodeSources) {
+            batchDeps.get(source).add(i);
+         }
+      }
+
+      this.nodes = Collections.unmodifiableList(sorted);
+      this.keys = Collections.unmodifiableList(keyList);
+      this.keyIndices = keyMap;
+      this.nodeDependents = toArrays(nodeDeps);
+      this.keyDependents = toArrays(keyDeps);
+      this.batchDependents = toArrays(batchDeps);
+   }
+
+   /**
+    * Adds the given node and its transitive dependencies to the given list, in topological order.
+    * Each node is assigned an index, which is its position in the list.
+    */
+   private static void visit(Node<?> node, Map<Node<?>, Integer> indices, List<Node<?>> sorted) {
+      if (indices.containsKey(node)) {
+         return;
+      }
+      for (Node.Input<?> in : node.inputs()) {
+         if (in.node() != null) {
+            visit(in.node(), indices, sorted);
+         }
+      }
+      indices.put(node, sorted.size());
+      sorted.add(node);
+   }
+
+   private static int[][] toArrays(List<List<Integer>> lists) {
+      int[][] ret = new int[lists.size()][];
+      for (int i = 0; i < ret.length; i++) {
+         List<Integer> list = lists.get(i);
+         if (list.isEmpty()) {
+            ret[i] = EMPTY;
+         } else {
+            int[] array = ret[i] = new int[list.size()];
+            for (int j = 0; j < array.length; j++) {
+               array[j] = list.get(j);
+            }
+         }
+      }
+      return ret;
+   }
+
+   /**
+    * Returns the graph from which this plan was compiled.
+    *
+    * @return the graph from which this plan was compiled
+    */
+   public Graph<T> graph() {
+      return graph;
+   }
+
+   /**
+    * Returns all nodes in the graph, in topological order. Every node appears after all of the
+    * nodes on which it depends. So the graph's result node is always last.
+    *
+    * @return all nodes in the graph, in topological order
+    */
+   public List<Node<?>> nodes() {
+      return nodes;
+   }
+
+   /**
+    * Returns all input keys for the graph. This contains the same keys as
+    * {@link Graph#inputKeys()}, but in the order in which they are first used by the nodes.
+    *
+    * @return all input keys for the graph
+    */
+   public List<Key<?>> inputKeys() {
+      return keys;
+   }
+
+   /**
+    * Returns the index of the given key in the list of {@linkplain #inputKeys() input keys}.
+    *
+    * @param key an input key
+    * @return the index of the given key or -1 if it is not an input to the graph
+    */
+   int indexOf(Key<?> key) {
+      Integer index = keyIndices.get(key);
+      return index == null ? -1 : index;
+   }
+
+   /**
+    * Executes the plan.
+    *
+    * @param inputs the values bound to the graph's input keys, indexed the same as
+    *       {@link #inputKeys()}
+    * @param executor the executor used to run nodes that are not inlined
+    * @param decorators decorators applied to every node's operation
+    * @param trace a trace in which to record the execution, or {@code null} to not trace it
+    * @return the future result of the graph
+    */
+   FluentFuture<T> execute(FluentFuture<?>[] inputs, Executor executor,
+         Iterable<NodeDecorator> decorators, ComputationTrace trace) {
+      return new Run(inputs, executor, decorators, trace).start();
+   }
+
+   /**
+    * Executes the plan for a batch of records. Instead of each node running once per record, each
+    * node runs once per batch, as a single step that produces results for all records. A step
+    * starts once all steps for the node's inputs have completed. So, unlike {@link #execute}, a
+    * node also waits on its asynchronous inputs (which are then provided as completed futures).
+    *
+    * <p>Nodes that are {@linkplain Node#markBatched(NodeOperations.BatchOperation) batched} are
+    * invoked once, with the arguments for all records whose required inputs succeeded. Other nodes
+    * are invoked once per record.
+    *
+    * @param values the values bound to the graph's input keys, one array per record, each indexed
+    *       the same as {@link #inputKeys()}
+    * @param executor the executor used to run nodes that are not inlined
+    * @param decorators decorators applied to every node's operation, for each record; these are not
+    *       applied to batch operations
+    * @return the future results of the graph, one per record
+    */
+   List<FluentFuture<T>> executeBatch(Object[][] values, Executor executor,
+         Iterable<NodeDecorator> decorators) {
+      if (values.length == 0) {
+         return Collections.emptyList();
+      }
+      return new BatchRun(values, executor, decorators).start();
+   }
+
+   /**
+    * The state for a single execution of the plan.
+    *
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    */
+   private class Run {
+      private final FluentFuture<?>[] inputs;
+      private final Executor executor;
+      private final NodeFuture<?>[] results;
+      private final AtomicIntegerArray pending;
+      private final Callable<? extends FluentFuture<?>>[] operations;
+      private final ComputationTrace trace;
+
+      @SuppressWarnings({"unchecked", "rawtypes"}) // can't create generic array, so must cast
+      Run(FluentFuture<?>[] inputs, Executor executor, Iterable<NodeDecorator> decorators,
+            ComputationTrace trace) {
+         this.inputs = inputs;
+         this.executor = executor;
+         this.trace = trace;
+         int numNodes = nodes.size();
+         this.results = new NodeFuture<?>[numNodes];
+         for (int i = 0; i < numNodes; i++) {
+            results[i] = new NodeFuture<>();
+         }
+         this.pending = new AtomicIntegerArray(fanIn);
+         // decorators are invoked now, in the thread that started the computation
+         if (decorators.iterator().hasNext()) {
+            operations = new Callable[numNodes];
+            for (int i = 0; i < numNodes; i++) {
+               operations[i] = decorate(i, nodes.get(i), decorators.iterator());
+            }
+         } else {
+            operations = null;
+         }
+      }
+
+      private <U> Callable<FluentFuture<U>> decorate(int index, Node<U> node,
+            Iterator<NodeDecorator> iter) {
+         return iter.hasNext()
+               ? iter.next().decorate(graph, node, decorate(index, node, iter))
+               : () -> node.applyCached(buildArgs(index));
+      }
+
+      @SuppressWarnings("unchecked") // result node is last and produces a T
+      FluentFuture<T> start() {
+         int numNodes = results.length;
+         NodeFuture<T> result = (NodeFuture<T>) results[numNodes - 1];
+         result.addListener(f -> {
+            if (f.isCancelled()) {
+               // no need to run anything else
+               for (NodeFuture<?> r : results) {
+                  r.cancel(false);
+               }
+            }
+         }, SameThreadExecutor.get());
+         for (int k = 0; k < inputs.length; k++) {
+            int[] dependents = keyDependents[k];
+            if (dependents.length == 0) {
+               continue;
+            }
+            FluentFuture<?> input = inputs[k];
+            int source = ~k;
+            if (input.isDone()) {
+               release(source, dependents);
+            } else {
+               input.addListener(f -> release(source, dependents), SameThreadExecutor.get());
+            }
+         }
+         for (int i = 0; i < numNodes; i++) {
+            if (fanIn[i] == 0) {
+               schedule(i, ComputationTrace.NONE);
+            }
+         }
+         return result;
+      }
+
+      /**
+       * Called when an input completes, to release nodes that were waiting on it.
+       */
+      private void release(int source, int[] dependents) {
+         for (int d : dependents) {
+            if (pending.decrementAndGet(d) == 0) {
+               schedule(d, source);
+            }
+         }
+      }
+
+      private void schedule(int index, int source) {
+         if (trace != null) {
+            trace.nodeReady(index, source);
+         }
+         // inlined nodes use a trampoline, to avoid deep recursion for long chains of cheap nodes
+         (inline[index] ? SameThreadExecutor.get() : executor).execute(() -> run(index));
+      }
+
+      @SuppressWarnings("unchecked") // results are correctly typed since they match the nodes
+      private void run(int index) {
+         NodeFuture<Object> result = (NodeFuture<Object>) results[index];
+         if (!result.isDone()) {
+            if (trace != null) {
+               trace.nodeStarted(index);
+            }
+            FluentFuture<Object> future;
+            try {
+               future = (FluentFuture<Object>) (operations != null
+                     ? operations[index].call()
+                     : nodes.get(index).applyCached(buildArgs(index)));
+            } catch (Throwable th) {
+               future = FluentFuture.failedFuture(th);
+            }
+            if (!future.isDone()) {
+               // cached results are per-computation views, so cancelling them is safe
+               result.setDelegate(future);
+               future.addListener(f -> finish(index, result, f), SameThreadExecutor.get());
+            } else {
+               finish(index, result, future);
+            }
+         } else {
+            // cancelled, so skip it
+            release(index, nodeDependents[index]);
+         }
+      }
+
+      private <U> void finish(int index, NodeFuture<U> result, FluentFuture<? extends U> future) {
+         if (trace != null) {
+            // record before completing the result, so trace is complete when result is done
+            trace.nodeFinished(index);
+         }
+         result.completeFrom(future);
+         release(index, nodeDependents[index]);
+      }
+
+      private Object[] buildArgs(int index) {
+         int[] sources = inputSources[index];
+         List<Node.Input<?>> nodeInputs = nodes.get(index).inputs();
+         Object args[] = new Object[sources.length];
+         for (int i = 0; i < sources.length; i++) {
+            int source = sources[i];
+            FluentFuture<?> dep = source >= 0 ? results[source] : inputs[~source];
+            Node.Input<?> in = nodeInputs.get(i);
+            if (in.isAsync()) {
+               args[i] = dep;
+            } else if (in.isOptional()) {
+               args[i] = Result.fromCompletedFuture(dep);
+            } else {
+               if (dep.isFailed()) {
+                  // we want to propagate the cause of failure, regardless
+                  // if it's checked or not...
+                  sneakyThrow(dep.getFailure());
+               }
+               args[i] = dep.getResult();
+            }
+         }
+         return args;
+      }
+   }
+
+   /**
+    * The state for a single batch execution of the plan.
+    *
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    */
+   private class BatchRun {
+      private final Object[][] values;
+      private final Executor executor;
+      private final int numRecords;
+      /**
+       * For each node, the future results for every record. Each array is written by the node's
+       * step before it releases its dependents, so it is visible to them.
+       */
+      private final FluentFuture<?>[][] results;
+      private final NodeFuture<?>[] outputs;
+      private final AtomicIntegerArray pending;
+      private final Callable<? extends FluentFuture<?>>[][] operations;
+
+      @SuppressWarnings({"unchecked", "rawtypes"}) // can't create generic array, so must cast
+      BatchRun(Object[][] values, Executor executor, Iterable<NodeDecorator> decorators) {
+         this.values = values;
+         this.executor = executor;
+         this.numRecords = values.length;
+         int numNodes = nodes.size();
+         this.results = new FluentFuture<?>[numNodes][];
+         this.outputs = new NodeFuture<?>[numRecords];
+         for (int r = 0; r < numRecords; r++) {
+            outputs[r] = new NodeFuture<>();
+         }
+         this.pending = new AtomicIntegerArray(batchFanIn);
+         // decorators are invoked now, in the thread that started the computation
+         if (decorators.iterator().hasNext()) {
+            operations = new Callable[numNodes][];
+            for (int i = 0; i < numNodes; i++) {
+               Node<?> node = nodes.get(i);
+               if (node.batchOperation() != null) {
+                  continue;
+               }
+               Callable<? extends FluentFuture<?>>[] ops = operations[i] = new Callable[numRecords];
+               for (int r = 0; r < numRecords; r++) {
+                  ops[r] = decorate(i, r, node, decorators.iterator());
+               }
+            }
+         } else {
+            operations = null;
+         }
+      }
+
+      private <U> Callable<FluentFuture<U>> decorate(int index, int record, Node<U> node,
+            Iterator<NodeDecorator> iter) {
+         return iter.hasNext()
+               ? iter.next().decorate(graph, node, decorate(index, record, node, iter))
+               : () -> node.applyCached(buildArgs(index, record));
+      }
+
+      @SuppressWarnings({"unchecked", "rawtypes"}) // outputs all produce a T
+      List<FluentFuture<T>> start() {
+         for (int i = 0; i < batchFanIn.length; i++) {
+            if (batchFanIn[i] == 0) {
+               schedule(i);
+            }
+         }
+         return Collections.unmodifiableList((List) Arrays.asList(outputs));
+      }
+
+      private void schedule(int index) {
+         // inlined nodes use a trampoline, to avoid deep recursion for long chains of cheap nodes
+         (inline[index] ? SameThreadExecutor.get() : executor).execute(() -> run(index));
+      }
+
+      @SuppressWarnings("unchecked") // results are correctly typed since they match the nodes
+      private void run(int index) {
+         Node<Object> node = (Node<Object>) nodes.get(index);
+         FluentFuture<?>[] stepResults = new FluentFuture<?>[numRecords];
+         NodeOperations.BatchOperation<Object> batchOp = node.batchOperation();
+         if (batchOp != null) {
+            runBatch(index, batchOp, stepResults);
+         } else {
+            for (int r = 0; r < numRecords; r++) {
+               FluentFuture<?> future;
+               try {
+                  future = operations != null
+                        ? operations[index][r].call()
+                        : node.applyCached(buildArgs(index, r));
+               } catch (Throwable th) {
+                  future = FluentFuture.failedFuture(th);
+               }
+               stepResults[r] = future;
+            }
+         }
+         results[index] = stepResults;
+         // the step is done once all records' results are done
+         AtomicInteger remaining = new AtomicInteger(numRecords);
+         for (FluentFuture<?> f : stepResults) {
+            if (f.isDone()) {
+               if (remaining.decrementAndGet() == 0) {
+                  finish(index);
+               }
+            } else {
+               f.addListener(ff -> {
+                  if (remaining.decrementAndGet() == 0) {
+                     finish(index);
+                  }
+               }, SameThreadExecutor.get());
+            }
+         }
+      }
+
+      private void runBatch(int index, NodeOperations.BatchOperation<Object> batchOp,
+            FluentFuture<?>[] stepResults) {
+         List<Object[]> args = new ArrayList<>(numRecords);
+         int[] records = new int[numRecords];
+         for (int r = 0; r < numRecords; r++) {
+            try {
+               records[args.size()] = r;
+               args.add(buildArgs(index, r));
+            } catch (Throwable th) {
+               // a required input failed, so this record is excluded from the batch
+               stepResults[r] = FluentFuture.failedFuture(th);
+            }
+         }
+         if (args.isEmpty()) {
+            return;
+         }
+         List<Object> batchResults;
+         try {
+            batchResults = batchOp.executeBatch(Collections.unmodifiableList(args));
+            if (batchResults == null || batchResults.size() != args.size()) {
+               throw new IllegalStateException("batch operation for " + nodes.get(index)
+                     + " returned " + (batchResults == null ? "null" : batchResults.size())
+                     + " results for " + args.size() + " records");
+            }
+         } catch (Throwable th) {
+            FluentFuture<?> failed = FluentFuture.failedFuture(th);
+            for (int j = 0, n = args.size(); j < n; j++) {
+               stepResults[records[j]] = failed;
+            }
+            return;
+         }
+         for (int j = 0, n = args.size(); j < n; j++) {
+            stepResults[records[j]] = FluentFuture.completedFuture(batchResults.get(j));
+         }
+      }
+
+      @SuppressWarnings("unchecked") // result node is last and produces a T
+      private void finish(int index) {
+         if (index == results.length - 1) {
+            FluentFuture<?>[] stepResults = results[index];
+            for (int r = 0; r < numRecords; r++) {
+               ((NodeFuture<Object>) outputs[r]).completeFrom(
+                     (FluentFuture<Object>) stepResults[r]);
+            }
+            return;
+         }
+         for (int d : batchDependents[index]) {
+            if (pending.decrementAndGet(d) == 0) {
+               schedule(d);
+            }
+         }
+      }
+
+      private Object[] buildArgs(int index, int record) {
+         int[] sources = inputSources[index];
+         List<Node.Input<?>> nodeInputs = nodes.get(index).inputs();
+         Object args[] = new Object[sources.length];
+         for (int i = 0; i < sources.length; i++) {
+            int source = sources[i];
+            Node.Input<?> in = nodeInputs.get(i);
+            if (source < 0) {
+               Object value = values[record][~source];
+               args[i] = in.isAsync()
+                     ? FluentFuture.completedFuture(value)
+                     : in.isOptional() ? Result.ok(value) : value;
+               continue;
+            }
+            FluentFuture<?> dep = results[source][record];
+            if (in.isAsync()) {
+               args[i] = dep;
+            } else if (in.isOptional()) {
+               args[i] = Result.fromCompletedFuture(dep);
+            } else {
+               if (dep.isFailed()) {
+                  sneakyThrow(dep.getFailure());
+               } else if (dep.isCancelled()) {
+                  throw new CancellationException();
+               }
+               args[i] = dep.getResult();
+            }
+         }
+         return args;
+      }
+   }
+
+   /**
+    * The future result of a single node. If the node's operation returns a future that is not yet
+    * complete, cancelling this future also cancels the operation's future.
+    *
+    * @param <U> the type of the node's result
+    *
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    */
+   private static class NodeFuture<U> extends AbstractFluentFuture<U> {
+      private volatile FluentFuture<?> delegate;
+
+      NodeFuture() {
+      }
+
+      void setDelegate(FluentFuture<?> delegate) {
+         this.delegate = delegate;
+         if (isCancelled()) {
+            delegate.cancel(false);
+         }
+      }
+
+      void completeFrom(FluentFuture<? extends U> future) {
+         if (future.isSuccessful()) {
+            setValue(future.getResult());
+         } else if (future.isFailed()) {
+            setFailure(future.getFailure());
+         } else {
+            setCancelled();
+         }
+      }
+
+      @Override
+      public boolean cancel(boolean mayInterruptIfRunning) {
+         if (super.cancel(mayInterruptIfRunning)) {
+            FluentFuture<?> d = delegate;
+            if (d != null) {
+               d.cancel(mayInterruptIfRunning);
+            }
+            return true;
+         }
+         return false;
+      }
+   }
+}
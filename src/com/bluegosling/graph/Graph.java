@@ -2,8 +2,11 @@ package com.bluegosling.graph;
 
 import static com.bluegosling.concurrent.ThreadFactories.newGroupingDaemonThreadFactory;
 
+import com.bluegosling.concurrent.fluent.FluentFuture;
+
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
@@ -37,6 +40,7 @@ public class Graph<T> {
    
    private final Node<T> resultNode;
    private final Set<Key<?>> inputs;
+   private volatile ExecutionPlan<T> plan;
    
    Graph(Node<T> resultNode) {
       this.resultNode = resultNode;
@@ -75,6 +79,23 @@ public class Graph<T> {
       return resultNode;
    }
    
+   /**
+    * Compiles this graph into an execution plan. The plan is computed the first time this method
+    * is called and then cached, so subsequent calls return the same plan. All computations for
+    * this graph share its plan, so this method need not be called explicitly. But it can be
+    * called ahead of time, to avoid the cost of compiling the graph when it is first computed.
+    *
+    * @return the execution plan for this graph
+    */
+   public ExecutionPlan<T> compile() {
+      ExecutionPlan<T> p = plan;
+      if (p == null) {
+         // benign race: plans are immutable, so concurrent callers may each compute one
+         plan = p = new ExecutionPlan<>(this);
+      }
+      return p;
+   }
+   
    /**
     * Creates a new computation for this graph using a default {@linkplain ComputationFactory
     * factory}. The default factory uses no node decorators and executes the nodes using the
@@ -86,6 +107,19 @@ public class Graph<T> {
       return DEFAULT_FACTORY.newComputation(this);
    }
    
+   /**
+    * Computes this graph for a batch of records using a default {@linkplain ComputationFactory
+    * factory}. Each node runs once for the whole batch, instead of once per record.
+    *
+    * @param records the input bindings for each record
+    * @return the future results of the graph, one per record and in the same order as the records
+    * @throws IllegalStateException if any record does not bind all of the graph's input keys
+    * @see ComputationFactory#computeAll(Graph, List)
+    */
+   public List<FluentFuture<T>> computeAll(List<Bindings> records) {
+      return DEFAULT_FACTORY.computeAll(this, records);
+   }
+   
    /**
     * The default thread pool executor, used by computations created with {@link #newComputation()}.
     * The default is a {@linkplain Executors#newCachedThreadPool() cached thread pool} with no
@@ -0,0 +1,136 @@
+package com.bluegosling.graph;
+
+import com.bluegosling.concurrent.executors.LatencyHistogram;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregates {@linkplain ComputationTrace traces} across many computations. For each node, this
+ * keeps {@linkplain LatencyHistogram histograms} of the time the node spent queued and the time it
+ * spent running, and it counts how often the node was on the critical path. Together, these show
+ * which nodes are worth optimizing or splitting.
+ *
+ * <p>A profiler is typically {@linkplain ComputationFactory.Builder#setProfiler(GraphProfiler)
+ * configured} on a {@link ComputationFactory}, so that all of its computations are traced and
+ * recorded. Since nodes may be shared by many graphs, a single profiler can be used for all of
+ * them.
+ *
+ * @author Joshua Humphries (jhumphries131@gmail.com)
+ */
+public class GraphProfiler {
+   private final Map<Node<?>, NodeProfile> profiles = new ConcurrentHashMap<>();
+   private final LatencyHistogram latency = new LatencyHistogram();
+
+   /**
+    * Constructs a new profiler.
+    */
+   public GraphProfiler() {
+   }
+
+   /**
+    * Records the given trace. This should only be called once the traced computation completes.
+    *
+    * @param trace a computation trace
+    */
+   public void record(ComputationTrace trace) {
+      long l = trace.latencyNanos();
+      if (l >= 0) {
+         latency.record(l);
+      }
+      for (ComputationTrace.NodeTrace t : trace.nodeTraces()) {
+         NodeProfile p = profiles.computeIfAbsent(t.node(), n -> new NodeProfile());
+         long queued = t.queuedNanos();
+         if (queued >= 0) {
+            p.queued.record(queued);
+         }
+         long run = t.runNanos();
+         if (run >= 0) {
+            p.run.record(run);
+         }
+      }
+      for (Node<?> n : new HashSet<>(trace.criticalPath())) {
+         profiles.computeIfAbsent(n, k -> new NodeProfile()).criticalPathCount.increment();
+      }
+   }
+
+   /**
+    * Returns the histogram of total computation latencies.
+    *
+    * @return the histogram of computation latencies
+    */
+   public LatencyHistogram getLatency() {
+      return latency;
+   }
+
+   /**
+    * Returns the set of nodes for which traces have been recorded.
+    *
+    * @return the set of profiled nodes
+    */
+   public Set<Node<?>> getNodes() {
+      return Collections.unmodifiableSet(profiles.keySet());
+   }
+
+   /**
+    * Returns the histogram of times that the given node spent queued, after it became ready and
+    * before it started running.
+    *
+    * @param node a node
+    * @return the histogram of queued times for the node, or {@code null} if it has not been
+    *       profiled
+    */
+   public LatencyHistogram getQueuedTime(Node<?> node) {
+      NodeProfile p = profiles.get(node);
+      return p == null ? null : p.queued;
+   }
+
+   /**
+    * Returns the histogram of times that the given node spent running.
+    *
+    * @param node a node
+    * @return the histogram of run times for the node, or {@code null} if it has not been profiled
+    */
+   public LatencyHistogram getRunTime(Node<?> node) {
+      NodeProfile p = profiles.get(node);
+      return p == null ? null : p.run;
+   }
+
+   /**
+    * Returns the number of recorded computations in which the given node was on the critical
+    * path.
+    *
+    * @param node a node
+    * @return the number of times the node was on the critical path
+    */
+   public long getCriticalPathCount(Node<?> node) {
+      NodeProfile p = profiles.get(node);
+      return p == null ? 0 : p.criticalPathCount.sum();
+   }
+
+   /**
+    * Clears all recorded data.
+    */
+   public void reset() {
+      profiles.clear();
+      latency.reset();
+   }
+
+   /**
+    * The aggregated statistics for a single node.
+    *
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    */
+   private static class NodeProfile {
+      final LatencyHistogram queued = new LatencyHistogram();
+      final LatencyHistogram run = new LatencyHistogram();
+      final LongAdder criticalPathCount = new LongAdder();
+
+      NodeProfile() {
+      }
+   }
+}
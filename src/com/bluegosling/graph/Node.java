@@ -6,6 +6,7 @@ import static java.util.Objects.requireNonNull;
 import static java.util.stream.Collectors.toSet;
 
 import com.bluegosling.concurrent.fluent.FluentFuture;
+import com.bluegosling.graph.NodeOperations.BatchOperation;
 import com.bluegosling.graph.NodeOperations.Operation1;
 import com.bluegosling.graph.NodeOperations.Operation10;
 import com.bluegosling.graph.NodeOperations.Operation2;
@@ -25,6 +26,7 @@ import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 /**
@@ -45,6 +47,9 @@ public abstract class Node<T> {
    private final List<Input<?>> inputs;
    private final Set<Key<?>> inputKeys;
    private final Set<Node<?>> dependencies;
+   private volatile boolean cheap;
+   private volatile NodeCache<T> cache;
+   private volatile BatchOperation<T> batchOperation;
    
    Node(List<Input<?>> inputs) {
       this.inputs = Collections.unmodifiableList(inputs);
@@ -84,6 +89,120 @@ public abstract class Node<T> {
       return dependencies;
    }
 
+   /**
+    * Marks this node as cheap. A cheap node's operation is trivial, like a simple transformation of
+    * its inputs, so it is not worth the overhead of submitting it to an executor. Instead, when a
+    * graph is computed, cheap nodes run inline in the thread that completes their last input.
+    * Cheap nodes should never block.
+    * 
+    * <p>A graph's {@linkplain Graph#compile() execution plan} is computed once, the first time
+    * the graph is compiled or computed. So nodes should be marked as cheap when they are defined,
+    * before any graph that contains them is computed.
+    *
+    * @return {@code this}, for method chaining
+    */
+   public Node<T> markCheap() {
+      cheap = true;
+      return this;
+   }
+
+   /**
+    * Returns true if this node has been {@linkplain #markCheap() marked as cheap}.
+    *
+    * @return true if this node has been marked as cheap
+    */
+   public boolean isCheap() {
+      return cheap;
+   }
+
+   /**
+    * Marks this node as cacheable. Results of the node's operation are cached, keyed by the values
+    * of the node's inputs, and shared across all computations that include the node. This is
+    * useful for nodes whose inputs repeat across computations, like configuration or schema
+    * lookups. Concurrent computations that need the same result share a single invocation of the
+    * node's operation.
+    * 
+    * <p>Like {@link #markCheap()}, this should be called when the node is defined, before any
+    * graph that contains it is computed.
+    *
+    * @param ttl the duration for which a result is cached, after it is computed
+    * @param unit the unit of the TTL
+    * @param maxSize the maximum number of results to cache
+    * @return {@code this}, for method chaining
+    * @throws IllegalArgumentException if the TTL or max size is not positive
+    * @throws IllegalStateException if the node is already cacheable or if it has any asynchronous
+    *       inputs (since the values of asynchronous inputs are futures, they cannot be used as
+    *       cache keys)
+    * 
+    * @see #cache()
+    */
+   public synchronized Node<T> markCacheable(long ttl, TimeUnit unit, long maxSize) {
+      if (cache != null) {
+         throw new IllegalStateException("node is already cacheable");
+      }
+      if (inputs.stream().anyMatch(Input::isAsync)) {
+         throw new IllegalStateException("node with asynchronous inputs cannot be cached");
+      }
+      cache = new NodeCache<>(ttl, unit, maxSize);
+      return this;
+   }
+
+   /**
+    * Returns this node's cache, which can be used to query hit and miss counts.
+    *
+    * @return this node's cache or {@code null} if the node has not been
+    *       {@linkplain #markCacheable(long, TimeUnit, long) marked as cacheable}
+    */
+   public NodeCache<T> cache() {
+      return cache;
+   }
+
+   /**
+    * Defines a vectorized form of this node's operation. When a graph that contains this node is
+    * {@linkplain Graph#computeAll(List) computed in batch mode}, the node's results for all
+    * records are computed with a single call to the given operation, instead of invoking the
+    * node's normal operation once per record. The node's cache, if any, is not used by batch
+    * operations.
+    * 
+    * <p>Like {@link #markCheap()}, this should be called when the node is defined, before any
+    * graph that contains it is computed.
+    *
+    * @param op the vectorized operation, which must produce the same results as the node's normal
+    *       operation
+    * @return {@code this}, for method chaining
+    * @throws IllegalStateException if the node already has a batch operation
+    */
+   public synchronized Node<T> markBatched(BatchOperation<T> op) {
+      requireNonNull(op);
+      if (batchOperation != null) {
+         throw new IllegalStateException("node already has a batch operation");
+      }
+      batchOperation = op;
+      return this;
+   }
+
+   /**
+    * Returns this node's vectorized operation.
+    *
+    * @return this node's vectorized operation or {@code null} if it does not have one
+    * 
+    * @see #markBatched(BatchOperation)
+    */
+   public BatchOperation<T> batchOperation() {
+      return batchOperation;
+   }
+
+   /**
+    * Applies the node's operation to the given arguments, using its cache if it has one.
+    *
+    * @param args input values
+    * @return the result of this node's operation with the given inputs
+    */
+   FluentFuture<T> applyCached(Object args[]) throws Exception {
+      NodeCache<T> c = cache;
+      return c == null ? apply(args) : c.apply(this, args);
+   }
+
    /**
     * Returns a new node that is the result of applying the given function to the values produced by
     * this node. This implicitly adds a new node to the graph whose sole input is this node.
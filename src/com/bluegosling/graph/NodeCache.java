@@ -0,0 +1,175 @@
+package com.bluegosling.graph;
+
+import com.bluegosling.concurrent.SameThreadExecutor;
+import com.bluegosling.concurrent.fluent.FluentFuture;
+import com.bluegosling.concurrent.fluent.SettableFluentFuture;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A cache of results for a single {@link Node}. The cache is shared by all computations that
+ * include the node, so a node whose result depends only on inputs that repeat across computations
+ * (like configuration or schema lookups) need not be recomputed each time.
+ *
+ * <p>Results are keyed by the node's resolved input values, so input values must have sensible
+ * {@link Object#equals(Object)} and {@link Object#hashCode()} implementations. Entries expire a
+ * fixed amount of time after they are computed, and the least recently used entries are evicted
+ * when the cache grows past its maximum size. Failed results are not cached.
+ *
+ * <p>Computations that need the same entry at the same time coalesce: only the first one runs the
+ * node's operation, and the others share its future result. Such requests are counted as hits.
+ * Each computation gets its own view of the shared result, so one that is cancelled does not
+ * cancel the shared result or affect the others.
+ *
+ * @param <T> the type of value produced by the node
+ *
+ * @see Node#markCacheable(long, TimeUnit, long)
+ *
+ * @author Joshua Humphries (jhumphries131@gmail.com)
+ */
+public class NodeCache<T> {
+   private final ConcurrentMap<List<Object>, FluentFuture<T>> cache;
+   private final LongAdder hits = new LongAdder();
+   private final LongAdder misses = new LongAdder();
+
+   NodeCache(long ttl, TimeUnit unit, long maxSize) {
+      if (ttl <= 0) {
+         throw new IllegalArgumentException("TTL must be positive");
+      }
+      if (maxSize <= 0) {
+         throw new IllegalArgumentException("max size must be positive");
+      }
+      Cache<List<Object>, FluentFuture<T>> c = CacheBuilder.newBuilder()
+            .expireAfterWrite(ttl, unit)
+            .maximumSize(maxSize)
+            .build();
+      this.cache = c.asMap();
+   }
+
+   /**
+    * Returns the result of the given node for the given arguments, applying the node's operation
+    * only if there is no cached or in-flight result for them.
+    *
+    * @param node the node whose results are cached
+    * @param args the node's resolved input values
+    * @return the future result of the node
+    * @throws Exception if applying the node's operation throws
+    */
+   FluentFuture<T> apply(Node<T> node, Object[] args) throws Exception {
+      List<Object> key = Arrays.asList(args);
+      FluentFuture<T> existing = cache.get(key);
+      if (existing != null) {
+         hits.increment();
+         return view(existing);
+      }
+      SettableFluentFuture<T> placeholder = new SettableFluentFuture<>();
+      existing = cache.putIfAbsent(key, placeholder);
+      if (existing != null) {
+         hits.increment();
+         return view(existing);
+      }
+      misses.increment();
+      FluentFuture<T> result;
+      try {
+         result = node.apply(args);
+      } catch (Throwable th) {
+         cache.remove(key, placeholder);
+         placeholder.setFailure(th);
+         throw th;
+      }
+      result.addListener(f -> {
+         if (f.isSuccessful()) {
+            T value = f.getResult();
+            // re-write the entry, so that it expires after it is computed, not after the request
+            // (the placeholder may have already expired if computing took longer than the TTL)
+            FluentFuture<T> done = FluentFuture.completedFuture(value);
+            if (!cache.replace(key, placeholder, done)) {
+               cache.putIfAbsent(key, done);
+            }
+            placeholder.setValue(value);
+         } else {
+            // don't cache failures
+            cache.remove(key, placeholder);
+            if (f.isFailed()) {
+               placeholder.setFailure(f.getFailure());
+            } else {
+               placeholder.cancel(false);
+            }
+         }
+      }, SameThreadExecutor.get());
+      return view(placeholder);
+   }
+
+   /**
+    * Returns a view of the given shared result. Cancelling the view does not cancel the shared
+    * result.
+    *
+    * @param shared a cached or in-flight result
+    * @return a future that completes when the shared result does
+    */
+   private static <T> FluentFuture<T> view(FluentFuture<T> shared) {
+      if (shared.isDone()) {
+         // can no longer be cancelled
+         return shared;
+      }
+      SettableFluentFuture<T> view = new SettableFluentFuture<>();
+      shared.addListener(f -> {
+         if (f.isSuccessful()) {
+            view.setValue(f.getResult());
+         } else if (f.isFailed()) {
+            view.setFailure(f.getFailure());
+         } else {
+            view.cancel(false);
+         }
+      }, SameThreadExecutor.get());
+      return view;
+   }
+
+   /**
+    * Returns the number of requests that were satisfied by a cached or in-flight result.
+    *
+    * @return the number of cache hits
+    */
+   public long getHitCount() {
+      return hits.sum();
+   }
+
+   /**
+    * Returns the number of requests for which the node's operation was applied.
+    *
+    * @return the number of cache misses
+    */
+   public long getMissCount() {
+      return misses.sum();
+   }
+
+   /**
+    * Returns the approximate number of entries in the cache.
+    *
+    * @return the approximate number of entries in the cache
+    */
+   public int size() {
+      return cache.size();
+   }
+
+   /**
+    * Removes all entries from the cache. Computations already waiting on in-flight results are not
+    * affected.
+    */
+   public void invalidateAll() {
+      cache.clear();
+   }
+
+   @Override
+   public String toString() {
+      return "NodeCache[size=" + size() + ", hits=" + getHitCount() + ", misses="
+            + getMissCount() + "]";
+   }
+}
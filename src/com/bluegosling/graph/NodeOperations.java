@@ -1,5 +1,6 @@
 package com.bluegosling.graph;
 
+import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.function.BiFunction;
 import java.util.function.Function;
@@ -315,4 +316,34 @@ public final class NodeOperations {
       T execute(A in1, B in2, C in3, D in4, E in5, F in6, G in7, H in8, I in9, J in10)
             throws Exception;
    }
+
+   /**
+    * A vectorized operation, which computes a node's results for many records at once. This is
+    * used when a graph is {@linkplain Graph#computeAll(List) computed in batch mode}, so
+    * that a node can, for example, issue a single request to a downstream service for all records
+    * instead of one request per record.
+    * 
+    * <p>Each element of the given list contains the arguments for one record, in the same order
+    * as the node's {@linkplain Node#inputs() inputs}. Required inputs are represented by their
+    * values, optional inputs by a {@link com.bluegosling.result.Result}, and asynchronous inputs
+    * by a completed future.
+    *
+    * @param <T> the result type
+    * 
+    * @see Node#markBatched(BatchOperation)
+    * 
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    */
+   @FunctionalInterface
+   public interface BatchOperation<T> {
+      /**
+       * Executes the operation for a batch of records.
+       *
+       * @param args the arguments for each record
+       * @return the results, one for each record and in the same order as the given arguments
+       * @throws Exception if anything goes awry, in which case the operation fails for all records
+       *       in the batch
+       */
+      List<T> executeBatch(List<Object[]> args) throws Exception;
+   }
 }
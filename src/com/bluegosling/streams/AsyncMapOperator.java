@@ -0,0 +1,232 @@
+package com.bluegosling.streams;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import com.bluegosling.concurrent.SameThreadExecutor;
+import com.bluegosling.concurrent.fluent.FluentFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * A stream operator that maps each element to a future and emits the futures' results. Up to a
+ * given number of futures are outstanding at once, so the latency of asynchronous operations (like
+ * calls to remote services) can overlap, even in a sequential stream.
+ *
+ * <p>If a future fails, the failure is thrown from the stream, wrapped in a
+ * {@link CompletionException}, and all other outstanding futures are cancelled. If a future is
+ * cancelled, a {@link CancellationException} is thrown. Outstanding futures are also cancelled
+ * when the stream is closed, which happens when it short-circuits (e.g. due to a limit). After a
+ * failure, the stream emits no more elements.
+ *
+ * @author Joshua Humphries (jhumphries131@gmail.com)
+ *
+ * @param <T> the type of element produced by the operation
+ * @param <U> the type of upstream element consumed by the operation
+ *
+ * @see StreamOperator#mapAsync(Function, int)
+ * @see StreamOperator#mapAsyncUnordered(Function, int)
+ */
+final class AsyncMapOperator<T, U> implements StreamOperator<T, U> {
+   private final Function<? super U, ? extends FluentFuture<? extends T>> mapper;
+   private final int maxInFlight;
+   private final boolean ordered;
+   /** The nodes that may have outstanding futures, which must be cancelled on close. */
+   final Set<AsyncNode> nodes = ConcurrentHashMap.newKeySet();
+
+   AsyncMapOperator(Function<? super U, ? extends FluentFuture<? extends T>> mapper,
+         int maxInFlight, boolean ordered) {
+      if (maxInFlight < 1) {
+         throw new IllegalArgumentException("max in flight must be positive");
+      }
+      this.mapper = requireNonNull(mapper);
+      this.maxInFlight = maxInFlight;
+      this.ordered = ordered;
+   }
+
+   @Override
+   public int spliteratorCharacteristics(int upstreamCharacteristics) {
+      int ch = upstreamCharacteristics
+            & ~(Spliterator.DISTINCT | Spliterator.SORTED | Spliterator.NONNULL);
+      return ordered ? ch : ch & ~Spliterator.ORDERED;
+   }
+
+   @Override
+   public StreamNode<T, U> createNode() {
+      AsyncNode node = ordered ? new OrderedNode() : new UnorderedNode();
+      nodes.add(node);
+      return node;
+   }
+
+   @Override
+   public void close() {
+      for (AsyncNode node : nodes) {
+         node.cancelAll();
+      }
+      nodes.clear();
+   }
+
+   /**
+    * The base class for nodes that process the stream. Each node tracks its own outstanding
+    * futures, so that they can be cancelled on failure or when the stream is closed. A node is
+    * terminated when it is exhausted or a future fails, after which it emits nothing more.
+    *
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    */
+   private abstract class AsyncNode implements StreamNode<T, U> {
+      final Set<FluentFuture<? extends T>> outstanding = ConcurrentHashMap.newKeySet();
+      private final Consumer<U> submitter = this::submit;
+      private boolean upstreamDone;
+      /** Set when the node is terminated. Volatile since futures' listeners may read it. */
+      volatile boolean terminated;
+
+      /**
+       * Pulls elements from upstream, starting futures for them, until the maximum number are
+       * outstanding or there is no more upstream data.
+       */
+      void fill(Upstream<U> upstream) {
+         while (!upstreamDone && outstanding.size() < maxInFlight) {
+            if (!upstream.getUpstream(submitter)) {
+               upstreamDone = true;
+            }
+         }
+      }
+
+      private void submit(U u) {
+         FluentFuture<? extends T> future = requireNonNull(mapper.apply(u));
+         outstanding.add(future);
+         started(future);
+      }
+
+      abstract void started(FluentFuture<? extends T> future);
+
+      /**
+       * Emits the result of the given completed future or, if it did not succeed, cancels all
+       * outstanding futures and throws.
+       */
+      void emit(FluentFuture<? extends T> future, Consumer<? super T> action) {
+         outstanding.remove(future);
+         if (future.isSuccessful()) {
+            action.accept(future.getResult());
+            return;
+         }
+         terminate();
+         if (future.isFailed()) {
+            throw new CompletionException(future.getFailure());
+         }
+         throw new CancellationException();
+      }
+
+      void cancelAll() {
+         for (FluentFuture<? extends T> f : outstanding) {
+            f.cancel(true);
+         }
+         outstanding.clear();
+      }
+
+      /**
+       * Terminates this node, cancelling any outstanding futures and discarding any pending
+       * results.
+       */
+      void terminate() {
+         terminated = true;
+         cancelAll();
+         clear();
+         nodes.remove(this);
+      }
+
+      /**
+       * Discards any pending results.
+       */
+      abstract void clear();
+   }
+
+   /**
+    * A node that emits results in the same order as the upstream elements.
+    *
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    */
+   private class OrderedNode extends AsyncNode {
+      private final Deque<FluentFuture<? extends T>> queue = new ArrayDeque<>();
+
+      @Override
+      void started(FluentFuture<? extends T> future) {
+         queue.add(future);
+      }
+
+      @Override
+      void clear() {
+         queue.clear();
+      }
+
+      @Override
+      public boolean getNext(Upstream<U> upstream, Consumer<? super T> action) {
+         if (terminated) {
+            return false;
+         }
+         fill(upstream);
+         FluentFuture<? extends T> future = queue.poll();
+         if (future == null) {
+            terminate();
+            return false;
+         }
+         future.awaitUninterruptibly();
+         emit(future, action);
+         return true;
+      }
+   }
+
+   /**
+    * A node that emits results in the order that their futures complete.
+    *
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    */
+   private class UnorderedNode extends AsyncNode {
+      private final BlockingQueue<FluentFuture<? extends T>> completed =
+            new LinkedBlockingQueue<>();
+      private int pending;
+
+      @Override
+      void started(FluentFuture<? extends T> future) {
+         pending++;
+         future.addListener(f -> {
+            // once terminated, the node no longer awaits this future
+            if (!terminated) {
+               completed.add(f);
+            }
+         }, SameThreadExecutor.get());
+      }
+
+      @Override
+      void clear() {
+         completed.clear();
+         pending = 0;
+      }
+
+      @Override
+      public boolean getNext(Upstream<U> upstream, Consumer<? super T> action) {
+         if (terminated) {
+            return false;
+         }
+         fill(upstream);
+         if (pending == 0) {
+            terminate();
+            return false;
+         }
+         FluentFuture<? extends T> future = Uninterruptibles.takeUninterruptibly(completed);
+         pending--;
+         emit(future, action);
+         return true;
+      }
+   }
+}
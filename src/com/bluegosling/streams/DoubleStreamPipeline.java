@@ -0,0 +1,328 @@
+package com.bluegosling.streams;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.OptionalDouble;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.DoubleSummaryStatistics;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleConsumer;
+import java.util.function.DoubleFunction;
+import java.util.function.DoublePredicate;
+import java.util.function.DoubleToIntFunction;
+import java.util.function.DoubleToLongFunction;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.ObjDoubleConsumer;
+import java.util.function.Supplier;
+import java.util.stream.DoubleStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.bluegosling.function.TriFunction;
+
+/**
+ * An implementation of {@link FluentDoubleStream}. Standard operations are delegated to an
+ * underlying {@link DoubleStream}. The additional operations are implemented using primitive
+ * spliterators, so that values are not boxed. Most of them are shared with the other primitive
+ * streams, in {@link PrimitiveStreamPipeline}.
+ *
+ * @author Joshua Humphries (jhumphries131@gmail.com)
+ */
+class DoubleStreamPipeline
+      extends PrimitiveStreamPipeline<Double, DoubleConsumer, Spliterator.OfDouble, double[],
+            DoubleStream, FluentDoubleStream>
+      implements FluentDoubleStream {
+   DoubleStreamPipeline(DoubleStream stream) {
+      this(stream, ForkJoinPool.commonPool());
+   }
+
+   DoubleStreamPipeline(DoubleStream stream, ForkJoinPool pool) {
+      super(stream, pool);
+   }
+
+   @Override
+   FluentDoubleStream newPipeline(DoubleStream s, ForkJoinPool p) {
+      return new DoubleStreamPipeline(s, p);
+   }
+
+   @Override
+   DoubleStream newStream(Spliterator.OfDouble spliterator, boolean parallel) {
+      return StreamSupport.doubleStream(spliterator, parallel);
+   }
+
+   @Override
+   double[] newArray(int length) {
+      return new double[length];
+   }
+
+   @Override
+   DoubleConsumer appender(ArrayBuffer<double[]> buffer) {
+      return v -> add(buffer, v);
+   }
+
+   @Override
+   DoubleStream flatten(Stream<double[]> arrays) {
+      return arrays.flatMapToDouble(Arrays::stream);
+   }
+
+   private static void add(ArrayBuffer<double[]> buffer, double v) {
+      int i = buffer.next();
+      buffer.array[i] = v;
+   }
+
+   @Override
+   public PrimitiveIterator.OfDouble iterator() {
+      return stream.iterator();
+   }
+
+   @Override
+   public Spliterator.OfDouble spliterator() {
+      return stream.spliterator();
+   }
+
+   @Override
+   public FluentDoubleStream filter(DoublePredicate predicate) {
+      return new DoubleStreamPipeline(stream.filter(predicate), pool);
+   }
+
+   @Override
+   public FluentDoubleStream map(DoubleUnaryOperator mapper) {
+      return new DoubleStreamPipeline(stream.map(mapper), pool);
+   }
+
+   @Override
+   public <U> FluentStream<U> mapToObj(DoubleFunction<? extends U> mapper) {
+      return upgrade(stream.mapToObj(mapper));
+   }
+
+   @Override
+   public FluentIntStream mapToInt(DoubleToIntFunction mapper) {
+      return new IntStreamPipeline(stream.mapToInt(mapper), pool);
+   }
+
+   @Override
+   public FluentLongStream mapToLong(DoubleToLongFunction mapper) {
+      return new LongStreamPipeline(stream.mapToLong(mapper), pool);
+   }
+
+   @Override
+   public FluentDoubleStream flatMap(DoubleFunction<? extends DoubleStream> mapper) {
+      return new DoubleStreamPipeline(stream.flatMap(mapper), pool);
+   }
+
+   @Override
+   public FluentDoubleStream distinct() {
+      return new DoubleStreamPipeline(stream.distinct(), pool);
+   }
+
+   @Override
+   public FluentDoubleStream sorted() {
+      return new DoubleStreamPipeline(stream.sorted(), pool);
+   }
+
+   @Override
+   public FluentDoubleStream peek(DoubleConsumer action) {
+      return new DoubleStreamPipeline(stream.peek(action), pool);
+   }
+
+   @Override
+   public FluentDoubleStream limit(long maxSize) {
+      return new DoubleStreamPipeline(stream.limit(maxSize), pool);
+   }
+
+   @Override
+   public FluentDoubleStream skip(long n) {
+      return new DoubleStreamPipeline(stream.skip(n), pool);
+   }
+
+   @Override
+   public FluentStream<Double> boxed() {
+      return upgrade(stream.boxed());
+   }
+
+   @Override
+   public void forEach(DoubleConsumer action) {
+      inPool(() -> {
+         stream.forEach(action);
+         return null;
+      });
+   }
+
+   @Override
+   public void forEachOrdered(DoubleConsumer action) {
+      inPool(() -> {
+         stream.forEachOrdered(action);
+         return null;
+      });
+   }
+
+   @Override
+   public double[] toArray() {
+      return inPool(stream::toArray);
+   }
+
+   @Override
+   public double reduce(double identity, DoubleBinaryOperator op) {
+      return inPool(() -> stream.reduce(identity, op));
+   }
+
+   @Override
+   public OptionalDouble reduce(DoubleBinaryOperator op) {
+      return inPool(() -> stream.reduce(op));
+   }
+
+   @Override
+   public <R> R collect(Supplier<R> supplier, ObjDoubleConsumer<R> accumulator,
+         BiConsumer<R, R> combiner) {
+      return inPool(() -> stream.collect(supplier, accumulator, combiner));
+   }
+
+   @Override
+   public double sum() {
+      return inPool(stream::sum);
+   }
+
+   @Override
+   public OptionalDouble min() {
+      return inPool(stream::min);
+   }
+
+   @Override
+   public OptionalDouble max() {
+      return inPool(stream::max);
+   }
+
+   @Override
+   public long count() {
+      return inPool(stream::count);
+   }
+
+   @Override
+   public OptionalDouble average() {
+      return inPool(stream::average);
+   }
+
+   @Override
+   public DoubleSummaryStatistics summaryStatistics() {
+      return inPool(stream::summaryStatistics);
+   }
+
+   @Override
+   public boolean anyMatch(DoublePredicate predicate) {
+      return inPool(() -> stream.anyMatch(predicate));
+   }
+
+   @Override
+   public boolean allMatch(DoublePredicate predicate) {
+      return inPool(() -> stream.allMatch(predicate));
+   }
+
+   @Override
+   public boolean noneMatch(DoublePredicate predicate) {
+      return inPool(() -> stream.noneMatch(predicate));
+   }
+
+   @Override
+   public OptionalDouble findFirst() {
+      return inPool(stream::findFirst);
+   }
+
+   @Override
+   public OptionalDouble findAny() {
+      return inPool(stream::findAny);
+   }
+
+   @Override
+   public <K> FluentStream<Entry<K, double[]>> groupBy(DoubleFunction<? extends K> keyExtractor) {
+      return groupByKey(s -> toMap(s, keyExtractor));
+   }
+
+   @Override
+   public <K, X> FluentStream<X> join(DoubleStream other,
+         DoubleFunction<? extends K> keyExtractor1, DoubleFunction<? extends K> keyExtractor2,
+         TriFunction<? super K, ? super double[], ? super double[], ? extends X> combiner) {
+      return joinByKey(other, s -> toMap(s, keyExtractor1), s -> toMap(s, keyExtractor2),
+            combiner);
+   }
+
+   private <K> Map<K, double[]> toMap(DoubleStream s, DoubleFunction<? extends K> keyExtractor) {
+      Map<K, ArrayBuffer<double[]>> groups = s.collect(HashMap::new,
+            (m, v) -> add(m.computeIfAbsent(keyExtractor.apply(v), k -> newBuffer()), v),
+            PrimitiveStreamPipeline::mergeGroups);
+      return toArrays(groups);
+   }
+
+   @Override
+   public FluentDoubleStream operator(StreamNode.OfDouble operator) {
+      return operator(() -> operator);
+   }
+
+   @Override
+   public FluentDoubleStream operator(StreamOperator.OfDouble operator) {
+      return operator(operator, operator::startStream,
+            (source, onStart) -> new OperatorSpliterator(source, operator, onStart));
+   }
+
+   /**
+    * A spliterator that applies a {@linkplain StreamOperator.OfDouble stream operator} to the
+    * values of an underlying primitive spliterator. Each split gets its own
+    * {@linkplain StreamNode.OfDouble node}.
+    *
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    */
+   private static class OperatorSpliterator implements Spliterator.OfDouble {
+      private final Spliterator.OfDouble source;
+      private final StreamOperator.OfDouble operator;
+      private final Runnable onStart;
+      private final StreamNode.OfDouble.Upstream upstream;
+      private StreamNode.OfDouble node;
+
+      OperatorSpliterator(Spliterator.OfDouble source, StreamOperator.OfDouble operator,
+            Runnable onStart) {
+         this.source = source;
+         this.operator = operator;
+         this.onStart = onStart;
+         this.upstream = source::tryAdvance;
+      }
+
+      @Override
+      public boolean tryAdvance(DoubleConsumer action) {
+         if (node == null) {
+            onStart.run();
+            node = operator.createNode();
+         }
+         return node.getNext(upstream, action);
+      }
+
+      @Override
+      public Spliterator.OfDouble trySplit() {
+         onStart.run();
+         Spliterator.OfDouble split = source.trySplit();
+         return split == null ? null : new OperatorSpliterator(split, operator, onStart);
+      }
+
+      @Override
+      public long estimateSize() {
+         return operator.spliteratorEstimatedSize(source.estimateSize());
+      }
+
+      @Override
+      public int characteristics() {
+         return operator.spliteratorCharacteristics(source.characteristics());
+      }
+
+      @Override
+      public Comparator<? super Double> getComparator() {
+         if (!hasCharacteristics(Spliterator.SORTED)) {
+            throw new IllegalStateException();
+         }
+         return source.getComparator();
+      }
+   }
+}
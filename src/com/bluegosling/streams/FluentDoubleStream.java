@@ -0,0 +1,303 @@
+package com.bluegosling.streams;
+
+import java.util.Map.Entry;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.DoubleConsumer;
+import java.util.function.DoubleFunction;
+import java.util.function.DoublePredicate;
+import java.util.function.DoubleToIntFunction;
+import java.util.function.DoubleToLongFunction;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.Supplier;
+import java.util.stream.DoubleStream;
+import java.util.stream.StreamSupport;
+
+import com.bluegosling.function.TriFunction;
+import com.bluegosling.tuples.Pair;
+
+/**
+ * A fluent stream of {@code double} values. This is the primitive specialization of
+ * {@link FluentStream}. It provides the same extra operations, like batching, grouping, joining,
+ * and forking, as well as the ability to define new {@linkplain #operator(StreamOperator.OfDouble)
+ * intermediate operators}. Values are never boxed as they flow from the stream's source through
+ * these operations. Operations that group values emit them as {@code double[]} arrays.
+ *
+ * @author Joshua Humphries (jhumphries131@gmail.com)
+ *
+ * @see FluentStream#mapToDouble(java.util.function.ToDoubleFunction)
+ */
+public interface FluentDoubleStream extends DoubleStream {
+   /**
+    * {@inheritDoc}
+    *
+    * <p>Overridden to co-variantly return a {@link FluentDoubleStream}.
+    */
+   @Override
+   FluentDoubleStream sequential();
+
+   /**
+    * {@inheritDoc}
+    *
+    * <p>Overridden to co-variantly return a {@link FluentDoubleStream}.
+    */
+   @Override
+   FluentDoubleStream parallel();
+
+   /**
+    * Returns an equivalent stream that is parallel and whose terminal operations run in the given
+    * pool, instead of the {@linkplain ForkJoinPool#commonPool() common pool}. Streams derived from
+    * the returned stream, including object streams and other primitive streams, also use the pool.
+    *
+    * @param pool the pool used to process the stream in parallel
+    * @return a parallel stream that is processed using the given pool
+    * @see FluentStream#parallel(ForkJoinPool)
+    */
+   FluentDoubleStream parallel(ForkJoinPool pool);
+
+   /**
+    * {@inheritDoc}
+    *
+    * <p>Overridden to co-variantly return a {@link FluentDoubleStream}.
+    */
+   @Override
+   FluentDoubleStream unordered();
+
+   /**
+    * {@inheritDoc}
+    *
+    * <p>Overridden to co-variantly return a {@link FluentDoubleStream}.
+    */
+   @Override
+   FluentDoubleStream onClose(Runnable closeHandler);
+
+   /**
+    * {@inheritDoc}
+    *
+    * <p>Overridden to co-variantly return a {@link FluentDoubleStream}.
+    */
+   @Override
+   FluentDoubleStream filter(DoublePredicate predicate);
+
+   /**
+    * {@inheritDoc}
+    *
+    * <p>Overridden to co-variantly return a {@link FluentDoubleStream}.
+    */
+   @Override
+   FluentDoubleStream map(DoubleUnaryOperator mapper);
+
+   /**
+    * {@inheritDoc}
+    *
+    * <p>Overridden to co-variantly return a {@link FluentStream}.
+    */
+   @Override
+   <U> FluentStream<U> mapToObj(DoubleFunction<? extends U> mapper);
+
+   /**
+    * {@inheritDoc}
+    *
+    * <p>Overridden to co-variantly return a {@link FluentIntStream}.
+    */
+   @Override
+   FluentIntStream mapToInt(DoubleToIntFunction mapper);
+
+   /**
+    * {@inheritDoc}
+    *
+    * <p>Overridden to co-variantly return a {@link FluentLongStream}.
+    */
+   @Override
+   FluentLongStream mapToLong(DoubleToLongFunction mapper);
+
+   /**
+    * {@inheritDoc}
+    *
+    * <p>Overridden to co-variantly return a {@link FluentDoubleStream}.
+    */
+   @Override
+   FluentDoubleStream flatMap(DoubleFunction<? extends DoubleStream> mapper);
+
+   /**
+    * {@inheritDoc}
+    *
+    * <p>Overridden to co-variantly return a {@link FluentDoubleStream}.
+    */
+   @Override
+   FluentDoubleStream distinct();
+
+   /**
+    * {@inheritDoc}
+    *
+    * <p>Overridden to co-variantly return a {@link FluentDoubleStream}.
+    */
+   @Override
+   FluentDoubleStream sorted();
+
+   /**
+    * {@inheritDoc}
+    *
+    * <p>Overridden to co-variantly return a {@link FluentDoubleStream}.
+    */
+   @Override
+   FluentDoubleStream peek(DoubleConsumer action);
+
+   /**
+    * {@inheritDoc}
+    *
+    * <p>Overridden to co-variantly return a {@link FluentDoubleStream}.
+    */
+   @Override
+   FluentDoubleStream limit(long maxSize);
+
+   /**
+    * {@inheritDoc}
+    *
+    * <p>Overridden to co-variantly return a {@link FluentDoubleStream}.
+    */
+   @Override
+   FluentDoubleStream skip(long n);
+
+   /**
+    * {@inheritDoc}
+    *
+    * <p>Overridden to co-variantly return a {@link FluentStream}.
+    */
+   @Override
+   FluentStream<Double> boxed();
+
+   /**
+    * Returns a stream that batches the source elements in arrays of the given size. The last
+    * array may be smaller if the number of elements is not a multiple of the given size.
+    *
+    * @param count the size of batches in the output stream
+    * @return a stream that batches source elements
+    * @see FluentStream#batch(int)
+    */
+   FluentStream<double[]> batch(int count);
+
+   /**
+    * Returns a stream that groups elements in this stream by keys computed by the given function.
+    * The resulting stream consists of entries of keys and arrays of the values with that key, in
+    * encounter order.
+    *
+    * @param keyExtractor a function that extracts a grouping key from elements of this stream
+    * @return a stream that groups elements in this stream
+    * @see FluentStream#groupBy(java.util.function.Function)
+    */
+   <K> FluentStream<Entry<K, double[]>> groupBy(DoubleFunction<? extends K> keyExtractor);
+
+   /**
+    * Joins this stream with the given stream using the given functions to extract corresponding
+    * subsets and combine them. The combiner is invoked once for each distinct key found in either
+    * stream. If a key only appears in one stream, the combiner is given an empty array for the
+    * other.
+    *
+    * @param other a stream
+    * @param keyExtractor1 a function that extracts a grouping key from elements of this stream
+    * @param keyExtractor2 a function that extracts a grouping key from elements of the other
+    *       stream
+    * @param combiner a function that combines corresponding values from this and the other stream
+    * @return a stream that is the joined result of this stream and the given stream
+    * @see FluentStream#join(java.util.stream.Stream, java.util.function.Function,
+    *       java.util.function.Function, TriFunction)
+    */
+   <K, X> FluentStream<X> join(DoubleStream other, DoubleFunction<? extends K> keyExtractor1,
+         DoubleFunction<? extends K> keyExtractor2,
+         TriFunction<? super K, ? super double[], ? super double[], ? extends X> combiner);
+
+   /**
+    * Forks this stream into the given number of result streams, each with the same data as this
+    * stream. Values are buffered for the forks in small arrays, so forking does not box them.
+    *
+    * @param numForks the number of resulting forks
+    * @return a supplier from which each fork is retrieved
+    * @see FluentStream#fork(int)
+    */
+   Supplier<FluentDoubleStream> fork(int numForks);
+
+   /**
+    * Forks this stream into two.
+    *
+    * @return the pair of resulting streams, each with the same data as this stream
+    */
+   default Pair<FluentDoubleStream, FluentDoubleStream> fork() {
+      Supplier<FluentDoubleStream> forks = fork(2);
+      return Pair.of(forks.get(), forks.get());
+   }
+
+   /**
+    * Partitions this stream into two, with elements that match the given predicate in the first
+    * partition and elements that do not match it in the second partition.
+    *
+    * @param criteria the predicate used to partition the stream
+    * @return the pair of resulting streams, each with a disparate subset of this stream
+    */
+   default Pair<FluentDoubleStream, FluentDoubleStream> partition(DoublePredicate criteria) {
+      Pair<FluentDoubleStream, FluentDoubleStream> forked = fork();
+      return Pair.of(forked.getFirst().filter(criteria),
+            forked.getSecond().filter(criteria.negate()));
+   }
+
+   /**
+    * Returns a stream with the given operator applied to this stream's elements.
+    *
+    * @param operator the operator
+    * @return a stream of the values produced by the given operator
+    * @see FluentStream#operator(StreamOperator)
+    */
+   FluentDoubleStream operator(StreamOperator.OfDouble operator);
+
+   /**
+    * Returns a stream with the given operator applied to this stream's elements. The same node is
+    * used to process all elements, even if the stream is parallel, so it must be thread-safe if
+    * the stream could be processed in parallel.
+    *
+    * @param operator the operator
+    * @return a stream of the values produced by the given operator
+    * @see FluentStream#operator(StreamNode)
+    */
+   FluentDoubleStream operator(StreamNode.OfDouble operator);
+
+   /**
+    * Upgrades the given stream into a fluent stream. If the given stream is already an instance of
+    * {@link FluentDoubleStream}, returns the given stream unchanged.
+    *
+    * @param stream a stream
+    * @return a fluent stream that represents the same data as the given stream
+    */
+   static FluentDoubleStream upgrade(DoubleStream stream) {
+      return stream instanceof FluentDoubleStream
+            ? (FluentDoubleStream) stream
+            : new DoubleStreamPipeline(stream);
+   }
+
+   /**
+    * Creates a fluent stream from the given spliterator. The returned stream will be sequential,
+    * unless explicitly configured {@linkplain #parallel() otherwise}.
+    *
+    * @param spliterator a source of data
+    * @return a stream of the given data
+    * @see StreamSupport#doubleStream(Spliterator.OfDouble, boolean)
+    */
+   static FluentDoubleStream fromSpliterator(Spliterator.OfDouble spliterator) {
+      return new DoubleStreamPipeline(StreamSupport.doubleStream(spliterator, false));
+   }
+
+   /**
+    * Creates a fluent stream from the given spliterator source, with the given characteristics. The
+    * returned stream will be sequential, unless explicitly configured {@linkplain #parallel()
+    * otherwise}.
+    *
+    * @param spliterator a supplier of the source of data
+    * @param characteristics the characteristics of the source of data
+    * @return a stream of the given data
+    * @see StreamSupport#doubleStream(Supplier, int, boolean)
+    */
+   static FluentDoubleStream fromSpliterator(
+         Supplier<? extends Spliterator.OfDouble> spliterator, int characteristics) {
+      return new DoubleStreamPipeline(
+            StreamSupport.doubleStream(spliterator, characteristics, false));
+   }
+}
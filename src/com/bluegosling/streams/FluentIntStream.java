@@ -0,0 +1,319 @@
+package com.bluegosling.streams;
+
+import java.util.Map.Entry;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+import java.util.function.IntToLongFunction;
+import java.util.function.IntToDoubleFunction;
+import java.util.function.IntUnaryOperator;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+import com.bluegosling.function.TriFunction;
+import com.bluegosling.tuples.Pair;
+
+/**
+ * A fluent stream of {@code int} values. This is the primitive specialization of
+ * {@link FluentStream}. It provides the same extra operations, like batching, grouping, joining,
+ * and forking, as well as the ability to define new {@linkplain #operator(StreamOperator.OfInt)
+ * intermediate operators}. Values are never boxed as they flow from the stream's source through
+ * these operations. Operations that group values emit them as {@code int[]} arrays.
+ *
+ * @author Joshua Humphries (jhumphries131@gmail.com)
+ *
+ * @see FluentStream#mapToInt(java.util.function.ToIntFunction)
+ */
+public interface FluentIntStream extends IntStream {
+   /**
+    * {@inheritDoc}
+    *
+    * <p>Overridden to co-variantly return a {@link FluentIntStream}.
+    */
+   @Override
+   FluentIntStream sequential();
+
+   /**
+    * {@inheritDoc}
+    *
+    * <p>Overridden to co-variantly return a {@link FluentIntStream}.
+    */
+   @Override
+   FluentIntStream parallel();
+
+   /**
+    * Returns an equivalent stream that is parallel and whose terminal operations run in the given
+    * pool, instead of the {@linkplain ForkJoinPool#commonPool() common pool}. Streams derived from
+    * the returned stream, including object streams and other primitive streams, also use the pool.
+    *
+    * @param pool the pool used to process the stream in parallel
+    * @return a parallel stream that is processed using the given pool
+    * @see FluentStream#parallel(ForkJoinPool)
+    */
+   FluentIntStream parallel(ForkJoinPool pool);
+
+   /**
+    * {@inheritDoc}
+    *
+    * <p>Overridden to co-variantly return a {@link FluentIntStream}.
+    */
+   @Override
+   FluentIntStream unordered();
+
+   /**
+    * {@inheritDoc}
+    *
+    * <p>Overridden to co-variantly return a {@link FluentIntStream}.
+    */
+   @Override
+   FluentIntStream onClose(Runnable closeHandler);
+
+   /**
+    * {@inheritDoc}
+    *
+    * <p>Overridden to co-variantly return a {@link FluentIntStream}.
+    */
+   @Override
+   FluentIntStream filter(IntPredicate predicate);
+
+   /**
+    * {@inheritDoc}
+    *
+    * <p>Overridden to co-variantly return a {@link FluentIntStream}.
+    */
+   @Override
+   FluentIntStream map(IntUnaryOperator mapper);
+
+   /**
+    * {@inheritDoc}
+    *
+    * <p>Overridden to co-variantly return a {@link FluentStream}.
+    */
+   @Override
+   <U> FluentStream<U> mapToObj(IntFunction<? extends U> mapper);
+
+   /**
+    * {@inheritDoc}
+    *
+    * <p>Overridden to co-variantly return a {@link FluentLongStream}.
+    */
+   @Override
+   FluentLongStream mapToLong(IntToLongFunction mapper);
+
+   /**
+    * {@inheritDoc}
+    *
+    * <p>Overridden to co-variantly return a {@link FluentDoubleStream}.
+    */
+   @Override
+   FluentDoubleStream mapToDouble(IntToDoubleFunction mapper);
+
+   /**
+    * {@inheritDoc}
+    *
+    * <p>Overridden to co-variantly return a {@link FluentIntStream}.
+    */
+   @Override
+   FluentIntStream flatMap(IntFunction<? extends IntStream> mapper);
+
+   /**
+    * {@inheritDoc}
+    *
+    * <p>Overridden to co-variantly return a {@link FluentIntStream}.
+    */
+   @Override
+   FluentIntStream distinct();
+
+   /**
+    * {@inheritDoc}
+    *
+    * <p>Overridden to co-variantly return a {@link FluentIntStream}.
+    */
+   @Override
+   FluentIntStream sorted();
+
+   /**
+    * {@inheritDoc}
+    *
+    * <p>Overridden to co-variantly return a {@link FluentIntStream}.
+    */
+   @Override
+   FluentIntStream peek(IntConsumer action);
+
+   /**
+    * {@inheritDoc}
+    *
+    * <p>Overridden to co-variantly return a {@link FluentIntStream}.
+    */
+   @Override
+   FluentIntStream limit(long maxSize);
+
+   /**
+    * {@inheritDoc}
+    *
+    * <p>Overridden to co-variantly return a {@link FluentIntStream}.
+    */
+   @Override
+   FluentIntStream skip(long n);
+
+   /**
+    * {@inheritDoc}
+    *
+    * <p>Overridden to co-variantly return a {@link FluentLongStream}.
+    */
+   @Override
+   FluentLongStream asLongStream();
+
+   /**
+    * {@inheritDoc}
+    *
+    * <p>Overridden to co-variantly return a {@link FluentDoubleStream}.
+    */
+   @Override
+   FluentDoubleStream asDoubleStream();
+
+   /**
+    * {@inheritDoc}
+    *
+    * <p>Overridden to co-variantly return a {@link FluentStream}.
+    */
+   @Override
+   FluentStream<Integer> boxed();
+
+   /**
+    * Returns a stream that batches the source elements in arrays of the given size. The last
+    * array may be smaller if the number of elements is not a multiple of the given size.
+    *
+    * @param count the size of batches in the output stream
+    * @return a stream that batches source elements
+    * @see FluentStream#batch(int)
+    */
+   FluentStream<int[]> batch(int count);
+
+   /**
+    * Returns a stream that groups elements in this stream by keys computed by the given function.
+    * The resulting stream consists of entries of keys and arrays of the values with that key, in
+    * encounter order.
+    *
+    * @param keyExtractor a function that extracts a grouping key from elements of this stream
+    * @return a stream that groups elements in this stream
+    * @see FluentStream#groupBy(java.util.function.Function)
+    */
+   <K> FluentStream<Entry<K, int[]>> groupBy(IntFunction<? extends K> keyExtractor);
+
+   /**
+    * Joins this stream with the given stream using the given functions to extract corresponding
+    * subsets and combine them. The combiner is invoked once for each distinct key found in either
+    * stream. If a key only appears in one stream, the combiner is given an empty array for the
+    * other.
+    *
+    * @param other a stream
+    * @param keyExtractor1 a function that extracts a grouping key from elements of this stream
+    * @param keyExtractor2 a function that extracts a grouping key from elements of the other
+    *       stream
+    * @param combiner a function that combines corresponding values from this and the other stream
+    * @return a stream that is the joined result of this stream and the given stream
+    * @see FluentStream#join(java.util.stream.Stream, java.util.function.Function,
+    *       java.util.function.Function, TriFunction)
+    */
+   <K, X> FluentStream<X> join(IntStream other, IntFunction<? extends K> keyExtractor1,
+         IntFunction<? extends K> keyExtractor2,
+         TriFunction<? super K, ? super int[], ? super int[], ? extends X> combiner);
+
+   /**
+    * Forks this stream into the given number of result streams, each with the same data as this
+    * stream. Values are buffered for the forks in small arrays, so forking does not box them.
+    *
+    * @param numForks the number of resulting forks
+    * @return a supplier from which each fork is retrieved
+    * @see FluentStream#fork(int)
+    */
+   Supplier<FluentIntStream> fork(int numForks);
+
+   /**
+    * Forks this stream into two.
+    *
+    * @return the pair of resulting streams, each with the same data as this stream
+    */
+   default Pair<FluentIntStream, FluentIntStream> fork() {
+      Supplier<FluentIntStream> forks = fork(2);
+      return Pair.of(forks.get(), forks.get());
+   }
+
+   /**
+    * Partitions this stream into two, with elements that match the given predicate in the first
+    * partition and elements that do not match it in the second partition.
+    *
+    * @param criteria the predicate used to partition the stream
+    * @return the pair of resulting streams, each with a disparate subset of this stream
+    */
+   default Pair<FluentIntStream, FluentIntStream> partition(IntPredicate criteria) {
+      Pair<FluentIntStream, FluentIntStream> forked = fork();
+      return Pair.of(forked.getFirst().filter(criteria),
+            forked.getSecond().filter(criteria.negate()));
+   }
+
+   /**
+    * Returns a stream with the given operator applied to this stream's elements.
+    *
+    * @param operator the operator
+    * @return a stream of the values produced by the given operator
+    * @see FluentStream#operator(StreamOperator)
+    */
+   FluentIntStream operator(StreamOperator.OfInt operator);
+
+   /**
+    * Returns a stream with the given operator applied to this stream's elements. The same node is
+    * used to process all elements, even if the stream is parallel, so it must be thread-safe if
+    * the stream could be processed in parallel.
+    *
+    * @param operator the operator
+    * @return a stream of the values produced by the given operator
+    * @see FluentStream#operator(StreamNode)
+    */
+   FluentIntStream operator(StreamNode.OfInt operator);
+
+   /**
+    * Upgrades the given stream into a fluent stream. If the given stream is already an instance of
+    * {@link FluentIntStream}, returns the given stream unchanged.
+    *
+    * @param stream a stream
+    * @return a fluent stream that represents the same data as the given stream
+    */
+   static FluentIntStream upgrade(IntStream stream) {
+      return stream instanceof FluentIntStream
+            ? (FluentIntStream) stream
+            : new IntStreamPipeline(stream);
+   }
+
+   /**
+    * Creates a fluent stream from the given spliterator. The returned stream will be sequential,
+    * unless explicitly configured {@linkplain #parallel() otherwise}.
+    *
+    * @param spliterator a source of data
+    * @return a stream of the given data
+    * @see StreamSupport#intStream(Spliterator.OfInt, boolean)
+    */
+   static FluentIntStream fromSpliterator(Spliterator.OfInt spliterator) {
+      return new IntStreamPipeline(StreamSupport.intStream(spliterator, false));
+   }
+
+   /**
+    * Creates a fluent stream from the given spliterator source, with the given characteristics. The
+    * returned stream will be sequential, unless explicitly configured {@linkplain #parallel()
+    * otherwise}.
+    *
+    * @param spliterator a supplier of the source of data
+    * @param characteristics the characteristics of the source of data
+    * @return a stream of the given data
+    * @see StreamSupport#intStream(Supplier, int, boolean)
+    */
+   static FluentIntStream fromSpliterator(
+         Supplier<? extends Spliterator.OfInt> spliterator, int characteristics) {
+      return new IntStreamPipeline(
+            StreamSupport.intStream(spliterator, characteristics, false));
+   }
+}
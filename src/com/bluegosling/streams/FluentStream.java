@@ -5,15 +5,23 @@ import java.util.Comparator;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 import com.bluegosling.collections.MoreSpliterators;
+import com.bluegosling.concurrent.fluent.FluentFuture;
 import com.bluegosling.collections.MoreStreams;
 import com.bluegosling.function.TriFunction;
 import com.bluegosling.tuples.Pair;
@@ -46,6 +54,17 @@ public interface FluentStream<T> extends Stream<T> {
    @Override
    FluentStream<T> parallel();
 
+   /**
+    * Returns an equivalent stream that is parallel and whose terminal operations run in the given
+    * pool, instead of the {@linkplain ForkJoinPool#commonPool() common pool}. This isolates the
+    * stream from other work that uses the common pool. The degree to which the stream's source is
+    * split adapts to the pool's {@linkplain ForkJoinPool#getParallelism() parallelism}.
+    * 
+    * @param pool the pool used to process the stream in parallel
+    * @return a parallel stream that is processed using the given pool
+    */
+   FluentStream<T> parallel(ForkJoinPool pool);
+
    /**
     * {@inheritDoc}
     * 
@@ -86,6 +105,107 @@ public interface FluentStream<T> extends Stream<T> {
    @Override
    <R> FluentStream<R> flatMap(Function<? super T, ? extends Stream<? extends R>> mapper);
 
+   /**
+    * Returns a stream that maps each element to a future and emits the futures' results, in
+    * order. Up to the given number of futures are outstanding at once, so the latency of
+    * asynchronous operations, like calls to remote services, can overlap without a thread per
+    * element. The default implementation is as follows:<pre>
+    * stream.operator(StreamOperator.mapAsync(mapper, maxInFlight));
+    * </pre>
+    * 
+    * @param mapper a function that starts an asynchronous operation for each element
+    * @param maxInFlight the maximum number of outstanding futures
+    * @return a stream of the results of the asynchronous operations
+    * @see StreamOperator#mapAsync(Function, int)
+    */
+   default <R> FluentStream<R> mapAsync(
+         Function<? super T, ? extends FluentFuture<? extends R>> mapper, int maxInFlight) {
+      return operator(StreamOperator.mapAsync(mapper, maxInFlight));
+   }
+
+   /**
+    * Returns a stream that maps each element to a future and emits the futures' results, in the
+    * order that they complete. The default implementation is as follows:<pre>
+    * stream.operator(StreamOperator.mapAsyncUnordered(mapper, maxInFlight));
+    * </pre>
+    * 
+    * @param mapper a function that starts an asynchronous operation for each element
+    * @param maxInFlight the maximum number of outstanding futures
+    * @return a stream of the results of the asynchronous operations
+    * @see StreamOperator#mapAsyncUnordered(Function, int)
+    */
+   default <R> FluentStream<R> mapAsyncUnordered(
+         Function<? super T, ? extends FluentFuture<? extends R>> mapper, int maxInFlight) {
+      return operator(StreamOperator.mapAsyncUnordered(mapper, maxInFlight));
+   }
+
+   /**
+    * Returns a stream that maps each element to a future of a stream and emits the contents of
+    * those streams, in order. This is like {@link #mapAsync(Function, int)}, except that each
+    * asynchronous operation produces a stream of results. The default implementation is as
+    * follows:<pre>
+    * stream.mapAsync(mapper, maxInFlight).flatMap(Function.identity());
+    * </pre>
+    * 
+    * @param mapper a function that starts an asynchronous operation for each element
+    * @param maxInFlight the maximum number of outstanding futures
+    * @return a stream of the results of the asynchronous operations
+    */
+   default <R> FluentStream<R> flatMapAsync(
+         Function<? super T, ? extends FluentFuture<? extends Stream<? extends R>>> mapper,
+         int maxInFlight) {
+      return this.<Stream<? extends R>>mapAsync(mapper, maxInFlight)
+            .flatMap(Function.identity());
+   }
+
+   /**
+    * {@inheritDoc}
+    * 
+    * <p>Overridden to co-variantly return a {@link FluentIntStream}.
+    */
+   @Override
+   FluentIntStream mapToInt(ToIntFunction<? super T> mapper);
+
+   /**
+    * {@inheritDoc}
+    * 
+    * <p>Overridden to co-variantly return a {@link FluentLongStream}.
+    */
+   @Override
+   FluentLongStream mapToLong(ToLongFunction<? super T> mapper);
+
+   /**
+    * {@inheritDoc}
+    * 
+    * <p>Overridden to co-variantly return a {@link FluentDoubleStream}.
+    */
+   @Override
+   FluentDoubleStream mapToDouble(ToDoubleFunction<? super T> mapper);
+
+   /**
+    * {@inheritDoc}
+    * 
+    * <p>Overridden to co-variantly return a {@link FluentIntStream}.
+    */
+   @Override
+   FluentIntStream flatMapToInt(Function<? super T, ? extends IntStream> mapper);
+
+   /**
+    * {@inheritDoc}
+    * 
+    * <p>Overridden to co-variantly return a {@link FluentLongStream}.
+    */
+   @Override
+   FluentLongStream flatMapToLong(Function<? super T, ? extends LongStream> mapper);
+
+   /**
+    * {@inheritDoc}
+    * 
+    * <p>Overridden to co-variantly return a {@link FluentDoubleStream}.
+    */
+   @Override
+   FluentDoubleStream flatMapToDouble(Function<? super T, ? extends DoubleStream> mapper);
+
    /**
     * {@inheritDoc}
     * 
@@ -223,6 +343,61 @@ public interface FluentStream<T> extends Stream<T> {
       return groupBy(keyExtractor, Function.identity());
    }
 
+   /**
+    * Returns a stream that groups elements in this stream, using a bounded amount of memory. This
+    * is the same as {@link #groupBy(Function, Function)} except that, if the number of buffered
+    * values exceeds the given configuration's budget, values are spilled to temporary files and
+    * then grouped one partition at a time. All keys and values must be supported by the
+    * configuration's {@linkplain SpillConfig#serializer() serializer}. Temporary files are deleted
+    * when the returned stream is closed.
+    * 
+    * @param keyExtractor a function that extracts a grouping key from elements of this stream
+    * @param valueExtractor a function that extracts grouped values from elements of this stream
+    * @param config the configuration that bounds memory usage
+    * @return a stream that groups elements in this stream
+    */
+   <K, V> FluentStream<Entry<K, Collection<V>>> groupBy(
+         Function<? super T, ? extends K> keyExtractor,
+         Function<? super T, ? extends V> valueExtractor,
+         SpillConfig config);
+
+   /**
+    * Returns a stream that groups elements in this stream, which must already be sorted by key.
+    * Unlike {@link #groupBy(Function, Function)}, this does not buffer the whole stream. Instead,
+    * each run of adjacent elements with the same key is emitted as soon as the next key is seen.
+    * So only one group at a time is held in memory, and the operation can be used with very large
+    * or infinite streams. The resulting stream is {@linkplain Spliterator#SORTED sorted} by key.
+    * 
+    * <p>The order of keys is checked as the stream is processed. If a key is found that is less
+    * than the previous key, per the given comparator, an {@link IllegalStateException} is thrown.
+    * 
+    * @param keyExtractor a function that extracts a grouping key from elements of this stream
+    * @param valueExtractor a function that extracts grouped values from elements of this stream
+    * @param keyComparator the comparator by which this stream is sorted
+    * @return a stream that groups elements in this stream
+    */
+   <K, V> FluentStream<Entry<K, Collection<V>>> groupBySorted(
+         Function<? super T, ? extends K> keyExtractor,
+         Function<? super T, ? extends V> valueExtractor,
+         Comparator<? super K> keyComparator);
+
+   /**
+    * Returns a stream that groups elements in this stream, which must already be sorted by key.
+    * The grouped values are the actual elements of this stream. The default implementation is as
+    * follows:<pre>
+    * stream.groupBySorted(keyExtractor, Function.identity(), keyComparator);
+    * </pre>
+    * 
+    * @param keyExtractor a function that extracts a grouping key from elements of this stream
+    * @param keyComparator the comparator by which this stream is sorted
+    * @return a stream that groups elements in this stream
+    * @see #groupBySorted(Function, Function, Comparator)
+    */
+   default <K> FluentStream<Entry<K, Collection<T>>> groupBySorted(
+         Function<? super T, ? extends K> keyExtractor, Comparator<? super K> keyComparator) {
+      return groupBySorted(keyExtractor, Function.identity(), keyComparator);
+   }
+
    /**
     * Forks this stream into the given number of result streams, each with the same data as this
     * stream.
@@ -233,6 +408,20 @@ public interface FluentStream<T> extends Stream<T> {
     */
    Supplier<FluentStream<T>> fork(int numForks);
 
+   /**
+    * Forks this stream into the given number of result streams, buffering at most the given
+    * number of elements. All forks share a fixed-size ring buffer, and a fork that gets a full
+    * buffer ahead of the slowest fork waits for it to catch up. So the forks must be consumed
+    * concurrently, for example by separate threads. A fork that is not fully consumed must be
+    * closed, or else it holds back the other forks.
+    * 
+    * @param numForks the number of resulting forks
+    * @param bufferSize the maximum number of elements buffered for lagging forks
+    * @return a supplier from which each fork is retrieved
+    * @see MoreSpliterators#fork(Spliterator, int, int)
+    */
+   Supplier<FluentStream<T>> fork(int numForks, int bufferSize);
+
    /**
     * Forks this stream into two.
     * 
@@ -256,6 +445,20 @@ public interface FluentStream<T> extends Stream<T> {
             forked.getSecond().filter(criteria.negate()));
    }
 
+   /**
+    * Partitions this stream into two, buffering at most the given number of elements. The two
+    * partitions must be consumed concurrently, as described in {@link #fork(int, int)}.
+    * 
+    * @param criteria the predicate used to partition the stream
+    * @param bufferSize the maximum number of elements buffered for the lagging partition
+    * @return the pair of resulting streams, each with a disparate subset of this stream
+    */
+   default Pair<FluentStream<T>, FluentStream<T>> partition(Predicate<? super T> criteria,
+         int bufferSize) {
+      Supplier<FluentStream<T>> forks = fork(2, bufferSize);
+      return Pair.of(forks.get().filter(criteria), forks.get().filter(criteria.negate()));
+   }
+
    /**
     * Joins this stream with the given stream using the given functions to extract corresponding
     * subsets and combine them.
@@ -277,6 +480,93 @@ public interface FluentStream<T> extends Stream<T> {
          Function<? super U, ? extends W> valueExtractor2,
          TriFunction<? super K, ? super Collection<V>, ? super Collection<W>, ? extends X> combiner);
 
+   /**
+    * Joins this stream with the given stream, both of which must already be sorted by key. This
+    * performs a streaming merge join: the two streams are consumed in tandem, one group of
+    * adjacent elements with the same key at a time. So, unlike
+    * {@link #join(Stream, Function, Function, Function, Function, TriFunction)}, neither stream is
+    * buffered and the operation can be used with very large or infinite streams. Like that
+    * method, this is a full outer join: a key that appears in only one stream is combined with an
+    * empty collection for the other. Results are emitted in key order.
+    * 
+    * <p>The order of keys in each stream is checked as the streams are processed. If a key is
+    * found that is less than the previous key in the same stream, per the given comparator, an
+    * {@link IllegalStateException} is thrown.
+    * 
+    * @param other a stream
+    * @param keyExtractor1 a function that extracts a grouping key from elements of this stream
+    * @param valueExtractor1 a function that extracts grouped values from elements of this stream
+    * @param keyExtractor2 a function that extracts a grouping key from elements of the other
+    *       stream
+    * @param valueExtractor2 a function that extracts grouped values from elements of the other
+    *       stream
+    * @param combiner a function that combines corresponding values from this and the other stream
+    * @param keyComparator the comparator by which both streams are sorted
+    * @return a stream that is the joined result of this stream and the given stream
+    */
+   <K, U, V, W, X> FluentStream<X> joinSorted(Stream<? extends U> other,
+         Function<? super T, ? extends K> keyExtractor1,
+         Function<? super T, ? extends V> valueExtractor1,
+         Function<? super U, ? extends K> keyExtractor2,
+         Function<? super U, ? extends W> valueExtractor2,
+         TriFunction<? super K, ? super Collection<V>, ? super Collection<W>, ? extends X> combiner,
+         Comparator<? super K> keyComparator);
+
+   /**
+    * Joins this stream with the given stream, both of which must already be sorted by key. The
+    * grouped values are the elements of the streams. The default implementation is as
+    * follows:<pre>
+    * stream.joinSorted(other,
+    *     keyExtractor1, Function.identity(),
+    *     keyExtractor2, Function.identity(),
+    *     combiner, keyComparator);
+    * </pre>
+    * 
+    * @param other a stream
+    * @param keyExtractor1 a function that extracts a grouping key from elements of this stream
+    * @param keyExtractor2 a function that extracts a grouping key from elements of the other
+    *       stream
+    * @param combiner a function that combines corresponding values from this and the other stream
+    * @param keyComparator the comparator by which both streams are sorted
+    * @return a stream that is the joined result of this stream and the given stream
+    * @see #joinSorted(Stream, Function, Function, Function, Function, TriFunction, Comparator)
+    */
+   default <K, U, V> FluentStream<V> joinSorted(Stream<? extends U> other,
+         Function<? super T, ? extends K> keyExtractor1,
+         Function<? super U, ? extends K> keyExtractor2,
+         TriFunction<? super K, ? super Collection<T>, ? super Collection<U>, ? extends V> combiner,
+         Comparator<? super K> keyComparator) {
+      return joinSorted(other, keyExtractor1, Function.identity(), keyExtractor2,
+            Function.identity(), combiner, keyComparator);
+   }
+
+   /**
+    * Joins this stream with the given stream, using a bounded amount of memory. This is the same
+    * as {@link #join(Stream, Function, Function, Function, Function, TriFunction)} except that,
+    * if the number of buffered values from both streams exceeds the given configuration's budget,
+    * values are spilled to temporary files and then joined one partition at a time. All keys and
+    * values must be supported by the configuration's {@linkplain SpillConfig#serializer()
+    * serializer}. Temporary files are deleted when the returned stream is closed.
+    * 
+    * @param other a stream
+    * @param keyExtractor1 a function that extracts a grouping key from elements of this stream
+    * @param valueExtractor1 a function that extracts grouped values from elements of this stream
+    * @param keyExtractor2 a function that extracts a grouping key from elements of the other
+    *       stream
+    * @param valueExtractor2 a function that extracts grouped values from elements of the other
+    *       stream
+    * @param combiner a function that combines corresponding values from this and the other stream
+    * @param config the configuration that bounds memory usage
+    * @return a stream that is the joined result of this stream and the given stream
+    */
+   <K, U, V, W, X> FluentStream<X> join(Stream<? extends U> other,
+         Function<? super T, ? extends K> keyExtractor1,
+         Function<? super T, ? extends V> valueExtractor1,
+         Function<? super U, ? extends K> keyExtractor2,
+         Function<? super U, ? extends W> valueExtractor2,
+         TriFunction<? super K, ? super Collection<V>, ? super Collection<W>, ? extends X> combiner,
+         SpillConfig config);
+
    /**
     * Joins this stream with the given stream using the given functions to extract corresponding
     * subsets and combine them. The grouped values are the elements of the stream, as opposed to
@@ -360,6 +650,24 @@ public interface FluentStream<T> extends Stream<T> {
          Function<? super T, ? extends K> keyExtractor) {
       return merge(other, keyExtractor, Function.identity());
    }
+
+   /**
+    * Merges this stream with the given stream and groups the elements of both, using a bounded
+    * amount of memory. If the number of buffered values exceeds the given configuration's budget,
+    * values are spilled to temporary files and then grouped one partition at a time. All keys and
+    * values must be supported by the configuration's {@linkplain SpillConfig#serializer()
+    * serializer}. Temporary files are deleted when the returned stream is closed.
+    * 
+    * @param other a stream
+    * @param keyExtractor a function that extracts a grouping key from elements of both streams
+    * @param valueExtractor a function that extracts grouped values from elements of both streams
+    * @param config the configuration that bounds memory usage
+    * @return a stream that groups the elements of this stream and the given stream
+    */
+   <K, V> FluentStream<Entry<K, Collection<V>>> merge(Stream<? extends T> other,
+         Function<? super T, ? extends K> keyExtractor,
+         Function<? super T, ? extends V> valueExtractor,
+         SpillConfig config);
    
    <U> FluentStream<U> operator(StreamOperator<U, T> operator);
 
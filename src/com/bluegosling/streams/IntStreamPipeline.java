@@ -0,0 +1,339 @@
+package com.bluegosling.streams;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.OptionalInt;
+import java.util.OptionalDouble;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.IntSummaryStatistics;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+import java.util.function.IntToLongFunction;
+import java.util.function.IntToDoubleFunction;
+import java.util.function.IntUnaryOperator;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.bluegosling.function.TriFunction;
+
+/**
+ * An implementation of {@link FluentIntStream}. Standard operations are delegated to an
+ * underlying {@link IntStream}. The additional operations are implemented using primitive
+ * spliterators, so that values are not boxed. Most of them are shared with the other primitive
+ * streams, in {@link PrimitiveStreamPipeline}.
+ *
+ * @author Joshua Humphries (jhumphries131@gmail.com)
+ */
+class IntStreamPipeline
+      extends PrimitiveStreamPipeline<Integer, IntConsumer, Spliterator.OfInt, int[], IntStream,
+            FluentIntStream>
+      implements FluentIntStream {
+   IntStreamPipeline(IntStream stream) {
+      this(stream, ForkJoinPool.commonPool());
+   }
+
+   IntStreamPipeline(IntStream stream, ForkJoinPool pool) {
+      super(stream, pool);
+   }
+
+   @Override
+   FluentIntStream newPipeline(IntStream s, ForkJoinPool p) {
+      return new IntStreamPipeline(s, p);
+   }
+
+   @Override
+   IntStream newStream(Spliterator.OfInt spliterator, boolean parallel) {
+      return StreamSupport.intStream(spliterator, parallel);
+   }
+
+   @Override
+   int[] newArray(int length) {
+      return new int[length];
+   }
+
+   @Override
+   IntConsumer appender(ArrayBuffer<int[]> buffer) {
+      return v -> add(buffer, v);
+   }
+
+   @Override
+   IntStream flatten(Stream<int[]> arrays) {
+      return arrays.flatMapToInt(Arrays::stream);
+   }
+
+   private static void add(ArrayBuffer<int[]> buffer, int v) {
+      int i = buffer.next();
+      buffer.array[i] = v;
+   }
+
+   @Override
+   public PrimitiveIterator.OfInt iterator() {
+      return stream.iterator();
+   }
+
+   @Override
+   public Spliterator.OfInt spliterator() {
+      return stream.spliterator();
+   }
+
+   @Override
+   public FluentIntStream filter(IntPredicate predicate) {
+      return new IntStreamPipeline(stream.filter(predicate), pool);
+   }
+
+   @Override
+   public FluentIntStream map(IntUnaryOperator mapper) {
+      return new IntStreamPipeline(stream.map(mapper), pool);
+   }
+
+   @Override
+   public <U> FluentStream<U> mapToObj(IntFunction<? extends U> mapper) {
+      return upgrade(stream.mapToObj(mapper));
+   }
+
+   @Override
+   public FluentLongStream mapToLong(IntToLongFunction mapper) {
+      return new LongStreamPipeline(stream.mapToLong(mapper), pool);
+   }
+
+   @Override
+   public FluentDoubleStream mapToDouble(IntToDoubleFunction mapper) {
+      return new DoubleStreamPipeline(stream.mapToDouble(mapper), pool);
+   }
+
+   @Override
+   public FluentIntStream flatMap(IntFunction<? extends IntStream> mapper) {
+      return new IntStreamPipeline(stream.flatMap(mapper), pool);
+   }
+
+   @Override
+   public FluentIntStream distinct() {
+      return new IntStreamPipeline(stream.distinct(), pool);
+   }
+
+   @Override
+   public FluentIntStream sorted() {
+      return new IntStreamPipeline(stream.sorted(), pool);
+   }
+
+   @Override
+   public FluentIntStream peek(IntConsumer action) {
+      return new IntStreamPipeline(stream.peek(action), pool);
+   }
+
+   @Override
+   public FluentIntStream limit(long maxSize) {
+      return new IntStreamPipeline(stream.limit(maxSize), pool);
+   }
+
+   @Override
+   public FluentIntStream skip(long n) {
+      return new IntStreamPipeline(stream.skip(n), pool);
+   }
+
+   @Override
+   public FluentLongStream asLongStream() {
+      return new LongStreamPipeline(stream.asLongStream(), pool);
+   }
+
+   @Override
+   public FluentDoubleStream asDoubleStream() {
+      return new DoubleStreamPipeline(stream.asDoubleStream(), pool);
+   }
+
+   @Override
+   public FluentStream<Integer> boxed() {
+      return upgrade(stream.boxed());
+   }
+
+   @Override
+   public void forEach(IntConsumer action) {
+      inPool(() -> {
+         stream.forEach(action);
+         return null;
+      });
+   }
+
+   @Override
+   public void forEachOrdered(IntConsumer action) {
+      inPool(() -> {
+         stream.forEachOrdered(action);
+         return null;
+      });
+   }
+
+   @Override
+   public int[] toArray() {
+      return inPool(stream::toArray);
+   }
+
+   @Override
+   public int reduce(int identity, IntBinaryOperator op) {
+      return inPool(() -> stream.reduce(identity, op));
+   }
+
+   @Override
+   public OptionalInt reduce(IntBinaryOperator op) {
+      return inPool(() -> stream.reduce(op));
+   }
+
+   @Override
+   public <R> R collect(Supplier<R> supplier, ObjIntConsumer<R> accumulator,
+         BiConsumer<R, R> combiner) {
+      return inPool(() -> stream.collect(supplier, accumulator, combiner));
+   }
+
+   @Override
+   public int sum() {
+      return inPool(stream::sum);
+   }
+
+   @Override
+   public OptionalInt min() {
+      return inPool(stream::min);
+   }
+
+   @Override
+   public OptionalInt max() {
+      return inPool(stream::max);
+   }
+
+   @Override
+   public long count() {
+      return inPool(stream::count);
+   }
+
+   @Override
+   public OptionalDouble average() {
+      return inPool(stream::average);
+   }
+
+   @Override
+   public IntSummaryStatistics summaryStatistics() {
+      return inPool(stream::summaryStatistics);
+   }
+
+   @Override
+   public boolean anyMatch(IntPredicate predicate) {
+      return inPool(() -> stream.anyMatch(predicate));
+   }
+
+   @Override
+   public boolean allMatch(IntPredicate predicate) {
+      return inPool(() -> stream.allMatch(predicate));
+   }
+
+   @Override
+   public boolean noneMatch(IntPredicate predicate) {
+      return inPool(() -> stream.noneMatch(predicate));
+   }
+
+   @Override
+   public OptionalInt findFirst() {
+      return inPool(stream::findFirst);
+   }
+
+   @Override
+   public OptionalInt findAny() {
+      return inPool(stream::findAny);
+   }
+
+   @Override
+   public <K> FluentStream<Entry<K, int[]>> groupBy(IntFunction<? extends K> keyExtractor) {
+      return groupByKey(s -> toMap(s, keyExtractor));
+   }
+
+   @Override
+   public <K, X> FluentStream<X> join(IntStream other,
+         IntFunction<? extends K> keyExtractor1, IntFunction<? extends K> keyExtractor2,
+         TriFunction<? super K, ? super int[], ? super int[], ? extends X> combiner) {
+      return joinByKey(other, s -> toMap(s, keyExtractor1), s -> toMap(s, keyExtractor2),
+            combiner);
+   }
+
+   private <K> Map<K, int[]> toMap(IntStream s, IntFunction<? extends K> keyExtractor) {
+      Map<K, ArrayBuffer<int[]>> groups = s.collect(HashMap::new,
+            (m, v) -> add(m.computeIfAbsent(keyExtractor.apply(v), k -> newBuffer()), v),
+            PrimitiveStreamPipeline::mergeGroups);
+      return toArrays(groups);
+   }
+
+   @Override
+   public FluentIntStream operator(StreamNode.OfInt operator) {
+      return operator(() -> operator);
+   }
+
+   @Override
+   public FluentIntStream operator(StreamOperator.OfInt operator) {
+      return operator(operator, operator::startStream,
+            (source, onStart) -> new OperatorSpliterator(source, operator, onStart));
+   }
+
+   /**
+    * A spliterator that applies a {@linkplain StreamOperator.OfInt stream operator} to the values
+    * of an underlying primitive spliterator. Each split gets its own {@linkplain StreamNode.OfInt
+    * node}.
+    *
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    */
+   private static class OperatorSpliterator implements Spliterator.OfInt {
+      private final Spliterator.OfInt source;
+      private final StreamOperator.OfInt operator;
+      private final Runnable onStart;
+      private final StreamNode.OfInt.Upstream upstream;
+      private StreamNode.OfInt node;
+
+      OperatorSpliterator(Spliterator.OfInt source, StreamOperator.OfInt operator,
+            Runnable onStart) {
+         this.source = source;
+         this.operator = operator;
+         this.onStart = onStart;
+         this.upstream = source::tryAdvance;
+      }
+
+      @Override
+      public boolean tryAdvance(IntConsumer action) {
+         if (node == null) {
+            onStart.run();
+            node = operator.createNode();
+         }
+         return node.getNext(upstream, action);
+      }
+
+      @Override
+      public Spliterator.OfInt trySplit() {
+         onStart.run();
+         Spliterator.OfInt split = source.trySplit();
+         return split == null ? null : new OperatorSpliterator(split, operator, onStart);
+      }
+
+      @Override
+      public long estimateSize() {
+         return operator.spliteratorEstimatedSize(source.estimateSize());
+      }
+
+      @Override
+      public int characteristics() {
+         return operator.spliteratorCharacteristics(source.characteristics());
+      }
+
+      @Override
+      public Comparator<? super Integer> getComparator() {
+         if (!hasCharacteristics(Spliterator.SORTED)) {
+            throw new IllegalStateException();
+         }
+         return source.getComparator();
+      }
+   }
+}
@@ -0,0 +1,45 @@
+package com.bluegosling.streams;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * A {@link SpillSerializer} that uses standard Java serialization. Each value is written as a
+ * length-prefixed serialized form.
+ *
+ * @author Joshua Humphries (jhumphries131@gmail.com)
+ *
+ * @see SpillSerializer#javaSerialization()
+ */
+final class JavaSpillSerializer implements SpillSerializer {
+   static final JavaSpillSerializer INSTANCE = new JavaSpillSerializer();
+
+   private JavaSpillSerializer() {
+   }
+
+   @Override
+   public void write(Object value, DataOutput out) throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+         oos.writeObject(value);
+      }
+      out.writeInt(bytes.size());
+      out.write(bytes.toByteArray());
+   }
+
+   @Override
+   public Object read(DataInput in) throws IOException {
+      byte[] bytes = new byte[in.readInt()];
+      in.readFully(bytes);
+      try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+         return ois.readObject();
+      } catch (ClassNotFoundException e) {
+         throw new IOException(e);
+      }
+   }
+}
@@ -0,0 +1,334 @@
+package com.bluegosling.streams;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.OptionalLong;
+import java.util.OptionalDouble;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.LongSummaryStatistics;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+import java.util.function.LongBinaryOperator;
+import java.util.function.LongConsumer;
+import java.util.function.LongFunction;
+import java.util.function.LongPredicate;
+import java.util.function.LongToIntFunction;
+import java.util.function.LongToDoubleFunction;
+import java.util.function.LongUnaryOperator;
+import java.util.function.ObjLongConsumer;
+import java.util.function.Supplier;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.bluegosling.function.TriFunction;
+
+/**
+ * An implementation of {@link FluentLongStream}. Standard operations are delegated to an
+ * underlying {@link LongStream}. The additional operations are implemented using primitive
+ * spliterators, so that values are not boxed. Most of them are shared with the other primitive
+ * streams, in {@link PrimitiveStreamPipeline}.
+ *
+ * @author Joshua Humphries (jhumphries131@gmail.com)
+ */
+class LongStreamPipeline
+      extends PrimitiveStreamPipeline<Long, LongConsumer, Spliterator.OfLong, long[], LongStream,
+            FluentLongStream>
+      implements FluentLongStream {
+   LongStreamPipeline(LongStream stream) {
+      this(stream, ForkJoinPool.commonPool());
+   }
+
+   LongStreamPipeline(LongStream stream, ForkJoinPool pool) {
+      super(stream, pool);
+   }
+
+   @Override
+   FluentLongStream newPipeline(LongStream s, ForkJoinPool p) {
+      return new LongStreamPipeline(s, p);
+   }
+
+   @Override
+   LongStream newStream(Spliterator.OfLong spliterator, boolean parallel) {
+      return StreamSupport.longStream(spliterator, parallel);
+   }
+
+   @Override
+   long[] newArray(int length) {
+      return new long[length];
+   }
+
+   @Override
+   LongConsumer appender(ArrayBuffer<long[]> buffer) {
+      return v -> add(buffer, v);
+   }
+
+   @Override
+   LongStream flatten(Stream<long[]> arrays) {
+      return arrays.flatMapToLong(Arrays::stream);
+   }
+
+   private static void add(ArrayBuffer<long[]> buffer, long v) {
+      int i = buffer.next();
+      buffer.array[i] = v;
+   }
+
+   @Override
+   public PrimitiveIterator.OfLong iterator() {
+      return stream.iterator();
+   }
+
+   @Override
+   public Spliterator.OfLong spliterator() {
+      return stream.spliterator();
+   }
+
+   @Override
+   public FluentLongStream filter(LongPredicate predicate) {
+      return new LongStreamPipeline(stream.filter(predicate), pool);
+   }
+
+   @Override
+   public FluentLongStream map(LongUnaryOperator mapper) {
+      return new LongStreamPipeline(stream.map(mapper), pool);
+   }
+
+   @Override
+   public <U> FluentStream<U> mapToObj(LongFunction<? extends U> mapper) {
+      return upgrade(stream.mapToObj(mapper));
+   }
+
+   @Override
+   public FluentIntStream mapToInt(LongToIntFunction mapper) {
+      return new IntStreamPipeline(stream.mapToInt(mapper), pool);
+   }
+
+   @Override
+   public FluentDoubleStream mapToDouble(LongToDoubleFunction mapper) {
+      return new DoubleStreamPipeline(stream.mapToDouble(mapper), pool);
+   }
+
+   @Override
+   public FluentLongStream flatMap(LongFunction<? extends LongStream> mapper) {
+      return new LongStreamPipeline(stream.flatMap(mapper), pool);
+   }
+
+   @Override
+   public FluentLongStream distinct() {
+      return new LongStreamPipeline(stream.distinct(), pool);
+   }
+
+   @Override
+   public FluentLongStream sorted() {
+      return new LongStreamPipeline(stream.sorted(), pool);
+   }
+
+   @Override
+   public FluentLongStream peek(LongConsumer action) {
+      return new LongStreamPipeline(stream.peek(action), pool);
+   }
+
+   @Override
+   public FluentLongStream limit(long maxSize) {
+      return new LongStreamPipeline(stream.limit(maxSize), pool);
+   }
+
+   @Override
+   public FluentLongStream skip(long n) {
+      return new LongStreamPipeline(stream.skip(n), pool);
+   }
+
+   @Override
+   public FluentDoubleStream asDoubleStream() {
+      return new DoubleStreamPipeline(stream.asDoubleStream(), pool);
+   }
+
+   @Override
+   public FluentStream<Long> boxed() {
+      return upgrade(stream.boxed());
+   }
+
+   @Override
+   public void forEach(LongConsumer action) {
+      inPool(() -> {
+         stream.forEach(action);
+         return null;
+      });
+   }
+
+   @Override
+   public void forEachOrdered(LongConsumer action) {
+      inPool(() -> {
+         stream.forEachOrdered(action);
+         return null;
+      });
+   }
+
+   @Override
+   public long[] toArray() {
+      return inPool(stream::toArray);
+   }
+
+   @Override
+   public long reduce(long identity, LongBinaryOperator op) {
+      return inPool(() -> stream.reduce(identity, op));
+   }
+
+   @Override
+   public OptionalLong reduce(LongBinaryOperator op) {
+      return inPool(() -> stream.reduce(op));
+   }
+
+   @Override
+   public <R> R collect(Supplier<R> supplier, ObjLongConsumer<R> accumulator,
+         BiConsumer<R, R> combiner) {
+      return inPool(() -> stream.collect(supplier, accumulator, combiner));
+   }
+
+   @Override
+   public long sum() {
+      return inPool(stream::sum);
+   }
+
+   @Override
+   public OptionalLong min() {
+      return inPool(stream::min);
+   }
+
+   @Override
+   public OptionalLong max() {
+      return inPool(stream::max);
+   }
+
+   @Override
+   public long count() {
+      return inPool(stream::count);
+   }
+
+   @Override
+   public OptionalDouble average() {
+      return inPool(stream::average);
+   }
+
+   @Override
+   public LongSummaryStatistics summaryStatistics() {
+      return inPool(stream::summaryStatistics);
+   }
+
+   @Override
+   public boolean anyMatch(LongPredicate predicate) {
+      return inPool(() -> stream.anyMatch(predicate));
+   }
+
+   @Override
+   public boolean allMatch(LongPredicate predicate) {
+      return inPool(() -> stream.allMatch(predicate));
+   }
+
+   @Override
+   public boolean noneMatch(LongPredicate predicate) {
+      return inPool(() -> stream.noneMatch(predicate));
+   }
+
+   @Override
+   public OptionalLong findFirst() {
+      return inPool(stream::findFirst);
+   }
+
+   @Override
+   public OptionalLong findAny() {
+      return inPool(stream::findAny);
+   }
+
+   @Override
+   public <K> FluentStream<Entry<K, long[]>> groupBy(LongFunction<? extends K> keyExtractor) {
+      return groupByKey(s -> toMap(s, keyExtractor));
+   }
+
+   @Override
+   public <K, X> FluentStream<X> join(LongStream other,
+         LongFunction<? extends K> keyExtractor1, LongFunction<? extends K> keyExtractor2,
+         TriFunction<? super K, ? super long[], ? super long[], ? extends X> combiner) {
+      return joinByKey(other, s -> toMap(s, keyExtractor1), s -> toMap(s, keyExtractor2),
+            combiner);
+   }
+
+   private <K> Map<K, long[]> toMap(LongStream s, LongFunction<? extends K> keyExtractor) {
+      Map<K, ArrayBuffer<long[]>> groups = s.collect(HashMap::new,
+            (m, v) -> add(m.computeIfAbsent(keyExtractor.apply(v), k -> newBuffer()), v),
+            PrimitiveStreamPipeline::mergeGroups);
+      return toArrays(groups);
+   }
+
+   @Override
+   public FluentLongStream operator(StreamNode.OfLong operator) {
+      return operator(() -> operator);
+   }
+
+   @Override
+   public FluentLongStream operator(StreamOperator.OfLong operator) {
+      return operator(operator, operator::startStream,
+            (source, onStart) -> new OperatorSpliterator(source, operator, onStart));
+   }
+
+   /**
+    * A spliterator that applies a {@linkplain StreamOperator.OfLong stream operator} to the values
+    * of an underlying primitive spliterator. Each split gets its own {@linkplain StreamNode.OfLong
+    * node}.
+    *
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    */
+   private static class OperatorSpliterator implements Spliterator.OfLong {
+      private final Spliterator.OfLong source;
+      private final StreamOperator.OfLong operator;
+      private final Runnable onStart;
+      private final StreamNode.OfLong.Upstream upstream;
+      private StreamNode.OfLong node;
+
+      OperatorSpliterator(Spliterator.OfLong source, StreamOperator.OfLong operator,
+            Runnable onStart) {
+         this.source = source;
+         this.operator = operator;
+         this.onStart = onStart;
+         this.upstream = source::tryAdvance;
+      }
+
+      @Override
+      public boolean tryAdvance(LongConsumer action) {
+         if (node == null) {
+            onStart.run();
+            node = operator.createNode();
+         }
+         return node.getNext(upstream, action);
+      }
+
+      @Override
+      public Spliterator.OfLong trySplit() {
+         onStart.run();
+         Spliterator.OfLong split = source.trySplit();
+         return split == null ? null : new OperatorSpliterator(split, operator, onStart);
+      }
+
+      @Override
+      public long estimateSize() {
+         return operator.spliteratorEstimatedSize(source.estimateSize());
+      }
+
+      @Override
+      public int characteristics() {
+         return operator.spliteratorCharacteristics(source.characteristics());
+      }
+
+      @Override
+      public Comparator<? super Long> getComparator() {
+         if (!hasCharacteristics(Spliterator.SORTED)) {
+            throw new IllegalStateException();
+         }
+         return source.getComparator();
+      }
+   }
+}
@@ -0,0 +1,387 @@
+package com.bluegosling.streams;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.stream.BaseStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.bluegosling.collections.MoreSpliterators;
+import com.bluegosling.function.TriFunction;
+import com.google.common.collect.Sets;
+
+/**
+ * The common base class for {@link IntStreamPipeline}, {@link LongStreamPipeline}, and
+ * {@link DoubleStreamPipeline}. It holds the underlying stream and the pool in which parallel
+ * operations run. It also implements the additional operations that only deal in arrays of values
+ * (batching, grouping, joining, and forking), so sub-classes need only provide the few pieces that
+ * depend on the primitive type.
+ *
+ * @author Joshua Humphries (jhumphries131@gmail.com)
+ *
+ * @param <T> the boxed type of the stream's elements
+ * @param <C> the type of consumer that accepts the stream's primitive elements
+ * @param <P> the type of primitive spliterator that provides the stream's elements
+ * @param <A> the type of primitive array that holds the stream's elements
+ * @param <S> the type of the underlying stream
+ * @param <F> the type of fluent stream implemented by the sub-class
+ */
+abstract class PrimitiveStreamPipeline<T, C, P extends Spliterator.OfPrimitive<T, C, P>, A,
+      S extends BaseStream<T, S>, F> {
+   /**
+    * The size of the arrays used to buffer values for {@linkplain #fork(int) forks}.
+    */
+   private static final int FORK_BATCH_SIZE = 256;
+
+   final S stream;
+   final ForkJoinPool pool;
+
+   PrimitiveStreamPipeline(S stream, ForkJoinPool pool) {
+      this.stream = stream;
+      this.pool = pool;
+   }
+
+   /**
+    * Creates a new pipeline, of the same type as this one, that wraps the given stream.
+    */
+   abstract F newPipeline(S s, ForkJoinPool p);
+
+   /**
+    * Creates a stream, of the same type as this one's underlying stream, from the given
+    * spliterator.
+    */
+   abstract S newStream(P spliterator, boolean parallel);
+
+   /**
+    * Creates a new primitive array with the given length.
+    */
+   abstract A newArray(int length);
+
+   /**
+    * Returns a consumer that adds the values it accepts to the given buffer.
+    */
+   abstract C appender(ArrayBuffer<A> buffer);
+
+   /**
+    * Flattens a stream of arrays into a stream of their values.
+    */
+   abstract S flatten(Stream<A> arrays);
+
+   /**
+    * Returns the spliterator of the underlying stream.
+    */
+   abstract P spliterator();
+
+   @SuppressWarnings("unchecked") // sub-classes are always the fluent stream type F
+   private F wrap(S s) {
+      return s == stream ? (F) this : newPipeline(s, pool);
+   }
+
+   /**
+    * Returns a fluent stream that runs in this stream's pool when processed in parallel.
+    */
+   <U> FluentStream<U> upgrade(Stream<U> s) {
+      return withPool(new StreamPipeline.Head<>(s));
+   }
+
+   <U> StreamPipeline.Head<U> withPool(StreamPipeline.Head<U> head) {
+      head.pool = pool;
+      return head;
+   }
+
+   /**
+    * Runs the given terminal operation. If this stream is parallel, the operation runs in this
+    * stream's pool. (Parallel operations on the underlying stream otherwise run in the pool of the
+    * calling thread, or the common pool if the calling thread is not in a pool.)
+    */
+   <R> R inPool(Supplier<R> op) {
+      if (stream.isParallel()) {
+         ForkJoinPool current = ForkJoinTask.getPool();
+         if (current != pool && (current != null || pool != ForkJoinPool.commonPool())) {
+            return pool.submit(op::get).join();
+         }
+      }
+      return op.get();
+   }
+
+   ArrayBuffer<A> newBuffer() {
+      return new ArrayBuffer<>(this::newArray, 8, Integer.MAX_VALUE);
+   }
+
+   public boolean isParallel() {
+      return stream.isParallel();
+   }
+
+   public void close() {
+      stream.close();
+   }
+
+   public F sequential() {
+      return wrap(stream.sequential());
+   }
+
+   public F parallel() {
+      return wrap(stream.parallel());
+   }
+
+   public F parallel(ForkJoinPool forkJoinPool) {
+      return newPipeline(stream.parallel(), requireNonNull(forkJoinPool));
+   }
+
+   public F unordered() {
+      return wrap(stream.unordered());
+   }
+
+   public F onClose(Runnable closeHandler) {
+      return wrap(stream.onClose(closeHandler));
+   }
+
+   public FluentStream<A> batch(int count) {
+      if (count <= 0) {
+         throw new IllegalArgumentException();
+      }
+      return upgrade(
+            StreamSupport.stream(new BatchingSpliterator(spliterator(), count),
+                  stream.isParallel())
+            .onClose(stream::close));
+   }
+
+   /**
+    * Implements {@code groupBy}, using the given function to group the values of the underlying
+    * stream into a map.
+    */
+   <K> FluentStream<Entry<K, A>> groupByKey(Function<? super S, Map<K, A>> toMap) {
+      return withPool(new StreamPipeline.Head<Entry<K, A>>(
+            () -> inPool(() -> toMap.apply(stream)).entrySet().spliterator(),
+            Spliterator.IMMUTABLE | Spliterator.SIZED | Spliterator.DISTINCT))
+            .onClose(stream::close);
+   }
+
+   /**
+    * Implements {@code join}, using the given functions to group the values of the two streams
+    * into maps.
+    */
+   <K, X> FluentStream<X> joinByKey(S other, Function<? super S, Map<K, A>> toMap1,
+         Function<? super S, Map<K, A>> toMap2,
+         TriFunction<? super K, ? super A, ? super A, ? extends X> combiner) {
+      return withPool(new StreamPipeline.Head<X>(
+            () -> {
+               Map<K, A> map1;
+               Map<K, A> map2;
+               boolean parallel = stream.isParallel();
+               if (parallel) {
+                  CompletableFuture<Map<K, A>> future = CompletableFuture.supplyAsync(
+                        () -> toMap2.apply(other), pool);
+                  map1 = inPool(() -> toMap1.apply(stream));
+                  map2 = future.join();
+               } else {
+                  map1 = toMap1.apply(stream);
+                  map2 = toMap2.apply(other);
+               }
+               A empty = newArray(0);
+               Set<K> keys = Sets.union(map1.keySet(), map2.keySet());
+               Stream<X> s = keys.stream()
+                     .map(k -> {
+                        A a1 = map1.get(k);
+                        A a2 = map2.get(k);
+                        return combiner.apply(k, a1 == null ? empty : a1, a2 == null ? empty : a2);
+                     });
+               if (parallel) {
+                  s = s.parallel();
+               }
+               return s.spliterator();
+            },
+            Spliterator.IMMUTABLE | Spliterator.SIZED | Spliterator.DISTINCT))
+            .onClose(stream::close)
+            .onClose(other::close);
+   }
+
+   /**
+    * Merges the second map of groups into the first. This is the combiner used to group values in
+    * parallel.
+    */
+   static <K, A> void mergeGroups(Map<K, ArrayBuffer<A>> m1, Map<K, ArrayBuffer<A>> m2) {
+      m2.forEach((k, v) -> m1.merge(k, v, ArrayBuffer::addAll));
+   }
+
+   /**
+    * Converts the given map of groups into a map of arrays.
+    */
+   static <K, A> Map<K, A> toArrays(Map<K, ArrayBuffer<A>> groups) {
+      if (groups.isEmpty()) {
+         return Collections.emptyMap();
+      }
+      Map<K, A> result = new HashMap<>(groups.size() * 4 / 3 + 1);
+      for (Entry<K, ArrayBuffer<A>> entry : groups.entrySet()) {
+         result.put(entry.getKey(), entry.getValue().toArray());
+      }
+      return result;
+   }
+
+   public Supplier<F> fork(int numForks) {
+      // fork batches of values, instead of individual values, so they needn't be boxed
+      Supplier<Spliterator<A>> forks = MoreSpliterators.fork(
+            new BatchingSpliterator(spliterator(), FORK_BATCH_SIZE), numForks);
+      boolean parallel = stream.isParallel();
+      return () -> newPipeline(
+            flatten(StreamSupport.stream(forks.get(), parallel))
+                  .onClose(stream::close), pool);
+   }
+
+   /**
+    * Implements {@code operator}. The given function creates the spliterator that applies the
+    * operator to a source spliterator, given a callback that must be invoked before the operator
+    * starts producing values.
+    */
+   F operator(AutoCloseable operator, Runnable startStream,
+         BiFunction<? super P, Runnable, ? extends P> operatorSpliterator) {
+      AtomicBoolean started = new AtomicBoolean();
+      Runnable onStart = () -> {
+         if (started.compareAndSet(false, true)) {
+            startStream.run();
+         }
+      };
+      return newPipeline(
+            newStream(operatorSpliterator.apply(spliterator(), onStart), stream.isParallel())
+            .onClose(() -> {
+               try {
+                  operator.close();
+               } catch (RuntimeException | Error e) {
+                  throw e;
+               } catch (Exception e) {
+                  throw new RuntimeException(e);
+               }
+            })
+            .onClose(stream::close), pool);
+   }
+
+   /**
+    * A growable array of values, used to accumulate groups and batches.
+    *
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    *
+    * @param <A> the type of primitive array
+    */
+   static class ArrayBuffer<A> {
+      private final IntFunction<A> factory;
+      private final int limit;
+      A array;
+      private int capacity;
+      private int size;
+
+      ArrayBuffer(IntFunction<A> factory, int initialCapacity, int limit) {
+         this.factory = factory;
+         this.limit = limit;
+         this.array = factory.apply(initialCapacity);
+         this.capacity = initialCapacity;
+      }
+
+      /**
+       * Makes room for another value and returns the index in {@link #array} where it goes.
+       */
+      int next() {
+         if (size == capacity) {
+            grow((int) Math.min(limit, Math.max((long) size << 1, 1)));
+         }
+         return size++;
+      }
+
+      int size() {
+         return size;
+      }
+
+      void clear() {
+         size = 0;
+      }
+
+      ArrayBuffer<A> addAll(ArrayBuffer<A> other) {
+         if (size + other.size > capacity) {
+            grow(Math.max(size + other.size, size << 1));
+         }
+         System.arraycopy(other.array, 0, array, size, other.size);
+         size += other.size;
+         return this;
+      }
+
+      A toArray() {
+         A result = factory.apply(size);
+         System.arraycopy(array, 0, result, 0, size);
+         return result;
+      }
+
+      private void grow(int newCapacity) {
+         A newArray = factory.apply(newCapacity);
+         System.arraycopy(array, 0, newArray, 0, size);
+         array = newArray;
+         capacity = newCapacity;
+      }
+   }
+
+   /**
+    * A spliterator that emits arrays of values from an underlying primitive spliterator.
+    *
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    */
+   private class BatchingSpliterator implements Spliterator<A> {
+      private final P source;
+      private final int count;
+      private final ArrayBuffer<A> buffer;
+      private final C receiver;
+
+      BatchingSpliterator(P source, int count) {
+         this.source = source;
+         this.count = count;
+         this.buffer = new ArrayBuffer<>(PrimitiveStreamPipeline.this::newArray,
+               Math.min(count, 64), count);
+         this.receiver = appender(buffer);
+      }
+
+      @Override
+      public boolean tryAdvance(Consumer<? super A> action) {
+         buffer.clear();
+         while (buffer.size() < count && source.tryAdvance(receiver));
+         if (buffer.size() == 0) {
+            return false;
+         }
+         action.accept(buffer.toArray());
+         return true;
+      }
+
+      @Override
+      public Spliterator<A> trySplit() {
+         P split = source.trySplit();
+         return split == null ? null : new BatchingSpliterator(split, count);
+      }
+
+      @Override
+      public long estimateSize() {
+         long sz = source.estimateSize();
+         if (sz == Long.MAX_VALUE) {
+            return sz;
+         }
+         long numBatches = sz / count;
+         return numBatches * count < sz ? numBatches + 1 : numBatches;
+      }
+
+      @Override
+      public int characteristics() {
+         return source.characteristics() & ~(Spliterator.SUBSIZED | Spliterator.SORTED)
+               | Spliterator.NONNULL;
+      }
+   }
+}
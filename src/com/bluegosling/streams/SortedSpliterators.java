@@ -0,0 +1,231 @@
+package com.bluegosling.streams;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import com.bluegosling.function.TriFunction;
+
+/**
+ * Spliterators that group and join data that is already sorted by key. Instead of buffering all
+ * of their input, these examine one group of adjacent elements with the same key at a time, so
+ * they emit results incrementally and can be used with very large or even infinite sources.
+ *
+ * <p>The input must be sorted by key, per the given comparator. This is verified as elements are
+ * consumed: if a key is found that is less than its predecessor, an
+ * {@link IllegalStateException} is thrown.
+ *
+ * @author Joshua Humphries (jhumphries131@gmail.com)
+ *
+ * @see FluentStream#groupBySorted(Function, Function, Comparator)
+ * @see FluentStream#joinSorted(java.util.stream.Stream, Function, Function, Function, Function,
+ *       TriFunction, Comparator)
+ */
+final class SortedSpliterators {
+   private SortedSpliterators() {
+   }
+
+   /**
+    * Returns a spliterator that groups runs of adjacent elements that have the same key. The
+    * resulting spliterator is sorted by key.
+    *
+    * @param source the source of data, sorted by key
+    * @param keyExtractor a function that extracts a grouping key from elements of the source
+    * @param valueExtractor a function that extracts grouped values from elements of the source
+    * @param comparator the comparator by which the source is sorted
+    * @return a spliterator that emits each key and its values
+    */
+   static <T, K, V> Spliterator<Entry<K, Collection<V>>> groupBy(
+         Spliterator<? extends T> source,
+         Function<? super T, ? extends K> keyExtractor,
+         Function<? super T, ? extends V> valueExtractor,
+         Comparator<? super K> comparator) {
+      return new GroupingSpliterator<>(source, keyExtractor, valueExtractor, comparator);
+   }
+
+   /**
+    * Returns a spliterator that merges two sources, both sorted by key. This is a full outer join:
+    * keys that appear in only one source are combined with an empty collection for the other.
+    * The resulting spliterator emits results in key order.
+    *
+    * @param source1 the first source of data, sorted by key
+    * @param source2 the second source of data, sorted by key
+    * @param keyExtractor1 a function that extracts a grouping key from elements of the first
+    *       source
+    * @param valueExtractor1 a function that extracts grouped values from elements of the first
+    *       source
+    * @param keyExtractor2 a function that extracts a grouping key from elements of the second
+    *       source
+    * @param valueExtractor2 a function that extracts grouped values from elements of the second
+    *       source
+    * @param combiner a function that combines corresponding values from the two sources
+    * @param comparator the comparator by which both sources are sorted
+    * @return a spliterator that emits the joined results
+    */
+   static <T, U, K, V, W, X> Spliterator<X> join(
+         Spliterator<? extends T> source1, Spliterator<? extends U> source2,
+         Function<? super T, ? extends K> keyExtractor1,
+         Function<? super T, ? extends V> valueExtractor1,
+         Function<? super U, ? extends K> keyExtractor2,
+         Function<? super U, ? extends W> valueExtractor2,
+         TriFunction<? super K, ? super Collection<V>, ? super Collection<W>, ? extends X> combiner,
+         Comparator<? super K> comparator) {
+      return new MergeJoinSpliterator<>(
+            new GroupingSpliterator<>(source1, keyExtractor1, valueExtractor1, comparator),
+            new GroupingSpliterator<>(source2, keyExtractor2, valueExtractor2, comparator),
+            combiner, comparator);
+   }
+
+   /**
+    * Groups runs of adjacent elements with the same key. At most one element past the current
+    * group is consumed from the source.
+    *
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    *
+    * @param <T> the type of source elements
+    * @param <K> the type of keys
+    * @param <V> the type of grouped values
+    */
+   private static class GroupingSpliterator<T, K, V>
+         extends Spliterators.AbstractSpliterator<Entry<K, Collection<V>>> {
+      private final Spliterator<? extends T> source;
+      private final Function<? super T, ? extends K> keyExtractor;
+      private final Function<? super T, ? extends V> valueExtractor;
+      private final Comparator<? super K> comparator;
+      private final Consumer<T> receiver = this::receive;
+      private boolean havePending;
+      private K pendingKey;
+      private V pendingValue;
+
+      GroupingSpliterator(Spliterator<? extends T> source,
+            Function<? super T, ? extends K> keyExtractor,
+            Function<? super T, ? extends V> valueExtractor,
+            Comparator<? super K> comparator) {
+         super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.SORTED
+               | Spliterator.NONNULL);
+         this.source = source;
+         this.keyExtractor = keyExtractor;
+         this.valueExtractor = valueExtractor;
+         this.comparator = comparator;
+      }
+
+      private void receive(T t) {
+         havePending = true;
+         pendingKey = keyExtractor.apply(t);
+         pendingValue = valueExtractor.apply(t);
+      }
+
+      @Override
+      public boolean tryAdvance(Consumer<? super Entry<K, Collection<V>>> action) {
+         if (!havePending && !source.tryAdvance(receiver)) {
+            return false;
+         }
+         K key = pendingKey;
+         List<V> values = new ArrayList<>();
+         values.add(pendingValue);
+         havePending = false;
+         while (source.tryAdvance(receiver)) {
+            int c = comparator.compare(key, pendingKey);
+            if (c > 0) {
+               throw new IllegalStateException(
+                     "stream is not sorted by key: " + pendingKey + " follows " + key);
+            } else if (c < 0) {
+               // start of the next group
+               break;
+            }
+            values.add(pendingValue);
+            havePending = false;
+         }
+         action.accept(new SimpleImmutableEntry<>(key, Collections.unmodifiableList(values)));
+         return true;
+      }
+
+      @Override
+      public Comparator<? super Entry<K, Collection<V>>> getComparator() {
+         return (e1, e2) -> comparator.compare(e1.getKey(), e2.getKey());
+      }
+   }
+
+   /**
+    * Merges two sequences of groups, both sorted by key.
+    *
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    *
+    * @param <K> the type of keys
+    * @param <V> the type of grouped values in the first sequence
+    * @param <W> the type of grouped values in the second sequence
+    * @param <X> the type of joined results
+    */
+   private static class MergeJoinSpliterator<K, V, W, X>
+         extends Spliterators.AbstractSpliterator<X> {
+      private final Spliterator<Entry<K, Collection<V>>> groups1;
+      private final Spliterator<Entry<K, Collection<W>>> groups2;
+      private final TriFunction<? super K, ? super Collection<V>, ? super Collection<W>,
+            ? extends X> combiner;
+      private final Comparator<? super K> comparator;
+      private Entry<K, Collection<V>> current1;
+      private Entry<K, Collection<W>> current2;
+      private boolean done1;
+      private boolean done2;
+
+      MergeJoinSpliterator(Spliterator<Entry<K, Collection<V>>> groups1,
+            Spliterator<Entry<K, Collection<W>>> groups2,
+            TriFunction<? super K, ? super Collection<V>, ? super Collection<W>,
+                  ? extends X> combiner,
+            Comparator<? super K> comparator) {
+         super(Long.MAX_VALUE, Spliterator.ORDERED);
+         this.groups1 = groups1;
+         this.groups2 = groups2;
+         this.combiner = combiner;
+         this.comparator = comparator;
+      }
+
+      @Override
+      public boolean tryAdvance(Consumer<? super X> action) {
+         if (current1 == null && !done1) {
+            done1 = !groups1.tryAdvance(e -> current1 = e);
+         }
+         if (current2 == null && !done2) {
+            done2 = !groups2.tryAdvance(e -> current2 = e);
+         }
+         X result;
+         if (current1 == null && current2 == null) {
+            return false;
+         } else if (current2 == null) {
+            result = combiner.apply(current1.getKey(), current1.getValue(),
+                  Collections.emptyList());
+            current1 = null;
+         } else if (current1 == null) {
+            result = combiner.apply(current2.getKey(), Collections.emptyList(),
+                  current2.getValue());
+            current2 = null;
+         } else {
+            int c = comparator.compare(current1.getKey(), current2.getKey());
+            if (c < 0) {
+               result = combiner.apply(current1.getKey(), current1.getValue(),
+                     Collections.emptyList());
+               current1 = null;
+            } else if (c > 0) {
+               result = combiner.apply(current2.getKey(), Collections.emptyList(),
+                     current2.getValue());
+               current2 = null;
+            } else {
+               result = combiner.apply(current1.getKey(), current1.getValue(),
+                     current2.getValue());
+               current1 = null;
+               current2 = null;
+            }
+         }
+         action.accept(result);
+         return true;
+      }
+   }
+}
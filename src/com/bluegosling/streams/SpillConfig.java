@@ -0,0 +1,183 @@
+package com.bluegosling.streams;
+
+import static java.util.Objects.requireNonNull;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Configures memory-bounded grouping operations on a {@link FluentStream}, like
+ * {@link FluentStream#groupBy(java.util.function.Function, java.util.function.Function,
+ * SpillConfig) groupBy}, {@link FluentStream#merge(java.util.stream.Stream,
+ * java.util.function.Function, java.util.function.Function, SpillConfig) merge}, and
+ * {@link FluentStream#join(java.util.stream.Stream, java.util.function.Function,
+ * java.util.function.Function, java.util.function.Function, java.util.function.Function,
+ * com.bluegosling.function.TriFunction, SpillConfig) join}.
+ *
+ * <p>These operations buffer values in memory, like their unbounded counterparts, until the
+ * number of buffered values exceeds the configured budget. At that point, buffered values are
+ * hash-partitioned by key and appended to temporary files, one per partition. Once the input is
+ * consumed, partitions are processed one at a time, so only one partition's values are held in
+ * memory at once. A partition that is still too large is itself re-partitioned, using a different
+ * hash function. This is the approach of a <em>grace hash join</em>.
+ *
+ * @author Joshua Humphries (jhumphries131@gmail.com)
+ */
+public final class SpillConfig {
+   private final long memoryBudget;
+   private final int numPartitions;
+   private final Path directory;
+   private final SpillSerializer serializer;
+
+   SpillConfig(long memoryBudget, int numPartitions, Path directory, SpillSerializer serializer) {
+      this.memoryBudget = memoryBudget;
+      this.numPartitions = numPartitions;
+      this.directory = directory;
+      this.serializer = serializer;
+   }
+
+   /**
+    * Returns a configuration with the given memory budget and defaults for all other settings.
+    *
+    * @param memoryBudget the maximum number of values to buffer in memory
+    * @return a configuration with the given memory budget
+    */
+   public static SpillConfig withMemoryBudget(long memoryBudget) {
+      return newBuilder().setMemoryBudget(memoryBudget).build();
+   }
+
+   /**
+    * Returns a new builder.
+    *
+    * @return a new builder
+    */
+   public static Builder newBuilder() {
+      return new Builder();
+   }
+
+   /**
+    * Returns the maximum number of values buffered in memory.
+    *
+    * @return the maximum number of values buffered in memory
+    */
+   public long memoryBudget() {
+      return memoryBudget;
+   }
+
+   /**
+    * Returns the number of partitions into which values are spilled.
+    *
+    * @return the number of partitions into which values are spilled
+    */
+   public int numPartitions() {
+      return numPartitions;
+   }
+
+   /**
+    * Returns the directory in which temporary files are created.
+    *
+    * @return the directory in which temporary files are created
+    */
+   public Path directory() {
+      return directory;
+   }
+
+   /**
+    * Returns the serializer used to write keys and values to temporary files.
+    *
+    * @return the serializer used to write keys and values to temporary files
+    */
+   public SpillSerializer serializer() {
+      return serializer;
+   }
+
+   @Override
+   public String toString() {
+      return "SpillConfig[memoryBudget=" + memoryBudget + ", numPartitions=" + numPartitions
+            + ", directory=" + directory + "]";
+   }
+
+   /**
+    * A builder of {@link SpillConfig} instances.
+    *
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    */
+   public static class Builder {
+      private long memoryBudget = 1 << 20;
+      private int numPartitions = 64;
+      private Path directory;
+      private SpillSerializer serializer = SpillSerializer.javaSerialization();
+
+      Builder() {
+      }
+
+      /**
+       * Sets the memory budget, as the maximum number of values to buffer in memory. Since the
+       * sizes of arbitrary objects cannot be measured cheaply, the budget is a count of values.
+       * Operations that consume two streams, like joins, count values from both against the
+       * budget. If not set, the budget is 2<sup>20</sup> values.
+       *
+       * @param memoryBudget the maximum number of values to buffer in memory
+       * @return {@code this}, for method chaining
+       * @throws IllegalArgumentException if the given budget is not positive
+       */
+      public Builder setMemoryBudget(long memoryBudget) {
+         if (memoryBudget <= 0) {
+            throw new IllegalArgumentException("memory budget must be positive");
+         }
+         this.memoryBudget = memoryBudget;
+         return this;
+      }
+
+      /**
+       * Sets the number of partitions into which values are spilled. If not set, 64 partitions
+       * are used.
+       *
+       * @param numPartitions the number of partitions
+       * @return {@code this}, for method chaining
+       * @throws IllegalArgumentException if the given number is less than two
+       */
+      public Builder setNumPartitions(int numPartitions) {
+         if (numPartitions < 2) {
+            throw new IllegalArgumentException("number of partitions must be >= 2");
+         }
+         this.numPartitions = numPartitions;
+         return this;
+      }
+
+      /**
+       * Sets the directory in which temporary files are created. If not set, the system's default
+       * temporary directory (per the {@code java.io.tmpdir} system property) is used.
+       *
+       * @param directory the directory in which temporary files are created
+       * @return {@code this}, for method chaining
+       */
+      public Builder setDirectory(Path directory) {
+         this.directory = requireNonNull(directory);
+         return this;
+      }
+
+      /**
+       * Sets the serializer used to write keys and values to temporary files. If not set,
+       * {@linkplain SpillSerializer#javaSerialization() Java serialization} is used.
+       *
+       * @param serializer the serializer
+       * @return {@code this}, for method chaining
+       */
+      public Builder setSerializer(SpillSerializer serializer) {
+         this.serializer = requireNonNull(serializer);
+         return this;
+      }
+
+      /**
+       * Builds a configuration from the current settings.
+       *
+       * @return a new configuration
+       */
+      public SpillConfig build() {
+         return new SpillConfig(memoryBudget, numPartitions,
+               directory != null ? directory : Paths.get(System.getProperty("java.io.tmpdir")),
+               serializer);
+      }
+   }
+}
@@ -0,0 +1,45 @@
+package com.bluegosling.streams;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Serializes keys and values that are spilled to disk by memory-bounded grouping operations. The
+ * same serializer is used for all keys and values of an operation, so it must be able to handle
+ * any of them.
+ *
+ * @author Joshua Humphries (jhumphries131@gmail.com)
+ *
+ * @see SpillConfig.Builder#setSerializer(SpillSerializer)
+ */
+public interface SpillSerializer {
+   /**
+    * Writes the given value to the given output.
+    *
+    * @param value a value, which may be {@code null}
+    * @param out the output to which the value is written
+    * @throws IOException if writing to the given output fails
+    */
+   void write(Object value, DataOutput out) throws IOException;
+
+   /**
+    * Reads a value from the given input. The input is positioned at the start of a value that was
+    * written by {@link #write(Object, DataOutput)}.
+    *
+    * @param in the input from which the value is read
+    * @return the value read
+    * @throws IOException if reading from the given input fails
+    */
+   Object read(DataInput in) throws IOException;
+
+   /**
+    * Returns a serializer that uses standard Java serialization. All keys and values must be
+    * {@linkplain java.io.Serializable serializable}. This is the default serializer.
+    *
+    * @return a serializer that uses standard Java serialization
+    */
+   static SpillSerializer javaSerialization() {
+      return JavaSpillSerializer.INSTANCE;
+   }
+}
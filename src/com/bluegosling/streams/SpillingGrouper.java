@@ -0,0 +1,376 @@
+package com.bluegosling.streams;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Groups values by key, using a bounded amount of memory. This backs the operations on
+ * {@link FluentStream} that accept a {@link SpillConfig}. Values are added for one or more
+ * <em>sides</em>, where each side is a separate input (e.g. the two streams in a join). Keys are
+ * grouped across all sides, so the values for a given key, from all sides, are always emitted
+ * together.
+ *
+ * <p>Values are buffered in memory until the configured budget is exceeded, at which point all
+ * buffered values are hash-partitioned and appended to temporary files. Once all values have been
+ * added, the groups are {@linkplain #finish() emitted} in chunks, one partition at a time. A
+ * partition that exceeds the budget is re-partitioned, with a different hash function, before it
+ * is loaded. The values for a single key are never split across chunks, so a key with more values
+ * than the budget is eventually loaded anyway.
+ *
+ * <p>Values for a key are emitted in the order they were added. Temporary files are deleted as
+ * soon as their partitions are loaded, and all remaining files are deleted when the grouper is
+ * {@linkplain #close() closed}.
+ *
+ * @author Joshua Humphries (jhumphries131@gmail.com)
+ */
+final class SpillingGrouper implements Closeable {
+   /**
+    * The maximum number of times a partition is recursively re-partitioned.
+    */
+   private static final int MAX_LEVELS = 4;
+
+   private final SpillConfig config;
+   private final int numSides;
+   private final List<Map<Object, List<Object>>> buffers;
+   private final Set<Partition> live = new LinkedHashSet<>();
+   private long buffered;
+   private Partition[] partitions;
+   private Path directory;
+   private int fileCount;
+   private boolean finished;
+
+   SpillingGrouper(SpillConfig config, int numSides) {
+      this.config = config;
+      this.numSides = numSides;
+      this.buffers = new ArrayList<>(numSides);
+      for (int i = 0; i < numSides; i++) {
+         buffers.add(new HashMap<>());
+      }
+   }
+
+   /**
+    * Adds a value for the given side.
+    *
+    * @param side the side that produced the value
+    * @param key the value's grouping key
+    * @param value the value
+    * @throws UncheckedIOException if spilling to disk fails
+    */
+   synchronized void add(int side, Object key, Object value) {
+      if (finished) {
+         throw new IllegalStateException("grouper already finished");
+      }
+      buffers.get(side).computeIfAbsent(key, k -> new ArrayList<>()).add(value);
+      if (++buffered > config.memoryBudget()) {
+         spillBuffers();
+      }
+   }
+
+   /**
+    * Returns true if any values have been spilled to disk.
+    *
+    * @return true if any values have been spilled to disk
+    */
+   synchronized boolean hasSpilled() {
+      return partitions != null;
+   }
+
+   /**
+    * Finishes adding values and returns the groups. Each chunk in the returned iterator contains
+    * one map per side, each map from keys to all of the side's values for that key. A key in a
+    * chunk appears in no other chunk. If nothing was spilled to disk, there is just one chunk.
+    *
+    * @return the groups, in chunks
+    * @throws UncheckedIOException if spilling to disk fails
+    */
+   synchronized Iterator<List<Map<Object, List<Object>>>> finish() {
+      if (finished) {
+         throw new IllegalStateException("grouper already finished");
+      }
+      finished = true;
+      if (partitions == null) {
+         return Collections.singletonList(buffers).iterator();
+      }
+      spillBuffers();
+      Deque<Partition> pending = new ArrayDeque<>();
+      for (Partition p : partitions) {
+         p.closeOutputs();
+         if (p.count > 0) {
+            pending.add(p);
+         } else {
+            p.delete();
+         }
+      }
+      partitions = null;
+      return new Iterator<List<Map<Object, List<Object>>>>() {
+         @Override
+         public boolean hasNext() {
+            return !pending.isEmpty();
+         }
+
+         @Override
+         public List<Map<Object, List<Object>>> next() {
+            while (true) {
+               Partition p = pending.pollFirst();
+               if (p == null) {
+                  throw new NoSuchElementException();
+               }
+               if (p.count > config.memoryBudget() && p.splittable
+                     && p.level + 1 < MAX_LEVELS) {
+                  Partition[] subs = p.split();
+                  // push non-empty sub-partitions to the front, preserving their order
+                  for (int i = subs.length - 1; i >= 0; i--) {
+                     Partition s = subs[i];
+                     if (s.count == 0) {
+                        s.delete();
+                        continue;
+                     }
+                     if (s.count == p.count) {
+                        // all values have the same hash, so splitting again won't help
+                        s.splittable = false;
+                     }
+                     pending.addFirst(s);
+                  }
+                  continue;
+               }
+               return p.load();
+            }
+         }
+      };
+   }
+
+   @Override
+   public synchronized void close() {
+      finished = true;
+      buffers.clear();
+      IOException failure = null;
+      for (Partition p : new ArrayList<>(live)) {
+         try {
+            p.closeOutputs();
+            p.delete();
+         } catch (UncheckedIOException e) {
+            if (failure == null) {
+               failure = e.getCause();
+            } else {
+               failure.addSuppressed(e.getCause());
+            }
+         }
+      }
+      if (directory != null) {
+         try {
+            Files.deleteIfExists(directory);
+         } catch (IOException e) {
+            if (failure == null) {
+               failure = e;
+            } else {
+               failure.addSuppressed(e);
+            }
+         }
+      }
+      if (failure != null) {
+         throw new UncheckedIOException(failure);
+      }
+   }
+
+   private void spillBuffers() {
+      if (partitions == null) {
+         partitions = newPartitions(0);
+      }
+      for (int side = 0; side < numSides; side++) {
+         Map<Object, List<Object>> buffer = buffers.get(side);
+         for (Entry<Object, List<Object>> entry : buffer.entrySet()) {
+            Object key = entry.getKey();
+            partitions[partitionIndex(key, 0)].write(side, key, entry.getValue());
+         }
+         buffer.clear();
+      }
+      buffered = 0;
+   }
+
+   private Partition[] newPartitions(int level) {
+      Partition[] ret = new Partition[config.numPartitions()];
+      for (int i = 0; i < ret.length; i++) {
+         ret[i] = new Partition(level);
+      }
+      return ret;
+   }
+
+   /**
+    * Computes the partition for the given key. The key's hash code is mixed with the level, so
+    * that keys that collide at one level are re-distributed at the next.
+    */
+   private int partitionIndex(Object key, int level) {
+      int h = key == null ? 0 : key.hashCode();
+      h ^= level * 0x9e3779b9;
+      h *= 0x85ebca6b;
+      h ^= h >>> 13;
+      h *= 0xc2b2ae35;
+      h ^= h >>> 16;
+      return Math.floorMod(h, config.numPartitions());
+   }
+
+   private Path newFile() throws IOException {
+      if (directory == null) {
+         directory = Files.createTempDirectory(config.directory(), "fluent-stream-spill");
+      }
+      return directory.resolve(String.valueOf(fileCount++));
+   }
+
+   /**
+    * A partition of spilled values. A partition has one file per side, each of which contains a
+    * sequence of groups: a key, a count, and then that many values.
+    *
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    */
+   private class Partition {
+      final int level;
+      final Path[] files = new Path[numSides];
+      final DataOutputStream[] outputs = new DataOutputStream[numSides];
+      final int[] numGroups = new int[numSides];
+      long count;
+      boolean splittable = true;
+
+      Partition(int level) {
+         this.level = level;
+         live.add(this);
+      }
+
+      void write(int side, Object key, List<Object> values) {
+         SpillSerializer serializer = config.serializer();
+         try {
+            DataOutputStream out = outputs[side];
+            if (out == null) {
+               Path f = files[side] = newFile();
+               out = outputs[side] = new DataOutputStream(
+                     new BufferedOutputStream(Files.newOutputStream(f)));
+            }
+            serializer.write(key, out);
+            out.writeInt(values.size());
+            for (Object v : values) {
+               serializer.write(v, out);
+            }
+         } catch (IOException e) {
+            throw new UncheckedIOException(e);
+         }
+         numGroups[side]++;
+         count += values.size();
+      }
+
+      void closeOutputs() {
+         try {
+            for (int i = 0; i < numSides; i++) {
+               if (outputs[i] != null) {
+                  outputs[i].close();
+                  outputs[i] = null;
+               }
+            }
+         } catch (IOException e) {
+            throw new UncheckedIOException(e);
+         }
+      }
+
+      void delete() {
+         try {
+            for (int i = 0; i < numSides; i++) {
+               if (files[i] != null) {
+                  Files.deleteIfExists(files[i]);
+                  files[i] = null;
+               }
+            }
+         } catch (IOException e) {
+            throw new UncheckedIOException(e);
+         }
+         live.remove(this);
+      }
+
+      /**
+       * Reads the groups in the given side's file, passing each one to the given consumer.
+       */
+      private void readGroups(int side, GroupConsumer consumer) throws IOException {
+         if (files[side] == null) {
+            return;
+         }
+         SpillSerializer serializer = config.serializer();
+         try (DataInputStream in = new DataInputStream(
+               new BufferedInputStream(Files.newInputStream(files[side])))) {
+            for (int g = 0; g < numGroups[side]; g++) {
+               Object key = serializer.read(in);
+               int n = in.readInt();
+               List<Object> values = new ArrayList<>(n);
+               for (int i = 0; i < n; i++) {
+                  values.add(serializer.read(in));
+               }
+               consumer.accept(key, values);
+            }
+         }
+      }
+
+      Partition[] split() {
+         Partition[] subs = newPartitions(level + 1);
+         try {
+            for (int side = 0; side < numSides; side++) {
+               int s = side;
+               readGroups(side,
+                     (key, values) -> subs[partitionIndex(key, level + 1)].write(s, key, values));
+            }
+         } catch (IOException e) {
+            throw new UncheckedIOException(e);
+         } finally {
+            for (Partition sub : subs) {
+               sub.closeOutputs();
+            }
+         }
+         delete();
+         return subs;
+      }
+
+      List<Map<Object, List<Object>>> load() {
+         List<Map<Object, List<Object>>> maps = new ArrayList<>(numSides);
+         try {
+            for (int side = 0; side < numSides; side++) {
+               Map<Object, List<Object>> map = new HashMap<>();
+               readGroups(side, (key, values) -> {
+                  List<Object> existing = map.putIfAbsent(key, values);
+                  if (existing != null) {
+                     existing.addAll(values);
+                  }
+               });
+               maps.add(map);
+            }
+         } catch (IOException e) {
+            throw new UncheckedIOException(e);
+         }
+         delete();
+         return maps;
+      }
+   }
+
+   /**
+    * Accepts a group read from a spill file.
+    *
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    */
+   @FunctionalInterface
+   private interface GroupConsumer {
+      void accept(Object key, List<Object> values);
+   }
+}
@@ -2,6 +2,9 @@ package com.bluegosling.streams;
 
 import java.util.Spliterator;
 import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
 
 /**
  * A node in a stream pipeline. A pipeline consists of one or more "stages" (aka
@@ -57,4 +60,115 @@ public interface StreamNode<T, U> {
        */
       boolean getUpstream(Consumer<? super T> action);
    }
+
+   /**
+    * A node in a {@link FluentIntStream} pipeline. This is the same as a {@link StreamNode},
+    * except that it consumes and produces {@code int} values without boxing them.
+    * 
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    */
+   @FunctionalInterface
+   public interface OfInt {
+      /**
+       * Called by a downstream consumer to pull an element from this node.
+       * 
+       * @param upstream the upstream producer
+       * @param action the downstream consumer
+       * @return true if an element was pushed to the consumer or false if there is no more data
+       * @see StreamNode#getNext(StreamNode.Upstream, Consumer)
+       */
+      boolean getNext(Upstream upstream, IntConsumer action);
+
+      /**
+       * The interface used to pull {@code int} values from an upstream node.
+       * 
+       * @author Joshua Humphries (jhumphries131@gmail.com)
+       */
+      @FunctionalInterface
+      public interface Upstream {
+         /**
+          * Gets the next element from the upstream producer.
+          * 
+          * @param action the consumer of the element
+          * @return true if data was fetched and supplied to the given consumer; false if there is
+          *       no more data
+          * @see StreamNode.Upstream#getUpstream(Consumer)
+          */
+         boolean getUpstream(IntConsumer action);
+      }
+   }
+
+   /**
+    * A node in a {@link FluentLongStream} pipeline. This is the same as a {@link StreamNode},
+    * except that it consumes and produces {@code long} values without boxing them.
+    * 
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    */
+   @FunctionalInterface
+   public interface OfLong {
+      /**
+       * Called by a downstream consumer to pull an element from this node.
+       * 
+       * @param upstream the upstream producer
+       * @param action the downstream consumer
+       * @return true if an element was pushed to the consumer or false if there is no more data
+       * @see StreamNode#getNext(StreamNode.Upstream, Consumer)
+       */
+      boolean getNext(Upstream upstream, LongConsumer action);
+
+      /**
+       * The interface used to pull {@code long} values from an upstream node.
+       * 
+       * @author Joshua Humphries (jhumphries131@gmail.com)
+       */
+      @FunctionalInterface
+      public interface Upstream {
+         /**
+          * Gets the next element from the upstream producer.
+          * 
+          * @param action the consumer of the element
+          * @return true if data was fetched and supplied to the given consumer; false if there is
+          *       no more data
+          * @see StreamNode.Upstream#getUpstream(Consumer)
+          */
+         boolean getUpstream(LongConsumer action);
+      }
+   }
+
+   /**
+    * A node in a {@link FluentDoubleStream} pipeline. This is the same as a {@link StreamNode},
+    * except that it consumes and produces {@code double} values without boxing them.
+    * 
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    */
+   @FunctionalInterface
+   public interface OfDouble {
+      /**
+       * Called by a downstream consumer to pull an element from this node.
+       * 
+       * @param upstream the upstream producer
+       * @param action the downstream consumer
+       * @return true if an element was pushed to the consumer or false if there is no more data
+       * @see StreamNode#getNext(StreamNode.Upstream, Consumer)
+       */
+      boolean getNext(Upstream upstream, DoubleConsumer action);
+
+      /**
+       * The interface used to pull {@code double} values from an upstream node.
+       * 
+       * @author Joshua Humphries (jhumphries131@gmail.com)
+       */
+      @FunctionalInterface
+      public interface Upstream {
+         /**
+          * Gets the next element from the upstream producer.
+          * 
+          * @param action the consumer of the element
+          * @return true if data was fetched and supplied to the given consumer; false if there is
+          *       no more data
+          * @see StreamNode.Upstream#getUpstream(Consumer)
+          */
+         boolean getUpstream(DoubleConsumer action);
+      }
+   }
 }
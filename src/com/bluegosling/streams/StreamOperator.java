@@ -1,5 +1,9 @@
 package com.bluegosling.streams;
 
+import java.util.function.Function;
+
+import com.bluegosling.concurrent.fluent.FluentFuture;
+
 /**
  * A stream operator provides a simple intermediate operation, or stage, in a stream. These are
  * non-terminal operations that accept data produced by the upstream operation, perform some sort
@@ -66,4 +70,224 @@ public interface StreamOperator<T, U> extends AutoCloseable {
     * @return a node that will process data in the stream
     */
    StreamNode<T, U> createNode();
+
+   /**
+    * Returns an operator that maps each element to a future and emits the futures' results, in the
+    * same order as the upstream elements. Up to the given number of futures are outstanding at
+    * once, so the latency of asynchronous operations can overlap, even in a sequential stream. In
+    * a parallel stream, the limit applies to each thread that processes the stream.
+    * 
+    * <p>If a future fails, its cause is thrown from the stream, wrapped in a
+    * {@link java.util.concurrent.CompletionException}, and all other outstanding futures are
+    * cancelled. If a future is cancelled, a {@link java.util.concurrent.CancellationException} is
+    * thrown. Outstanding futures are also cancelled when the stream is closed.
+    * 
+    * @param mapper a function that starts an asynchronous operation for each element
+    * @param maxInFlight the maximum number of outstanding futures
+    * @return an operator that emits the results of asynchronous operations, in order
+    * @throws IllegalArgumentException if the given maximum is not positive
+    */
+   static <T, U> StreamOperator<T, U> mapAsync(
+         Function<? super U, ? extends FluentFuture<? extends T>> mapper, int maxInFlight) {
+      return new AsyncMapOperator<>(mapper, maxInFlight, true);
+   }
+
+   /**
+    * Returns an operator that maps each element to a future and emits the futures' results, in the
+    * order that the futures complete. This is otherwise the same as
+    * {@link #mapAsync(Function, int)}. Since a slow operation does not hold up the results of
+    * those that follow, this can achieve greater throughput.
+    * 
+    * @param mapper a function that starts an asynchronous operation for each element
+    * @param maxInFlight the maximum number of outstanding futures
+    * @return an operator that emits the results of asynchronous operations as they complete
+    * @throws IllegalArgumentException if the given maximum is not positive
+    */
+   static <T, U> StreamOperator<T, U> mapAsyncUnordered(
+         Function<? super U, ? extends FluentFuture<? extends T>> mapper, int maxInFlight) {
+      return new AsyncMapOperator<>(mapper, maxInFlight, false);
+   }
+
+   /**
+    * A stream operator for a {@link FluentIntStream}. This is the same as a
+    * {@link StreamOperator}, except that it consumes and produces {@code int} values without
+    * boxing them.
+    * 
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    */
+   @FunctionalInterface
+   public interface OfInt extends AutoCloseable {
+      /**
+       * Performs initialization needed prior to processing the stream. The default implementation
+       * does nothing.
+       * 
+       * @see StreamOperator#startStream()
+       */
+      default void startStream() {
+      }
+
+      /**
+       * Performs clean-up needed after processing of the stream completes. The default
+       * implementation does nothing.
+       * 
+       * @see StreamOperator#close()
+       */
+      @Override
+      default void close() throws Exception {
+      }
+
+      /**
+       * Adjusts the input characteristics, returning the output characteristics. The default
+       * implementation returns the given characteristics unchanged.
+       * 
+       * @param upstreamCharacteristics the characteristics of the upstream stage
+       * @return the characteristics of the data that this stage provides
+       * @see StreamOperator#spliteratorCharacteristics(int)
+       */
+      default int spliteratorCharacteristics(int upstreamCharacteristics) {
+         return upstreamCharacteristics;
+      }
+
+      /**
+       * Adjusts the estimated size of the data source. The default implementation returns the
+       * given estimate unchanged.
+       * 
+       * @param upstreamEstimatedSize the estimated size of the upstream stage
+       * @return the estimated size of the data that this stage provides
+       * @see StreamOperator#spliteratorEstimatedSize(long)
+       */
+      default long spliteratorEstimatedSize(long upstreamEstimatedSize) {
+         return upstreamEstimatedSize;
+      }
+
+      /**
+       * Constructs a node that will process data in the stream.
+       * 
+       * @return a node that will process data in the stream
+       * @see StreamOperator#createNode()
+       */
+      StreamNode.OfInt createNode();
+   }
+
+   /**
+    * A stream operator for a {@link FluentLongStream}. This is the same as a
+    * {@link StreamOperator}, except that it consumes and produces {@code long} values without
+    * boxing them.
+    * 
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    */
+   @FunctionalInterface
+   public interface OfLong extends AutoCloseable {
+      /**
+       * Performs initialization needed prior to processing the stream. The default implementation
+       * does nothing.
+       * 
+       * @see StreamOperator#startStream()
+       */
+      default void startStream() {
+      }
+
+      /**
+       * Performs clean-up needed after processing of the stream completes. The default
+       * implementation does nothing.
+       * 
+       * @see StreamOperator#close()
+       */
+      @Override
+      default void close() throws Exception {
+      }
+
+      /**
+       * Adjusts the input characteristics, returning the output characteristics. The default
+       * implementation returns the given characteristics unchanged.
+       * 
+       * @param upstreamCharacteristics the characteristics of the upstream stage
+       * @return the characteristics of the data that this stage provides
+       * @see StreamOperator#spliteratorCharacteristics(int)
+       */
+      default int spliteratorCharacteristics(int upstreamCharacteristics) {
+         return upstreamCharacteristics;
+      }
+
+      /**
+       * Adjusts the estimated size of the data source. The default implementation returns the
+       * given estimate unchanged.
+       * 
+       * @param upstreamEstimatedSize the estimated size of the upstream stage
+       * @return the estimated size of the data that this stage provides
+       * @see StreamOperator#spliteratorEstimatedSize(long)
+       */
+      default long spliteratorEstimatedSize(long upstreamEstimatedSize) {
+         return upstreamEstimatedSize;
+      }
+
+      /**
+       * Constructs a node that will process data in the stream.
+       * 
+       * @return a node that will process data in the stream
+       * @see StreamOperator#createNode()
+       */
+      StreamNode.OfLong createNode();
+   }
+
+   /**
+    * A stream operator for a {@link FluentDoubleStream}. This is the same as a
+    * {@link StreamOperator}, except that it consumes and produces {@code double} values without
+    * boxing them.
+    * 
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    */
+   @FunctionalInterface
+   public interface OfDouble extends AutoCloseable {
+      /**
+       * Performs initialization needed prior to processing the stream. The default implementation
+       * does nothing.
+       * 
+       * @see StreamOperator#startStream()
+       */
+      default void startStream() {
+      }
+
+      /**
+       * Performs clean-up needed after processing of the stream completes. The default
+       * implementation does nothing.
+       * 
+       * @see StreamOperator#close()
+       */
+      @Override
+      default void close() throws Exception {
+      }
+
+      /**
+       * Adjusts the input characteristics, returning the output characteristics. The default
+       * implementation returns the given characteristics unchanged.
+       * 
+       * @param upstreamCharacteristics the characteristics of the upstream stage
+       * @return the characteristics of the data that this stage provides
+       * @see StreamOperator#spliteratorCharacteristics(int)
+       */
+      default int spliteratorCharacteristics(int upstreamCharacteristics) {
+         return upstreamCharacteristics;
+      }
+
+      /**
+       * Adjusts the estimated size of the data source. The default implementation returns the
+       * given estimate unchanged.
+       * 
+       * @param upstreamEstimatedSize the estimated size of the upstream stage
+       * @return the estimated size of the data that this stage provides
+       * @see StreamOperator#spliteratorEstimatedSize(long)
+       */
+      default long spliteratorEstimatedSize(long upstreamEstimatedSize) {
+         return upstreamEstimatedSize;
+      }
+
+      /**
+       * Constructs a node that will process data in the stream.
+       * 
+       * @return a node that will process data in the stream
+       * @see StreamOperator#createNode()
+       */
+      StreamNode.OfDouble createNode();
+   }
 }
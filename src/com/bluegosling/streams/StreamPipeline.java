@@ -102,7 +102,7 @@ abstract class StreamPipeline<S, U, T> implements FluentStream<T> {
     * is consumed and the new Head represents the resulting new source that is emitted to any
     * subsequent operations). And Tail is used to execute many kinds of terminal operations. Some
     * terminal operations have bespoke and simpler implementations that do not require an instance
-    * of Tail. The Tail class will submit processing to the ForkJoinPool#commonPool if the stream is
+    * of Tail. The Tail class will submit processing to the stream's ForkJoinPool if the stream is
     * parallel, using a simple divide-and-conquer recursive task that involves splitting the source
     * spliterator and having each leaf ForkJoinTask process a split.
     * 
@@ -218,6 +218,24 @@ abstract class StreamPipeline<S, U, T> implements FluentStream<T> {
     */
    abstract Upstream<T> doAsUpstream(Spliterator<? extends S> source);
 
+   /**
+    * Pushes all remaining elements of the given source through this stage to the given action, in
+    * a single loop, instead of pulling them one at a time via {@link #asUpstream(Spliterator)}.
+    * This is only possible if no stage between the source and this one is stateful or can
+    * short-circuit. If this stage cannot push, it returns false without consuming any elements,
+    * and the caller must pull them instead.
+    * 
+    * <p>The default implementation returns false.
+    * 
+    * @param source the source of data to be used
+    * @param action the action that receives the elements emitted by this stage
+    * @return true if all remaining elements were pushed to the given action; false if this stage
+    *       cannot push elements
+    */
+   boolean pushRemaining(Spliterator<? extends S> source, Consumer<? super T> action) {
+      return false;
+   }
+
    /**
     * Returns the characteristics of the stream's source spliterator.
     * 
@@ -255,69 +273,69 @@ abstract class StreamPipeline<S, U, T> implements FluentStream<T> {
    abstract Comparator<? super T> spliteratorComparator();
 
    @Override
-   public IntStream mapToInt(ToIntFunction<? super T> mapper) {
+   public FluentIntStream mapToInt(ToIntFunction<? super T> mapper) {
       checkState();
       linked = true;
-      return StreamSupport
+      return new IntStreamPipeline(StreamSupport
             .intStream(
-                  () -> MoreSpliterators.mapToInt(basicSpliterator(), mapper),
+                  () -> MoreSpliterators.mapToInt(autoStartSpliterator(), mapper),
                   spliteratorCharacteristics(),
                   isParallel())
-            .onClose(this::close);
+            .onClose(this::close), pool());
    }
 
    @Override
-   public LongStream mapToLong(ToLongFunction<? super T> mapper) {
+   public FluentLongStream mapToLong(ToLongFunction<? super T> mapper) {
       checkState();
       linked = true;
-      return StreamSupport
+      return new LongStreamPipeline(StreamSupport
             .longStream(
-                  () -> MoreSpliterators.mapToLong(basicSpliterator(), mapper),
+                  () -> MoreSpliterators.mapToLong(autoStartSpliterator(), mapper),
                   spliteratorCharacteristics(),
                   isParallel())
-            .onClose(this::close);
+            .onClose(this::close), pool());
    }
 
    @Override
-   public DoubleStream mapToDouble(ToDoubleFunction<? super T> mapper) {
+   public FluentDoubleStream mapToDouble(ToDoubleFunction<? super T> mapper) {
       checkState();
       linked = true;
-      return StreamSupport
+      return new DoubleStreamPipeline(StreamSupport
             .doubleStream(
-                  () -> MoreSpliterators.mapToDouble(spliterator(), mapper),
+                  () -> MoreSpliterators.mapToDouble(autoStartSpliterator(), mapper),
                   spliteratorCharacteristics(),
                   isParallel())
-            .onClose(this::close);
+            .onClose(this::close), pool());
    }
 
    @Override
-   public IntStream flatMapToInt(Function<? super T, ? extends IntStream> mapper) {
+   public FluentIntStream flatMapToInt(Function<? super T, ? extends IntStream> mapper) {
       checkState();
       linked = true;
-      return StreamSupport
-            .stream(this::spliterator, spliteratorCharacteristics(), isParallel())
+      return new IntStreamPipeline(StreamSupport
+            .stream(this::autoStartSpliterator, spliteratorCharacteristics(), isParallel())
             .flatMapToInt(mapper)
-            .onClose(this::close);
+            .onClose(this::close), pool());
    }
    
    @Override
-   public LongStream flatMapToLong(Function<? super T, ? extends LongStream> mapper) {
+   public FluentLongStream flatMapToLong(Function<? super T, ? extends LongStream> mapper) {
       checkState();
       linked = true;
-      return StreamSupport
-            .stream(this::spliterator, spliteratorCharacteristics(), isParallel())
+      return new LongStreamPipeline(StreamSupport
+            .stream(this::autoStartSpliterator, spliteratorCharacteristics(), isParallel())
             .flatMapToLong(mapper)
-            .onClose(this::close);
+            .onClose(this::close), pool());
    }
 
    @Override
-   public DoubleStream flatMapToDouble(Function<? super T, ? extends DoubleStream> mapper) {
+   public FluentDoubleStream flatMapToDouble(Function<? super T, ? extends DoubleStream> mapper) {
       checkState();
       linked = true;
-      return StreamSupport
-            .stream(this::spliterator, spliteratorCharacteristics(), isParallel())
+      return new DoubleStreamPipeline(StreamSupport
+            .stream(this::autoStartSpliterator, spliteratorCharacteristics(), isParallel())
             .flatMapToDouble(mapper)
-            .onClose(this::close);
+            .onClose(this::close), pool());
    }
 
    @Override
@@ -331,6 +349,7 @@ abstract class StreamPipeline<S, U, T> implements FluentStream<T> {
    public void forEachOrdered(Consumer<? super T> action) {
       if ((spliteratorCharacteristics() & Spliterator.ORDERED) == 0) {
          forEach(action);
+         return;
       }
       checkState();
       collect(Collectors.toList()).forEach(action);
@@ -411,7 +430,7 @@ abstract class StreamPipeline<S, U, T> implements FluentStream<T> {
       if ((spliteratorCharacteristics() & Spliterator.SIZED) != 0) {
          start();
          try {
-            return spliterator().estimateSize();
+            return basicSpliterator().estimateSize();
          } finally {
             close();
          }
@@ -709,18 +728,31 @@ abstract class StreamPipeline<S, U, T> implements FluentStream<T> {
       return predecessor.isParallel();
    }
 
+   /**
+    * Returns the pool used to process the stream in parallel. Unless the stream was configured
+    * with a {@linkplain #parallel(ForkJoinPool) custom pool}, this is the
+    * {@linkplain ForkJoinPool#commonPool() common pool}.
+    * 
+    * @return the pool used to process the stream in parallel
+    */
+   ForkJoinPool pool() {
+      return predecessor.pool();
+   }
+
    @Override
    public void close() {
       if (closed.compareAndSet(false, true)) {
          Throwable th = null;
-         for (Runnable r : onClose) {
-            try {
-               r.run();
-            } catch (Throwable t) {
-               if (th == null) {
-                  th = t;
-               } else if (th != t) {
-                  th.addSuppressed(t);
+         if (onClose != null) {
+            for (Runnable r : onClose) {
+               try {
+                  r.run();
+               } catch (Throwable t) {
+                  if (th == null) {
+                     th = t;
+                  } else if (th != t) {
+                     th.addSuppressed(t);
+                  }
                }
             }
          }
@@ -753,6 +785,12 @@ abstract class StreamPipeline<S, U, T> implements FluentStream<T> {
       return this;
    }
 
+   @Override
+   public FluentStream<T> parallel(ForkJoinPool pool) {
+      predecessor.parallel(pool);
+      return this;
+   }
+
    @Override
    public FluentStream<T> unordered() {
       if ((spliteratorCharacteristics() & Spliterator.ORDERED) == 0) {
@@ -764,6 +802,11 @@ abstract class StreamPipeline<S, U, T> implements FluentStream<T> {
             return predecessor.doAsUpstream(source);
          }
 
+         @Override
+         boolean pushRemaining(Spliterator<? extends S> source, Consumer<? super T> action) {
+            return predecessor.pushRemaining(source, action);
+         }
+
          @Override
          int spliteratorCharacteristics() {
             return spliteratorCharacteristics(predecessor.spliteratorCharacteristics());
@@ -798,18 +841,10 @@ abstract class StreamPipeline<S, U, T> implements FluentStream<T> {
    @Override
    public FluentStream<T> filter(Predicate<? super T> predicate) {
       checkState();
-      return new Intermediate<>(this,
-            () -> new AbstractStreamNode<T, T>() {
-               @Override
-               public boolean getNext(Upstream<T> upstream, Consumer<? super T> action) {
-                  while (nextUpstream(upstream)) {
-                     T t = latestUpstream();
-                     if (predicate.test(t)) {
-                        action.accept(t);
-                        return true;
-                     }
-                  }
-                  return false;
+      return new StatelessIntermediate<S, T, T>(this,
+            downstream -> t -> {
+               if (predicate.test(t)) {
+                  downstream.accept(t);
                }
             },
             ch -> ch & ~(Spliterator.SIZED | Spliterator.SUBSIZED),
@@ -819,17 +854,8 @@ abstract class StreamPipeline<S, U, T> implements FluentStream<T> {
    @Override
    public <R> FluentStream<R> map(Function<? super T, ? extends R> mapper) {
       checkState();
-      return new Intermediate<>(this,
-            () -> new AbstractStreamNode<R, T>() {
-               @Override
-               public boolean getNext(Upstream<T> upstream, Consumer<? super R> action) {
-                  if (nextUpstream(upstream)) {
-                     action.accept(mapper.apply(latestUpstream()));
-                     return true;
-                  }
-                  return false;
-               }
-            },
+      return new StatelessIntermediate<S, T, R>(this,
+            downstream -> t -> downstream.accept(mapper.apply(t)),
             ch -> ch & ~(Spliterator.DISTINCT | Spliterator.SORTED | Spliterator.NONNULL),
             LongUnaryOperator.identity());
    }
@@ -928,18 +954,10 @@ abstract class StreamPipeline<S, U, T> implements FluentStream<T> {
    @Override
    public FluentStream<T> peek(Consumer<? super T> peeker) {
       checkState();
-      return new Intermediate<>(this,
-            () -> new AbstractStreamNode<T, T>() {
-               @Override
-               public boolean getNext(Upstream<T> upstream, Consumer<? super T> action) {
-                  if (nextUpstream(upstream)) {
-                     T t = latestUpstream();
-                     peeker.accept(t);
-                     action.accept(t);
-                     return true;
-                  }
-                  return false;
-               }
+      return new StatelessIntermediate<S, T, T>(this,
+            downstream -> t -> {
+               peeker.accept(t);
+               downstream.accept(t);
             },
             IntUnaryOperator.identity(),
             LongUnaryOperator.identity());
@@ -1156,7 +1174,17 @@ abstract class StreamPipeline<S, U, T> implements FluentStream<T> {
    public Supplier<FluentStream<T>> fork(int numForks) {
       checkState();
       linked = true;
-      Supplier<Spliterator<T>> forks = MoreSpliterators.fork(basicSpliterator(), 2);
+      return forkedHeads(MoreSpliterators.fork(basicSpliterator(), numForks));
+   }
+
+   @Override
+   public Supplier<FluentStream<T>> fork(int numForks, int bufferSize) {
+      checkState();
+      linked = true;
+      return forkedHeads(MoreSpliterators.fork(basicSpliterator(), numForks, bufferSize));
+   }
+   
+   private Supplier<FluentStream<T>> forkedHeads(Supplier<Spliterator<T>> forks) {
       int characteristics = spliteratorCharacteristics();
       AtomicBoolean atomicStarted = new AtomicBoolean();
       class ForkedHead extends Head<T> {
@@ -1174,7 +1202,18 @@ abstract class StreamPipeline<S, U, T> implements FluentStream<T> {
       };
       return () -> {
          Spliterator<T> forkedSpliterator = forks.get();
-         return new ForkedHead(() -> forkedSpliterator, characteristics);
+         ForkedHead head = new ForkedHead(() -> forkedSpliterator, characteristics);
+         if (forkedSpliterator instanceof AutoCloseable) {
+            // bounded forks must be released so they don't hold back the others
+            head.onClose(() -> {
+               try {
+                  ((AutoCloseable) forkedSpliterator).close();
+               } catch (Exception e) {
+                  throw Throwables.propagate(e);
+               }
+            });
+         }
+         return head;
       };
    }
 
@@ -1184,12 +1223,12 @@ abstract class StreamPipeline<S, U, T> implements FluentStream<T> {
          Function<? super T, ? extends V> valueExtractor) {
       checkState();
       linked = true;
-      return new Head<>(
+      return attach(new Head<>(
             () -> {
-               Map<K, Collection<V>> map = toMap(this, keyExtractor, valueExtractor);
+               Map<K, Collection<V>> map = toMap(linkedView(), keyExtractor, valueExtractor);
                return map.entrySet().spliterator();
             },
-            Spliterator.IMMUTABLE | Spliterator.SIZED | Spliterator.DISTINCT);
+            Spliterator.IMMUTABLE | Spliterator.SIZED | Spliterator.DISTINCT));
    }
 
    @Override
@@ -1198,13 +1237,13 @@ abstract class StreamPipeline<S, U, T> implements FluentStream<T> {
          Function<? super T, ? extends V> valueExtractor) {
       checkState();
       linked = true;
-      return new Head<>(
+      return attach(new Head<>(
             () -> {
                Map<K, Collection<V>> map =
-                     toMap(Stream.concat(this, other), keyExtractor, valueExtractor);
+                     toMap(Stream.concat(linkedView(), other), keyExtractor, valueExtractor);
                return map.entrySet().spliterator();
             },
-            Spliterator.IMMUTABLE | Spliterator.SIZED | Spliterator.DISTINCT);
+            Spliterator.IMMUTABLE | Spliterator.SIZED | Spliterator.DISTINCT));
    }
 
    @Override
@@ -1217,17 +1256,17 @@ abstract class StreamPipeline<S, U, T> implements FluentStream<T> {
          TriFunction<? super K, ? super Collection<V>, ? super Collection<W>, ? extends X> combiner) {
       checkState();
       linked = true;
-      return new Head<>(
+      return attach(new Head<>(
             () -> {
                Map<K, Collection<V>> map1;
                Map<K, Collection<W>> map2;
                if (isParallel()) {
                   CompletableFuture<Map<K, Collection<W>>> future = CompletableFuture.supplyAsync(
-                        () -> toMap(other, keyExtractor2, valueExtractor2));
-                  map1 = toMap(this, keyExtractor1, valueExtractor1);
+                        () -> toMap(other, keyExtractor2, valueExtractor2), pool());
+                  map1 = toMap(linkedView(), keyExtractor1, valueExtractor1);
                   map2 = future.join();
                } else {
-                  map1 = toMap(this, keyExtractor1, valueExtractor1);
+                  map1 = toMap(linkedView(), keyExtractor1, valueExtractor1);
                   map2 = toMap(other, keyExtractor2, valueExtractor2);
                }
                Set<K> keys = Sets.union(map1.keySet(), map2.keySet());
@@ -1244,9 +1283,167 @@ abstract class StreamPipeline<S, U, T> implements FluentStream<T> {
                }
                return s.spliterator();
             },
-            Spliterator.IMMUTABLE | Spliterator.SIZED | Spliterator.DISTINCT);
+            Spliterator.IMMUTABLE | Spliterator.SIZED | Spliterator.DISTINCT));
+   }
+
+   @Override
+   public <K, V> FluentStream<Entry<K, Collection<V>>> groupBy(
+         Function<? super T, ? extends K> keyExtractor,
+         Function<? super T, ? extends V> valueExtractor,
+         SpillConfig config) {
+      requireNonNull(config);
+      checkState();
+      linked = true;
+      SpillingGrouper grouper = new SpillingGrouper(config, 1);
+      Head<Entry<K, Collection<V>>> head = new Head<>(
+            () -> {
+               spill(grouper, 0, linkedView(), keyExtractor, valueExtractor);
+               return StreamPipeline.<K, V>spilledEntries(grouper).spliterator();
+            },
+            Spliterator.DISTINCT);
+      head.onClose(grouper::close);
+      return attach(head);
+   }
+
+   @Override
+   public <K, V> FluentStream<Entry<K, Collection<V>>> merge(Stream<? extends T> other,
+         Function<? super T, ? extends K> keyExtractor,
+         Function<? super T, ? extends V> valueExtractor,
+         SpillConfig config) {
+      requireNonNull(config);
+      checkState();
+      linked = true;
+      SpillingGrouper grouper = new SpillingGrouper(config, 1);
+      Head<Entry<K, Collection<V>>> head = new Head<>(
+            () -> {
+               spill(grouper, 0, linkedView(), keyExtractor, valueExtractor);
+               spill(grouper, 0, other, keyExtractor, valueExtractor);
+               return StreamPipeline.<K, V>spilledEntries(grouper).spliterator();
+            },
+            Spliterator.DISTINCT);
+      head.onClose(grouper::close);
+      return attach(head);
+   }
+
+   @Override
+   public <K, O, V, W, X> FluentStream<X> join(
+         Stream<? extends O> other,
+         Function<? super T, ? extends K> keyExtractor1,
+         Function<? super T, ? extends V> valueExtractor1,
+         Function<? super O, ? extends K> keyExtractor2,
+         Function<? super O, ? extends W> valueExtractor2,
+         TriFunction<? super K, ? super Collection<V>, ? super Collection<W>, ? extends X> combiner,
+         SpillConfig config) {
+      requireNonNull(config);
+      checkState();
+      linked = true;
+      SpillingGrouper grouper = new SpillingGrouper(config, 2);
+      Head<X> head = new Head<>(
+            () -> {
+               spill(grouper, 0, linkedView(), keyExtractor1, valueExtractor1);
+               spill(grouper, 1, other, keyExtractor2, valueExtractor2);
+               Stream<X> s = spilledChunks(grouper)
+                     .flatMap(chunk -> {
+                        @SuppressWarnings({ "unchecked", "rawtypes" })
+                        Map<K, Collection<V>> map1 = (Map) chunk.get(0);
+                        @SuppressWarnings({ "unchecked", "rawtypes" })
+                        Map<K, Collection<W>> map2 = (Map) chunk.get(1);
+                        return Sets.union(map1.keySet(), map2.keySet()).stream()
+                              .map(k -> {
+                                 Collection<V> c1 = map1.get(k);
+                                 Collection<W> c2 = map2.get(k);
+                                 return combiner.apply(k,
+                                       c1 == null ? Collections.emptyList() : c1,
+                                       c2 == null ? Collections.emptyList() : c2);
+                              });
+                     });
+               return s.spliterator();
+            },
+            0);
+      head.onClose(grouper::close);
+      return attach(head);
+   }
+
+   @Override
+   public <K, V> FluentStream<Entry<K, Collection<V>>> groupBySorted(
+         Function<? super T, ? extends K> keyExtractor,
+         Function<? super T, ? extends V> valueExtractor,
+         Comparator<? super K> keyComparator) {
+      requireNonNull(keyComparator);
+      checkState();
+      linked = true;
+      return attach(new Head<Entry<K, Collection<V>>>(
+            () -> SortedSpliterators.groupBy(
+                  autoStartSpliterator(), keyExtractor, valueExtractor, keyComparator),
+            Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.SORTED
+                  | Spliterator.NONNULL,
+            (e1, e2) -> keyComparator.compare(e1.getKey(), e2.getKey())));
+   }
+
+   @Override
+   public <K, O, V, W, X> FluentStream<X> joinSorted(
+         Stream<? extends O> other,
+         Function<? super T, ? extends K> keyExtractor1,
+         Function<? super T, ? extends V> valueExtractor1,
+         Function<? super O, ? extends K> keyExtractor2,
+         Function<? super O, ? extends W> valueExtractor2,
+         TriFunction<? super K, ? super Collection<V>, ? super Collection<W>, ? extends X> combiner,
+         Comparator<? super K> keyComparator) {
+      requireNonNull(keyComparator);
+      checkState();
+      linked = true;
+      FluentStream<X> joined = attach(new Head<X>(
+            () -> SortedSpliterators.join(autoStartSpliterator(), other.spliterator(),
+                  keyExtractor1, valueExtractor1, keyExtractor2, valueExtractor2, combiner,
+                  keyComparator),
+            Spliterator.ORDERED));
+      joined.onClose(other::close);
+      return joined;
+   }
+
+   /**
+    * Adds all elements of the given stream to the given grouper. Parallel streams add elements
+    * concurrently, relying on the grouper's synchronization.
+    */
+   private static <T, K, V> void spill(SpillingGrouper grouper, int side,
+         Stream<? extends T> stream, Function<? super T, ? extends K> keyExtractor,
+         Function<? super T, ? extends V> valueExtractor) {
+      stream.forEach(t -> grouper.add(side, keyExtractor.apply(t), valueExtractor.apply(t)));
+   }
+
+   /**
+    * Returns a stream of the chunks of groups from the given grouper, loading each chunk only
+    * when the stream reaches it.
+    */
+   private static Stream<List<Map<Object, List<Object>>>> spilledChunks(
+         SpillingGrouper grouper) {
+      Iterator<List<Map<Object, List<Object>>>> chunks = grouper.finish();
+      return StreamSupport.stream(
+            Spliterators.spliteratorUnknownSize(chunks, Spliterator.NONNULL), false);
+   }
+
+   @SuppressWarnings({ "unchecked", "rawtypes" }) // grouper is untyped, but caller knows types
+   private static <K, V> Stream<Entry<K, Collection<V>>> spilledEntries(
+         SpillingGrouper grouper) {
+      return spilledChunks(grouper).flatMap(chunk -> ((Map) chunk.get(0)).entrySet().stream());
    }
    
+   /**
+    * Returns a view of this stage as a new stream. This is used by operations that have already
+    * linked this stage but consume its data lazily, like grouping. The view is processed in the
+    * same way as this stage (sequential or parallel, using the same pool) and closes this stage
+    * when it is closed.
+    * 
+    * @return a view of this stage as a new stream
+    */
+   private Head<T> linkedView() {
+      Head<T> view = new Head<>(this::autoStartSpliterator, spliteratorCharacteristics());
+      view.parallel = isParallel();
+      view.pool = pool();
+      view.onClose(this::close);
+      return view;
+   }
+
    private static <T, K, V> Map<K, Collection<V>> toMap(Stream<? extends T> stream,
          Function<? super T, ? extends K> keyExtractor,
          Function<? super T, ? extends V> valueExtractor) {
@@ -1277,6 +1474,7 @@ abstract class StreamPipeline<S, U, T> implements FluentStream<T> {
     */
    private <V> FluentStream<V> attach(Head<V> newStream) {
       newStream.onClose(this::close);
+      newStream.pool = pool();
       return newStream;
    }
 
@@ -1309,6 +1507,13 @@ abstract class StreamPipeline<S, U, T> implements FluentStream<T> {
          return u.getUpstream(action);
       }
 
+      @Override
+      public void forEachRemaining(Consumer<? super T> action) {
+         if (!pushRemaining(source, action)) {
+            while (u.getUpstream(action));
+         }
+      }
+
       @Override
       public Spliterator<T> trySplit() {
          Spliterator<? extends S> split = source.trySplit();
@@ -1367,6 +1572,14 @@ abstract class StreamPipeline<S, U, T> implements FluentStream<T> {
          return super.tryAdvance(action);
       }
 
+      @Override
+      public void forEachRemaining(Consumer<? super T> action) {
+         if (!StreamPipeline.this.started) {
+            start();
+         }
+         super.forEachRemaining(action);
+      }
+
       @Override
       public Spliterator<T> trySplit() {
          if (!StreamPipeline.this.started) {
@@ -1421,6 +1634,12 @@ abstract class StreamPipeline<S, U, T> implements FluentStream<T> {
          return true;
       }
 
+      @Override
+      public void forEachRemaining(Consumer<? super T> action) {
+         super.forEachRemaining(action);
+         close();
+      }
+
 
       @Override
       public Spliterator<T> trySplit() {
@@ -1449,6 +1668,7 @@ abstract class StreamPipeline<S, U, T> implements FluentStream<T> {
     */
    static class Head<S> extends StreamPipeline<S, Void, S> {
       boolean parallel;
+      ForkJoinPool pool;
 
       Head(Stream<? extends S> source) {
          this(source::spliterator);
@@ -1477,6 +1697,11 @@ abstract class StreamPipeline<S, U, T> implements FluentStream<T> {
          return source::tryAdvance;
       }
 
+      @Override boolean pushRemaining(Spliterator<? extends S> source, Consumer<? super S> action) {
+         source.forEachRemaining(action);
+         return true;
+      }
+
       @Override
       public boolean isParallel() {
          return parallel;
@@ -1494,6 +1719,18 @@ abstract class StreamPipeline<S, U, T> implements FluentStream<T> {
          return this;
       }
 
+      @Override
+      public FluentStream<S> parallel(ForkJoinPool pool) {
+         this.pool = requireNonNull(pool);
+         parallel = true;
+         return this;
+      }
+
+      @Override
+      ForkJoinPool pool() {
+         return pool != null ? pool : ForkJoinPool.commonPool();
+      }
+
       @Override
       int spliteratorCharacteristics() {
          return source.characteristics();
@@ -1571,6 +1808,109 @@ abstract class StreamPipeline<S, U, T> implements FluentStream<T> {
       }
    }
    
+   /**
+    * An intermediate stage that is stateless and emits at most one element for each upstream
+    * element, like {@link #filter(Predicate)}, {@link #map(Function)}, and
+    * {@link #peek(Consumer)}. Instead of a {@link StreamNode}, the stage is defined by a function
+    * that wraps a downstream consumer in a consumer of upstream elements.
+    * 
+    * <p>This allows adjacent stages of this kind to be fused when the stream is processed. The
+    * last such stage composes the consumers of itself and all adjacent predecessors into a single
+    * chain, which receives elements directly from the nearest predecessor that is not fusible. So
+    * a long run of these stages costs one call through an {@link Upstream} per element, instead of
+    * one per stage. And if that predecessor is the head of the pipeline, the chain can be given
+    * directly to the source's {@link Spliterator#forEachRemaining(Consumer)}, with no per-element
+    * pull at all.
+    * 
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    *
+    * @param <S> the type of the source of data
+    * @param <U> the type of data emitted by the upstream (aka predecessor) stage
+    * @param <T> the type of data emitted by this stage
+    */
+   static class StatelessIntermediate<S, U, T> extends Intermediate<S, U, T> {
+      private final Function<Consumer<? super T>, Consumer<U>> sinkFactory;
+      
+      StatelessIntermediate(StreamPipeline<S, ?, U> upstream,
+            Function<Consumer<? super T>, Consumer<U>> sinkFactory,
+            IntUnaryOperator spliteratorCharacteristics, LongUnaryOperator spliteratorSize) {
+         // no node factory: nodes are never created, since doAsUpstream is overridden
+         super(upstream, null, spliteratorCharacteristics, spliteratorSize);
+         this.sinkFactory = sinkFactory;
+      }
+      
+      /**
+       * Returns the nearest predecessor that is not a stateless stage. Elements emitted by that
+       * stage are consumed by the fused chain.
+       */
+      private StreamPipeline<S, ?, ?> firstUnfused() {
+         StreamPipeline<S, ?, ?> p = predecessor;
+         while (p instanceof StatelessIntermediate) {
+            p = p.predecessor;
+         }
+         return p;
+      }
+      
+      /**
+       * Composes this stage and all adjacent stateless predecessors into a single consumer that
+       * accepts elements emitted by {@link #firstUnfused()} and sends results to the given
+       * downstream consumer.
+       */
+      @SuppressWarnings({ "unchecked", "rawtypes" }) // types vary along the chain
+      private Consumer<Object> fuse(Consumer<? super T> downstream) {
+         Consumer<?> sink = sinkFactory.apply(downstream);
+         for (StreamPipeline<S, ?, ?> p = predecessor; p instanceof StatelessIntermediate;
+               p = p.predecessor) {
+            sink = (Consumer<?>) ((StatelessIntermediate) p).sinkFactory.apply(sink);
+         }
+         return (Consumer<Object>) sink;
+      }
+
+      @Override
+      @SuppressWarnings("unchecked") // fused chain accepts whatever firstUnfused emits
+      Upstream<T> doAsUpstream(Spliterator<? extends S> source) {
+         Upstream<Object> upstream = (Upstream<Object>) firstUnfused().asUpstream(source);
+         PullSink<T> pullSink = new PullSink<>();
+         Consumer<Object> sink = fuse(pullSink);
+         return action -> {
+            pullSink.action = action;
+            pullSink.emitted = false;
+            while (upstream.getUpstream(sink)) {
+               if (pullSink.emitted) {
+                  return true;
+               }
+            }
+            return false;
+         };
+      }
+      
+      @Override
+      @SuppressWarnings("unchecked") // fused chain accepts whatever firstUnfused emits
+      boolean pushRemaining(Spliterator<? extends S> source, Consumer<? super T> action) {
+         StreamPipeline<S, ?, Object> first = (StreamPipeline<S, ?, Object>) firstUnfused();
+         return first.pushRemaining(source, fuse(action));
+      }
+   }
+   
+   /**
+    * The end of a fused chain of stateless stages, when elements are pulled one at a time. This
+    * records whether an element made it through the chain, since a filter may drop it.
+    * 
+    * @author Joshua Humphries (jhumphries131@gmail.com)
+    *
+    * @param <T> the type of element emitted by the chain
+    */
+   private static class PullSink<T> implements Consumer<T> {
+      Consumer<? super T> action;
+      boolean emitted;
+      
+      @Override
+      public void accept(T t) {
+         emitted = true;
+         action.accept(t);
+      }
+   }
+
    /**
     * A special kind of intermediate stage used for {@link #limit(long)} and {@link #skip(long)}
     * operations. Both of these operations need to initialize state that is shared across all
@@ -1635,8 +1975,9 @@ abstract class StreamPipeline<S, U, T> implements FluentStream<T> {
       R execute() {
          predecessor.start();
          try {
-            A accumulator = predecessor.isParallel() && ForkJoinPool.getCommonPoolParallelism() > 1
-                  ? invokeParallel(predecessor.basicSpliterator())
+            ForkJoinPool pool = predecessor.pool();
+            A accumulator = predecessor.isParallel() && pool.getParallelism() > 1
+                  ? invokeParallel(predecessor.basicSpliterator(), pool)
                   : invokeSequential(predecessor.basicSpliterator(), null);
             return collector.finisher().apply(accumulator);
          } finally {
@@ -1659,24 +2000,23 @@ abstract class StreamPipeline<S, U, T> implements FluentStream<T> {
          if (results == null) {
             results = collector.supplier().get();
          }
-         Variable<U> incoming = new Variable<>();
-         Consumer<U> incomingReceiver = incoming::set;
          BiConsumer<A, ? super U> accumulator = collector.accumulator();
-         while (items.tryAdvance(incomingReceiver)) {
-            accumulator.accept(results, incoming.get());
-         }
+         A r = results;
+         // lets pipelines of stateless stages push elements in a single loop
+         items.forEachRemaining(u -> accumulator.accept(r, u));
          return results;
       }
       
       /**
        * Invokes the stream pipeline for the given items (the source of data) in parallel. This
-       * submits a {@link RecursiveTask} to the {@linkplain ForkJoinPool#commonPool() common pool}
-       * to recursively split the given source and process the data.
+       * submits a {@link RecursiveTask} to the given pool to recursively split the given source
+       * and process the data.
        * 
        * @param source the source of the data
+       * @param pool the pool that processes the data
        * @return the accumulator into which processed items were emitted
        */
-      A invokeParallel(Spliterator<U> source) {
+      A invokeParallel(Spliterator<U> source, ForkJoinPool pool) {
          int characteristics = source.characteristics();
          if ((characteristics & Spliterator.ORDERED) != 0
                && predecessor.needNewSpliteratorIfOrdered()) {
@@ -1691,9 +2031,8 @@ abstract class StreamPipeline<S, U, T> implements FluentStream<T> {
          A results = collector.characteristics().contains(Characteristics.CONCURRENT)
                ? collector.supplier().get()
                : null;
-         return ForkJoinPool.commonPool()
-               .submit(new ParallelInvocation<>(this, source, results))
-               .join();
+         int depth = ParallelInvocation.maxDepth(pool.getParallelism(), source.estimateSize());
+         return pool.submit(new ParallelInvocation<>(this, source, results, depth)).join();
       }
    }
    
@@ -1710,18 +2049,19 @@ abstract class StreamPipeline<S, U, T> implements FluentStream<T> {
       private static final long serialVersionUID = -349549636795679899L;
       
       private static final int THRESHOLD = 100;
-      private static final int MAX_DEPTH = computeDepth(ForkJoinPool.getCommonPoolParallelism() * 2);
+      
+      /**
+       * The number of leaf tasks to create per thread in the pool. Creating more than one per
+       * thread helps balance load when some leaves take longer than others.
+       */
+      private static final int LEAVES_PER_THREAD = 2;
       
       private final Tail<S, R, ?> pipeline;
       private final Spliterator<S> source;
       private final R results;
       private int depth;
 
-      ParallelInvocation(Tail<S, R, ?> pipeline, Spliterator<S> source, R results) {
-         this(pipeline, source, results, MAX_DEPTH);
-      }
-
-      private ParallelInvocation(Tail<S, R, ?> pipeline, Spliterator<S> source,
+      ParallelInvocation(Tail<S, R, ?> pipeline, Spliterator<S> source,
             R results, int depth) {
          this.pipeline = pipeline;
          this.source = source;
@@ -1753,13 +2093,30 @@ abstract class StreamPipeline<S, U, T> implements FluentStream<T> {
          return pipeline.collector.combiner().apply(r1, r2);
       }
       
-      private static int computeDepth(int parallelism) {
-         if (parallelism < 0) {
+      /**
+       * Computes the maximum depth to which the source is split. This aims for a fixed number of
+       * leaves per thread in the pool. But if the size of the source is known, it will not create
+       * so many leaves that each one processes fewer than {@link #THRESHOLD} elements.
+       * 
+       * @param parallelism the parallelism of the pool that processes the data
+       * @param estimatedSize the estimated size of the source, or {@link Long#MAX_VALUE} if unknown
+       * @return the maximum depth to which the source is split
+       */
+      static int maxDepth(int parallelism, long estimatedSize) {
+         long leaves = (long) parallelism * LEAVES_PER_THREAD;
+         if (estimatedSize != Long.MAX_VALUE) {
+            leaves = Math.min(leaves, (estimatedSize + THRESHOLD - 1) / THRESHOLD);
+         }
+         return computeDepth(leaves);
+      }
+      
+      private static int computeDepth(long leaves) {
+         if (leaves <= 1) {
             return 0;
          }
-         int powerOfTwo = Integer.highestOneBit(parallelism);
-         int depth = Integer.numberOfTrailingZeros(powerOfTwo);
-         return parallelism > powerOfTwo ? depth + 1 : depth;
+         long powerOfTwo = Long.highestOneBit(leaves);
+         int depth = Long.numberOfTrailingZeros(powerOfTwo);
+         return leaves > powerOfTwo ? depth + 1 : depth;
       }
    }
    
@@ -1,6 +1,8 @@
 package com.bluegosling.collections;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
@@ -19,6 +21,8 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.function.BiPredicate;
 import java.util.function.Function;
 import java.util.function.Predicate;
@@ -340,6 +344,66 @@ public class MoreSpliteratorsTest {
       }
    }
    
+   @Test public void fork_bounded() throws Exception {
+      int numForks = 4;
+      int bufferSize = 16;
+      Collection<Integer> values = random.ints(FORK_PARALLEL_NUM_ELEMENTS)
+            .sorted()
+            .mapToObj(Integer::valueOf)
+            .collect(Collectors.toCollection(sourceType::newCollection));
+      AtomicIntegerArray consumed = new AtomicIntegerArray(numForks);
+      AtomicInteger maxLag = new AtomicInteger();
+      // tracks how far ahead of the slowest fork the source has been read
+      Spliterator<Integer> source = MoreSpliterators.map(values.spliterator(), i -> {
+         int min = Integer.MAX_VALUE;
+         int max = 0;
+         for (int f = 0; f < numForks; f++) {
+            min = Math.min(min, consumed.get(f));
+            max = Math.max(max, consumed.get(f));
+         }
+         maxLag.accumulateAndGet(max + 1 - min, Math::max);
+         return i;
+      });
+      
+      Supplier<Spliterator<Integer>> forks = MoreSpliterators.fork(source, numForks, bufferSize);
+      List<Future<Collection<Integer>>> futures = new ArrayList<>(numForks);
+      for (int i = 0; i < numForks; i++) {
+         Spliterator<Integer> fork = forks.get();
+         assertNull(fork.trySplit());
+         int index = i;
+         futures.add(executor.submit(() -> {
+            Collection<Integer> out = sourceType.newCollection();
+            while (fork.tryAdvance(out::add)) {
+               consumed.incrementAndGet(index);
+            }
+            return out;
+         }));
+      }
+      for (Future<Collection<Integer>> f : futures) {
+         assertTrue(sourceType.areEqual(values, f.get()));
+      }
+      // the fastest fork never got more than a full buffer ahead of the slowest (allowing for
+      // each fork's count being incremented just after it reads an element)
+      assertTrue("lag " + maxLag.get(), maxLag.get() <= bufferSize + 1);
+   }
+
+   @Test public void fork_boundedClosed() throws Exception {
+      Collection<Integer> values = sourceType.copyCollection(INTS);
+      Supplier<Spliterator<Integer>> forks = MoreSpliterators.fork(values.spliterator(), 2, 4);
+      Spliterator<Integer> fork1 = forks.get();
+      Spliterator<Integer> fork2 = forks.get();
+      List<Integer> out1 = new ArrayList<>();
+      fork1.tryAdvance(out1::add);
+      fork1.tryAdvance(out1::add);
+      // once closed, the other fork can proceed, even in the same thread
+      ((AutoCloseable) fork1).close();
+      assertFalse(fork1.tryAdvance(out1::add));
+      assertEquals(2, out1.size());
+      Collection<Integer> out2 = sourceType.newCollection();
+      fork2.forEachRemaining(out2::add);
+      assertTrue(sourceType.areEqual(values, out2));
+   }
+   
    private <C extends Collection<Integer>> void process(Spliterator<Integer> split, C out,
          int[] actualSplits, int[] attemptedSplits, int splitsIndex) {
       Spliterator<Integer> other;
@@ -0,0 +1,23 @@
+package com.bluegosling.collections.concurrent;
+
+import com.bluegosling.concurrent.locks.DoubleInstanceLock.ReaderIndicator;
+
+import java.util.Map;
+
+/**
+ * Runs the same tests as {@link DoubleInstanceLockedTreeMapTest} but against a map that uses
+ * {@linkplain ReaderIndicator#DISTRIBUTED distributed reader indicators}.
+ *
+ * @author Joshua Humphries (jhumphries131@gmail.com)
+ */
+public class DistributedDoubleInstanceLockedTreeMapTest extends DoubleInstanceLockedTreeMapTest {
+
+   public DistributedDoubleInstanceLockedTreeMapTest(String testName) {
+      super(testName);
+   }
+
+   @Override
+   public Map<?, ?> makeEmptyMap() {
+      return new DoubleInstanceLockedTreeMap<>(ReaderIndicator.DISTRIBUTED);
+   }
+}
@@ -0,0 +1,25 @@
+package com.bluegosling.collections.concurrent;
+
+import com.bluegosling.concurrent.locks.DoubleInstanceLock.ReaderIndicator;
+import com.bluegosling.concurrent.locks.DoubleInstanceLock.WriteStrategy;
+
+import java.util.Map;
+
+/**
+ * Runs the same tests as {@link DoubleInstanceLockedTreeMapTest} but against a map that uses
+ * {@linkplain WriteStrategy#FLAT_COMBINING flat combining} for writes.
+ *
+ * @author Joshua Humphries (jhumphries131@gmail.com)
+ */
+public class FlatCombiningDoubleInstanceLockedTreeMapTest extends DoubleInstanceLockedTreeMapTest {
+
+   public FlatCombiningDoubleInstanceLockedTreeMapTest(String testName) {
+      super(testName);
+   }
+
+   @Override
+   public Map<?, ?> makeEmptyMap() {
+      return new DoubleInstanceLockedTreeMap<>(ReaderIndicator.CENTRALIZED,
+            WriteStrategy.FLAT_COMBINING);
+   }
+}
@@ -0,0 +1,244 @@
+package com.bluegosling.collections.sorting;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LongSummaryStatistics;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.junit.After;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import com.google.common.base.Stopwatch;
+
+
+public class ParallelMergeSortTest {
+   private static final long NANOS_PER_MICRO = TimeUnit.MICROSECONDS.toNanos(1);
+
+   private static final Random RANDOM = new Random(1);
+
+   // explicit parallelism, so that tests use parallel sorts regardless of the number of CPUs
+   private final ForkJoinPool pool = new ForkJoinPool(4);
+
+   @After public void tearDown() {
+      pool.shutdown();
+   }
+
+   private static Integer[] randomIntegers(int len, int bound) {
+      Integer[] array = new Integer[len];
+      for (int i = 0; i < len; i++) {
+         array[i] = RANDOM.nextInt(bound);
+      }
+      return array;
+   }
+
+   /**
+    * Returns an array that consists of sorted runs, some ascending and some descending, with
+    * random lengths.
+    */
+   private static Integer[] partiallySortedIntegers(int len) {
+      Integer[] array = new Integer[len];
+      int i = 0;
+      while (i < len) {
+         int runLen = Math.min(len - i, RANDOM.nextInt(5000) + 1);
+         int start = RANDOM.nextInt();
+         boolean ascending = RANDOM.nextBoolean();
+         for (int j = 0; j < runLen; j++) {
+            array[i + j] = ascending ? start + j : start - j;
+         }
+         i += runLen;
+      }
+      return array;
+   }
+
+   @Test public void sort_objects() {
+      for (int len : new int[] { 0, 1, 10, 1000, 50_000, 200_000 }) {
+         Integer[] array1 = randomIntegers(len, Integer.MAX_VALUE);
+         Integer[] array2 = array1.clone();
+         Arrays.sort(array1);
+         ParallelMergeSort.sort(array2, 0, len, Comparator.naturalOrder(), pool);
+         assertArrayEquals(array1, array2);
+      }
+   }
+
+   @Test public void sort_objectsIsStable() {
+      Integer[] array1 = randomIntegers(200_000, Integer.MAX_VALUE);
+      Integer[] array2 = array1.clone();
+      // lots of ties
+      Comparator<Integer> comp = Comparator.comparing(i -> i % 100);
+      Arrays.sort(array1, comp);
+      ParallelMergeSort.sort(array2, 0, array2.length, comp, pool);
+      assertArrayEquals(array1, array2);
+   }
+
+   @Test public void sort_objectsPartiallySorted() {
+      Integer[] array1 = partiallySortedIntegers(200_000);
+      Integer[] array2 = array1.clone();
+      Arrays.sort(array1);
+      ParallelMergeSort.sort(array2, 0, array2.length, Comparator.naturalOrder(), pool);
+      assertArrayEquals(array1, array2);
+
+      // already sorted and reversed
+      ParallelMergeSort.sort(array2, 0, array2.length, Comparator.naturalOrder(), pool);
+      assertArrayEquals(array1, array2);
+      ParallelMergeSort.sort(array2, 0, array2.length, Comparator.reverseOrder(), pool);
+      Arrays.sort(array1, Comparator.reverseOrder());
+      assertArrayEquals(array1, array2);
+   }
+
+   @Test public void sort_range() {
+      Integer[] array1 = randomIntegers(200_000, 1000);
+      Integer[] array2 = array1.clone();
+      Arrays.sort(array1, 1234, 187_654);
+      ParallelMergeSort.sort(array2, 1234, 187_654, Comparator.naturalOrder(), pool);
+      assertArrayEquals(array1, array2);
+
+      int[] ints1 = new int[200_000];
+      for (int i = 0; i < ints1.length; i++) {
+         ints1[i] = RANDOM.nextInt();
+      }
+      int[] ints2 = ints1.clone();
+      Arrays.sort(ints1, 4321, 198_765);
+      ParallelMergeSort.sort(ints2, 4321, 198_765, pool);
+      assertArrayEquals(ints1, ints2);
+   }
+
+   @Test public void sort_badRange() {
+      int[] array = new int[10];
+      try {
+         ParallelMergeSort.sort(array, 5, 4);
+         fail("expecting IllegalArgumentException");
+      } catch (IllegalArgumentException expected) {
+      }
+      try {
+         ParallelMergeSort.sort(array, -1, 4);
+         fail("expecting ArrayIndexOutOfBoundsException");
+      } catch (ArrayIndexOutOfBoundsException expected) {
+      }
+      try {
+         ParallelMergeSort.sort(array, 0, 11);
+         fail("expecting ArrayIndexOutOfBoundsException");
+      } catch (ArrayIndexOutOfBoundsException expected) {
+      }
+   }
+
+   @Test public void sort_ints() {
+      for (int len : new int[] { 0, 1, 10, 1000, 50_000, 200_000 }) {
+         int[] array1 = new int[len];
+         for (int i = 0; i < len; i++) {
+            // every other one is partially sorted
+            array1[i] = (len & 1) == 0 ? RANDOM.nextInt() : (i / 10_000) * RANDOM.nextInt(100);
+         }
+         int[] array2 = array1.clone();
+         Arrays.sort(array1);
+         ParallelMergeSort.sort(array2, 0, len, pool);
+         assertArrayEquals(array1, array2);
+      }
+   }
+
+   @Test public void sort_longs() {
+      for (int len : new int[] { 0, 1, 10, 1000, 50_000, 200_000 }) {
+         long[] array1 = new long[len];
+         for (int i = 0; i < len; i++) {
+            array1[i] = RANDOM.nextLong();
+         }
+         long[] array2 = array1.clone();
+         Arrays.sort(array1);
+         ParallelMergeSort.sort(array2, 0, len, pool);
+         assertArrayEquals(array1, array2);
+      }
+   }
+
+   @Test public void sort_doubles() {
+      for (int len : new int[] { 0, 1, 10, 1000, 50_000, 200_000 }) {
+         double[] array1 = new double[len];
+         for (int i = 0; i < len; i++) {
+            switch (RANDOM.nextInt(20)) {
+               case 0:
+                  array1[i] = Double.NaN;
+                  break;
+               case 1:
+                  array1[i] = -0.0;
+                  break;
+               case 2:
+                  array1[i] = 0.0;
+                  break;
+               default:
+                  array1[i] = RANDOM.nextGaussian();
+            }
+         }
+         double[] array2 = array1.clone();
+         Arrays.sort(array1);
+         ParallelMergeSort.sort(array2, 0, len, pool);
+         // Arrays.equals compares bits, so also checks the order of -0.0, 0.0, and NaN
+         assertTrue(Arrays.equals(array1, array2));
+      }
+   }
+
+   @Ignore
+   @Test public void sort_performance() {
+      int len = 2_000_000;
+      compare("random ints", () -> {
+         int[] array = new int[len];
+         for (int i = 0; i < len; i++) {
+            array[i] = RANDOM.nextInt();
+         }
+         return array;
+      }, Arrays::parallelSort, ParallelMergeSort::sort);
+      compare("random objects", () -> randomIntegers(len, Integer.MAX_VALUE),
+            Arrays::parallelSort, ParallelMergeSort::sort);
+      compare("partially sorted objects", () -> partiallySortedIntegers(len),
+            Arrays::parallelSort, ParallelMergeSort::sort);
+      compare("sorted objects", () -> {
+         Integer[] array = randomIntegers(len, Integer.MAX_VALUE);
+         Arrays.sort(array);
+         return array;
+      }, Arrays::parallelSort, ParallelMergeSort::sort);
+   }
+
+   private <A> void compare(String name, Supplier<A> input, Consumer<A> jdkSort,
+         Consumer<A> ourSort) {
+      // warm up
+      for (int i = 0; i < 10; i++) {
+         jdkSort.accept(input.get());
+         ourSort.accept(input.get());
+      }
+      // now measure
+      Stopwatch sw = Stopwatch.createUnstarted();
+      LongSummaryStatistics stats1 = new LongSummaryStatistics();
+      LongSummaryStatistics stats2 = new LongSummaryStatistics();
+      for (int i = 0; i < 20; i++) {
+         A array = input.get();
+         sw.reset().start();
+         jdkSort.accept(array);
+         sw.stop();
+         stats1.accept(sw.elapsed(TimeUnit.NANOSECONDS));
+         array = input.get();
+         sw.reset().start();
+         ourSort.accept(array);
+         sw.stop();
+         stats2.accept(sw.elapsed(TimeUnit.NANOSECONDS));
+      }
+      System.out.println(name + ":");
+      System.out.println(" Arrays.parallelSort:");
+      printResults(stats1);
+      System.out.println(" ParallelMergeSort:");
+      printResults(stats2);
+   }
+
+   private void printResults(LongSummaryStatistics stats) {
+      System.out.println(String.format("  Avg: %dus, Min: %dus, Max: %dus (%d laps)",
+            Math.round(stats.getAverage() / NANOS_PER_MICRO),
+            stats.getMin() / NANOS_PER_MICRO,
+            stats.getMax() / NANOS_PER_MICRO,
+            stats.getCount()));
+   }
+}
@@ -8,6 +8,7 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import com.bluegosling.concurrent.fluent.FluentFuture;
 import com.bluegosling.tuples.Triple;
 
 import org.junit.Test;
@@ -15,8 +16,11 @@ import org.junit.Test;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 import java.util.function.Predicate;
 
@@ -125,4 +129,129 @@ public class AsynchronousAtomTest {
          notices.clear();
       }
    }
+   
+   /**
+    * Submits a mutation that blocks the atom's processing until the returned latch is opened.
+    * Mutations submitted after this method returns will be applied together in the next batch.
+    */
+   private CountDownLatch blockAtom(AsynchronousAtom<Integer> atom) throws Exception {
+      CountDownLatch started = new CountDownLatch(1);
+      CountDownLatch release = new CountDownLatch(1);
+      atom.updateAndGet(i -> {
+         started.countDown();
+         try {
+            release.await();
+         } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+         }
+         return i;
+      });
+      started.await();
+      return release;
+   }
+   
+   @Test public void batches() throws Exception {
+      AsynchronousAtom<Integer> atom = new AsynchronousAtom<>(0);
+      List<Triple<Atom<? extends Integer>, Integer, Integer>> notices = new ArrayList<>();
+      atom.addWatcher((a, oldValue, newValue) -> notices.add(Triple.of(a, oldValue, newValue)));
+      
+      CountDownLatch release = blockAtom(atom);
+      List<FluentFuture<Integer>> futures = new ArrayList<>();
+      for (int i = 0; i < 1000; i++) {
+         futures.add(atom.updateAndGet(v -> v + 1));
+      }
+      FluentFuture<Integer> pending = atom.getPending();
+      assertFalse(futures.get(0).isDone());
+      release.countDown();
+      
+      assertEquals(Integer.valueOf(1000), pending.get());
+      for (int i = 0; i < 1000; i++) {
+         assertEquals(Integer.valueOf(i + 1), futures.get(i).get());
+      }
+      // one notice for the blocking mutation and then just one for the whole batch
+      assertEquals(Arrays.asList(Triple.of(atom, 0, 0), Triple.of(atom, 0, 1000)), notices);
+   }
+   
+   @Test public void batchesWithErrors() throws Exception {
+      Predicate<Integer> validator = i -> i < 100;
+      AsynchronousAtom<Integer> atom = new AsynchronousAtom<>(0, validator);
+      atom.setErrorHandler(AsynchronousAtom.ErrorAction.BLOCK.always());
+      
+      CountDownLatch release = blockAtom(atom);
+      FluentFuture<Integer> f1 = atom.updateAndGet(v -> v + 10);
+      FluentFuture<Integer> f2 = atom.updateAndGet(v -> v + 100);
+      FluentFuture<Integer> f3 = atom.updateAndGet(v -> v + 20);
+      release.countDown();
+      
+      assertEquals(Integer.valueOf(10), f1.get());
+      ExecutionException e = assertThrows(ExecutionException.class, () -> f2.get());
+      assertSame(IllegalArgumentException.class, e.getCause().getClass());
+      // rest of the batch is queued since the atom is now blocked
+      assertTrue(atom.isBlocked());
+      assertEquals(1, atom.getQueueLength());
+      assertFalse(f3.isDone());
+      assertEquals(Integer.valueOf(10), atom.get());
+      
+      atom.resume();
+      assertEquals(Integer.valueOf(30), f3.get());
+      assertFalse(atom.isBlocked());
+      assertEquals(0, atom.getQueueLength());
+   }
+   
+   @Test public void combine() throws Exception {
+      AsynchronousAtom<Integer> atom = new AsynchronousAtom<>(0);
+      assertThrows(IllegalStateException.class, () -> atom.combineAndGet(1));
+      
+      AtomicInteger combinerCalls = new AtomicInteger();
+      atom.setCombiner((a, b) -> {
+         combinerCalls.incrementAndGet();
+         return a + b;
+      });
+      assertEquals(Integer.valueOf(5), atom.combineAndGet(5).get());
+      assertEquals(Integer.valueOf(5), atom.getAndCombine(-2).get());
+      assertEquals(Integer.valueOf(3), atom.get());
+      assertEquals(2, combinerCalls.get());
+      
+      CountDownLatch release = blockAtom(atom);
+      combinerCalls.set(0);
+      List<FluentFuture<Integer>> newValues = new ArrayList<>();
+      List<FluentFuture<Integer>> oldValues = new ArrayList<>();
+      for (int i = 1; i <= 100; i++) {
+         newValues.add(atom.combineAndGet(i));
+         oldValues.add(atom.getAndCombine(i));
+      }
+      // an update in the middle splits the run of combine operations
+      FluentFuture<Integer> doubled = atom.updateAndGet(v -> v * 2);
+      FluentFuture<Integer> last = atom.combineAndGet(1);
+      release.countDown();
+      
+      // all operands are merged and then combined with the atom's value as a single update
+      int expected = 3 + 2 * 5050;
+      for (int i = 0; i < 100; i++) {
+         assertEquals(Integer.valueOf(expected), newValues.get(i).get());
+         assertEquals(Integer.valueOf(3), oldValues.get(i).get());
+      }
+      assertEquals(Integer.valueOf(expected * 2), doubled.get());
+      assertEquals(Integer.valueOf(expected * 2 + 1), last.get());
+      // 199 calls to merge 200 operands, one call to combine them w/ atom's value, and one more
+      // to apply the last operation
+      assertEquals(201, combinerCalls.get());
+      
+      atom.setCombiner(null);
+      assertThrows(IllegalStateException.class, () -> atom.getAndCombine(1));
+   }
+   
+   @Test public void cancelledInTransactionNotApplied() throws Exception {
+      AsynchronousAtom<Integer> atom = new AsynchronousAtom<>(0);
+      AtomicReference<FluentFuture<Integer>> future = new AtomicReference<>();
+      assertThrows(IllegalStateException.class, () -> Transaction.execute(t -> {
+         future.set(atom.updateAndGet(v -> v + 1));
+         throw new IllegalStateException();
+      }));
+      assertTrue(future.get().isCancelled());
+      Transaction.execute(t -> {
+         atom.updateAndGet(v -> v + 10);
+      });
+      assertEquals(Integer.valueOf(10), atom.getPending().get());
+   }
 }
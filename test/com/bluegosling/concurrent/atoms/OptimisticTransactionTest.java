@@ -0,0 +1,302 @@
+package com.bluegosling.concurrent.atoms;
+
+import static com.bluegosling.testing.MoreAsserts.assertThrows;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.bluegosling.concurrent.atoms.Transaction.Engine;
+import com.bluegosling.concurrent.atoms.Transaction.IsolationLevel;
+import com.bluegosling.concurrent.atoms.Transaction.Savepoint;
+import com.bluegosling.concurrent.fluent.FluentFuture;
+import com.bluegosling.tuples.Triple;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Test cases for {@link Transaction}s that use the {@linkplain Engine#OPTIMISTIC optimistic engine}.
+ *
+ * @author Joshua Humphries (jhumphries131@gmail.com)
+ */
+public class OptimisticTransactionTest {
+
+   private static Transaction.Runner runner(IsolationLevel level) {
+      return new Transaction.Runner().withEngine(Engine.OPTIMISTIC).withIsolationLevel(level);
+   }
+
+   /** Runs the given action in another thread, concurrently with the current transaction. */
+   private static void runConcurrently(Runnable r) {
+      Thread t = new Thread(r);
+      t.start();
+      try {
+         t.join();
+      } catch (InterruptedException e) {
+         throw new AssertionError(e);
+      }
+   }
+
+   @Test public void simple() {
+      TransactionalAtom<Integer> a = new TransactionalAtom<>(1);
+      TransactionalAtom<Integer> b = new TransactionalAtom<>(2);
+      List<Triple<Atom<? extends Integer>, Integer, Integer>> notices =
+            Collections.synchronizedList(new ArrayList<>());
+      a.addWatcher((atom, oldValue, newValue) -> notices.add(Triple.of(atom, oldValue, newValue)));
+
+      int sum = runner(IsolationLevel.SERIALIZABLE).compute(t -> {
+         a.set(10);
+         a.updateAndGet(i -> i + 1);
+         b.set(a.get() + b.get());
+         // not visible outside the transaction until commit
+         assertEquals(11, (int) a.get());
+         return a.get() + b.get();
+      });
+      assertEquals(24, sum);
+      assertEquals(11, (int) a.get());
+      assertEquals(13, (int) b.get());
+      // watchers only see the final value
+      assertEquals(Arrays.asList(Triple.of(a, 1, 11)), notices);
+   }
+
+   @Test public void rollback() {
+      TransactionalAtom<String> a = new TransactionalAtom<>("abc");
+      List<FluentFuture<String>> futures = new ArrayList<>();
+      assertThrows(IllegalStateException.class, () -> runner(IsolationLevel.SNAPSHOT).execute(t -> {
+         a.set("def");
+         futures.add(a.commute(String::toUpperCase));
+         throw new IllegalStateException();
+      }));
+      assertEquals("abc", a.get());
+      assertTrue(futures.get(0).isCancelled());
+
+      // explicit rollback
+      runner(IsolationLevel.SNAPSHOT).execute(t -> {
+         a.set("def");
+         t.rollback();
+         assertEquals("abc", a.get());
+         a.set("xyz");
+      });
+      assertEquals("xyz", a.get());
+   }
+
+   @Test public void rollbackToSavepoint() {
+      TransactionalAtom<String> a = new TransactionalAtom<>("a");
+      TransactionalAtom<String> b = new TransactionalAtom<>("b");
+      List<FluentFuture<String>> futures = new ArrayList<>();
+      runner(IsolationLevel.SNAPSHOT).execute(t -> {
+         a.set("a1");
+         futures.add(b.commute(s -> s + "!"));
+         Savepoint sp = t.savepoint();
+         a.set("a2");
+         b.set("b2");
+         futures.add(b.commute(s -> s + "?"));
+         assertEquals("a2", a.get());
+         assertEquals("b2", b.get());
+         t.rollbackTo(sp);
+         assertEquals("a1", a.get());
+         assertEquals("b", b.get());
+         a.updateAndGet(s -> s + "+");
+      });
+      assertEquals("a1+", a.get());
+      assertEquals("b!", b.get());
+      assertEquals("b!", futures.get(0).getNow(null));
+      assertTrue(futures.get(1).isCancelled());
+   }
+
+   @Test public void commute() {
+      TransactionalAtom<Integer> a = new TransactionalAtom<>(0, i -> i < 10);
+      AtomicInteger attempts = new AtomicInteger();
+      FluentFuture<Integer> f = runner(IsolationLevel.SERIALIZABLE).compute(t -> {
+         FluentFuture<Integer> ret = a.commute(i -> i + 1);
+         if (attempts.incrementAndGet() == 1) {
+            // concurrent change doesn't conflict with a commute
+            runConcurrently(() -> a.set(5));
+         }
+         return ret;
+      });
+      assertEquals(1, attempts.get());
+      assertEquals(6, (int) f.getNow(null));
+      assertEquals(6, (int) a.get());
+
+      // fails validation
+      assertThrows(IllegalArgumentException.class,
+            () -> runner(IsolationLevel.SNAPSHOT).execute(t -> a.commute(i -> i + 10)));
+      assertEquals(6, (int) a.get());
+   }
+
+   private void checkConcurrentChangeToRead(IsolationLevel level, boolean pin,
+         int expectedAttempts) {
+      TransactionalAtom<Integer> x = new TransactionalAtom<>(1);
+      TransactionalAtom<Integer> y = new TransactionalAtom<>(0);
+      AtomicInteger attempts = new AtomicInteger();
+      runner(level).execute(t -> {
+         int v = pin ? x.pin() : x.get();
+         if (attempts.incrementAndGet() == 1) {
+            runConcurrently(() -> x.set(100));
+         }
+         y.set(v + 1);
+      });
+      assertEquals(expectedAttempts, attempts.get());
+      assertEquals(expectedAttempts == 1 ? 2 : 101, (int) y.get());
+      assertEquals(100, (int) x.get());
+   }
+
+   @Test public void isolationLevel_serializable() {
+      checkConcurrentChangeToRead(IsolationLevel.SERIALIZABLE, false, 2);
+   }
+
+   @Test public void isolationLevel_snapshot() {
+      // write skew is possible
+      checkConcurrentChangeToRead(IsolationLevel.SNAPSHOT, false, 1);
+      // unless the atom is pinned
+      checkConcurrentChangeToRead(IsolationLevel.SNAPSHOT, true, 2);
+
+      // concurrent writes conflict
+      TransactionalAtom<Integer> x = new TransactionalAtom<>(1);
+      AtomicInteger attempts = new AtomicInteger();
+      assertThrows(TransactionIsolationException.class,
+            () -> runner(IsolationLevel.SNAPSHOT).computeNonIdempotent(t -> {
+               int v = x.get();
+               attempts.incrementAndGet();
+               runConcurrently(() -> x.set(100));
+               return x.set(v + 1);
+            }));
+      assertEquals(1, attempts.get());
+      assertEquals(100, (int) x.get());
+   }
+
+   @Test public void isolationLevel_readCommitted() {
+      checkConcurrentChangeToRead(IsolationLevel.READ_COMMITTED, false, 1);
+      checkConcurrentChangeToRead(IsolationLevel.READ_COMMITTED, true, 2);
+
+      // reads see latest committed values
+      TransactionalAtom<Integer> x = new TransactionalAtom<>(1);
+      runner(IsolationLevel.READ_COMMITTED).execute(t -> {
+         assertEquals(1, (int) x.get());
+         runConcurrently(() -> x.set(2));
+         assertEquals(2, (int) x.get());
+      });
+   }
+
+   private void transfer(List<TransactionalAtom<Integer>> accounts, Transaction.Runner runner) {
+      ThreadLocalRandom r = ThreadLocalRandom.current();
+      TransactionalAtom<Integer> from = accounts.get(r.nextInt(accounts.size()));
+      TransactionalAtom<Integer> to = accounts.get(r.nextInt(accounts.size()));
+      int amount = r.nextInt(10);
+      runner.execute(t -> {
+         from.updateAndGet(i -> i - amount);
+         to.updateAndGet(i -> i + amount);
+      });
+   }
+
+   @Test public void waitsForLockedAncestor() throws Exception {
+      TransactionalAtom<Integer> parent = new TransactionalAtom<>(0);
+      TransactionalAtom<Integer> child = parent.newComponent(0);
+      CountDownLatch locked = new CountDownLatch(1);
+      CountDownLatch release = new CountDownLatch(1);
+      // locking engine holds the parent's lock exclusively, which also guards the child
+      Thread pessimist = new Thread(() -> new Transaction.Runner().execute(t -> {
+         parent.set(1);
+         locked.countDown();
+         try {
+            release.await();
+         } catch (InterruptedException e) {
+            throw new AssertionError(e);
+         }
+      }));
+      pessimist.start();
+      assertTrue(locked.await(5, TimeUnit.SECONDS));
+
+      CountDownLatch committed = new CountDownLatch(1);
+      Thread optimist = new Thread(() -> {
+         runner(IsolationLevel.SNAPSHOT).execute(t -> child.set(5));
+         committed.countDown();
+      });
+      optimist.start();
+      assertFalse(committed.await(100, TimeUnit.MILLISECONDS));
+      assertEquals(0, (int) child.get());
+
+      release.countDown();
+      assertTrue(committed.await(5, TimeUnit.SECONDS));
+      pessimist.join();
+      optimist.join();
+      assertEquals(1, (int) parent.get());
+      assertEquals(5, (int) child.get());
+   }
+
+   @Test public void concurrentTransfers() throws Exception {
+      checkConcurrentTransfers();
+   }
+
+   @Test public void concurrentTransfers_sharedVersionClock() throws Exception {
+      VersionClock clock = Transaction.getVersionClock();
+      Transaction.setVersionClock(VersionClock.SHARED);
+      try {
+         checkConcurrentTransfers();
+      } finally {
+         Transaction.setVersionClock(clock);
+      }
+   }
+
+   private void checkConcurrentTransfers() throws Exception {
+      List<TransactionalAtom<Integer>> accounts = new ArrayList<>();
+      for (int i = 0; i < 5; i++) {
+         accounts.add(new TransactionalAtom<>(1000));
+      }
+      TransactionalAtom<Integer> counter = new TransactionalAtom<>(0);
+      List<Consumer<Integer>> workers = Arrays.asList(
+            i -> transfer(accounts, runner(IsolationLevel.SERIALIZABLE)),
+            i -> transfer(accounts, runner(IsolationLevel.SNAPSHOT)),
+            // mixed with locking engine
+            i -> transfer(accounts, new Transaction.Runner()),
+            i -> runner(IsolationLevel.READ_COMMITTED).execute(t -> counter.commute(c -> c + 1)),
+            i -> runner(IsolationLevel.SNAPSHOT).execute(t -> counter.updateAndGet(c -> c + 1)));
+      int iterations = 2000;
+      List<Thread> threads = new ArrayList<>();
+      List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+      for (Consumer<Integer> worker : workers) {
+         Thread t = new Thread(() -> {
+            try {
+               for (int i = 0; i < iterations; i++) {
+                  worker.accept(i);
+                  if (i % 100 == 0) {
+                     // consistent snapshot of all accounts, even while they're changing
+                     int total = runner(IsolationLevel.SERIALIZABLE).compute(tx -> {
+                        int sum = 0;
+                        for (TransactionalAtom<Integer> a : accounts) {
+                           sum += a.get();
+                        }
+                        return sum;
+                     });
+                     assertEquals(5000, total);
+                  }
+               }
+            } catch (Throwable th) {
+               failures.add(th);
+            }
+         });
+         t.start();
+         threads.add(t);
+      }
+      for (Thread t : threads) {
+         t.join();
+      }
+      assertEquals(Collections.emptyList(), failures);
+      int total = 0;
+      for (TransactionalAtom<Integer> a : accounts) {
+         total += a.get();
+      }
+      assertEquals(5000, total);
+      assertEquals(2 * iterations, (int) counter.get());
+   }
+}
@@ -0,0 +1,72 @@
+package com.bluegosling.concurrent.atoms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Test cases for {@link PinnedVersions}.
+ *
+ * @author Joshua Humphries (jhumphries131@gmail.com)
+ */
+public class PinnedVersionsTest {
+
+   private static final int INTERVAL = PinnedVersions.RECLAIM_INTERVAL;
+
+   @Test public void horizon() {
+      AtomicLong clock = new AtomicLong();
+      PinnedVersions pins = new PinnedVersions(clock);
+      clock.set(10);
+      assertEquals(10, pins.pin());
+
+      long v = clock.addAndGet(INTERVAL);
+      assertEquals(10, pins.horizon(v));
+      // nested pins don't move the horizon
+      assertEquals(v, pins.pin());
+      pins.unpin();
+      v = clock.addAndGet(INTERVAL);
+      assertEquals(10, pins.horizon(v));
+
+      pins.unpin();
+      // horizon is not re-computed until the clock has advanced enough
+      assertEquals(10, pins.horizon(v + 1));
+      v = clock.addAndGet(INTERVAL);
+      assertEquals(v, pins.horizon(v));
+      // never greater than the version being committed
+      assertEquals(v - 5, pins.horizon(v - 5));
+   }
+
+   @Test public void deadThreadsIgnored() throws Exception {
+      AtomicLong clock = new AtomicLong(5);
+      PinnedVersions pins = new PinnedVersions(clock);
+      // thread dies without unpinning
+      Thread t = new Thread(pins::pin);
+      t.start();
+      t.join();
+      long v = clock.addAndGet(INTERVAL);
+      assertEquals(v, pins.horizon(v));
+
+      // and its slot can be re-used
+      assertEquals(v, pins.pin());
+      v = clock.addAndGet(INTERVAL);
+      assertEquals(v - INTERVAL, pins.horizon(v));
+      pins.unpin();
+   }
+
+   @Test public void versionChainsAreBounded() {
+      TransactionalAtom<Integer> atom = new TransactionalAtom<>(0);
+      for (int i = 1; i <= 10 * INTERVAL; i++) {
+         atom.set(i);
+      }
+      int length = 0;
+      for (TransactionalAtom.Version<Integer> node = atom.latestCommitted(); node != null;
+            node = node.predecessor) {
+         length++;
+      }
+      assertTrue("chain has " + length + " versions", length <= INTERVAL + 1);
+      assertEquals(10 * INTERVAL, (int) atom.get());
+   }
+}
@@ -0,0 +1,155 @@
+package com.bluegosling.concurrent.atoms;
+
+import static com.bluegosling.testing.MoreAsserts.assertThrows;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.bluegosling.concurrent.atoms.Transaction.Engine;
+import com.bluegosling.concurrent.atoms.Transaction.IsolationLevel;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test cases for {@link TransactionStats} and for the retry behavior of
+ * {@link Transaction.Runner}.
+ *
+ * @author Joshua Humphries (jhumphries131@gmail.com)
+ */
+public class TransactionStatsTest {
+
+   /** Runs the given action in another thread, concurrently with the current transaction. */
+   private static void runConcurrently(Runnable r) {
+      Thread t = new Thread(r);
+      t.start();
+      try {
+         t.join();
+      } catch (InterruptedException e) {
+         throw new AssertionError(e);
+      }
+   }
+
+   /**
+    * Runs a transaction that conflicts with a concurrent change the given number of times before
+    * it succeeds.
+    */
+   private void runWithConflicts(Transaction.Runner runner, TransactionalAtom<Integer> x,
+         TransactionalAtom<Integer> y, int conflicts) {
+      AtomicInteger attempts = new AtomicInteger();
+      runner.execute(t -> {
+         int v = x.get();
+         if (attempts.incrementAndGet() <= conflicts) {
+            runConcurrently(() -> x.set(v + 100));
+         }
+         x.set(v + 1);
+         y.set(v);
+      });
+      assertEquals(conflicts + 1, attempts.get());
+   }
+
+   @Test public void stats() {
+      for (Engine engine : Engine.values()) {
+         TransactionStats stats = new TransactionStats();
+         TransactionalAtom<Integer> x = new TransactionalAtom<>(0);
+         TransactionalAtom<Integer> y = new TransactionalAtom<>(0);
+         Transaction.Runner runner = new Transaction.Runner().withEngine(engine).withMetrics(stats);
+         runWithConflicts(runner, x, y, 3);
+         runWithConflicts(runner, y, x, 1);
+         assertThrows(IllegalStateException.class, () -> runner.execute(t -> {
+            throw new IllegalStateException();
+         }));
+
+         assertEquals(2, stats.getCommittedCount());
+         assertEquals(1, stats.getFailedCount());
+         assertEquals(6, stats.getAttemptCount());
+         assertEquals(4, stats.getIsolationFailureCount());
+         assertEquals(0, stats.getDeadlockCount());
+         assertEquals(4, stats.getRetryCount());
+         assertEquals(0, stats.getBackoffNanos());
+         assertEquals(0, stats.getSerializedCount());
+         assertEquals(2, stats.getSampledCount());
+         assertEquals(2, stats.getCommitTime().getCount());
+
+         assertEquals(3, stats.getAbortCount(x));
+         assertEquals(1, stats.getAbortCount(y));
+         List<Map.Entry<TransactionalAtom<?>, Long>> hottest = stats.getHottestAtoms(1);
+         assertEquals(1, hottest.size());
+         assertEquals(x, hottest.get(0).getKey());
+         assertEquals(3, (long) hottest.get(0).getValue());
+         assertEquals(2, stats.getHotAtoms().size());
+
+         stats.reset();
+         assertEquals(0, stats.getCommittedCount());
+         assertEquals(0, stats.getAbortCount(x));
+         assertTrue(stats.getHottestAtoms(10).isEmpty());
+      }
+   }
+
+   @Test public void retryPolicy() {
+      TransactionStats stats = new TransactionStats();
+      TransactionalAtom<Integer> x = new TransactionalAtom<>(0);
+      TransactionalAtom<Integer> y = new TransactionalAtom<>(0);
+      AtomicInteger calls = new AtomicInteger();
+      Transaction.Runner runner = new Transaction.Runner()
+            .withEngine(Engine.OPTIMISTIC)
+            .withIsolationLevel(IsolationLevel.SERIALIZABLE)
+            .withMetrics(stats)
+            .withRetryPolicy((failures, cause) -> {
+               assertEquals(calls.incrementAndGet(), failures);
+               assertTrue(cause instanceof TransactionIsolationException);
+               return TimeUnit.MILLISECONDS.toNanos(1);
+            });
+      runWithConflicts(runner, x, y, 2);
+      assertEquals(2, calls.get());
+      assertEquals(2, stats.getRetryCount());
+      assertEquals(TimeUnit.MILLISECONDS.toNanos(2), stats.getBackoffNanos());
+      assertTrue(stats.getLatencyMax() >= TimeUnit.MILLISECONDS.toNanos(2));
+   }
+
+   @Test public void exponentialBackoff() {
+      RetryPolicy policy = RetryPolicy.exponentialBackoff(10, 1000, TimeUnit.NANOSECONDS);
+      TransactionIsolationException e = new TransactionIsolationException();
+      for (int i = 0; i < 1000; i++) {
+         long delay = policy.backoffNanos(1, e);
+         assertTrue(delay >= 0 && delay <= 10);
+         delay = policy.backoffNanos(4, e);
+         assertTrue(delay >= 0 && delay <= 80);
+         delay = policy.backoffNanos(1000, e);
+         assertTrue(delay >= 0 && delay <= 1000);
+      }
+      // largest possible delays don't overflow
+      policy = RetryPolicy.exponentialBackoff(Long.MAX_VALUE, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+      assertTrue(policy.backoffNanos(1, e) >= 0);
+      assertTrue(policy.backoffNanos(100, e) >= 0);
+      assertThrows(IllegalArgumentException.class,
+            () -> RetryPolicy.exponentialBackoff(0, 10, TimeUnit.NANOSECONDS));
+      assertThrows(IllegalArgumentException.class,
+            () -> RetryPolicy.exponentialBackoff(10, 5, TimeUnit.NANOSECONDS));
+   }
+
+   @Test public void serializeAfter() {
+      TransactionStats stats = new TransactionStats();
+      TransactionalAtom<Integer> x = new TransactionalAtom<>(0);
+      TransactionalAtom<Integer> y = new TransactionalAtom<>(0);
+      Transaction.Runner runner = new Transaction.Runner()
+            .withMetrics(stats)
+            .withRetryPolicy((failures, cause) -> TimeUnit.SECONDS.toNanos(100))
+            .serializeAfter(1);
+      runWithConflicts(runner, x, y, 2);
+      assertEquals(1, stats.getSerializedCount());
+      // serialized transactions don't wait between attempts
+      assertEquals(2, stats.getRetryCount());
+      assertEquals(0, stats.getBackoffNanos());
+
+      // serial lock was released, so other transactions can proceed in other threads
+      runConcurrently(() -> Transaction.execute(t -> x.set(-1)));
+      assertEquals(-1, (int) x.get());
+
+      assertThrows(IllegalArgumentException.class, () -> runner.serializeAfter(0));
+   }
+}
@@ -0,0 +1,110 @@
+package com.bluegosling.concurrent.executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BatchingPipeliningExecutorTest {
+
+   private ExecutorService threadPool;
+   private ScheduledExecutorService timer;
+
+   @Before public void setUp() {
+      threadPool = Executors.newFixedThreadPool(4);
+      timer = Executors.newSingleThreadScheduledExecutor();
+   }
+
+   @After public void tearDown() {
+      threadPool.shutdownNow();
+      timer.shutdownNow();
+   }
+
+   @Test public void drainsFullBatches() throws Exception {
+      List<List<Integer>> batches = Collections.synchronizedList(new ArrayList<>());
+      BatchingPipeliningExecutor<String, Integer> ex = new BatchingPipeliningExecutor<>(
+            threadPool, timer, 3, 1, TimeUnit.HOURS, batches::add);
+      for (int i = 0; i < 7; i++) {
+         ex.add("a", i);
+      }
+      ex.flush("a").get();
+      assertEquals(Arrays.asList(Arrays.asList(0, 1, 2), Arrays.asList(3, 4, 5),
+            Arrays.asList(6)), batches);
+      assertEquals(0, ex.getBufferedCount("a"));
+      assertTrue(ex.batches.isEmpty());
+   }
+
+   @Test public void drainsAfterLinger() throws Exception {
+      CountDownLatch drained = new CountDownLatch(1);
+      List<List<Integer>> batches = Collections.synchronizedList(new ArrayList<>());
+      BatchingPipeliningExecutor<String, Integer> ex = new BatchingPipeliningExecutor<>(
+            threadPool, timer, 100, 50, TimeUnit.MILLISECONDS,
+            items -> {
+               batches.add(items);
+               drained.countDown();
+            });
+      ex.add("a", 1);
+      ex.add("a", 2);
+      assertEquals(2, ex.getBufferedCount("a"));
+      assertTrue(drained.await(5, TimeUnit.SECONDS));
+      assertEquals(Collections.singletonList(Arrays.asList(1, 2)), batches);
+   }
+
+   @Test public void perKeyOrderAndNoConcurrentDrains() throws Exception {
+      Map<Integer, List<Integer>> results = new ConcurrentHashMap<>();
+      Map<Integer, AtomicInteger> active = new ConcurrentHashMap<>();
+      AtomicInteger maxActive = new AtomicInteger();
+      AtomicInteger drainCount = new AtomicInteger();
+      BatchingPipeliningExecutor<Integer, Integer> ex = BatchingPipeliningExecutor.withKeyedDrain(
+            threadPool, timer, 16, 0, TimeUnit.MILLISECONDS,
+            (k, items) -> {
+               int a = active.computeIfAbsent(k, x -> new AtomicInteger()).incrementAndGet();
+               maxActive.accumulateAndGet(a, Math::max);
+               drainCount.incrementAndGet();
+               results.computeIfAbsent(k, x -> new ArrayList<>()).addAll(items);
+               active.get(k).decrementAndGet();
+            });
+      int keys = 4, perKey = 5000;
+      Thread[] threads = new Thread[keys];
+      for (int k = 0; k < keys; k++) {
+         int key = k;
+         threads[k] = new Thread(() -> {
+            for (int i = 0; i < perKey; i++) {
+               ex.add(key, i);
+            }
+         });
+         threads[k].start();
+      }
+      for (Thread t : threads) {
+         t.join();
+      }
+      for (int k = 0; k < keys; k++) {
+         ex.flush(k).get();
+      }
+      assertEquals(1, maxActive.get());
+      for (int k = 0; k < keys; k++) {
+         List<Integer> l = results.get(k);
+         assertEquals(perKey, l.size());
+         for (int i = 0; i < perKey; i++) {
+            assertEquals(i, l.get(i).intValue());
+         }
+      }
+      // items should have been coalesced
+      assertTrue(drainCount.get() < keys * perKey);
+   }
+}
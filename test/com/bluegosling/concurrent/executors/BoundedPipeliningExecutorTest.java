@@ -0,0 +1,215 @@
+package com.bluegosling.concurrent.executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.bluegosling.concurrent.fluent.FluentFuture;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class BoundedPipeliningExecutorTest {
+
+   private ExecutorService threadPool;
+   private CountDownLatch latch;
+
+   @Before public void setUp() {
+      threadPool = Executors.newFixedThreadPool(2);
+      latch = new CountDownLatch(1);
+   }
+
+   @After public void tearDown() {
+      latch.countDown();
+      threadPool.shutdownNow();
+   }
+
+   private Runnable blocker(CountDownLatch started) {
+      return () -> {
+         started.countDown();
+         try {
+            latch.await();
+         } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+         }
+      };
+   }
+
+   /** Submits a task that blocks the pipeline and waits for it to start. */
+   private Future<?> block(PipeliningExecutor<String> ex, String key) throws Exception {
+      CountDownLatch started = new CountDownLatch(1);
+      Future<?> f = ex.submit(key, blocker(started));
+      assertTrue(started.await(5, TimeUnit.SECONDS));
+      return f;
+   }
+
+   @Test public void reject() throws Exception {
+      ExecutorStats stats = new ExecutorStats();
+      PipeliningExecutor<String> ex = PipeliningExecutor.newBuilder(threadPool)
+            .setPipelineCapacity(2)
+            .setTotalCapacity(3)
+            .setMetrics(stats)
+            .build();
+      block(ex, "a");
+      // running task doesn't count against capacity
+      Future<?> f1 = ex.submit("a", () -> {});
+      Future<?> f2 = ex.submit("a", () -> {});
+      try {
+         ex.submit("a", () -> {});
+         fail("expecting RejectedExecutionException");
+      } catch (RejectedExecutionException expected) {
+      }
+      block(ex, "b");
+      Future<?> f3 = ex.submit("b", () -> {});
+      // pipeline "b" has room, but the executor is full
+      try {
+         ex.submit("b", () -> {});
+         fail("expecting RejectedExecutionException");
+      } catch (RejectedExecutionException expected) {
+      }
+      assertEquals(2, stats.getRejectedCount());
+
+      latch.countDown();
+      f1.get();
+      f2.get();
+      f3.get();
+      ex.awaitQuiescence();
+      assertEquals(0, ex.pendingCount.get());
+      assertTrue(ex.pendingByPipeline.isEmpty());
+      // capacity is available again
+      ex.submit("a", () -> {}).get();
+   }
+
+   @Test public void dropOldest() throws Exception {
+      PipeliningExecutor<String> ex = PipeliningExecutor.newBuilder(threadPool)
+            .setPipelineCapacity(2)
+            .setOverflowPolicy(OverflowPolicy.DROP_OLDEST)
+            .build();
+      block(ex, "a");
+      List<String> ran = Collections.synchronizedList(new ArrayList<>());
+      Future<?> f1 = ex.submit("a", () -> ran.add("1"));
+      Future<?> f2 = ex.submit("a", () -> ran.add("2"));
+      Future<?> f3 = ex.submit("a", () -> ran.add("3"));
+      assertTrue(f1.isDone());
+      try {
+         f1.get();
+         fail("expecting ExecutionException");
+      } catch (ExecutionException e) {
+         assertTrue(e.getCause() instanceof RejectedExecutionException);
+      }
+      latch.countDown();
+      f2.get();
+      f3.get();
+      assertEquals(Arrays.asList("2", "3"), ran);
+   }
+
+   @Test public void block() throws Exception {
+      PipeliningExecutor<String> ex = PipeliningExecutor.newBuilder(threadPool)
+            .setPipelineCapacity(1)
+            .setOverflowPolicy(OverflowPolicy.BLOCK)
+            .build();
+      block(ex, "a");
+      ex.submit("a", () -> {});
+      CountDownLatch submitted = new CountDownLatch(1);
+      Thread t = new Thread(() -> {
+         ex.execute("a", () -> {});
+         submitted.countDown();
+      });
+      t.start();
+      assertFalse(submitted.await(100, TimeUnit.MILLISECONDS));
+      assertEquals(1, ex.waiterCount);
+      latch.countDown();
+      assertTrue(submitted.await(5, TimeUnit.SECONDS));
+      t.join();
+      ex.awaitQuiescence();
+      assertEquals(0, ex.waiterCount);
+   }
+
+   @Test(timeout = 5000) public void block_inlineExecutor() throws Exception {
+      // runs tasks immediately, even when called re-entrantly (unlike SameThreadExecutor)
+      Executor inline = Runnable::run;
+      PipeliningExecutor<String> ex = PipeliningExecutor.newBuilder(inline)
+            .setTotalCapacity(1)
+            .setOverflowPolicy(OverflowPolicy.BLOCK)
+            .build();
+      List<String> ran = new ArrayList<>();
+      List<FluentFuture<FluentFuture<Void>>> waiting = new ArrayList<>();
+      ex.execute("a", () -> {
+         // pipeline "a" is busy, so this is queued and uses all of the capacity
+         ex.execute("a", () -> { ran.add("a2"); });
+         waiting.add(ex.submitAsync("b", () -> {
+            ran.add("b");
+            // "c" is admitted when this task starts, while "b" is still being admitted; if that
+            // re-entrant admission were skipped, this would block forever
+            ex.execute("d", () -> { ran.add("d"); });
+         }));
+         waiting.add(ex.submitAsync("c", () -> { ran.add("c"); }));
+         ran.add("a1");
+      });
+      assertEquals(Arrays.asList("a1", "c", "b", "d", "a2"), ran);
+      for (FluentFuture<FluentFuture<Void>> f : waiting) {
+         assertTrue(f.isDone());
+         assertTrue(f.get().isDone());
+      }
+      assertEquals(0, ex.waiterCount);
+      assertEquals(0, ex.pendingCount.get());
+   }
+
+   @Test public void block_interrupted() throws Exception {
+      PipeliningExecutor<String> ex = PipeliningExecutor.newBuilder(threadPool)
+            .setPipelineCapacity(1)
+            .setOverflowPolicy(OverflowPolicy.BLOCK)
+            .build();
+      block(ex, "a");
+      ex.submit("a", () -> {});
+      Thread.currentThread().interrupt();
+      try {
+         ex.execute("a", () -> {});
+         fail("expecting RejectedExecutionException");
+      } catch (RejectedExecutionException expected) {
+         assertTrue(Thread.interrupted());
+      }
+   }
+
+   @Test public void submitAsync() throws Exception {
+      PipeliningExecutor<String> ex = PipeliningExecutor.newBuilder(threadPool)
+            .setPipelineCapacity(1)
+            .build();
+      block(ex, "a");
+      FluentFuture<FluentFuture<String>> f1 = ex.submitAsync("a", () -> "x");
+      assertTrue(f1.isDone());
+      FluentFuture<FluentFuture<String>> f2 = ex.submitAsync("a", () -> "y");
+      FluentFuture<FluentFuture<String>> f3 = ex.submitAsync("a", () -> "z");
+      assertFalse(f2.isDone());
+      assertFalse(f3.isDone());
+      // synchronous submissions can't jump ahead of waiting ones
+      try {
+         ex.execute("b", () -> {});
+         fail("expecting RejectedExecutionException");
+      } catch (RejectedExecutionException expected) {
+      }
+      assertTrue(f3.cancel(false));
+      latch.countDown();
+      assertEquals("x", f1.get().get());
+      assertEquals("y", f2.get().get());
+      assertEquals("y", FluentFuture.dereference(f2).get());
+      ex.awaitQuiescence();
+      assertEquals(0, ex.waiterCount);
+      assertFalse(f2.cancel(false));
+   }
+}
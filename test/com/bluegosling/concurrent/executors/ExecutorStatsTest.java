@@ -0,0 +1,239 @@
+package com.bluegosling.concurrent.executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class ExecutorStatsTest {
+
+   @Test public void histogram() {
+      LatencyHistogram h = new LatencyHistogram();
+      assertEquals(0, h.getCount());
+      assertEquals(0, h.getPercentile(50));
+      for (int i = 1; i <= 1000; i++) {
+         h.record(i * 1000L);
+      }
+      assertEquals(1000, h.getCount());
+      assertEquals(1_000_000, h.getMax());
+      // values are tracked with 12.5% relative precision
+      long p50 = h.getPercentile(50);
+      assertTrue("p50 = " + p50, p50 >= 500_000 && p50 <= 500_000 * 9 / 8);
+      long p99 = h.getPercentile(99);
+      assertTrue("p99 = " + p99, p99 >= 990_000 && p99 <= 1_000_000);
+      assertEquals(1_000_000, h.getPercentile(100));
+      double mean = h.getMean();
+      assertTrue("mean = " + mean, mean >= 500_500 * 7 / 8 && mean <= 500_500 * 9 / 8);
+
+      // small and large values
+      h.reset();
+      h.record(-1);
+      h.record(3);
+      h.record(Long.MAX_VALUE);
+      assertEquals(3, h.getCount());
+      assertEquals(0, h.getPercentile(1));
+      assertEquals(3, h.getPercentile(50));
+      assertEquals(Long.MAX_VALUE, h.getPercentile(100));
+   }
+
+   @Test public void pipeliningExecutor() throws Exception {
+      ExecutorService threadPool = Executors.newFixedThreadPool(4);
+      try {
+         ExecutorStats stats = new ExecutorStats(1, true);
+         PipeliningExecutor<String> ex =
+               new PipeliningExecutor<>(threadPool, 8, 100, TimeUnit.MILLISECONDS, stats);
+         List<Future<?>> futures = new ArrayList<>();
+         for (int i = 0; i < 100; i++) {
+            futures.add(ex.submit(i % 2 == 0 ? "even" : "odd", () -> {}));
+         }
+         ex.execute("odd", () -> { throw new RuntimeException(); });
+         for (Future<?> f : futures) {
+            f.get();
+         }
+         ex.awaitQuiescence();
+
+         assertEquals(101, stats.getSubmittedCount());
+         assertEquals(101, stats.getCompletedCount());
+         assertEquals(1, stats.getFailedCount());
+         assertEquals(0, stats.getRejectedCount());
+         assertEquals(0, stats.getQueueDepth());
+         assertEquals(0, stats.getActiveCount());
+         assertEquals(101, stats.getSampledCount());
+         assertEquals(101, stats.getTotals().getQueueDelay().getCount());
+
+         ExecutorStats.Counters even = stats.getStatsForKey("even");
+         assertEquals(50, even.getSubmittedCount());
+         assertEquals(50, even.getCompletedCount());
+         assertEquals(0, even.getFailedCount());
+         assertEquals(50, even.getRunTime().getCount());
+         ExecutorStats.Counters odd = stats.getStatsForKey("odd");
+         assertEquals(51, odd.getSubmittedCount());
+         assertEquals(1, odd.getFailedCount());
+         assertNull(stats.getStatsForKey("foo"));
+
+         assertNotNull(stats.removeKey("odd"));
+         assertEquals(Collections.singleton("even"), stats.getStatsByKey().keySet());
+      } finally {
+         threadPool.shutdown();
+      }
+   }
+
+   @Test public void pipeliningExecutor_rejected() throws Exception {
+      ExecutorService threadPool = Executors.newFixedThreadPool(1);
+      threadPool.shutdown();
+      ExecutorStats stats = new ExecutorStats();
+      PipeliningExecutor<String> ex =
+            new PipeliningExecutor<>(threadPool, 8, 100, TimeUnit.MILLISECONDS, stats);
+      Future<?> f = ex.submit("abc", () -> {});
+      assertTrue(f.isDone());
+      assertEquals(1, stats.getSubmittedCount());
+      assertEquals(1, stats.getRejectedCount());
+      assertEquals(0, stats.getQueueDepth());
+   }
+
+   @Test(timeout = 5000) public void actorThreadPool() throws Exception {
+      // tasks finish (and are counted) after their futures complete, so wait for them to finish
+      CountDownLatch finished = new CountDownLatch(30);
+      ExecutorStats stats = new ExecutorStats(1, true) {
+         @Override
+         public void taskFinished(Object key, boolean failed) {
+            super.taskFinished(key, failed);
+            finished.countDown();
+         }
+      };
+      ActorThreadPool<Integer> ex = ActorThreadPool.newBuilder()
+            .setPoolSize(2)
+            .setMetrics(stats)
+            .build();
+      try {
+         List<Future<?>> futures = new ArrayList<>();
+         for (int i = 0; i < 30; i++) {
+            futures.add(ex.submit(i % 3, () -> {}));
+         }
+         for (Future<?> f : futures) {
+            f.get();
+         }
+         finished.await();
+      } finally {
+         ex.shutdown();
+      }
+      assertEquals(30, stats.getSubmittedCount());
+      assertEquals(30, stats.getCompletedCount());
+      assertEquals(ex.getStealCount(), stats.getStealCount());
+      for (int i = 0; i < 3; i++) {
+         assertEquals(10, stats.getStatsForKey(i).getCompletedCount());
+      }
+      try {
+         ex.execute(0, () -> {});
+         fail("expecting RejectedExecutionException");
+      } catch (RejectedExecutionException expected) {
+      }
+      assertEquals(1, stats.getRejectedCount());
+   }
+
+   @Test public void threadLimitingExecutor_shutdownNow() throws Exception {
+      ExecutorService threadPool = Executors.newFixedThreadPool(1);
+      try {
+         ExecutorStats stats = new ExecutorStats(1, true);
+         ThreadLimitingExecutorService ex = new ThreadLimitingExecutorService(threadPool, 1, stats);
+         CountDownLatch started = new CountDownLatch(1);
+         CountDownLatch latch = new CountDownLatch(1);
+         ex.execute(() -> {
+            started.countDown();
+            try {
+               latch.await();
+            } catch (InterruptedException e) {
+               // expected
+            }
+         });
+         started.await();
+         Future<?> f1 = ex.submit(() -> {});
+         Future<?> f2 = ex.submit(() -> {});
+         List<Runnable> aborted = ex.shutdownNow();
+         // returned tasks are unwrapped, even though they were sampled
+         assertEquals(Arrays.asList(f1, f2), aborted);
+         assertTrue(f1.isCancelled());
+         assertTrue(f2.isCancelled());
+         assertEquals(3, stats.getSubmittedCount());
+         assertEquals(2, stats.getRejectedCount());
+      } finally {
+         threadPool.shutdown();
+      }
+   }
+
+   @Test(timeout = 5000) public void threadLimitingExecutor_permits_shutdownNow() throws Exception {
+      ExecutorService threadPool = Executors.newFixedThreadPool(2);
+      try {
+         ExecutorStats stats = new ExecutorStats(1, true);
+         ThreadLimitingExecutorService ex =
+               ThreadLimitingExecutorService.withPermits(threadPool, 1, stats);
+         CountDownLatch started = new CountDownLatch(1);
+         CountDownLatch latch = new CountDownLatch(1);
+         ex.execute(() -> {
+            started.countDown();
+            try {
+               latch.await();
+            } catch (InterruptedException e) {
+               // expected
+            }
+         });
+         started.await();
+         Future<?> f = ex.submit(() -> {});
+         assertTrue(ex.shutdownNow().isEmpty());
+         // the task waiting for a permit is aborted by its own thread, which reports it as
+         // rejected before cancelling it
+         try {
+            f.get();
+            fail("expecting CancellationException");
+         } catch (CancellationException expected) {
+         }
+         assertEquals(2, stats.getSubmittedCount());
+         assertEquals(1, stats.getRejectedCount());
+      } finally {
+         threadPool.shutdown();
+      }
+   }
+
+   @Test public void interceptor() throws Exception {
+      ExecutorStats stats = new ExecutorStats();
+      ExecutorService ex = new InterceptingExecutorService(Executors.newSingleThreadExecutor(),
+            Collections.singletonList(stats.asInterceptor()));
+      try {
+         ex.submit(() -> {}).get();
+         ex.submit(() -> "abc").get();
+      } finally {
+         ex.shutdown();
+      }
+      assertEquals(2, stats.getCompletedCount());
+      assertEquals(2, stats.getTotals().getRunTime().getCount());
+      // interceptors can't observe submission
+      assertEquals(0, stats.getSubmittedCount());
+   }
+
+   @Test public void sampling() {
+      ExecutorStats stats = new ExecutorStats(1000);
+      int sampled = 0;
+      for (int i = 0; i < 100_000; i++) {
+         if (stats.shouldSample()) {
+            sampled++;
+         }
+      }
+      // expect about 100
+      assertTrue("sampled = " + sampled, sampled > 25 && sampled < 400);
+   }
+}
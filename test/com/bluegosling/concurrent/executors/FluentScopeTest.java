@@ -0,0 +1,219 @@
+package com.bluegosling.concurrent.executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.bluegosling.concurrent.fluent.FluentFuture;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class FluentScopeTest {
+
+   private ExecutorService executor;
+   private CountDownLatch started;
+
+   @Before public void setUp() {
+      executor = Executors.newCachedThreadPool();
+   }
+
+   @After public void tearDown() {
+      executor.shutdownNow();
+   }
+
+   /**
+    * Returns a task that blocks until interrupted. The {@link #started} latch is counted down when
+    * the task starts, and the given latch is counted down when the task is interrupted.
+    */
+   private <T> Callable<T> blockForever(CountDownLatch interrupted) {
+      return () -> {
+         started.countDown();
+         try {
+            Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+         } catch (InterruptedException e) {
+            interrupted.countDown();
+            throw e;
+         }
+         return null;
+      };
+   }
+
+   @Test public void all() throws Exception {
+      try (FluentScope scope = FluentScope.open(executor)) {
+         FluentFuture<String> a = scope.fork(() -> "a");
+         FluentFuture<String> b = scope.fork(() -> "b");
+         assertEquals(Arrays.asList("a", "b"), scope.all(a, b).get());
+      }
+   }
+
+   @Test public void all_failureCancelsOthers() throws Exception {
+      CountDownLatch interrupted = new CountDownLatch(1);
+      started = new CountDownLatch(1);
+      try (FluentScope scope = FluentScope.open(executor)) {
+         FluentFuture<String> slow = scope.fork(blockForever(interrupted));
+         assertTrue(started.await(5, TimeUnit.SECONDS));
+         FluentFuture<String> bad = scope.fork(() -> { throw new IllegalStateException(); });
+         try {
+            scope.all(slow, bad).get();
+            fail("expecting ExecutionException");
+         } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+         }
+         assertTrue(slow.isCancelled());
+         assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+      }
+   }
+
+   @Test public void anyOf_cancelsLosers() throws Exception {
+      CountDownLatch interrupted = new CountDownLatch(2);
+      started = new CountDownLatch(2);
+      try (FluentScope scope = FluentScope.open(executor)) {
+         FluentFuture<String> slow1 = scope.fork(blockForever(interrupted));
+         FluentFuture<String> slow2 = scope.fork(blockForever(interrupted));
+         assertTrue(started.await(5, TimeUnit.SECONDS));
+         FluentFuture<String> failed = scope.fork(() -> { throw new RuntimeException(); });
+         FluentFuture<String> fast = scope.fork(() -> "fast");
+         assertEquals("fast", scope.anyOf(slow1, failed, slow2, fast).get());
+         assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+         assertTrue(slow1.isCancelled());
+         assertTrue(slow2.isCancelled());
+      }
+   }
+
+   @Test public void anyOf_cancelCancelsAll() throws Exception {
+      CountDownLatch interrupted = new CountDownLatch(2);
+      started = new CountDownLatch(2);
+      try (FluentScope scope = FluentScope.open(executor)) {
+         FluentFuture<String> slow1 = scope.fork(blockForever(interrupted));
+         FluentFuture<String> slow2 = scope.fork(blockForever(interrupted));
+         assertTrue(started.await(5, TimeUnit.SECONDS));
+         FluentFuture<String> any = scope.anyOf(slow1, slow2);
+         assertTrue(any.cancel(false));
+         assertTrue(slow1.isCancelled());
+         assertTrue(slow2.isCancelled());
+         assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+      }
+   }
+
+   @Test public void quorum() throws Exception {
+      CountDownLatch interrupted = new CountDownLatch(1);
+      started = new CountDownLatch(1);
+      try (FluentScope scope = FluentScope.open(executor)) {
+         FluentFuture<Integer> f2 = scope.fork(blockForever(interrupted));
+         assertTrue(started.await(5, TimeUnit.SECONDS));
+         FluentFuture<Integer> f1 = scope.fork(() -> 1);
+         FluentFuture<Integer> f3 = scope.fork(() -> 3);
+         List<Integer> l = scope.quorum(2, Arrays.asList(f1, f2, f3)).get();
+         assertEquals(2, l.size());
+         assertTrue(l.containsAll(Arrays.asList(1, 3)));
+         assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+
+         // impossible quorum
+         RuntimeException ex = new RuntimeException();
+         FluentFuture<Integer> f4 = scope.fork(() -> { throw ex; });
+         FluentFuture<Integer> f5 = scope.fork(() -> { throw new RuntimeException(); });
+         FluentFuture<Integer> f6 = scope.fork(() -> 6);
+         try {
+            scope.quorum(2, Arrays.asList(f4, f5, f6)).get();
+            fail("expecting ExecutionException");
+         } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RuntimeException);
+         }
+      }
+   }
+
+   @Test public void deadline() throws Exception {
+      CountDownLatch interrupted = new CountDownLatch(1);
+      started = new CountDownLatch(1);
+      try (FluentScope scope = FluentScope.open(executor, 200, TimeUnit.MILLISECONDS)) {
+         FluentFuture<String> slow = scope.fork(blockForever(interrupted));
+         assertTrue(started.await(5, TimeUnit.SECONDS));
+         FluentFuture<List<String>> all = scope.all(Arrays.asList(slow));
+         try {
+            all.get();
+            fail("expecting ExecutionException");
+         } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+         }
+         assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+         assertTrue(slow.isCancelled());
+         assertTrue(scope.isExpired());
+         try {
+            scope.fork(() -> "x");
+            fail("expecting IllegalStateException");
+         } catch (IllegalStateException expected) {
+         }
+      }
+   }
+
+   @Test public void deadlinePropagation() throws Exception {
+      assertFalse(FluentScope.hasDeadline());
+      assertEquals(Long.MAX_VALUE, FluentScope.remainingNanos());
+      try (FluentScope scope = FluentScope.open(executor, 10, TimeUnit.SECONDS)) {
+         long remaining = scope.fork(FluentScope::remainingNanos).get();
+         assertTrue(remaining > 0 && remaining <= TimeUnit.SECONDS.toNanos(10));
+
+         // nested scope can shorten but not extend
+         long nested = scope.fork(() -> {
+            try (FluentScope inner = FluentScope.open(executor, 1, TimeUnit.HOURS)) {
+               return inner.fork(FluentScope::remainingNanos).get();
+            }
+         }).get();
+         assertTrue(nested <= TimeUnit.SECONDS.toNanos(10));
+
+         // propagate via ContextPropagatingExecutor
+         FluentFuture<Boolean> viaPropagator = scope.fork(() -> {
+            ContextPropagatingExecutor ex = new ContextPropagatingExecutor(executor,
+                  Arrays.asList(FluentScope.deadlinePropagator()));
+            CountDownLatch done = new CountDownLatch(1);
+            boolean[] hasDeadline = new boolean[1];
+            ex.execute(() -> {
+               hasDeadline[0] = FluentScope.hasDeadline();
+               done.countDown();
+            });
+            done.await();
+            return hasDeadline[0];
+         });
+         assertTrue(viaPropagator.get());
+      }
+      assertFalse(FluentScope.hasDeadline());
+   }
+
+   @Test public void close() throws Exception {
+      CountDownLatch interrupted = new CountDownLatch(1);
+      started = new CountDownLatch(1);
+      FluentFuture<String> slow;
+      try (FluentScope scope = FluentScope.open(executor)) {
+         slow = scope.fork(blockForever(interrupted));
+         assertTrue(started.await(5, TimeUnit.SECONDS));
+      }
+      assertTrue(slow.isCancelled());
+      assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+   }
+
+   @Test public void rejected() throws Exception {
+      ExecutorService ex = Executors.newSingleThreadExecutor();
+      ex.shutdown();
+      try (FluentScope scope = FluentScope.open(ex)) {
+         FluentFuture<String> f = scope.fork(() -> "a");
+         assertTrue(f.isFailed());
+         assertSame(RejectedExecutionException.class,
+               f.getFailure().getClass());
+      }
+   }
+}
@@ -0,0 +1,125 @@
+package com.bluegosling.concurrent.executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import com.bluegosling.concurrent.ThreadFactories;
+import com.bluegosling.concurrent.fluent.FluentExecutorService;
+import com.bluegosling.concurrent.fluent.FluentFuture;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ThreadLimitingExecutorServiceTest {
+
+   private void checkLimit(ThreadLimitingExecutorService ex, int limit, int numTasks)
+         throws Exception {
+      AtomicInteger active = new AtomicInteger();
+      AtomicInteger maxActive = new AtomicInteger();
+      List<FluentFuture<Void>> futures = new ArrayList<>();
+      for (int i = 0; i < numTasks; i++) {
+         futures.add(ex.submit(() -> {
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            try {
+               Thread.sleep(1);
+            } catch (InterruptedException e) {
+               throw new RuntimeException(e);
+            }
+            active.decrementAndGet();
+         }));
+      }
+      for (FluentFuture<Void> f : futures) {
+         f.get();
+      }
+      assertTrue("max active = " + maxActive.get(), maxActive.get() <= limit);
+      ex.shutdown();
+      assertTrue(ex.awaitTermination(5, TimeUnit.SECONDS));
+   }
+
+   @Test public void queueing() throws Exception {
+      FluentExecutorService threads =
+            FluentExecutorService.newThreadPerTaskExecutor(Executors.defaultThreadFactory());
+      try {
+         checkLimit(new ThreadLimitingExecutorService(threads, 4), 4, 200);
+      } finally {
+         threads.shutdown();
+      }
+   }
+
+   @Test public void permits() throws Exception {
+      FluentExecutorService threads =
+            FluentExecutorService.newThreadPerTaskExecutor(Executors.defaultThreadFactory());
+      try {
+         checkLimit(ThreadLimitingExecutorService.withPermits(threads, 4), 4, 200);
+      } finally {
+         threads.shutdown();
+         assertTrue(threads.awaitTermination(5, TimeUnit.SECONDS));
+      }
+   }
+
+   @Test public void permits_shutdownNow() throws Exception {
+      FluentExecutorService threads =
+            FluentExecutorService.newThreadPerTaskExecutor(Executors.defaultThreadFactory());
+      try {
+         ThreadLimitingExecutorService ex = ThreadLimitingExecutorService.withPermits(threads, 1);
+         CountDownLatch started = new CountDownLatch(1);
+         CountDownLatch latch = new CountDownLatch(1);
+         FluentFuture<Void> f1 = ex.submit(() -> {
+            started.countDown();
+            try {
+               latch.await();
+            } catch (InterruptedException e) {
+               throw new RuntimeException(e);
+            }
+         });
+         assertTrue(started.await(5, TimeUnit.SECONDS));
+         FluentFuture<Void> f2 = ex.submit(() -> {});
+         assertFalse(f2.isDone());
+         assertTrue(ex.shutdownNow().isEmpty());
+         assertTrue(ex.awaitTermination(5, TimeUnit.SECONDS));
+         assertTrue(f1.isFailed());
+         assertTrue(f2.isCancelled());
+      } finally {
+         threads.shutdown();
+      }
+   }
+
+   @Test public void virtualThreads() throws Exception {
+      assumeTrue(ThreadFactories.isVirtualThreadSupported());
+      FluentExecutorService threads = FluentExecutorService.newVirtualThreadPerTaskExecutor();
+      try {
+         assertTrue(threads.submit(() -> ThreadFactories.isVirtual(Thread.currentThread())).get());
+         checkLimit(ThreadLimitingExecutorService.withPermits(threads, 100), 100, 10_000);
+      } finally {
+         threads.shutdown();
+      }
+   }
+
+   @Test public void virtualThreadsUnsupported() {
+      assumeTrue(!ThreadFactories.isVirtualThreadSupported());
+      assertFalse(ThreadFactories.isVirtual(Thread.currentThread()));
+      try {
+         FluentExecutorService.newVirtualThreadPerTaskExecutor();
+         fail("expecting UnsupportedOperationException");
+      } catch (UnsupportedOperationException expected) {
+      }
+   }
+
+   @Test public void threadPerTaskExecutor_terminates() throws Exception {
+      FluentExecutorService threads =
+            FluentExecutorService.newThreadPerTaskExecutor(Executors.defaultThreadFactory());
+      assertEquals("abc", threads.submit(() -> "abc").get());
+      threads.shutdown();
+      assertTrue(threads.awaitTermination(5, TimeUnit.SECONDS));
+      assertTrue(threads.isTerminated());
+   }
+}
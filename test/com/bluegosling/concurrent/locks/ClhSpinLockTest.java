@@ -0,0 +1,77 @@
+package com.bluegosling.concurrent.locks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+
+public class ClhSpinLockTest extends AbstractLockTest {
+   @Override
+   protected Lock makeLock() {
+      return new ClhSpinLock();
+   }
+   
+   @Override
+   protected boolean isReentrant() {
+      return false;
+   }
+
+   private Future<?> lockAndRecord(List<Integer> order, int id) throws InterruptedException {
+      Future<?> f = executor.submit(() -> {
+         lock.lock();
+         order.add(id);
+         lock.unlock();
+      });
+      // give the thread a chance to enqueue
+      Thread.sleep(100);
+      return f;
+   }
+
+   @Test(timeout = 5000)
+   public void fifo() throws Exception {
+      List<Integer> order = new CopyOnWriteArrayList<>();
+      lock.lock();
+      Future<?> f1 = lockAndRecord(order, 1);
+      Future<?> f2 = lockAndRecord(order, 2);
+      Future<?> f3 = lockAndRecord(order, 3);
+      lock.unlock();
+      f1.get();
+      f2.get();
+      f3.get();
+      assertEquals(Arrays.asList(1, 2, 3), order);
+      assertFalse(((ClhSpinLock) lock).isLocked());
+   }
+
+   @Test(timeout = 5000)
+   public void abandonedWaitersAreSkipped() throws Exception {
+      ClhSpinLock clh = (ClhSpinLock) lock;
+      lock.lock();
+      Future<Boolean> timedOut =
+            executor.submit(() -> lock.tryLock(100, TimeUnit.MILLISECONDS));
+      assertFalse(timedOut.get());
+      // abandoned node is at the tail, but lock is still held
+      assertFalse(lock.tryLock());
+      List<Integer> order = new CopyOnWriteArrayList<>();
+      Future<?> waiter = lockAndRecord(order, 1);
+      lock.unlock();
+      waiter.get();
+      assertEquals(Arrays.asList(1), order);
+      assertFalse(clh.isLocked());
+
+      // abandoned node at the tail, after a released node, does not prevent acquisition
+      lock.lock();
+      assertFalse(executor.submit(() -> lock.tryLock(50, TimeUnit.MILLISECONDS)).get());
+      lock.unlock();
+      assertTrue(lock.tryLock());
+      lock.unlock();
+   }
+}
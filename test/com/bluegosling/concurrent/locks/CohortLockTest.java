@@ -0,0 +1,95 @@
+package com.bluegosling.concurrent.locks;
+
+import static com.bluegosling.testing.MoreAsserts.assertThrows;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.Lock;
+
+
+public class CohortLockTest extends AbstractLockTest {
+   @Override
+   protected Lock makeLock() {
+      return new CohortLock();
+   }
+   
+   @Override
+   protected boolean isReentrant() {
+      return false;
+   }
+
+   @Test public void badArgs() {
+      assertThrows(IllegalArgumentException.class, () -> new CohortLock(0, t -> 0));
+      assertThrows(NullPointerException.class, () -> new CohortLock(2, null));
+   }
+
+   @Test(timeout = 20000)
+   public void mutualExclusionAcrossClusters() throws Exception {
+      // cluster by thread ID, so that each thread in the pool may be in a different cluster
+      lock = new CohortLock(3, t -> (int) t.getId());
+      int numThreads = 6;
+      int iterations = 2000;
+      int[] counter = new int[1];
+      CountDownLatch start = new CountDownLatch(1);
+      List<Future<?>> futures = new ArrayList<>(numThreads);
+      for (int i = 0; i < numThreads; i++) {
+         futures.add(executor.submit(() -> {
+            start.await();
+            for (int j = 0; j < iterations; j++) {
+               lock.lock();
+               try {
+                  counter[0]++;
+                  if ((j & 0xf) == 0) {
+                     Thread.yield();
+                  }
+               } finally {
+                  lock.unlock();
+               }
+            }
+            return null;
+         }));
+      }
+      start.countDown();
+      for (Future<?> f : futures) {
+         f.get();
+      }
+      assertEquals(numThreads * iterations, counter[0]);
+      assertFalse(((CohortLock) lock).isLocked());
+   }
+
+   @Test(timeout = 5000)
+   public void prefersHandOffWithinCluster() throws Exception {
+      // main thread and threads named "local" are in one cluster, all others in another
+      lock = new CohortLock(2, t -> t.getName().startsWith("remote") ? 1 : 0);
+      List<String> order = new ArrayList<>();
+      lock.lock();
+      Thread remote = new Thread(() -> {
+         lock.lock();
+         order.add("remote");
+         lock.unlock();
+      }, "remote");
+      Thread local = new Thread(() -> {
+         lock.lock();
+         order.add("local");
+         lock.unlock();
+      }, "local");
+      // remote thread starts waiting first, but local is waiting when the lock is released
+      remote.start();
+      Thread.sleep(100);
+      local.start();
+      Thread.sleep(100);
+      lock.unlock();
+      remote.join();
+      local.join();
+      assertEquals(2, order.size());
+      assertEquals("local", order.get(0));
+      assertFalse(((CohortLock) lock).isLocked());
+   }
+}
@@ -0,0 +1,18 @@
+package com.bluegosling.concurrent.locks;
+
+import com.bluegosling.concurrent.locks.DoubleInstanceLock.ReaderIndicator;
+
+import java.util.ArrayList;
+
+/**
+ * Runs the same tests as {@link DoubleInstanceLockTest} but against a lock that uses
+ * {@linkplain ReaderIndicator#DISTRIBUTED distributed reader indicators}.
+ *
+ * @author Joshua Humphries (jhumphries131@gmail.com)
+ */
+public class DistributedDoubleInstanceLockTest extends DoubleInstanceLockTest {
+   @Override
+   protected DoubleInstanceLock<ArrayList<Integer>> newLock(ArrayList<Integer> l) {
+      return DoubleInstanceLock.newLock(l, ReaderIndicator.DISTRIBUTED);
+   }
+}
@@ -36,9 +36,13 @@ public class DoubleInstanceLockTest {
    private DoubleInstanceLock<ArrayList<Integer>> lock;
    private ExecutorService executor;
    
+   protected DoubleInstanceLock<ArrayList<Integer>> newLock(ArrayList<Integer> l) {
+      return DoubleInstanceLock.newLock(l);
+   }
+   
    @Before public void setUp() {
       list = new ArrayList<>(Arrays.asList(1, 2, 3, 4, 5));
-      lock = DoubleInstanceLock.newLock(list);
+      lock = newLock(list);
       executor = Executors.newCachedThreadPool();
    }
    
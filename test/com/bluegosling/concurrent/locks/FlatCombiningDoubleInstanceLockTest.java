@@ -0,0 +1,249 @@
+package com.bluegosling.concurrent.locks;
+
+import static com.bluegosling.testing.MoreAsserts.assertThrows;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.bluegosling.concurrent.ReentranceException;
+import com.bluegosling.concurrent.locks.DoubleInstanceLock.ReaderIndicator;
+import com.bluegosling.concurrent.locks.DoubleInstanceLock.WriteStrategy;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Test cases for {@link DoubleInstanceLock}s that use {@linkplain WriteStrategy#FLAT_COMBINING
+ * flat combining}.
+ *
+ * @author Joshua Humphries (jhumphries131@gmail.com)
+ */
+public class FlatCombiningDoubleInstanceLockTest {
+
+   private ArrayList<Integer> list;
+   private DoubleInstanceLock<ArrayList<Integer>> lock;
+   private ExecutorService executor;
+   
+   @Before public void setUp() {
+      list = new ArrayList<>(Arrays.asList(1, 2, 3, 4, 5));
+      lock = DoubleInstanceLock.newLock(list, ReaderIndicator.CENTRALIZED,
+            WriteStrategy.FLAT_COMBINING);
+      executor = Executors.newCachedThreadPool();
+   }
+   
+   /**
+    * Asserts that both instances have the same contents. Each write is applied to both instances,
+    * so two identity writes return each of them.
+    */
+   private void assertInstancesConsistent(List<Integer> expected) {
+      List<Integer> l1 = lock.write(Function.identity());
+      List<Integer> l2 = lock.write(Function.identity());
+      assertNotSame(l1, l2);
+      assertEquals(expected, l1);
+      assertEquals(expected, l2);
+   }
+   
+   @Test public void swapsOnWrite() {
+      List<Integer> l1 = lock.write(Function.identity());
+      assertSame(list, l1);
+      List<Integer> l2 = lock.write(Function.identity());
+      assertNotSame(list, l2);
+      for (int i = 0; i < 1000; i++) {
+         assertSame(l1, lock.write(Function.identity()));
+         assertSame(l2, lock.write(Function.identity()));
+      }
+   }
+   
+   @Test public void reentrance() {
+      assertThrows(ReentranceException.class,
+            () -> lock.writeWith(l -> lock.writeWith(l2 -> l2.add(0))));
+      assertInstancesConsistent(Arrays.asList(1, 2, 3, 4, 5));
+   }
+   
+   @Test(timeout = 10000)
+   public void combinesConcurrentWrites() throws Exception {
+      List<List<Integer>> calls = Collections.synchronizedList(new ArrayList<>());
+      CountDownLatch started = new CountDownLatch(1);
+      CountDownLatch release = new CountDownLatch(1);
+      // first writer blocks while holding the lock, so all subsequent writers must wait
+      Future<?> first = executor.submit(() -> lock.writeWith(l -> {
+         calls.add(l);
+         if (started.getCount() > 0) {
+            started.countDown();
+            try {
+               release.await();
+            } catch (InterruptedException e) {
+               throw new RuntimeException(e);
+            }
+         }
+         l.add(6);
+      }));
+      started.await();
+      
+      List<Thread> writers = new ArrayList<>();
+      List<Integer> results = Collections.synchronizedList(new ArrayList<>());
+      for (int i = 0; i < 10; i++) {
+         int n = i + 7;
+         Thread th = new Thread(() -> results.add(lock.write(l -> {
+            calls.add(l);
+            l.add(n);
+            return n;
+         })));
+         th.start();
+         writers.add(th);
+      }
+      // wait for all writers to publish their operations and park
+      for (Thread th : writers) {
+         while (th.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+         }
+      }
+      release.countDown();
+      first.get();
+      for (Thread th : writers) {
+         th.join();
+      }
+      
+      // the blocked writer is applied to both sides, then the other ten are applied as a single
+      // batch: all ten to one side and then all ten to the other
+      assertEquals(22, calls.size());
+      List<Integer> side1 = calls.get(0);
+      List<Integer> side2 = calls.get(1);
+      assertNotSame(side1, side2);
+      for (int i = 2; i < 12; i++) {
+         assertSame(side2, calls.get(i));
+      }
+      for (int i = 12; i < 22; i++) {
+         assertSame(side1, calls.get(i));
+      }
+      assertEquals(10, results.size());
+      List<Integer> values = lock.read(ArrayList::new);
+      assertEquals(16, values.size());
+      assertEquals(Arrays.asList(1, 2, 3, 4, 5, 6), values.subList(0, 6));
+      // results are the values added, in the order they were applied
+      assertEquals(results.size(), values.subList(6, 16).size());
+      assertTrue(values.subList(6, 16).containsAll(results));
+      assertInstancesConsistent(values);
+   }
+   
+   @Test(timeout = 10000)
+   public void failuresInBatch() throws Exception {
+      CountDownLatch started = new CountDownLatch(1);
+      CountDownLatch release = new CountDownLatch(1);
+      Future<?> first = executor.submit(() -> lock.writeWith(l -> {
+         if (started.getCount() > 0) {
+            started.countDown();
+            try {
+               release.await();
+            } catch (InterruptedException e) {
+               throw new RuntimeException(e);
+            }
+         }
+      }));
+      started.await();
+      
+      List<Future<Integer>> futures = new ArrayList<>();
+      for (int i = 0; i < 10; i++) {
+         int n = i;
+         futures.add(executor.submit(() -> lock.write(l -> {
+            if ((n & 1) == 1) {
+               throw new IllegalStateException("odd " + n);
+            }
+            l.add(n);
+            return n;
+         })));
+      }
+      Thread.sleep(100);
+      release.countDown();
+      first.get();
+      
+      List<Integer> expected = new ArrayList<>(Arrays.asList(1, 2, 3, 4, 5));
+      for (int i = 0; i < 10; i++) {
+         if ((i & 1) == 1) {
+            int n = i;
+            Throwable t = assertThrows(Exception.class, () -> futures.get(n).get()).getCause();
+            assertSame(IllegalStateException.class, t.getClass());
+            assertEquals("odd " + i, t.getMessage());
+         } else {
+            assertEquals(Integer.valueOf(i), futures.get(i).get());
+         }
+      }
+      List<Integer> values = lock.read(ArrayList::new);
+      assertEquals(10, values.size());
+      assertEquals(expected, values.subList(0, 5));
+      assertInstancesConsistent(values);
+   }
+   
+   @Test(timeout = 20000)
+   public void concurrentWritersAndReaders() throws Exception {
+      int numWriters = 8;
+      int writesPerWriter = 250;
+      CountDownLatch go = new CountDownLatch(1);
+      List<Future<?>> writers = new ArrayList<>();
+      for (int i = 0; i < numWriters; i++) {
+         writers.add(executor.submit(() -> {
+            go.await();
+            for (int j = 0; j < writesPerWriter; j++) {
+               lock.writeWith(l -> l.add(l.size() + 1));
+            }
+            return null;
+         }));
+      }
+      CountDownLatch done = new CountDownLatch(1);
+      List<Future<?>> readers = new ArrayList<>();
+      for (int i = 0; i < 2; i++) {
+         readers.add(executor.submit(() -> {
+            int prevSz = 5;
+            while (done.getCount() > 0) {
+               int sz = lock.read(l -> {
+                  // contents are always consistent: every element equals its position
+                  for (int k = 0, len = l.size(); k < len; k++) {
+                     assertEquals(k + 1, (int) l.get(k));
+                  }
+                  return l.size();
+               });
+               assertTrue(sz >= prevSz);
+               prevSz = sz;
+               Thread.yield();
+            }
+            return null;
+         }));
+      }
+      go.countDown();
+      for (Future<?> f : writers) {
+         f.get();
+      }
+      done.countDown();
+      for (Future<?> f : readers) {
+         f.get();
+      }
+      
+      List<Integer> expected = new ArrayList<>();
+      for (int i = 1, len = 5 + numWriters * writesPerWriter; i <= len; i++) {
+         expected.add(i);
+      }
+      assertInstancesConsistent(expected);
+   }
+   
+   @Test public void snapshot() {
+      List<Integer> l1 = lock.snapshot();
+      assertSame(l1, lock.snapshot());
+      lock.writeWith(l -> l.add(6));
+      lock.writeWith(l -> l.add(7));
+      // snapshot not touched by above writes
+      assertEquals(Arrays.asList(1, 2, 3, 4, 5), l1);
+      assertInstancesConsistent(Arrays.asList(1, 2, 3, 4, 5, 6, 7));
+   }
+}
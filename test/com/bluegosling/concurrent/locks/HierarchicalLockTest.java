@@ -552,6 +552,61 @@ public class HierarchicalLockTest {
       lockNotHeld();
    }
    
+   @Test public void optimisticRead() throws Exception {
+      HierarchicalLock[] chain = new HierarchicalLock[5];
+      chain[0] = lock;
+      for (int i = 1; i < chain.length; i++) {
+         chain[i] = chain[i - 1].newChild();
+      }
+      HierarchicalLock leaf = chain[chain.length - 1];
+      HierarchicalLock sibling = chain[chain.length - 2].newChild();
+
+      long stamp = leaf.tryOptimisticRead();
+      assertTrue(stamp != 0);
+      assertTrue(leaf.validate(stamp));
+      assertFalse(leaf.validate(0));
+
+      // shared locks, and exclusive locks on other branches, do not invalidate the stamp
+      SharedLock share = leaf.sharedLock();
+      assertEquals(stamp, leaf.tryOptimisticRead());
+      share.unlock();
+      ExclusiveLock exclusive = sibling.exclusiveLock();
+      assertTrue(leaf.validate(stamp));
+      assertEquals(stamp, leaf.tryOptimisticRead());
+      exclusive.unlock();
+      assertTrue(leaf.validate(stamp));
+
+      // but an exclusive lock anywhere in the chain does
+      for (HierarchicalLock l : chain) {
+         stamp = leaf.tryOptimisticRead();
+         long rootStamp = chain[0].tryOptimisticRead();
+         CountDownLatch locked = new CountDownLatch(1);
+         CountDownLatch release = new CountDownLatch(1);
+         Thread t = new Thread(() -> {
+            ExclusiveLock x = l.exclusiveLock();
+            locked.countDown();
+            try {
+               release.await();
+            } catch (InterruptedException e) {
+               throw new RuntimeException(e);
+            } finally {
+               x.unlock();
+            }
+         });
+         t.start();
+         locked.await();
+         assertFalse(leaf.validate(stamp));
+         assertEquals(0, leaf.tryOptimisticRead());
+         release.countDown();
+         t.join();
+         assertFalse(leaf.validate(stamp));
+         long newStamp = leaf.tryOptimisticRead();
+         assertTrue(newStamp != 0 && newStamp != stamp);
+         // exclusive locks on descendants do not affect an ancestor's stamp
+         assertEquals(l != chain[0], chain[0].validate(rootStamp));
+      }
+   }
+   
    // TODO: more demote-to-shared/promote-to-exclusive test cases for concurrency and deadlock
    // TODO: add tests for child locks and demote-to-child/promote-to-parent
 }
@@ -0,0 +1,89 @@
+package com.bluegosling.concurrent.locks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+
+public class McsSpinLockTest extends AbstractLockTest {
+   @Override
+   protected Lock makeLock() {
+      return new McsSpinLock();
+   }
+   
+   @Override
+   protected boolean isReentrant() {
+      return false;
+   }
+
+   private Future<?> lockAndRecord(List<Integer> order, int id) {
+      return executor.submit(() -> {
+         lock.lock();
+         order.add(id);
+         lock.unlock();
+      });
+   }
+
+   private void awaitQueued() throws InterruptedException {
+      McsSpinLock mcs = (McsSpinLock) lock;
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+      while (!mcs.hasQueuedThreads() && System.nanoTime() < deadline) {
+         Thread.sleep(1);
+      }
+      assertTrue(mcs.hasQueuedThreads());
+   }
+
+   @Test(timeout = 5000)
+   public void fifo() throws Exception {
+      List<Integer> order = new CopyOnWriteArrayList<>();
+      lock.lock();
+      Future<?> f1 = lockAndRecord(order, 1);
+      awaitQueued();
+      Future<?> f2 = lockAndRecord(order, 2);
+      Thread.sleep(100);
+      Future<?> f3 = lockAndRecord(order, 3);
+      Thread.sleep(100);
+      lock.unlock();
+      f1.get();
+      f2.get();
+      f3.get();
+      assertEquals(Arrays.asList(1, 2, 3), order);
+      assertFalse(((McsSpinLock) lock).isLocked());
+   }
+
+   @Test(timeout = 5000)
+   public void abandonedWaitersAreSkipped() throws Exception {
+      McsSpinLock mcs = (McsSpinLock) lock;
+      lock.lock();
+      Future<Boolean> timedOut =
+            executor.submit(() -> lock.tryLock(100, TimeUnit.MILLISECONDS));
+      awaitQueued();
+      List<Integer> order = new CopyOnWriteArrayList<>();
+      Future<?> waiter = lockAndRecord(order, 1);
+      assertFalse(timedOut.get());
+      lock.unlock();
+      waiter.get();
+      assertEquals(Arrays.asList(1), order);
+      assertFalse(mcs.isLocked());
+      assertFalse(mcs.hasQueuedThreads());
+   }
+
+   @Test public void handOff() {
+      McsSpinLock mcs = (McsSpinLock) lock;
+      mcs.lock();
+      // no waiters, so lock remains held
+      assertFalse(mcs.handOff());
+      assertTrue(mcs.isLocked());
+      mcs.unlock();
+      assertFalse(mcs.isLocked());
+   }
+}
@@ -3,13 +3,29 @@ package com.bluegosling.graph;
 import static com.bluegosling.testing.MoreAsserts.assertThrows;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import com.bluegosling.concurrent.fluent.FluentFuture;
+import com.bluegosling.concurrent.fluent.SettableFluentFuture;
+import com.bluegosling.result.Result;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
 //TODO: MOAR TESTS
 public class GraphTest {
 
@@ -67,6 +83,470 @@ public class GraphTest {
       checkComputation(comp, "123-2");
    }
    
+   @Test public void compile() {
+      Node<Integer> a = Node.builder().withInput(Integer.class).define(i -> i + 1);
+      Node<Integer> b = Node.builder().dependingOn(a).define(i -> i * 2);
+      Node<Integer> c = Node.builder().dependingOn(a).withInput(Key.of(Integer.class, 'q'))
+            .define((i, j) -> i * j);
+      Node<Integer> d = Node.builder().dependingOn(b).dependingOn(c).dependingOn(b)
+            .define((i, j, k) -> i + j + k);
+      Graph<Integer> graph = d.toGraph();
+      ExecutionPlan<Integer> plan = graph.compile();
+      assertSame(plan, graph.compile());
+      assertSame(graph, plan.graph());
+      assertEquals(Arrays.asList(a, b, c, d), plan.nodes());
+      assertEquals(Arrays.asList(Key.of(Integer.class), Key.of(Integer.class, 'q')),
+            plan.inputKeys());
+      assertEquals(graph.inputKeys().size(), plan.inputKeys().size());
+   }
+
+   @Test public void diamond_nodesComputedOnce() throws Exception {
+      AtomicInteger count = new AtomicInteger();
+      Node<Integer> a = Node.builder().withInput(Integer.class)
+            .define(i -> { count.incrementAndGet(); return i; });
+      Node<Integer> b = Node.builder().dependingOn(a).define(i -> i + 1);
+      Node<Integer> c = Node.builder().dependingOn(a).define(i -> i + 2);
+      Node<Integer> d = Node.builder().dependingOn(b).dependingOn(c).define((i, j) -> i * j);
+      Graph<Integer> graph = d.toGraph();
+      for (int i = 0; i < 100; i++) {
+         assertEquals((i + 1) * (i + 2),
+               (int) graph.newComputation().bindInput(Integer.class, i).compute().get());
+      }
+      assertEquals(100, count.get());
+   }
+
+   @Test public void cheapNodesRunInline() throws Exception {
+      AtomicReference<Thread> slowThread = new AtomicReference<>();
+      AtomicReference<Thread> cheapThread = new AtomicReference<>();
+      Node<String> slow = Node.builder().withInput(String.class)
+            .define(s -> { slowThread.set(Thread.currentThread()); return s + "!"; });
+      Node<String> cheap = Node.builder().dependingOn(slow)
+            .define(s -> { cheapThread.set(Thread.currentThread()); return s + "?"; })
+            .markCheap();
+      assertTrue(cheap.isCheap());
+      assertFalse(slow.isCheap());
+      Computation<String> comp = cheap.toGraph().newComputation().bindInput(String.class, "x");
+      checkComputation(comp, "x!?");
+      assertNotSame(Thread.currentThread(), slowThread.get());
+      assertSame(slowThread.get(), cheapThread.get());
+
+      // cheap node with no inputs runs in thread that starts computation
+      Node<String> root = Node.builder().define(() -> {
+         cheapThread.set(Thread.currentThread());
+         return "abc";
+      }).markCheap();
+      checkComputation(root.toGraph().newComputation(), "abc");
+      assertSame(Thread.currentThread(), cheapThread.get());
+   }
+
+   @Test public void asyncAndOptionalInputs() throws Exception {
+      SettableFluentFuture<Integer> asyncInput = new SettableFluentFuture<>();
+      Node<Integer> failing = Node.builder().withInput(Integer.class).define(i -> {
+         throw new IllegalArgumentException("bad " + i);
+      });
+      Node<String> optional = Node.builder().dependingOptionallyOn(failing)
+            .define(r -> r.isSuccessful() ? "ok" : ((Throwable) r.getFailure()).getMessage());
+      Node<String> async = Node.builder().withAsyncInput(Key.of(Integer.class, 'a'))
+            .dependingOn(optional)
+            .defineAsync((f, s) -> f.map(i -> s + ":" + i));
+      Computation<String> comp = async.toGraph().newComputation()
+            .bindInput(Integer.class, 1)
+            .bindAsyncInput(Key.of(Integer.class, 'a'), asyncInput);
+      FluentFuture<String> result = comp.compute();
+      assertFalse(result.isDone());
+      asyncInput.setValue(42);
+      assertEquals("bad 1:42", result.get());
+
+      // required input that fails causes dependent node to fail with same cause
+      Node<Integer> dependent = Node.builder().dependingOn(failing).define(i -> i + 1);
+      FluentFuture<Integer> f = dependent.toGraph().newComputation()
+            .bindInput(Integer.class, 2).compute();
+      f.await();
+      assertTrue(f.getFailure() instanceof IllegalArgumentException);
+      assertEquals("bad 2", f.getFailure().getMessage());
+   }
+
+   @Test public void asyncBoundInputGatesNode() throws Exception {
+      SettableFluentFuture<Integer> input = new SettableFluentFuture<>();
+      Node<Integer> node = Node.builder().withInput(Integer.class).define(i -> i * 10).markCheap();
+      FluentFuture<Integer> result = node.toGraph().newComputation()
+            .bindAsyncInput(Integer.class, input).compute();
+      assertFalse(result.isDone());
+      input.setValue(5);
+      // cheap node, so completes in this thread, as soon as the input is set
+      assertTrue(result.isDone());
+      assertEquals(50, (int) result.get());
+   }
+
+   @Test public void decorators() throws Exception {
+      List<String> decorated = Collections.synchronizedList(new ArrayList<>());
+      AtomicInteger invocations = new AtomicInteger();
+      NodeDecorator decorator = new NodeDecorator() {
+         @Override
+         public <T> Callable<FluentFuture<T>> decorate(Graph<?> graph, Node<T> node,
+               Callable<FluentFuture<T>> operation) {
+            decorated.add(Thread.currentThread().getName());
+            return () -> {
+               invocations.incrementAndGet();
+               return operation.call();
+            };
+         }
+      };
+      Node<String> a = Node.builder().define(() -> "a");
+      Node<String> b = Node.builder().dependingOn(a).define(s -> s + "b");
+      Computation<String> comp = ComputationFactory.newBuilder()
+            .setExecutor(Graph.defaultExecutor())
+            .addDecorator(decorator)
+            .build()
+            .newComputation(b.toGraph());
+      checkComputation(comp, "ab");
+      // decorators are invoked in the thread that starts the computation
+      assertEquals(Collections.nCopies(2, Thread.currentThread().getName()), decorated);
+      assertEquals(2, invocations.get());
+   }
+
+   @Test public void cancel() throws Exception {
+      SettableFluentFuture<Integer> input = new SettableFluentFuture<>();
+      AtomicInteger count = new AtomicInteger();
+      Node<Integer> node = Node.builder().withInput(Integer.class)
+            .define(i -> count.incrementAndGet()).markCheap();
+      FluentFuture<Integer> result = node.toGraph().newComputation()
+            .bindAsyncInput(Integer.class, input).compute();
+      assertTrue(result.cancel(false));
+      input.setValue(1);
+      assertTrue(result.isCancelled());
+      assertThrows(CancellationException.class, () -> result.get());
+      assertEquals(0, count.get());
+   }
+
+   @Test public void failureInAsyncNode() throws Exception {
+      Node<Integer> node = Node.builder().defineAsync(
+            () -> FluentFuture.failedFuture(new UnsupportedOperationException()));
+      FluentFuture<Integer> result = node.toGraph().newComputation().compute();
+      ExecutionException e = assertThrows(ExecutionException.class, () -> result.get());
+      assertTrue(e.getCause() instanceof UnsupportedOperationException);
+      // also a Result when consumed optionally
+      Node<Boolean> consumer = Node.builder().dependingOptionallyOn(node)
+            .define(Result::isFailed);
+      assertTrue(consumer.toGraph().newComputation().compute().get());
+   }
+
+   @Test public void cacheable() throws Exception {
+      AtomicInteger calls = new AtomicInteger();
+      Node<String> lookup = Node.builder().withInput(Integer.class)
+            .define(i -> {
+               calls.incrementAndGet();
+               if (i < 0) {
+                  throw new IllegalArgumentException();
+               }
+               return "v" + i;
+            })
+            .markCacheable(1, TimeUnit.MINUTES, 100);
+      Node<String> result = Node.builder().dependingOn(lookup).withInput(String.class)
+            .define((s1, s2) -> s1 + s2);
+      Graph<String> graph = result.toGraph();
+      for (int i = 0; i < 10; i++) {
+         assertEquals("v1-" + i, graph.newComputation()
+               .bindInput(Integer.class, 1).bindInput(String.class, "-" + i).compute().get());
+      }
+      assertEquals("v2", lookup.toGraph().newComputation()
+            .bindInput(Integer.class, 2).compute().get());
+      assertEquals(2, calls.get());
+      NodeCache<String> cache = lookup.cache();
+      assertEquals(9, cache.getHitCount());
+      assertEquals(2, cache.getMissCount());
+      assertEquals(2, cache.size());
+
+      // failures aren't cached
+      for (int i = 0; i < 2; i++) {
+         FluentFuture<String> f = lookup.toGraph().newComputation()
+               .bindInput(Integer.class, -1).compute();
+         f.await();
+         assertTrue(f.isFailed());
+      }
+      assertEquals(4, calls.get());
+      assertEquals(2, cache.size());
+
+      cache.invalidateAll();
+      assertEquals(0, cache.size());
+      lookup.toGraph().newComputation().bindInput(Integer.class, 1).compute().get();
+      assertEquals(5, calls.get());
+
+      assertThrows(IllegalStateException.class,
+            () -> lookup.markCacheable(1, TimeUnit.MINUTES, 100));
+      Node<String> async = Node.builder().withAsyncInput(Integer.class)
+            .define(f -> "x");
+      assertThrows(IllegalStateException.class,
+            () -> async.markCacheable(1, TimeUnit.MINUTES, 100));
+      assertThrows(IllegalArgumentException.class,
+            () -> Node.builder().define(() -> "x").markCacheable(0, TimeUnit.MINUTES, 100));
+   }
+
+   @Test public void cacheable_expires() throws Exception {
+      AtomicInteger calls = new AtomicInteger();
+      Node<Integer> node = Node.builder().withInput(Integer.class)
+            .define(i -> calls.incrementAndGet())
+            .markCacheable(50, TimeUnit.MILLISECONDS, 100);
+      Graph<Integer> graph = node.toGraph();
+      assertEquals(1, (int) graph.newComputation().bindInput(Integer.class, 0).compute().get());
+      assertEquals(1, (int) graph.newComputation().bindInput(Integer.class, 0).compute().get());
+      Thread.sleep(100);
+      assertEquals(2, (int) graph.newComputation().bindInput(Integer.class, 0).compute().get());
+   }
+
+   @Test public void cacheable_singleFlight() throws Exception {
+      AtomicInteger calls = new AtomicInteger();
+      SettableFluentFuture<String> pending = new SettableFluentFuture<>();
+      Node<String> node = Node.builder().withInput(Integer.class)
+            .defineAsync(i -> {
+               calls.incrementAndGet();
+               return pending;
+            })
+            .markCheap()
+            .markCacheable(1, TimeUnit.MINUTES, 100);
+      Graph<String> graph = node.toGraph();
+      List<FluentFuture<String>> results = new ArrayList<>();
+      for (int i = 0; i < 5; i++) {
+         results.add(graph.newComputation().bindInput(Integer.class, 0).compute());
+      }
+      // cancelling one computation doesn't affect the others
+      assertTrue(results.get(0).cancel(false));
+      assertFalse(pending.isCancelled());
+      pending.setValue("done");
+      for (FluentFuture<String> f : results.subList(1, results.size())) {
+         assertEquals("done", f.get());
+      }
+      assertEquals(1, calls.get());
+      assertEquals(4, node.cache().getHitCount());
+      assertEquals(1, node.cache().getMissCount());
+   }
+
+   @Test public void cacheable_expiresAfterComputed() throws Exception {
+      AtomicInteger calls = new AtomicInteger();
+      SettableFluentFuture<Integer> pending = new SettableFluentFuture<>();
+      Node<Integer> node = Node.builder().withInput(Integer.class)
+            .defineAsync(i -> {
+               calls.incrementAndGet();
+               return pending;
+            })
+            .markCacheable(200, TimeUnit.MILLISECONDS, 100);
+      Graph<Integer> graph = node.toGraph();
+      FluentFuture<Integer> f = graph.newComputation().bindInput(Integer.class, 0).compute();
+      // takes longer to compute than the TTL
+      Thread.sleep(300);
+      pending.setValue(1);
+      assertEquals(1, (int) f.get());
+      assertEquals(1, (int) graph.newComputation().bindInput(Integer.class, 0).compute().get());
+      assertEquals(1, calls.get());
+   }
+
+   @Test public void cacheable_cancelledViewNotCached() throws Exception {
+      AtomicInteger calls = new AtomicInteger();
+      SettableFluentFuture<String> pending = new SettableFluentFuture<>();
+      Node<String> node = Node.builder().withInput(Integer.class)
+            .defineAsync(i -> {
+               calls.incrementAndGet();
+               return pending;
+            })
+            .markCacheable(1, TimeUnit.MINUTES, 100);
+      NodeCache<String> cache = node.cache();
+      // like a decorator that cancels the result it gets from the cache
+      assertTrue(cache.apply(node, new Object[] { 0 }).cancel(false));
+      assertTrue(cache.apply(node, new Object[] { 0 }).cancel(false));
+      FluentFuture<String> f = cache.apply(node, new Object[] { 0 });
+      assertFalse(f.isCancelled());
+      pending.setValue("done");
+      assertEquals("done", f.get());
+      assertEquals("done", cache.apply(node, new Object[] { 0 }).get());
+      assertEquals(1, calls.get());
+   }
+
+   @Test public void cacheable_afterCompile() throws Exception {
+      SettableFluentFuture<String> pending = new SettableFluentFuture<>();
+      Node<String> node = Node.builder().withInput(Integer.class)
+            .defineAsync(i -> pending)
+            .markCheap();
+      Graph<String> graph = node.toGraph();
+      graph.compile();
+      node.markCacheable(1, TimeUnit.MINUTES, 100);
+      FluentFuture<String> f1 = graph.newComputation().bindInput(Integer.class, 0).compute();
+      FluentFuture<String> f2 = graph.newComputation().bindInput(Integer.class, 0).compute();
+      // cancelling one computation doesn't affect the other, even though the plan was compiled
+      // before the node was cacheable
+      assertTrue(f1.cancel(false));
+      assertFalse(f2.isDone());
+      pending.setValue("done");
+      assertEquals("done", f2.get());
+      assertEquals(1, node.cache().getHitCount());
+   }
+
+   private static <T> T sleepThen(long millis, T value) {
+      try {
+         Thread.sleep(millis);
+      } catch (InterruptedException e) {
+         throw new RuntimeException(e);
+      }
+      return value;
+   }
+
+   @Test public void tracing() throws Exception {
+      Node<String> slow = Node.builder().define(() -> sleepThen(100, "slow"));
+      Node<String> fast = Node.builder().withInput(String.class).define(s -> s + "fast");
+      Node<String> join = Node.builder().dependingOn(fast).dependingOn(slow)
+            .define((s1, s2) -> s1 + s2);
+      Node<String> result = Node.builder().dependingOn(join).define(s -> s + "!").markCheap();
+      Computation<String> comp = result.toGraph().newComputation()
+            .bindInput(String.class, "-")
+            .enableTracing();
+      assertEquals(null, comp.trace());
+      checkComputation(comp, "-fastslow!");
+      assertThrows(IllegalStateException.class, () -> comp.enableTracing());
+
+      ComputationTrace trace = comp.trace();
+      assertEquals(Arrays.asList(slow, join, result), trace.criticalPath());
+      assertTrue(trace.latencyNanos() >= TimeUnit.MILLISECONDS.toNanos(100));
+      ComputationTrace.NodeTrace t = trace.nodeTrace(slow);
+      assertTrue(t.runNanos() >= TimeUnit.MILLISECONDS.toNanos(100));
+      assertTrue(t.queuedNanos() >= 0);
+      assertEquals(null, t.gatingNode());
+      assertEquals(null, t.gatingKey());
+      assertEquals(Key.of(String.class), trace.nodeTrace(fast).gatingKey());
+      assertSame(slow, trace.nodeTrace(join).gatingNode());
+      assertSame(join, trace.nodeTrace(result).gatingNode());
+      // cheap node runs in thread that completed its input
+      assertEquals(trace.nodeTrace(join).threadName(), trace.nodeTrace(result).threadName());
+
+      // times that were never recorded are distinct from any real time
+      ComputationTrace.NodeTrace notRun =
+            new ComputationTrace(result.toGraph().compile(), null).nodeTrace(slow);
+      assertEquals(ComputationTrace.NOT_SET, notRun.readyNanos());
+      assertEquals(ComputationTrace.NOT_SET, notRun.startNanos());
+      assertEquals(ComputationTrace.NOT_SET, notRun.endNanos());
+      assertEquals(-1, notRun.queuedNanos());
+      assertEquals(-1, notRun.runNanos());
+      assertTrue(t.endNanos() != ComputationTrace.NOT_SET);
+
+      String json = trace.toChromeTraceJson();
+      assertTrue(json.startsWith("["));
+      assertTrue(json.endsWith("]"));
+      assertEquals(4, json.split("\"ph\":\"X\"", -1).length - 1);
+      assertTrue(json.contains("\"gatedBy\":\"node"));
+
+      // not traced by default
+      Computation<String> untraced = result.toGraph().newComputation()
+            .bindInput(String.class, "-");
+      untraced.compute().get();
+      assertEquals(null, untraced.trace());
+   }
+
+   @Test public void profiler() throws Exception {
+      GraphProfiler profiler = new GraphProfiler();
+      ComputationFactory factory = ComputationFactory.newBuilder()
+            .setExecutor(Graph.defaultExecutor())
+            .setProfiler(profiler)
+            .build();
+      Node<Integer> a = Node.builder().withInput(Integer.class).define(i -> sleepThen(20, i));
+      Node<Integer> b = Node.builder().withInput(Integer.class).define(i -> i + 1);
+      Node<Integer> c = Node.builder().dependingOn(a).dependingOn(b).define((i, j) -> i * j);
+      Graph<Integer> graph = c.toGraph();
+      for (int i = 0; i < 5; i++) {
+         Computation<Integer> comp = factory.newComputation(graph).bindInput(Integer.class, i);
+         assertEquals(i * (i + 1), (int) comp.compute().get());
+         assertTrue(comp.trace() != null);
+      }
+      assertEquals(5, profiler.getLatency().getCount());
+      assertEquals(new HashSet<>(Arrays.asList(a, b, c)), profiler.getNodes());
+      assertEquals(5, profiler.getRunTime(a).getCount());
+      assertEquals(5, profiler.getQueuedTime(b).getCount());
+      assertTrue(profiler.getRunTime(a).getMax() >= TimeUnit.MILLISECONDS.toNanos(20));
+      assertEquals(5, profiler.getCriticalPathCount(a));
+      assertEquals(5, profiler.getCriticalPathCount(c));
+      assertEquals(0, profiler.getCriticalPathCount(b));
+      profiler.reset();
+      assertTrue(profiler.getNodes().isEmpty());
+      assertEquals(null, profiler.getRunTime(a));
+   }
+
+   @Test public void computeAll_batchedNode() throws Exception {
+      List<List<Object[]>> batches = Collections.synchronizedList(new ArrayList<>());
+      Node<Integer> lookup = Node.builder().withInput(Integer.class).define(i -> i * 10);
+      lookup.markBatched(args -> {
+         batches.add(args);
+         List<Integer> ret = new ArrayList<>(args.size());
+         for (Object[] a : args) {
+            ret.add((Integer) a[0] * 100);
+         }
+         return ret;
+      });
+      AtomicInteger perRecord = new AtomicInteger();
+      Node<String> format = Node.builder().dependingOn(lookup).withInput(String.class)
+            .define((i, s) -> {
+               perRecord.incrementAndGet();
+               return s + i;
+            });
+      List<Bindings> records = new ArrayList<>();
+      for (int i = 0; i < 4; i++) {
+         records.add(new Bindings().bind(Integer.class, i).bind(String.class, "r" + i + ":"));
+      }
+      List<FluentFuture<String>> results = format.toGraph().computeAll(records);
+      assertEquals(4, results.size());
+      for (int i = 0; i < 4; i++) {
+         assertEquals("r" + i + ":" + (i * 100), results.get(i).get());
+      }
+      // batch operation invoked just once, for all records; other node invoked per record
+      assertEquals(1, batches.size());
+      assertEquals(4, batches.get(0).size());
+      assertEquals(4, perRecord.get());
+
+      assertTrue(format.toGraph().computeAll(Collections.emptyList()).isEmpty());
+   }
+
+   @Test public void computeAll_failures() throws Exception {
+      Node<Integer> check = Node.builder().withInput(Integer.class).define(i -> {
+         if (i < 0) {
+            throw new IllegalArgumentException("negative");
+         }
+         return i;
+      });
+      List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+      Node<Integer> doubled = Node.builder().dependingOn(check).define(i -> i * 2);
+      doubled.markBatched(args -> {
+         batchSizes.add(args.size());
+         List<Integer> ret = new ArrayList<>();
+         for (Object[] a : args) {
+            ret.add((Integer) a[0] * 2);
+         }
+         return ret;
+      });
+      List<Bindings> records = Arrays.asList(new Bindings().bind(Integer.class, 1),
+            new Bindings().bind(Integer.class, -1), new Bindings().bind(Integer.class, 3));
+      List<FluentFuture<Integer>> results = doubled.toGraph().computeAll(records);
+      assertEquals(2, (int) results.get(0).get());
+      ExecutionException e = assertThrows(ExecutionException.class, () -> results.get(1).get());
+      assertTrue(e.getCause() instanceof IllegalArgumentException);
+      assertEquals(6, (int) results.get(2).get());
+      // failed record excluded from batch
+      assertEquals(Arrays.asList(2), batchSizes);
+
+      // batch returning wrong number of results fails all records
+      Node<Integer> broken = Node.builder().withInput(Integer.class).define(i -> i);
+      broken.markBatched(args -> Collections.singletonList(0));
+      List<FluentFuture<Integer>> brokenResults = broken.toGraph().computeAll(
+            Arrays.asList(new Bindings().bind(Integer.class, 1),
+                  new Bindings().bind(Integer.class, 2)));
+      for (FluentFuture<Integer> f : brokenResults) {
+         f.await();
+         assertTrue(f.getFailure() instanceof IllegalStateException);
+      }
+
+      // missing inputs
+      Graph<Integer> graph = doubled.toGraph();
+      List<Bindings> missing = Arrays.asList(new Bindings().bind(Integer.class, 1),
+            new Bindings().bind(String.class, "x"));
+      assertThrows(IllegalStateException.class, () -> graph.computeAll(missing));
+      assertThrows(IllegalStateException.class, () -> doubled.markBatched(args -> null));
+   }
+
    private <T> void checkComputation(Computation<T> computation, T expectedResult)
          throws Exception {
       FluentFuture<T> value = computation.compute();
@@ -0,0 +1,132 @@
+package com.bluegosling.streams;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.bluegosling.tuples.Pair;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.DoubleConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+
+public class FluentDoubleStreamTest {
+
+   private static FluentDoubleStream halves(int n) {
+      return FluentDoubleStream.upgrade(IntStream.range(0, n).mapToDouble(i -> i / 2.0));
+   }
+
+   @Test public void conversionsStayFluent() {
+      FluentLongStream longs = halves(5).mapToLong(d -> Math.round(d * 2));
+      assertArrayEquals(new long[] { 0, 1, 2, 3, 4 }, longs.toArray());
+
+      FluentIntStream ints = halves(4).mapToInt(d -> (int) d);
+      assertArrayEquals(new int[] { 0, 0, 1, 1 }, ints.toArray());
+
+      FluentStream<Double> boxed = halves(3).boxed();
+      assertEquals(Arrays.asList(0.0, 0.5, 1.0), boxed.collect(Collectors.toList()));
+   }
+
+   @Test public void batch() {
+      List<double[]> batches = halves(5).batch(2).collect(Collectors.toList());
+      assertEquals(3, batches.size());
+      assertArrayEquals(new double[] { 0, 0.5 }, batches.get(0), 0);
+      assertArrayEquals(new double[] { 1, 1.5 }, batches.get(1), 0);
+      assertArrayEquals(new double[] { 2 }, batches.get(2), 0);
+
+      // parallel batches contain every element exactly once
+      long count = halves(10_000).parallel().batch(9)
+            .mapToLong(a -> a.length)
+            .sum();
+      assertEquals(10_000, count);
+   }
+
+   @Test public void groupBy() {
+      Map<Long, double[]> groups = halves(6).groupBy(Math::round)
+            .collect(Collectors.toMap(Entry::getKey, Entry::getValue));
+      // Math.round rounds half up
+      assertEquals(4, groups.size());
+      assertArrayEquals(new double[] { 0 }, groups.get(0L), 0);
+      assertArrayEquals(new double[] { 0.5, 1 }, groups.get(1L), 0);
+      assertArrayEquals(new double[] { 1.5, 2 }, groups.get(2L), 0);
+      assertArrayEquals(new double[] { 2.5 }, groups.get(3L), 0);
+
+      // parallel grouping preserves encounter order within groups
+      Map<Boolean, double[]> parallel = halves(2000).parallel().groupBy(d -> d % 1 == 0)
+            .collect(Collectors.toMap(Entry::getKey, Entry::getValue));
+      assertArrayEquals(IntStream.range(0, 1000).mapToDouble(i -> i + 0.5).toArray(),
+            parallel.get(false), 0);
+   }
+
+   @Test public void join() {
+      Map<Long, String> joined = halves(4)
+            .join(DoubleStream.of(0.25, 1.25, 7), Math::round, d -> (long) d,
+                  (k, a1, a2) -> k + ":" + Arrays.toString(a1) + Arrays.toString(a2))
+            .collect(Collectors.toMap(s -> Long.valueOf(s.substring(0, 1)), s -> s));
+      assertEquals(4, joined.size());
+      assertEquals("0:[0.0][0.25]", joined.get(0L));
+      assertEquals("1:[0.5, 1.0][1.25]", joined.get(1L));
+      assertEquals("2:[1.5][]", joined.get(2L));
+      assertEquals("7:[][7.0]", joined.get(7L));
+   }
+
+   @Test public void forkAndPartition() {
+      Pair<FluentDoubleStream, FluentDoubleStream> forks = halves(100).fork();
+      assertEquals(4950 / 2.0, forks.getFirst().sum(), 0);
+      assertEquals(49.5, forks.getSecond().max().getAsDouble(), 0);
+
+      Pair<FluentDoubleStream, FluentDoubleStream> parts = halves(6).partition(d -> d < 1);
+      assertArrayEquals(new double[] { 0, 0.5 }, parts.getFirst().toArray(), 0);
+      assertArrayEquals(new double[] { 1, 1.5, 2, 2.5 }, parts.getSecond().toArray(), 0);
+   }
+
+   @Test public void operator() {
+      AtomicBoolean started = new AtomicBoolean();
+      AtomicBoolean closed = new AtomicBoolean();
+      // emits a running total
+      StreamOperator.OfDouble runningTotal = new StreamOperator.OfDouble() {
+         @Override
+         public void startStream() {
+            started.set(true);
+         }
+
+         @Override
+         public void close() {
+            closed.set(true);
+         }
+
+         @Override
+         public StreamNode.OfDouble createNode() {
+            return new StreamNode.OfDouble() {
+               double total;
+
+               @Override
+               public boolean getNext(Upstream upstream, DoubleConsumer action) {
+                  return upstream.getUpstream(d -> {
+                     total += d;
+                     action.accept(total);
+                  });
+               }
+            };
+         }
+      };
+      try (FluentDoubleStream s = halves(5).operator(runningTotal)) {
+         assertArrayEquals(new double[] { 0, 0.5, 1.5, 3, 5 }, s.toArray(), 0);
+         assertTrue(started.get());
+      }
+      assertTrue(closed.get());
+
+      // stateless node shared across splits
+      assertEquals(-4950 / 2.0, halves(100).parallel()
+            .operator((StreamNode.OfDouble) (u, a) -> u.getUpstream(d -> a.accept(-d)))
+            .sum(), 0);
+   }
+}
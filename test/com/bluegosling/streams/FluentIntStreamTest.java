@@ -0,0 +1,165 @@
+package com.bluegosling.streams;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.bluegosling.tuples.Pair;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class FluentIntStreamTest {
+
+   private static FluentIntStream range(int n) {
+      return FluentIntStream.upgrade(IntStream.range(0, n));
+   }
+
+   @Test public void conversionsStayFluent() {
+      FluentLongStream longs = range(5).asLongStream();
+      assertArrayEquals(new long[] { 0, 1, 2, 3, 4 }, longs.toArray());
+
+      FluentDoubleStream doubles = range(3).mapToDouble(i -> i + 0.5);
+      assertArrayEquals(new double[] { 0.5, 1.5, 2.5 }, doubles.toArray(), 0);
+
+      FluentStream<String> strings = range(3).mapToObj(Integer::toString);
+      assertEquals(Arrays.asList("0", "1", "2"), strings.collect(Collectors.toList()));
+   }
+
+   @Test public void batch() {
+      List<int[]> batches = range(7).batch(3).collect(Collectors.toList());
+      assertEquals(3, batches.size());
+      assertArrayEquals(new int[] { 0, 1, 2 }, batches.get(0));
+      assertArrayEquals(new int[] { 3, 4, 5 }, batches.get(1));
+      assertArrayEquals(new int[] { 6 }, batches.get(2));
+
+      // parallel batches contain every element exactly once
+      int[] all = range(10_000).parallel().batch(13)
+            .flatMapToInt(IntStream::of)
+            .sorted()
+            .toArray();
+      assertArrayEquals(IntStream.range(0, 10_000).toArray(), all);
+   }
+
+   @Test public void groupBy() {
+      Map<Boolean, int[]> groups = range(10).groupBy(i -> i % 2 == 0)
+            .collect(Collectors.toMap(Entry::getKey, Entry::getValue));
+      assertEquals(2, groups.size());
+      assertArrayEquals(new int[] { 0, 2, 4, 6, 8 }, groups.get(true));
+      assertArrayEquals(new int[] { 1, 3, 5, 7, 9 }, groups.get(false));
+
+      // parallel grouping preserves encounter order within groups
+      Map<Integer, int[]> parallel = range(3000).parallel().groupBy(i -> i % 3)
+            .collect(Collectors.toMap(Entry::getKey, Entry::getValue));
+      assertArrayEquals(IntStream.range(0, 1000).map(i -> i * 3 + 2).toArray(), parallel.get(2));
+   }
+
+   @Test public void join() {
+      Map<Integer, String> joined = range(4)
+            .join(IntStream.of(5, 7, 15), i -> i, i -> i % 10,
+                  (k, a1, a2) -> Arrays.toString(a1) + Arrays.toString(a2))
+            .collect(Collectors.toMap(
+                  s -> s.startsWith("[]") ? Integer.parseInt(s.substring(3, 4)) % 10
+                        : Integer.parseInt(s.substring(1, 2)),
+                  s -> s));
+      assertEquals(6, joined.size());
+      assertEquals("[0][]", joined.get(0));
+      assertEquals("[3][]", joined.get(3));
+      assertEquals("[][5, 15]", joined.get(5));
+      assertEquals("[][7]", joined.get(7));
+
+      // parallel join produces the same groups
+      long sizes = range(1000).parallel()
+            .join(IntStream.range(0, 500).parallel(), i -> i % 100, i -> i % 100,
+                  (k, a1, a2) -> a1.length * 1000 + a2.length)
+            .filter(n -> n == 10 * 1000 + 5)
+            .count();
+      assertEquals(100, sizes);
+   }
+
+   @Test public void forkAndPartition() {
+      Supplier<FluentIntStream> forks = range(100).fork(3);
+      FluentIntStream f1 = forks.get();
+      FluentIntStream f2 = forks.get();
+      FluentIntStream f3 = forks.get();
+      assertEquals(4950, f1.sum());
+      assertEquals(99, f2.max().getAsInt());
+      assertEquals(100, f3.count());
+
+      Pair<FluentIntStream, FluentIntStream> parts = range(10).partition(i -> i % 4 == 0);
+      assertArrayEquals(new int[] { 0, 4, 8 }, parts.getFirst().toArray());
+      assertArrayEquals(new int[] { 1, 2, 3, 5, 6, 7, 9 }, parts.getSecond().toArray());
+   }
+
+   @Test public void operator() {
+      AtomicBoolean started = new AtomicBoolean();
+      AtomicBoolean closed = new AtomicBoolean();
+      // emits only values that are greater than all before them
+      StreamOperator.OfInt runningMax = new StreamOperator.OfInt() {
+         @Override
+         public void startStream() {
+            started.set(true);
+         }
+
+         @Override
+         public void close() {
+            closed.set(true);
+         }
+
+         @Override
+         public int spliteratorCharacteristics(int upstreamCharacteristics) {
+            // drops elements, so the size is no longer known
+            return upstreamCharacteristics & ~(Spliterator.SIZED | Spliterator.SUBSIZED);
+         }
+
+         @Override
+         public StreamNode.OfInt createNode() {
+            return new StreamNode.OfInt() {
+               boolean seen;
+               int max;
+               int current;
+               final IntConsumer receiver = i -> current = i;
+
+               @Override
+               public boolean getNext(Upstream upstream, IntConsumer action) {
+                  while (upstream.getUpstream(receiver)) {
+                     if (!seen || current > max) {
+                        seen = true;
+                        max = current;
+                        action.accept(current);
+                        return true;
+                     }
+                  }
+                  return false;
+               }
+            };
+         }
+      };
+      FluentIntStream s = FluentIntStream.upgrade(IntStream.of(3, 1, 4, 1, 5, 9, 2, 6))
+            .operator(runningMax);
+      assertFalse(started.get());
+      try {
+         assertArrayEquals(new int[] { 3, 4, 5, 9 }, s.toArray());
+         assertTrue(started.get());
+      } finally {
+         s.close();
+      }
+      assertTrue(closed.get());
+
+      // stateless node shared across splits
+      assertEquals(4950 + 100, range(100).parallel()
+            .operator((StreamNode.OfInt) (u, a) -> u.getUpstream(i -> a.accept(i + 1)))
+            .sum());
+   }
+}
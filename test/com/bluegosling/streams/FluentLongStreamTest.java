@@ -0,0 +1,141 @@
+package com.bluegosling.streams;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.bluegosling.tuples.Pair;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+public class FluentLongStreamTest {
+
+   private static FluentLongStream range(long n) {
+      return FluentLongStream.upgrade(LongStream.range(0, n));
+   }
+
+   @Test public void mapToPrimitiveStaysFluent() {
+      FluentLongStream longs = FluentStream.upgrade(Stream.of("a", "bb", "ccc"))
+            .mapToLong(String::length);
+      assertEquals(6, longs.map(l -> l * 2).sum() / 2);
+
+      FluentIntStream ints = FluentStream.upgrade(Stream.of("a", "bb")).mapToInt(String::length);
+      assertArrayEquals(new int[] { 1, 2 }, ints.toArray());
+
+      FluentDoubleStream doubles = range(4).asDoubleStream().map(d -> d / 2);
+      assertArrayEquals(new double[] { 0, 0.5, 1, 1.5 }, doubles.toArray(), 0);
+   }
+
+   @Test public void batch() {
+      List<long[]> batches = range(10).batch(4).collect(Collectors.toList());
+      assertEquals(3, batches.size());
+      assertArrayEquals(new long[] { 0, 1, 2, 3 }, batches.get(0));
+      assertArrayEquals(new long[] { 4, 5, 6, 7 }, batches.get(1));
+      assertArrayEquals(new long[] { 8, 9 }, batches.get(2));
+
+      // parallel batches contain every element exactly once
+      long sum = range(10_000).parallel().batch(7)
+            .mapToLong(a -> LongStream.of(a).sum())
+            .sum();
+      assertEquals(10_000L * 9_999 / 2, sum);
+   }
+
+   @Test public void groupBy() {
+      Map<Long, long[]> groups = range(10).groupBy(l -> l % 3)
+            .collect(Collectors.toMap(Entry::getKey, Entry::getValue));
+      assertEquals(3, groups.size());
+      assertArrayEquals(new long[] { 0, 3, 6, 9 }, groups.get(0L));
+      assertArrayEquals(new long[] { 1, 4, 7 }, groups.get(1L));
+      assertArrayEquals(new long[] { 2, 5, 8 }, groups.get(2L));
+
+      // parallel grouping preserves encounter order within groups
+      Map<Long, long[]> parallel = range(1000).parallel().groupBy(l -> l % 2)
+            .collect(Collectors.toMap(Entry::getKey, Entry::getValue));
+      assertArrayEquals(LongStream.range(0, 500).map(l -> l * 2).toArray(), parallel.get(0L));
+   }
+
+   @Test public void join() {
+      Map<Long, String> joined = range(5)
+            .join(LongStream.of(10, 13, 20), l -> l, l -> l % 10,
+                  (k, a1, a2) -> k + ":" + Arrays.toString(a1) + Arrays.toString(a2))
+            .collect(Collectors.toMap(s -> Long.valueOf(s.substring(0, 1)), s -> s));
+      assertEquals(5, joined.size());
+      assertEquals("0:[0][10, 20]", joined.get(0L));
+      assertEquals("1:[1][]", joined.get(1L));
+      assertEquals("3:[3][13]", joined.get(3L));
+   }
+
+   @Test public void forkAndPartition() {
+      Pair<FluentLongStream, FluentLongStream> forks = range(1000).fork();
+      assertEquals(1000 * 999 / 2, forks.getFirst().sum());
+      assertEquals(1000, forks.getSecond().count());
+
+      Pair<FluentLongStream, FluentLongStream> parts = range(10).partition(l -> l < 3);
+      assertArrayEquals(new long[] { 0, 1, 2 }, parts.getFirst().toArray());
+      assertArrayEquals(new long[] { 3, 4, 5, 6, 7, 8, 9 }, parts.getSecond().toArray());
+   }
+
+   @Test public void operator() {
+      AtomicBoolean started = new AtomicBoolean();
+      AtomicBoolean closed = new AtomicBoolean();
+      // emits sums of adjacent pairs of elements
+      StreamOperator.OfLong pairSums = new StreamOperator.OfLong() {
+         @Override
+         public void startStream() {
+            started.set(true);
+         }
+
+         @Override
+         public void close() {
+            closed.set(true);
+         }
+
+         @Override
+         public long spliteratorEstimatedSize(long upstreamEstimatedSize) {
+            return (upstreamEstimatedSize + 1) / 2;
+         }
+
+         @Override
+         public StreamNode.OfLong createNode() {
+            return new StreamNode.OfLong() {
+               long first;
+               final LongConsumer receiver = l -> first = l;
+
+               @Override
+               public boolean getNext(Upstream upstream, LongConsumer action) {
+                  if (!upstream.getUpstream(receiver)) {
+                     return false;
+                  }
+                  long f = first;
+                  if (!upstream.getUpstream(receiver)) {
+                     action.accept(f);
+                  } else {
+                     action.accept(f + first);
+                  }
+                  return true;
+               }
+            };
+         }
+      };
+      try (FluentLongStream s = range(7).operator(pairSums)) {
+         assertArrayEquals(new long[] { 1, 5, 9, 6 }, s.toArray());
+         assertTrue(started.get());
+      }
+      assertTrue(closed.get());
+
+      // stateless node shared across splits
+      assertEquals(2 * 4950, range(100).parallel()
+            .operator((StreamNode.OfLong) (u, a) -> u.getUpstream(l -> a.accept(l * 2)))
+            .sum());
+   }
+}
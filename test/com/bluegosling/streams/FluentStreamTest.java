@@ -0,0 +1,584 @@
+package com.bluegosling.streams;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.bluegosling.concurrent.fluent.FluentFuture;
+import com.bluegosling.concurrent.fluent.SettableFluentFuture;
+import com.bluegosling.tuples.Pair;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+public class FluentStreamTest {
+
+   private static FluentStream<Integer> range(int n) {
+      return FluentStream.upgrade(IntStream.range(0, n).boxed());
+   }
+
+   @Test public void parallel_customPool() throws Exception {
+      ForkJoinPool pool = new ForkJoinPool(4);
+      try {
+         Set<ForkJoinPool> pools = Collections.synchronizedSet(new HashSet<>());
+         List<Integer> list = range(10_000).parallel(pool)
+               .map(i -> {
+                  Thread th = Thread.currentThread();
+                  if (th instanceof ForkJoinWorkerThread) {
+                     pools.add(((ForkJoinWorkerThread) th).getPool());
+                  }
+                  return i * 2;
+               })
+               .collect(Collectors.toList());
+         assertEquals(10_000, list.size());
+         assertEquals(IntStream.range(0, 10_000).map(i -> i * 2).sum(),
+               list.stream().mapToInt(Integer::intValue).sum());
+         // all processing happened in the given pool
+         assertEquals(Collections.singleton(pool), pools);
+
+         // pool is carried through to the other side of a join
+         Set<ForkJoinPool> joinPools = Collections.synchronizedSet(new HashSet<>());
+         long count = range(100).parallel(pool)
+               .join(range(100).peek(i -> {
+                     Thread th = Thread.currentThread();
+                     if (th instanceof ForkJoinWorkerThread) {
+                        joinPools.add(((ForkJoinWorkerThread) th).getPool());
+                     }
+                  }), i -> i % 10, i -> i % 10)
+               .count();
+         assertEquals(10, count);
+         assertEquals(Collections.singleton(pool), joinPools);
+      } finally {
+         pool.shutdown();
+      }
+   }
+
+   @Test public void parallel_customPoolPrimitive() throws Exception {
+      ForkJoinPool pool = new ForkJoinPool(4);
+      try {
+         // pool is carried into primitive streams
+         Set<Thread> threads = Collections.synchronizedSet(new HashSet<>());
+         int sum = range(10_000).parallel(pool)
+               .mapToInt(i -> {
+                  threads.add(Thread.currentThread());
+                  return i;
+               })
+               .map(i -> i * 2)
+               .sum();
+         assertEquals(IntStream.range(0, 10_000).map(i -> i * 2).sum(), sum);
+         assertRanIn(pool, threads);
+
+         // and back out of them
+         threads.clear();
+         List<Long> list = range(10_000).parallel(pool)
+               .mapToInt(Integer::intValue)
+               .mapToLong(i -> {
+                  threads.add(Thread.currentThread());
+                  return i;
+               })
+               .boxed()
+               .collect(Collectors.toList());
+         assertEquals(10_000, list.size());
+         assertRanIn(pool, threads);
+
+         // primitive streams can be configured with a pool directly
+         threads.clear();
+         int[] array = FluentIntStream.upgrade(IntStream.range(0, 10_000)).parallel(pool)
+               .peek(i -> threads.add(Thread.currentThread()))
+               .toArray();
+         assertEquals(10_000, array.length);
+         assertRanIn(pool, threads);
+
+         // grouping and both sides of a join use the pool
+         threads.clear();
+         long groups = range(10_000).parallel(pool)
+               .mapToLong(Integer::longValue)
+               .peek(i -> threads.add(Thread.currentThread()))
+               .groupBy(i -> i % 10)
+               .count();
+         assertEquals(10, groups);
+         assertRanIn(pool, threads);
+
+         threads.clear();
+         long joined = FluentIntStream.upgrade(IntStream.range(0, 10_000)).parallel(pool)
+               .peek(i -> threads.add(Thread.currentThread()))
+               .join(IntStream.range(0, 10_000).parallel()
+                     .peek(i -> threads.add(Thread.currentThread())),
+                     i -> i % 10, i -> i % 10, (k, a1, a2) -> a1.length + a2.length)
+               .count();
+         assertEquals(10, joined);
+         assertRanIn(pool, threads);
+      } finally {
+         pool.shutdown();
+      }
+   }
+
+   @Test public void parallel_customPoolAfterGrouping() throws Exception {
+      ForkJoinPool pool = new ForkJoinPool(4);
+      Path dir = Files.createTempDirectory("spill-test");
+      try {
+         // stages after grouping, merging, and joining run in the pool, too (results are collected
+         // since counting a sized stream needn't visit its elements)
+         Set<Thread> threads = Collections.synchronizedSet(new HashSet<>());
+         long count = range(10_000).parallel(pool)
+               .groupBy(i -> i, i -> i)
+               .parallel()
+               .peek(e -> threads.add(Thread.currentThread()))
+               .collect(Collectors.toList()).size();
+         assertEquals(10_000, count);
+         assertRanIn(pool, threads);
+
+         threads.clear();
+         count = range(10_000).parallel(pool)
+               .merge(range(10_000), i -> i, i -> i)
+               .parallel()
+               .peek(e -> threads.add(Thread.currentThread()))
+               .collect(Collectors.toList()).size();
+         assertEquals(10_000, count);
+         assertRanIn(pool, threads);
+
+         threads.clear();
+         count = range(10_000).parallel(pool)
+               .join(range(10_000), i -> i, i -> i)
+               .parallel()
+               .peek(e -> threads.add(Thread.currentThread()))
+               .collect(Collectors.toList()).size();
+         assertEquals(10_000, count);
+         assertRanIn(pool, threads);
+
+         threads.clear();
+         SpillConfig config = SpillConfig.newBuilder()
+               .setMemoryBudget(10).setNumPartitions(4).setDirectory(dir).build();
+         try (FluentStream<Entry<Integer, Collection<Integer>>> s =
+               range(10_000).parallel(pool).groupBy(i -> i, i -> i, config)) {
+            count = s.parallel()
+                  .peek(e -> threads.add(Thread.currentThread()))
+                  .collect(Collectors.toList()).size();
+         }
+         assertEquals(10_000, count);
+         assertRanIn(pool, threads);
+         assertTrue(isEmpty(dir));
+      } finally {
+         pool.shutdown();
+         Files.delete(dir);
+      }
+   }
+
+   private static void assertRanIn(ForkJoinPool pool, Set<Thread> threads) {
+      assertFalse(threads.isEmpty());
+      for (Thread th : threads) {
+         assertTrue(th.getName(), th instanceof ForkJoinWorkerThread
+               && ((ForkJoinWorkerThread) th).getPool() == pool);
+      }
+   }
+
+   @Test public void parallel_maxDepth() {
+      // two leaves per thread
+      assertEquals(3, StreamPipeline.ParallelInvocation.maxDepth(4, Long.MAX_VALUE));
+      assertEquals(4, StreamPipeline.ParallelInvocation.maxDepth(6, Long.MAX_VALUE));
+      // but no leaves with fewer than 100 elements
+      assertEquals(1, StreamPipeline.ParallelInvocation.maxDepth(16, 200));
+      assertEquals(0, StreamPipeline.ParallelInvocation.maxDepth(16, 50));
+      assertEquals(5, StreamPipeline.ParallelInvocation.maxDepth(16, 1_000_000));
+   }
+
+   private static Map<Integer, List<Integer>> toMap(Stream<Entry<Integer, Collection<Integer>>> s) {
+      Map<Integer, List<Integer>> map = new HashMap<>();
+      s.forEach(e -> {
+         List<Integer> list = new ArrayList<>(e.getValue());
+         Collections.sort(list);
+         assertEquals(null, map.put(e.getKey(), list));
+      });
+      return map;
+   }
+
+   private static boolean isEmpty(Path dir) throws IOException {
+      try (Stream<Path> files = Files.list(dir)) {
+         return !files.findAny().isPresent();
+      }
+   }
+
+   @Test public void groupBy_spill() throws Exception {
+      Path dir = Files.createTempDirectory("spill-test");
+      try {
+         SpillConfig config = SpillConfig.newBuilder()
+               .setMemoryBudget(10).setNumPartitions(4).setDirectory(dir).build();
+         Map<Integer, List<Integer>> expected = toMap(range(1_000).groupBy(i -> i % 37));
+         try (FluentStream<Entry<Integer, Collection<Integer>>> s =
+               range(1_000).groupBy(i -> i % 37, i -> i, config)) {
+            assertEquals(expected, toMap(s));
+         }
+         assertTrue(isEmpty(dir));
+
+         // parallel input and merge
+         Map<Integer, List<Integer>> merged = toMap(range(1_000).parallel()
+               .merge(range(1_000), i -> i % 37, i -> i, config));
+         assertEquals(37, merged.size());
+         for (Entry<Integer, List<Integer>> e : merged.entrySet()) {
+            List<Integer> doubled = new ArrayList<>();
+            for (Integer i : expected.get(e.getKey())) {
+               doubled.add(i);
+               doubled.add(i);
+            }
+            assertEquals(doubled, e.getValue());
+         }
+      } finally {
+         Files.delete(dir);
+      }
+   }
+
+   @Test public void groupBy_spillSkewedKey() throws Exception {
+      Path dir = Files.createTempDirectory("spill-test");
+      try {
+         SpillConfig config = SpillConfig.newBuilder()
+               .setMemoryBudget(10).setNumPartitions(4).setDirectory(dir).build();
+         // one key has far more values than the budget, so it can never be split up
+         Map<Integer, List<Integer>> expected =
+               toMap(range(500).groupBy(i -> i < 400 ? -1 : i));
+         try (FluentStream<Entry<Integer, Collection<Integer>>> s =
+               range(500).groupBy(i -> i < 400 ? -1 : i, i -> i, config)) {
+            assertEquals(expected, toMap(s));
+         }
+         assertTrue(isEmpty(dir));
+      } finally {
+         Files.delete(dir);
+      }
+   }
+
+   @Test public void join_spill() throws Exception {
+      Path dir = Files.createTempDirectory("spill-test");
+      try {
+         SpillConfig config = SpillConfig.newBuilder()
+               .setMemoryBudget(16).setNumPartitions(3).setDirectory(dir).build();
+         Map<Integer, String> expected = new HashMap<>();
+         range(300).join(range(200), i -> i % 50, i -> i % 60,
+               (k, c1, c2) -> k + ":" + c1.size() + ":" + c2.size())
+               .forEach(s -> expected.put(Integer.valueOf(s.substring(0, s.indexOf(':'))), s));
+         Map<Integer, String> actual = new HashMap<>();
+         try (FluentStream<String> s = range(300).join(range(200), i -> i % 50, i -> i,
+               i -> i % 60, i -> i, (k, c1, c2) -> k + ":" + c1.size() + ":" + c2.size(),
+               config)) {
+            s.forEach(str -> assertEquals(null,
+                  actual.put(Integer.valueOf(str.substring(0, str.indexOf(':'))), str)));
+         }
+         assertEquals(60, actual.size());
+         assertEquals(expected, actual);
+         assertTrue(isEmpty(dir));
+
+         // nothing spilled if within budget
+         try (FluentStream<String> s = range(5).join(range(5), i -> i, i -> i, i -> i, i -> i,
+               (k, c1, c2) -> k + ":" + c1 + ":" + c2, config)) {
+            assertEquals(5, s.count());
+         }
+         assertTrue(isEmpty(dir));
+      } finally {
+         Files.delete(dir);
+      }
+   }
+
+   @Test public void groupBySorted() {
+      Map<Integer, List<Integer>> expected = toMap(range(1_000).groupBy(i -> i / 7));
+      List<Integer> keys = new ArrayList<>();
+      Map<Integer, List<Integer>> actual = toMap(range(1_000)
+            .groupBySorted(i -> i / 7, Comparator.naturalOrder())
+            .peek(e -> keys.add(e.getKey())));
+      assertEquals(expected, actual);
+      // emitted in key order
+      List<Integer> sortedKeys = new ArrayList<>(keys);
+      Collections.sort(sortedKeys);
+      assertEquals(sortedKeys, keys);
+
+      // incremental: works with infinite streams, consuming only one element past the last group
+      AtomicInteger consumed = new AtomicInteger();
+      List<Entry<Integer, Collection<Integer>>> groups =
+            FluentStream.upgrade(Stream.iterate(0, i -> i + 1))
+                  .peek(i -> consumed.incrementAndGet())
+                  .groupBySorted(i -> i / 10, i -> i, Comparator.naturalOrder())
+                  .limit(3)
+                  .collect(Collectors.toList());
+      assertEquals(3, groups.size());
+      assertEquals(Integer.valueOf(2), groups.get(2).getKey());
+      assertEquals(IntStream.range(20, 30).boxed().collect(Collectors.toList()),
+            groups.get(2).getValue());
+      assertEquals(31, consumed.get());
+   }
+
+   @Test public void groupBySorted_notSorted() {
+      try {
+         FluentStream.upgrade(Stream.of(1, 1, 2, 3, 2))
+               .groupBySorted(i -> i, Comparator.naturalOrder())
+               .count();
+         fail("expecting IllegalStateException");
+      } catch (IllegalStateException expected) {
+      }
+   }
+
+   @Test public void joinSorted() {
+      Map<Integer, String> expected = new HashMap<>();
+      range(300).join(range(200), i -> i / 4, i -> i / 2,
+            (k, c1, c2) -> k + ":" + c1 + ":" + c2)
+            .forEach(s -> expected.put(Integer.valueOf(s.substring(0, s.indexOf(':'))), s));
+      List<String> actual = range(300)
+            .joinSorted(range(200), i -> i / 4, i -> i / 2,
+                  (k, c1, c2) -> k + ":" + c1 + ":" + c2, Comparator.naturalOrder())
+            .collect(Collectors.toList());
+      assertEquals(100, actual.size());
+      // emitted in key order
+      for (int i = 0; i < actual.size(); i++) {
+         assertEquals(expected.get(i), actual.get(i));
+      }
+
+      // infinite streams
+      List<String> joined = FluentStream.upgrade(Stream.iterate(0, i -> i + 2))
+            .joinSorted(Stream.iterate(0, i -> i + 3), i -> i, i -> i,
+                  (k, c1, c2) -> k + ":" + c1.size() + ":" + c2.size(),
+                  Comparator.naturalOrder())
+            .limit(6)
+            .collect(Collectors.toList());
+      assertEquals(
+            Arrays.asList("0:1:1", "2:1:0", "3:0:1", "4:1:0", "6:1:1", "8:1:0"), joined);
+   }
+
+   @Test public void fork() {
+      Supplier<FluentStream<Integer>> forks = range(100).fork(3);
+      FluentStream<Integer> f1 = forks.get();
+      FluentStream<Integer> f2 = forks.get();
+      FluentStream<Integer> f3 = forks.get();
+      assertEquals(4950, f1.mapToInt(Integer::intValue).sum());
+      assertEquals(100, f2.count());
+      assertEquals(99, (int) f3.max(Comparator.naturalOrder()).get());
+   }
+
+   @Test public void partition_bounded() throws Exception {
+      ExecutorService executor = Executors.newFixedThreadPool(2);
+      try {
+         Pair<FluentStream<Integer>, FluentStream<Integer>> partitions =
+               range(10_000).partition(i -> i % 3 == 0, 8);
+         Future<Long> evens = executor.submit(() -> partitions.getFirst().count());
+         Future<Long> odds = executor.submit(() -> partitions.getSecond().count());
+         assertEquals(3334, (long) evens.get());
+         assertEquals(6666, (long) odds.get());
+
+         // a fork that is closed early does not hold back the other
+         Supplier<FluentStream<Integer>> forks = range(10_000).fork(2, 8);
+         FluentStream<Integer> f1 = forks.get();
+         FluentStream<Integer> f2 = forks.get();
+         assertEquals(Arrays.asList(0, 1, 2), f1.limit(3).collect(Collectors.toList()));
+         assertEquals(10_000, f2.count());
+      } finally {
+         executor.shutdown();
+      }
+   }
+
+   @Test public void mapAsync() {
+      List<SettableFluentFuture<Integer>> futures = new ArrayList<>();
+      AtomicInteger maxOutstanding = new AtomicInteger();
+      List<Integer> results = range(20)
+            .mapAsync(i -> {
+               SettableFluentFuture<Integer> f = new SettableFluentFuture<>();
+               futures.add(f);
+               maxOutstanding.accumulateAndGet(
+                     (int) futures.stream().filter(fut -> !fut.isDone()).count(), Math::max);
+               if (futures.size() % 4 == 0) {
+                  // complete the batch in reverse order, after the whole batch is started
+                  for (int j = futures.size() - 1; j >= futures.size() - 4; j--) {
+                     futures.get(j).setValue(j * 10);
+                  }
+               }
+               return f;
+            }, 4)
+            .collect(Collectors.toList());
+      assertEquals(IntStream.range(0, 20).map(i -> i * 10).boxed().collect(Collectors.toList()),
+            results);
+      assertEquals(4, maxOutstanding.get());
+   }
+
+   @Test public void mapAsyncUnordered() {
+      List<SettableFluentFuture<Integer>> futures = new ArrayList<>();
+      List<Integer> results = range(8)
+            .mapAsyncUnordered(i -> {
+               SettableFluentFuture<Integer> f = new SettableFluentFuture<>();
+               futures.add(f);
+               if (futures.size() % 4 == 0) {
+                  for (int j = futures.size() - 1; j >= futures.size() - 4; j--) {
+                     futures.get(j).setValue(j);
+                  }
+               }
+               return f;
+            }, 4)
+            .collect(Collectors.toList());
+      // results emitted in the order they completed (the last of each batch completes before
+      // it is even returned to the operator, so it is seen last)
+      assertEquals(Arrays.asList(2, 1, 0, 3, 6, 5, 4, 7), results);
+   }
+
+   @Test public void mapAsync_failure() {
+      List<SettableFluentFuture<Integer>> futures = new ArrayList<>();
+      RuntimeException failure = new RuntimeException();
+      try {
+         range(10)
+               .mapAsync(i -> {
+                  SettableFluentFuture<Integer> f = new SettableFluentFuture<>();
+                  futures.add(f);
+                  if (i == 0) {
+                     f.setFailure(failure);
+                  }
+                  return f;
+               }, 3)
+               .forEach(i -> fail());
+         fail("expecting CompletionException");
+      } catch (CompletionException e) {
+         assertSame(failure, e.getCause());
+      }
+      // other outstanding futures were cancelled
+      assertEquals(3, futures.size());
+      assertTrue(futures.get(1).isCancelled());
+      assertTrue(futures.get(2).isCancelled());
+   }
+
+   @Test public void mapAsync_failureTerminates() {
+      for (boolean ordered : new boolean[] { true, false }) {
+         List<SettableFluentFuture<Integer>> futures = new ArrayList<>();
+         Function<Integer, SettableFluentFuture<Integer>> mapper = i -> {
+            SettableFluentFuture<Integer> f = new SettableFluentFuture<>();
+            futures.add(f);
+            if (i == 0) {
+               f.setFailure(new RuntimeException());
+            }
+            return f;
+         };
+         Iterator<Integer> iter = ordered
+               ? range(10).mapAsync(mapper, 3).iterator()
+               : range(10).mapAsyncUnordered(mapper, 3).iterator();
+         try {
+            iter.hasNext();
+            fail("expecting CompletionException");
+         } catch (CompletionException expected) {
+         }
+         // no more elements are pulled after the failure, and the cancelled futures aren't emitted
+         assertFalse(iter.hasNext());
+         assertEquals(3, futures.size());
+         assertTrue(futures.get(1).isCancelled());
+         assertTrue(futures.get(2).isCancelled());
+      }
+   }
+
+   @Test public void mapAsync_exhaustedNodesRemoved() {
+      AsyncMapOperator<Integer, Integer> op =
+            new AsyncMapOperator<>(FluentFuture::completedFuture, 3, false);
+      StreamNode<Integer, Integer> node = op.createNode();
+      assertEquals(1, op.nodes.size());
+      Spliterator<Integer> source = Arrays.asList(1, 2, 3, 4).spliterator();
+      List<Integer> results = new ArrayList<>();
+      while (node.getNext(source::tryAdvance, results::add));
+      assertEquals(Arrays.asList(1, 2, 3, 4), results);
+      assertTrue(op.nodes.isEmpty());
+      op.close();
+   }
+
+   @Test public void flatMapAsync_closeCancels() {
+      List<SettableFluentFuture<Stream<Integer>>> futures = new ArrayList<>();
+      List<Integer> results = range(10)
+            .flatMapAsync(i -> {
+               SettableFluentFuture<Stream<Integer>> f = new SettableFluentFuture<>();
+               futures.add(f);
+               if (i < 2) {
+                  f.setValue(Stream.of(i, i));
+               }
+               return f;
+            }, 5)
+            .limit(3)
+            .collect(Collectors.toList());
+      assertEquals(Arrays.asList(0, 0, 1), results);
+      // the stream was closed after the limit was reached, cancelling the rest
+      assertTrue(futures.size() < 10);
+      for (int i = 2; i < futures.size(); i++) {
+         assertTrue(futures.get(i).isCancelled());
+      }
+   }
+
+   @Test public void fusedStages() {
+      AtomicInteger peeked = new AtomicInteger();
+      Supplier<FluentStream<String>> stream = () -> range(1000)
+            .map(i -> i * 3)
+            .filter(i -> i % 2 == 0)
+            .peek(i -> peeked.incrementAndGet())
+            .map(i -> i + 1)
+            .filter(i -> i % 5 != 0)
+            .map(String::valueOf);
+      List<String> expected = IntStream.range(0, 1000)
+            .map(i -> i * 3)
+            .filter(i -> i % 2 == 0)
+            .map(i -> i + 1)
+            .filter(i -> i % 5 != 0)
+            .mapToObj(String::valueOf)
+            .collect(Collectors.toList());
+      assertEquals(expected, stream.get().collect(Collectors.toList()));
+      assertEquals(500, peeked.get());
+      assertEquals(expected, stream.get().parallel().collect(Collectors.toList()));
+      assertEquals(1000, peeked.get());
+      // pulled one element at a time
+      List<String> pulled = new ArrayList<>();
+      stream.get().iterator().forEachRemaining(pulled::add);
+      assertEquals(expected, pulled);
+      assertEquals(1500, peeked.get());
+   }
+
+   @Test public void fusedStages_shortCircuit() {
+      AtomicInteger peeked = new AtomicInteger();
+      List<Integer> results = range(1000)
+            .peek(i -> peeked.incrementAndGet())
+            .filter(i -> i % 2 == 1)
+            .limit(3)
+            .map(i -> i * 10)
+            .collect(Collectors.toList());
+      assertEquals(Arrays.asList(10, 30, 50), results);
+      // the limit stopped consuming the source once satisfied
+      assertEquals(6, peeked.get());
+
+      peeked.set(0);
+      assertTrue(range(1000)
+            .peek(i -> peeked.incrementAndGet())
+            .map(i -> i + 1)
+            .anyMatch(i -> i == 10));
+      assertEquals(10, peeked.get());
+   }
+
+   @Test public void forEachOrdered_unordered() {
+      List<Integer> results = new ArrayList<>();
+      range(10).unordered().map(i -> i + 1).forEachOrdered(results::add);
+      assertEquals(10, results.size());
+      assertEquals(IntStream.rangeClosed(1, 10).boxed().collect(Collectors.toSet()),
+            new HashSet<>(results));
+   }
+}